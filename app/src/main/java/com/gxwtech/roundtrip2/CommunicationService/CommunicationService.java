@@ -28,9 +28,12 @@ import com.gxwtech.roundtrip2.RT2Const;
 import com.gxwtech.roundtrip2.util.Check;
 
 
+import java.lang.reflect.Type;
 import java.util.Date;
 import java.util.List;
 
+import io.realm.Realm;
+
 /**
  * Created by Tim on 07/06/2016.
  * This service listens out for requests from HAPP and processes them
@@ -40,6 +43,32 @@ public class CommunicationService extends android.app.Service {
     public CommunicationService(){}
     final static String TAG = "CommunicationService";
 
+    private static final Type INTEGRATION_LIST_TYPE = new TypeToken<List<Integration>>() {}.getType();
+    private static final Type TREATMENT_LIST_TYPE = new TypeToken<List<String>>() {}.getType();
+
+    //Gson instances are thread safe, so they are created only once
+    private static Gson incomingGson;
+    private static Gson outgoingGson;
+
+    static synchronized Gson getIncomingGson(){
+        if (incomingGson == null) {
+            incomingGson = new GsonBuilder()
+                    .registerTypeAdapter(Date.class, new DateDeserializer())
+                    .create();
+        }
+        return incomingGson;
+    }
+
+    //Integrations read from Realm are proxies, so serializer is registered for proxy class (looked up only once)
+    static synchronized Gson getOutgoingGson() throws ClassNotFoundException {
+        if (outgoingGson == null) {
+            outgoingGson = new GsonBuilder()
+                    .registerTypeAdapter(Class.forName("io.realm.IntegrationRealmProxy"), new IntegrationSerializer())
+                    .create();
+        }
+        return outgoingGson;
+    }
+
     class IncomingHandler extends Handler {
         @Override
         public void handleMessage(Message msg) {
@@ -87,84 +116,88 @@ public class CommunicationService extends android.app.Service {
 
                     break;
                 case RT2Const.commService.INCOMING_NEW_TREATMENTS:
-                    GsonBuilder gsonBuilder = new GsonBuilder();
-                    gsonBuilder.registerTypeAdapter(Date.class, new DateDeserializer());
-                    Gson gson = gsonBuilder.create();
+                    Gson gson = getIncomingGson();
 
-                    remoteIntegrations  = gson.fromJson(data.getString(RT2Const.commService.INTEGRATION_OBJECTS), new TypeToken<List<Integration>>() {}.getType());
-                    remoteTreatments    = gson.fromJson(data.getString(RT2Const.commService.TREATMENT_OBJECTS), new TypeToken<List<String>>() {}.getType());
+                    remoteIntegrations  = gson.fromJson(data.getString(RT2Const.commService.INTEGRATION_OBJECTS), INTEGRATION_LIST_TYPE);
+                    remoteTreatments    = gson.fromJson(data.getString(RT2Const.commService.TREATMENT_OBJECTS), TREATMENT_LIST_TYPE);
                     Log.d("RECEIVED: INTEGRATIONS", remoteIntegrations.toString());
                     Log.d("RECEIVED: TREATMENTS", remoteTreatments.toString());
 
-                    for (int i = 0; i < remoteIntegrations.size(); i++) {
-
-                        realmManager.getRealm().beginTransaction();
-
-                        Integration integrationForAPS = remoteIntegrations.get(i);
-                        integrationForAPS.setType           ("aps_app");
-                        integrationForAPS.setState          ("received");
-                        integrationForAPS.setToSync         (true);
-                        integrationForAPS.setDate_updated   (new Date());
-                        integrationForAPS.setRemote_id(remoteIntegrations.get(i).getLocal_object_id());
-
-                        Integration integrationForPump = new Integration();
-                        integrationForPump.setType          ("pump");
-                        integrationForPump.setDate_updated  (new Date());
-                        integrationForPump.setLocal_object(remoteIntegrations.get(i).getLocal_object());
-
-                        String localObjectlID = "", localObjectState = "", localObjectDetails = "", rejectRequest = "";
-                        if (!Check.isPumpSupported(pump))
-                            rejectRequest += "Pump requested not supported. ";
-                        if (Check.isRequestTooOld(requested)) rejectRequest += "Request too old. ";
-
-                        switch (remoteIntegrations.get(i).getLocal_object()) {
-                            case "temp_basal":
-                                TempBasal tempBasal = gson.fromJson(remoteTreatments.get(i), TempBasal.class);
-                                realmManager.getRealm().copyToRealm(tempBasal);
-                                localObjectlID = tempBasal.getId();
-
-                                switch (remoteIntegrations.get(i).getAction()) {
-                                    case "new":
-                                        rejectRequest += Check.isNewTempBasalSafe(tempBasal);
-                                        if (rejectRequest.equals("")) // TODO: 12/08/2016 command to send TempBasal to pump
-                                            break;
-                                    case "cancel":
-                                        rejectRequest += Check.isCancelTempBasalSafe(tempBasal, integrationForAPS, realmManager.getRealm());
-                                        if (rejectRequest.equals("")) // TODO: 12/08/2016 command to send TempBasal to pump
-                                            break;
-                                }
-                                break;
-
-                            case "bolus_delivery":
-                                Bolus bolus = gson.fromJson(remoteTreatments.get(i), Bolus.class);
-                                realmManager.getRealm().copyToRealm(bolus);
-                                localObjectlID = bolus.getId();
-                                rejectRequest += Check.isBolusSafeToAction(bolus);
-
-                                if (rejectRequest.equals("")) //TODO: 12/08/2016 command to action Bolus
-
+                    //Whole batch is stored in one transaction, APS app can send many treatments at once after reconnect
+                    Realm realm = realmManager.getRealm();
+                    realm.beginTransaction();
+                    try {
+                        for (int i = 0; i < remoteIntegrations.size(); i++) {
+
+                            Integration integrationForAPS = remoteIntegrations.get(i);
+                            integrationForAPS.setType           ("aps_app");
+                            integrationForAPS.setState          ("received");
+                            integrationForAPS.setToSync         (true);
+                            integrationForAPS.setDate_updated   (new Date());
+                            integrationForAPS.setRemote_id(remoteIntegrations.get(i).getLocal_object_id());
+
+                            Integration integrationForPump = new Integration();
+                            integrationForPump.setType          ("pump");
+                            integrationForPump.setDate_updated  (new Date());
+                            integrationForPump.setLocal_object(remoteIntegrations.get(i).getLocal_object());
+
+                            String localObjectlID = "", localObjectState = "", localObjectDetails = "", rejectRequest = "";
+                            if (!Check.isPumpSupported(pump))
+                                rejectRequest += "Pump requested not supported. ";
+                            if (Check.isRequestTooOld(requested)) rejectRequest += "Request too old. ";
+
+                            switch (remoteIntegrations.get(i).getLocal_object()) {
+                                case "temp_basal":
+                                    TempBasal tempBasal = gson.fromJson(remoteTreatments.get(i), TempBasal.class);
+                                    realm.copyToRealm(tempBasal);
+                                    localObjectlID = tempBasal.getId();
+
+                                    switch (remoteIntegrations.get(i).getAction()) {
+                                        case "new":
+                                            rejectRequest += Check.isNewTempBasalSafe(tempBasal);
+                                            if (rejectRequest.equals("")) // TODO: 12/08/2016 command to send TempBasal to pump
+                                                break;
+                                        case "cancel":
+                                            rejectRequest += Check.isCancelTempBasalSafe(tempBasal, integrationForAPS, realm);
+                                            if (rejectRequest.equals("")) // TODO: 12/08/2016 command to send TempBasal to pump
+                                                break;
+                                    }
                                     break;
-                        }
 
-                        if (rejectRequest.equals("")) {
-                            //all ok
-                            localObjectState = "received";
-                            localObjectDetails = "Request sent to pump";
-                        } else {
-                            //reject
-                            localObjectState = "error";
-                            localObjectDetails = rejectRequest;
+                                case "bolus_delivery":
+                                    Bolus bolus = gson.fromJson(remoteTreatments.get(i), Bolus.class);
+                                    realm.copyToRealm(bolus);
+                                    localObjectlID = bolus.getId();
+                                    rejectRequest += Check.isBolusSafeToAction(bolus);
+
+                                    if (rejectRequest.equals("")) //TODO: 12/08/2016 command to action Bolus
+
+                                        break;
+                            }
+
+                            if (rejectRequest.equals("")) {
+                                //all ok
+                                localObjectState = "received";
+                                localObjectDetails = "Request sent to pump";
+                            } else {
+                                //reject
+                                localObjectState = "error";
+                                localObjectDetails = rejectRequest;
+                            }
+
+                            integrationForAPS.setLocal_object_id(localObjectlID);
+                            integrationForAPS.setState(localObjectState);
+                            integrationForAPS.setDetails(localObjectDetails);
+                            realm.copyToRealm(integrationForAPS);
+                            integrationForPump.setLocal_object_id(localObjectlID);
+                            integrationForPump.setState(localObjectState);
+                            integrationForPump.setDetails(localObjectDetails);
+                            realm.copyToRealm(integrationForPump);
                         }
-
-                        integrationForAPS.setLocal_object_id(localObjectlID);
-                        integrationForAPS.setState(localObjectState);
-                        integrationForAPS.setDetails(localObjectDetails);
-                        realmManager.getRealm().copyToRealm(integrationForAPS);
-                        integrationForPump.setLocal_object_id(localObjectlID);
-                        integrationForPump.setState(localObjectState);
-                        integrationForPump.setDetails(localObjectDetails);
-                        realmManager.getRealm().copyToRealm(integrationForPump);
-                        realmManager.getRealm().commitTransaction();
+                        realm.commitTransaction();
+                    } catch (RuntimeException e) {
+                        realm.cancelTransaction();
+                        throw e;
                     }
                     break;
 
@@ -204,9 +237,7 @@ public class CommunicationService extends android.app.Service {
             Message msg = Message.obtain();
             boolean updateOK = true;
             try {
-                Gson gson = new GsonBuilder()
-                        .registerTypeAdapter(Class.forName("io.realm.IntegrationRealmProxy"), new IntegrationSerializer())
-                        .create();
+                Gson gson = getOutgoingGson();
 
                 Bundle bundle = new Bundle();
                 bundle.putString(RT2Const.commService.ACTION, RT2Const.commService.OUTGOING_TREATMENT_UPDATES);
@@ -226,8 +257,8 @@ public class CommunicationService extends android.app.Service {
                 Log.e(TAG, integrations.size() + " updates failed. " + e.getLocalizedMessage());
             }
 
+            realmManager.getRealm().beginTransaction();
             for (Integration integration : integrations){
-                realmManager.getRealm().beginTransaction();
                 if (updateOK) {
                     integration.setState("sent");
                 } else {
@@ -235,31 +266,60 @@ public class CommunicationService extends android.app.Service {
                     integration.setDetails("Update to APS failed. Will not be resent.");
                 }
                 integration.setToSync(false);
-                realmManager.getRealm().commitTransaction();
             }
+            realmManager.getRealm().commitTransaction();
         }
 
-        try {
-            if (isBound) CommunicationService.this.unbindService(myConnection);
-        } catch (IllegalArgumentException e) {
-            //catch if service was killed in a unclean way
-        }
+        disconnect_from_aps_app();
 
         realmManager.closeRealm();
     }
 
     //Connect to the APS App Treatments Service
+    //If we are already waiting for connection, nothing is done: updateAPSApp sends all pending updates in one message
     private void connect_to_aps_app(){
+        if (bindRequested) {
+            Log.d(TAG, "Already connecting to APS app, updates will be sent together");
+            return;
+        }
         // TODO: 16/06/2016 should be able to pick the APS app from UI not hardcoded 
         Intent intent = new Intent("com.hypodiabetic.happ.services.TreatmentService");
         intent.setPackage("com.hypodiabetic.happ");
-        CommunicationService.this.bindService(intent, myConnection, Context.BIND_AUTO_CREATE);
+        bindRequested = CommunicationService.this.bindService(intent, myConnection, Context.BIND_AUTO_CREATE);
+        if (bindRequested) {
+            bindTimeoutHandler.postDelayed(bindTimeout, BIND_TIMEOUT_MS);
+        }
+    }
+    //Unbind and allow next update to connect again
+    private void disconnect_from_aps_app(){
+        bindTimeoutHandler.removeCallbacks(bindTimeout);
+        try {
+            if (bindRequested) CommunicationService.this.unbindService(myConnection);
+        } catch (IllegalArgumentException e) {
+            //catch if service was killed in a unclean way
+        }
+        myService = null;
+        isBound = false;
+        bindRequested = false;
     }
     //Our Service that APS App will connect to
+    private static final long BIND_TIMEOUT_MS = 30 * 1000;
+    private final Handler bindTimeoutHandler = new Handler();
+    private final Runnable bindTimeout = new Runnable() {
+        @Override
+        public void run() {
+            if (!isBound) {
+                Log.e(TAG, "APS app did not connect, updates will be sent with next request");
+                disconnect_from_aps_app();
+            }
+        }
+    };
     private Messenger myService = null;
     private Boolean isBound = false;
+    private boolean bindRequested = false;
     private ServiceConnection myConnection = new ServiceConnection() {
         public void onServiceConnected(ComponentName className, IBinder service) {
+            bindTimeoutHandler.removeCallbacks(bindTimeout);
             myService = new Messenger(service);
             isBound = true;
 
@@ -267,8 +327,11 @@ public class CommunicationService extends android.app.Service {
         }
 
         public void onServiceDisconnected(ComponentName className) {
-            myService = null;
-            isBound = false;
+            disconnect_from_aps_app();
+        }
+
+        public void onBindingDied(ComponentName name) {
+            disconnect_from_aps_app();
         }
     };
 
@@ -17,6 +17,7 @@ import java.util.HashMap;
 
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.data.ServiceNotification;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.data.ServiceTransport;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.data.ServiceTransportCodec;
 
 /**
  * Created by geoff on 6/11/16.
@@ -65,7 +66,7 @@ public class RileyLinkIPCConnection {
                     // Convert from Message to Intent
                     if (msg.replyTo != null) {
                         try {
-                            ServiceTransport transport = new ServiceTransport(bundle);
+                            ServiceTransport transport = new ServiceTransport(ServiceTransportCodec.fromMessageData(bundle));
                             Log.d(TAG, "Service received IPC message" + transport.describeContentsShort());
                             transport.setSenderHashcode(msg.replyTo.hashCode());
                             Intent intent = new Intent(transport.getTransportType());
@@ -161,8 +162,8 @@ public class RileyLinkIPCConnection {
 
     public boolean sendTransport(ServiceTransport transport, Integer clientHashcode) {
         Message msg = Message.obtain(null, RT2Const.IPC.MSG_IPC, 0, 0);
-        // Set payload
-        msg.setData(transport.getMap());
+        // Set payload (encoded transport, see ServiceTransportCodec)
+        msg.setData(ServiceTransportCodec.toMessageData(transport.getMap()));
         Log.d(TAG, "Service sending message to " + String.valueOf(clientHashcode) + ": " + transport.describeContentsShort());
         if ((clientHashcode != null) && (clientHashcode == 0)) {
             return sendMessage(msg, null);
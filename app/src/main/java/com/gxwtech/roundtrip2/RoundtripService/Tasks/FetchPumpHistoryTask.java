@@ -2,11 +2,11 @@ package com.gxwtech.roundtrip2.RoundtripService.Tasks;
 
 import com.gxwtech.roundtrip2.ServiceData.FetchPumpHistoryResult;
 
-import java.util.ArrayList;
-
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.data.ServiceTransport;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.tasks.PumpTask;
-import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.Page;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.tasks.ServiceTaskPriority;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2.PumpHistorySync;
+import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicDeviceType;
 import info.nightscout.androidaps.plugins.PumpMedtronic.service.RileyLinkMedtronicService;
 
 /**
@@ -27,20 +27,26 @@ public class FetchPumpHistoryTask extends PumpTask {
 
     @Override
     public void run() {
-        ArrayList<Page> ra = new ArrayList<>();
-        for(int i = 0; i < 16; i++) {
-            Page page = RileyLinkMedtronicService.getCommunicationManager().getPumpHistoryPage(i);
-            if (page != null) {
-                ra.add(page);
-                RileyLinkMedtronicService.getInstance().saveHistoryPage(i, page);
-            }
+        // only pages with records newer than last sync are read (usually just page 0)
+        PumpHistorySync historySync = RileyLinkMedtronicService.getCommunicationManager().getPumpHistorySinceLastSync();
+
+        // cursor is moved only after records are stored (if storing fails, they are read again next time)
+        if (RileyLinkMedtronicService.getInstance().saveHistory(historySync)) {
+            historySync.commitCursor();
         }
 
         result.setMap(getServiceTransport().getServiceResult().getMap());
         result.setResultOK();
-        result.setPageArray(ra);
+        // raw pages, client decodes them
+        result.setRawPages(historySync.getPages(), MedtronicDeviceType.Medtronic_522);
+        result.setNewEntryCount(historySync.getNewEntries().size());
         getServiceTransport().setServiceResult(result);
     }
 
 
+    @Override
+    public ServiceTaskPriority getPriority() {
+        return ServiceTaskPriority.Background;
+    }
+
 }
@@ -3,6 +3,7 @@ package com.gxwtech.roundtrip2.RoundtripService.Tasks;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.data.ServiceResult;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.data.ServiceTransport;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.tasks.PumpTask;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.tasks.ServiceTaskPriority;
 import info.nightscout.androidaps.plugins.PumpMedtronic.comm.message.PumpMessage;
 import info.nightscout.androidaps.plugins.PumpMedtronic.service.RileyLinkMedtronicService;
 
@@ -30,4 +31,11 @@ public class ReadBolusWizardCarbProfileTask extends PumpTask {
         getServiceTransport().setServiceResult(result);
         */
     }
+
+
+    @Override
+    public ServiceTaskPriority getPriority() {
+        return ServiceTaskPriority.Background;
+    }
+
 }
@@ -40,4 +40,17 @@ public class ReadPumpClockTask extends PumpTask {
 
         getServiceTransport().setServiceResult(res);
     }
+
+
+    @Override
+    public long getMaxQueueTime_ms() {
+        return 60000;
+    }
+
+
+    @Override
+    public String getCoalesceKey() {
+        return getClass().getSimpleName();
+    }
+
 }
@@ -4,6 +4,7 @@ import com.gxwtech.roundtrip2.ServiceData.RetrieveHistoryPageResult;
 
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.data.ServiceTransport;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.tasks.PumpTask;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.tasks.ServiceTaskPriority;
 import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.Page;
 import info.nightscout.androidaps.plugins.PumpMedtronic.service.RileyLinkMedtronicService;
 
@@ -43,4 +44,10 @@ public class RetrieveHistoryPageTask extends PumpTask {
         result.setPageBundle(page.pack());
     }
 
+
+    @Override
+    public ServiceTaskPriority getPriority() {
+        return ServiceTaskPriority.Background;
+    }
+
 }
@@ -59,4 +59,16 @@ public class UpdatePumpStatusTask extends PumpTask {
 
     }
 
+
+    @Override
+    public long getMaxQueueTime_ms() {
+        return 120000;
+    }
+
+
+    @Override
+    public String getCoalesceKey() {
+        return getClass().getSimpleName();
+    }
+
 }
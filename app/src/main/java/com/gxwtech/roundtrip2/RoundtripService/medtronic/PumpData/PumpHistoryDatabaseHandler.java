@@ -32,19 +32,25 @@ public class PumpHistoryDatabaseHandler extends SQLiteOpenHelper {
         onCreate(sqLiteDatabase);
     }
 
+    // database stays open (getWritableDatabase returns same instance), it's closed by close()
     public void addEntry(PumpHistoryDatabaseEntry entry) {
         SQLiteDatabase db = getWritableDatabase();
         ContentValues values = entry.getContentValues();
         db.insert(DATABASE_TABLE_entries, null, values);
-        db.close();
     }
 
     public void addContentValuesList(List<ContentValues> list) {
         SQLiteDatabase db = getWritableDatabase();
-        for (ContentValues cvs : list) {
-            db.insert(DATABASE_TABLE_entries, null, cvs);
+        // one transaction (and one commit) for whole list
+        db.beginTransaction();
+        try {
+            for (ContentValues cvs : list) {
+                db.insert(DATABASE_TABLE_entries, null, cvs);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
-        db.close();
         Log.d(TAG,"Database "+ DATABASE_NAME + " saved");
     }
 
@@ -52,6 +58,5 @@ public class PumpHistoryDatabaseHandler extends SQLiteOpenHelper {
         SQLiteDatabase db = getWritableDatabase();
         db.execSQL("DROP TABLE IF EXISTS "+DATABASE_TABLE_entries);
         onCreate(db);
-        db.close();
     }
 }
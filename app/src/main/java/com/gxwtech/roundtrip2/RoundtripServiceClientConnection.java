@@ -15,6 +15,7 @@ import android.util.Log;
 
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.data.ServiceCommand;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.data.ServiceTransport;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.data.ServiceTransportCodec;
 
 /**
  * Created by geoff on 6/11/16.
@@ -52,7 +53,7 @@ public class RoundtripServiceClientConnection {
                     break;
                 case RT2Const.IPC.MSG_IPC:
                     // broadcast contents of message as an intent
-                    ServiceTransport transport = new ServiceTransport(msg.getData());
+                    ServiceTransport transport = new ServiceTransport(ServiceTransportCodec.fromMessageData(msg.getData()));
                     Log.d(TAG, "Client received IPC message, bouncing to local: " + transport.describeContentsShort());
                     intent = new Intent(transport.getTransportType());
                     intent.putExtra(RT2Const.IPC.bundleKey, transport.getMap());
@@ -131,7 +132,7 @@ public class RoundtripServiceClientConnection {
 
         Message msg = Message.obtain(null, RT2Const.IPC.MSG_IPC, 0, 0);
 
-        msg.setData(transport.getMap());
+        msg.setData(ServiceTransportCodec.toMessageData(transport.getMap()));
         msg.replyTo = mMessenger;
         try {
             mService.send(msg);
@@ -7,33 +7,117 @@ import java.util.List;
 
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.data.ServiceResult;
 import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.Page;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.RawHistoryPage;
+import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicDeviceType;
 
 /**
  * Created by geoff on 7/16/16.
+ * <p>
+ * Pages are sent as raw bytes (all pages in one array, with array of page lengths), records are decoded on client,
+ * when getPageArray is called.
  */
 public class FetchPumpHistoryResult extends ServiceResult {
+
+    private static final String KEY_PAGE_DATA = "pageData";
+    private static final String KEY_PAGE_LENGTHS = "pageLengths";
+    private static final String KEY_PAGE_MODEL = "pageModel";
+
+    private ArrayList<Page> pages;
+
+
     public FetchPumpHistoryResult() {
     }
 
 
     public ArrayList<Page> getPageArray() {
-        ArrayList<Bundle> pagebundles = map.getParcelableArrayList("pageArrayList");
-        ArrayList<Page> pages = new ArrayList<>();
-        for(Bundle b : pagebundles) {
+        if (pages != null) {
+            return pages;
+        }
+
+        pages = new ArrayList<>();
+
+        if (map.containsKey("pageArrayList")) {
+            // old format, one bundle per record
+            ArrayList<Bundle> pagebundles = map.getParcelableArrayList("pageArrayList");
+            for(Bundle b : pagebundles) {
+                Page p = new Page();
+                p.unpack(b);
+                pages.add(p);
+            }
+            return pages;
+        }
+
+        MedtronicDeviceType model = MedtronicDeviceType.valueOf(map.getString(KEY_PAGE_MODEL,
+            MedtronicDeviceType.Medtronic_522.name()));
+
+        for(int i = 0; i < getPageCount(); i++) {
             Page p = new Page();
-            p.unpack(b);
+            p.parseFrom(getRawPage(i), model);
             pages.add(p);
         }
+
         return pages;
     }
 
 
-    public void setPageArray(List<Page> pageList) {
-        ArrayList<Bundle> pageBundles = new ArrayList<>();
-        for(Page p : pageList) {
-            pageBundles.add(p.pack());
+    public void setRawPages(List<RawHistoryPage> rawPages, MedtronicDeviceType model) {
+        int[] lengths = new int[rawPages.size()];
+        int total = 0;
+
+        for(int i = 0; i < rawPages.size(); i++) {
+            lengths[i] = rawPages.get(i).getLength();
+            total += lengths[i];
+        }
+
+        byte[] data = new byte[total];
+        int offset = 0;
+
+        for(int i = 0; i < rawPages.size(); i++) {
+            System.arraycopy(rawPages.get(i).getData(), 0, data, offset, lengths[i]);
+            offset += lengths[i];
         }
-        map.putParcelableArrayList("pageArrayList", pageBundles);
+
+        map.putByteArray(KEY_PAGE_DATA, data);
+        map.putIntArray(KEY_PAGE_LENGTHS, lengths);
+        map.putString(KEY_PAGE_MODEL, model.name());
+        pages = null;
+    }
+
+
+    public int getPageCount() {
+        if (map.containsKey("pageArrayList")) {
+            return map.getParcelableArrayList("pageArrayList").size();
+        }
+
+        int[] lengths = map.getIntArray(KEY_PAGE_LENGTHS);
+        return lengths == null ? 0 : lengths.length;
+    }
+
+
+    /**
+     * Raw data of page (page 0 first), without decoding records.
+     */
+    public byte[] getRawPage(int index) {
+        int[] lengths = map.getIntArray(KEY_PAGE_LENGTHS);
+        int offset = 0;
+
+        for(int i = 0; i < index; i++) {
+            offset += lengths[i];
+        }
+
+        byte[] page = new byte[lengths[index]];
+        System.arraycopy(map.getByteArray(KEY_PAGE_DATA), offset, page, 0, lengths[index]);
+        return page;
+    }
+
+
+    public int getNewEntryCount() {
+        return map.getInt("newEntryCount", 0);
+    }
+
+
+    public void setNewEntryCount(int count) {
+        map.putInt("newEntryCount", count);
     }
 
 }
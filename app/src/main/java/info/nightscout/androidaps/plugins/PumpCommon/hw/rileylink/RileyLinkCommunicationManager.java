@@ -5,9 +5,13 @@ import android.content.Context;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import info.nightscout.androidaps.plugins.PumpCommon.data.PumpStatus;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.IRFSpy;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.RFSpy;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.FrequencyHistory;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.FrequencyScanResults;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.FrequencyTrial;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.RFSpyResponse;
@@ -18,6 +22,7 @@ import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RLMes
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkTargetFrequency;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.RileyLinkServiceData;
 import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
+import info.nightscout.androidaps.plugins.PumpCommon.utils.LazyHex;
 import info.nightscout.utils.SP;
 
 
@@ -71,15 +76,18 @@ public abstract class RileyLinkCommunicationManager {
     // All pump communications go through this function.
     protected <E extends RLMessage> E sendAndListen(RLMessage msg, int timeout_ms, int repeatCount, int extendPreamble_ms, Class<E> clazz) {
 
-        if (showPumpMessages) {
-            String myString =  ByteUtil.shortHexString(msg.getTxData());
+        byte[] txData = msg.getTxData();
 
-            LOG.info("Sent:" + ByteUtil.shortHexString(msg.getTxData()));
+        if (showPumpMessages) {
+            LOG.debug("Sent: {}", LazyHex.shortHex(txData));
         }
 
-        RFSpyResponse resp = rfspy.transmitThenReceive(new RadioPacket(msg.getTxData(), rileyLinkServiceData.versionCC110), (byte) 0, (byte) repeatCount, (byte) 0, (byte) 0, timeout_ms, (byte) 0, extendPreamble_ms);
+        RFSpyResponse resp = rfspy.transmitThenReceive(new RadioPacket(txData, rileyLinkServiceData.versionCC110), (byte) 0, (byte) repeatCount, (byte) 0, (byte) 0, timeout_ms, (byte) 0, extendPreamble_ms);
 
-        E response = createResponseMessage(resp.getRadioResponse().getPayload(), clazz);
+        // getRadioResponse decodes raw response on each call
+        byte[] payload = resp.getRadioResponse().getPayload();
+
+        E response = createResponseMessage(payload, clazz);
 
         //PumpMessage rval = new PumpMessage(resp.getRadioResponse().getPayload());
         if (response.isValid()) {
@@ -90,7 +98,7 @@ public abstract class RileyLinkCommunicationManager {
         }
 
         if (showPumpMessages) {
-            LOG.info("Received:" + ByteUtil.shortHexString(resp.getRadioResponse().getPayload()));
+            LOG.debug("Received: {}", LazyHex.shortHex(payload));
         }
         return response;
     }
@@ -123,7 +131,7 @@ public abstract class RileyLinkCommunicationManager {
 
             byte[] pumpMsgContent = createPumpMessageContent(RLMessageType.ReadSimpleData); // simple
             RFSpyResponse resp = rfspy.transmitThenReceive(new RadioPacket(pumpMsgContent, rileyLinkServiceData.versionCC110), (byte) 0, (byte) 200, (byte) 0, (byte) 0, 25000, (byte) 0);
-            LOG.info("wakeup: raw response is " + ByteUtil.shortHexString(resp.getRaw()));
+            LOG.info("wakeup: raw response is {}", LazyHex.shortHex(resp.getRaw()));
 
             nextWakeUpRequired = System.currentTimeMillis() + (receiverDeviceAwakeForMinutes * 60 * 1000);
         } else {
@@ -138,7 +146,7 @@ public abstract class RileyLinkCommunicationManager {
         //
         //            byte[] pumpMsgContent = createPumpMessageContent(RLMessageType.PowerOn);
         //            RFSpyResponse resp = rfspy.transmitThenReceive(new RadioPacket(pumpMsgContent), (byte) 0, (byte) 200, (byte) 0, (byte) 0, 15000, (byte) 0);
-        //            LOG.info("wakeup: raw response is " + ByteUtil.shortHexString(resp.getRaw()));
+        //            LOG.info("wakeup: raw response is {}", LazyHex.shortHex(resp.getRaw()));
         //        } else {
         //            LOG.trace("Last pump communication was recent, not waking pump.");
         //        }
@@ -151,7 +159,64 @@ public abstract class RileyLinkCommunicationManager {
 
 
     public double tuneForDevice() {
-        return scanForDevice(scanFrequencies);
+        return tuneForDevice(0.0d);
+    }
+
+
+    /**
+     * Tune-up that starts at last good frequency and best frequencies from (per device) history, and only scans
+     * whole range if device is not heard there (see RileyLinkFrequencyTuner). Results are added to history.
+     *
+     * @param lastGoodFrequency last good frequency (or 0.0 if we don't have one)
+     * @return found frequency or 0.0 if device was not found
+     */
+    public double tuneForDevice(double lastGoodFrequency) {
+        LOG.info("Tuning for receiver ({})", receiverDeviceID);
+        wakeUp(receiverDeviceAwakeForMinutes, false);
+
+        FrequencyHistory history = FrequencyHistory.fromString(SP.getString(getFrequencyHistoryKey(), ""));
+
+        List<Double> startFrequencies = new ArrayList<>();
+
+        if (lastGoodFrequency > 0.0d) {
+            startFrequencies.add(lastGoodFrequency);
+        }
+
+        for (Double frequency : history.getBestFrequencies(TUNE_HISTORY_CANDIDATES)) {
+            if (!startFrequencies.contains(frequency)) {
+                startFrequencies.add(frequency);
+            }
+        }
+
+        RileyLinkFrequencyTuner tuner = new RileyLinkFrequencyTuner(new RileyLinkFrequencyTuner.FrequencyProbe() {
+
+            @Override
+            public FrequencyTrial tryFrequency(double frequencyMHz, int tries) {
+                return scanFrequency(frequencyMHz, tries);
+            }
+        }, scanFrequencies, RileyLinkFrequencyTuner.DEFAULT_TIME_BUDGET_MS);
+
+        FrequencyScanResults results = tuner.tune(startFrequencies);
+
+        for (FrequencyTrial trial : results.trials) {
+            history.addTrial(trial);
+        }
+
+        SP.putString(getFrequencyHistoryKey(), history.toString());
+
+        if (results.bestFrequencyMHz > 0.0d) {
+            rfspy.setBaseFrequency(results.bestFrequencyMHz);
+        } else {
+            LOG.error("No pump response during tune-up.");
+        }
+
+        return results.bestFrequencyMHz;
+    }
+
+
+    private String getFrequencyHistoryKey() {
+        String deviceId = rileyLinkServiceData.pumpID;
+        return RileyLinkConst.Prefs.FrequencyHistory + ((deviceId == null) ? targetFrequency.name() : deviceId);
     }
 
 
@@ -167,6 +232,7 @@ public abstract class RileyLinkCommunicationManager {
     }
 
     private static final int SCAN_TIMEOUT = 1500;
+    private static final int TUNE_HISTORY_CANDIDATES = 3;
 
     /**
      * Do device connection, with wakeup
@@ -183,34 +249,7 @@ public abstract class RileyLinkCommunicationManager {
         FrequencyScanResults results = new FrequencyScanResults();
 
         for (int i = 0; i < frequencies.length; i++) {
-            int tries = 3;
-            FrequencyTrial trial = new FrequencyTrial();
-            trial.frequencyMHz = frequencies[i];
-            rfspy.setBaseFrequency(frequencies[i]);
-
-            int sumRSSI = 0;
-            for (int j = 0; j < tries; j++) {
-
-                byte[] pumpMsgContent = createPumpMessageContent(RLMessageType.ReadSimpleData);
-                RFSpyResponse resp = rfspy.transmitThenReceive(new RadioPacket(pumpMsgContent, rileyLinkServiceData.versionCC110), (byte) 0, (byte) 0, (byte) 0, (byte) 0, SCAN_TIMEOUT, (byte) 0);
-                if (resp.wasTimeout()) {
-                    LOG.error("scanForPump: Failed to find pump at frequency {}", frequencies[i]);
-                } else if (resp.looksLikeRadioPacket()) {
-                    RadioResponse radioResponse = new RadioResponse(resp.getRaw());
-                    if (radioResponse.isValid()) {
-                        sumRSSI += radioResponse.rssi;
-                        trial.successes++;
-                    } else {
-                        LOG.warn("Failed to parse radio response: " + ByteUtil.shortHexString(resp.getRaw()));
-                    }
-                } else {
-                    LOG.error("scanForPump: raw response is " + ByteUtil.shortHexString(resp.getRaw()));
-                }
-                trial.tries++;
-            }
-            sumRSSI += -99.0 * (trial.tries - trial.successes);
-            trial.averageRSSI = (double) (sumRSSI) / (double) (trial.tries);
-            results.trials.add(trial);
+            results.trials.add(scanFrequency(frequencies[i], 3));
         }
         results.sort(); // sorts in ascending order
         LOG.debug("Sorted scan results:");
@@ -230,6 +269,37 @@ public abstract class RileyLinkCommunicationManager {
     }
 
 
+    private FrequencyTrial scanFrequency(double frequencyMHz, int tries) {
+        FrequencyTrial trial = new FrequencyTrial();
+        trial.frequencyMHz = frequencyMHz;
+        rfspy.setBaseFrequency(frequencyMHz);
+
+        int sumRSSI = 0;
+        for (int j = 0; j < tries; j++) {
+
+            byte[] pumpMsgContent = createPumpMessageContent(RLMessageType.ReadSimpleData);
+            RFSpyResponse resp = rfspy.transmitThenReceive(new RadioPacket(pumpMsgContent, rileyLinkServiceData.versionCC110), (byte) 0, (byte) 0, (byte) 0, (byte) 0, SCAN_TIMEOUT, (byte) 0);
+            if (resp.wasTimeout()) {
+                LOG.error("scanForPump: Failed to find pump at frequency {}", frequencyMHz);
+            } else if (resp.looksLikeRadioPacket()) {
+                RadioResponse radioResponse = new RadioResponse(resp.getRaw());
+                if (radioResponse.isValid()) {
+                    sumRSSI += radioResponse.rssi;
+                    trial.successes++;
+                } else {
+                    LOG.warn("Failed to parse radio response: " + ByteUtil.shortHexString(resp.getRaw()));
+                }
+            } else {
+                LOG.error("scanForPump: raw response is " + ByteUtil.shortHexString(resp.getRaw()));
+            }
+            trial.tries++;
+        }
+        sumRSSI += -99.0 * (trial.tries - trial.successes);
+        trial.averageRSSI = (double) (sumRSSI) / (double) (trial.tries);
+        return trial;
+    }
+
+
     //    public RLMessage makeRLMessage(RLMessageType type) {
     //        return makeRLMessage(type, null);
     //    }
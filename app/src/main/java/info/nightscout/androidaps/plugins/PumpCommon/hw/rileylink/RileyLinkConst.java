@@ -28,6 +28,7 @@ public class RileyLinkConst {
 
         public static final String LastGoodDeviceCommunicationTime = Prefix + "lastGoodDeviceCommunicationTime";
         public static final String LastGoodDeviceFrequency = Prefix + "LastGoodDeviceFrequency";
+        public static final String FrequencyHistory = Prefix + "FrequencyHistory.";
     }
 
 
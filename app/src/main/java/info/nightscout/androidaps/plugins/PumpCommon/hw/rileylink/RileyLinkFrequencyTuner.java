@@ -0,0 +1,267 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.FrequencyScanResults;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.FrequencyTrial;
+
+/**
+ * Tuner that finds device frequency with as few probes as possible (there is only one radio, so frequencies have to be
+ * tried one after another):
+ * <ul>
+ * <li>start frequencies (last good one and best ones from history) are tried first,</li>
+ * <li>if device is not heard there, coarse scan (every second frequency, nearest to start first) runs until device is
+ * heard,</li>
+ * <li>from there we climb towards better RSSI (one step at a time) and stop when RSSI doesn't improve anymore
+ * (plateau), then half steps around best frequency are tried.</li>
+ * </ul>
+ * Each frequency is probed only once (results are reused), and whole tune-up must finish in time budget.
+ */
+public class RileyLinkFrequencyTuner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RileyLinkFrequencyTuner.class);
+
+    public static final int COARSE_TRIES = 1;
+    public static final int FINE_TRIES = 3;
+    public static final double PLATEAU_RSSI = 2.0d;
+    public static final long DEFAULT_TIME_BUDGET_MS = 30000L;
+
+    private final FrequencyProbe probe;
+    private final double[] scanFrequencies;
+    private final double step;
+    private final long timeBudget_ms;
+
+    private final Map<Long, FrequencyTrial> trials = new LinkedHashMap<>();
+    private long deadline;
+    private int probeCount;
+
+
+    public RileyLinkFrequencyTuner(FrequencyProbe probe, double[] scanFrequencies, long timeBudget_ms) {
+        this.probe = probe;
+        this.scanFrequencies = scanFrequencies;
+        this.step = (scanFrequencies.length > 1) ? (scanFrequencies[1] - scanFrequencies[0]) : 0.0d;
+        this.timeBudget_ms = timeBudget_ms;
+    }
+
+
+    /**
+     * @param startFrequencies frequencies where device was seen before (best first), can be empty
+     * @return all trials and best frequency (0.0 if device was not found)
+     */
+    public FrequencyScanResults tune(List<Double> startFrequencies) {
+        trials.clear();
+        probeCount = 0;
+        deadline = System.currentTimeMillis() + timeBudget_ms;
+
+        if (scanFrequencies.length == 1) {
+            measure(scanFrequencies[0], FINE_TRIES);
+            return getResults();
+        }
+
+        FrequencyTrial best = null;
+        double centre = scanFrequencies[scanFrequencies.length / 2];
+
+        for (Double frequency : startFrequencies) {
+            if (frequency == null || !isInRange(frequency)) {
+                continue;
+            }
+
+            if (best == null) {
+                centre = frequency;
+            }
+
+            best = getBetter(best, measure(frequency, COARSE_TRIES));
+        }
+
+        if (!isHeard(best)) {
+            best = coarseScan(centre);
+        }
+
+        if (isHeard(best)) {
+            best = fineTune(best);
+        }
+
+        FrequencyScanResults results = getResults();
+        LOG.info("Tune-up finished after {} probes on {} frequencies, best frequency: {} MHz", probeCount,
+            trials.size(), results.bestFrequencyMHz);
+        return results;
+    }
+
+
+    private FrequencyTrial coarseScan(double centre) {
+        List<Double> order = new ArrayList<>();
+
+        // every second frequency first (coarse grid), then the ones in between
+        for (int parity = 0; parity < 2; parity++) {
+            List<Double> pass = new ArrayList<>();
+
+            for (int i = parity; i < scanFrequencies.length; i += 2) {
+                pass.add(scanFrequencies[i]);
+            }
+
+            final double from = centre;
+            Collections.sort(pass, new Comparator<Double>() {
+
+                @Override
+                public int compare(Double frequency1, Double frequency2) {
+                    return Double.compare(Math.abs(frequency1 - from), Math.abs(frequency2 - from));
+                }
+            });
+
+            order.addAll(pass);
+        }
+
+        for (Double frequency : order) {
+            FrequencyTrial trial = measure(frequency, COARSE_TRIES);
+
+            if (trial == null) {
+                break; // out of time
+            }
+
+            if (isHeard(trial)) {
+                return trial;
+            }
+        }
+
+        return null;
+    }
+
+
+    private FrequencyTrial fineTune(FrequencyTrial start) {
+        FrequencyTrial best = getBetter(start, measure(start.frequencyMHz, FINE_TRIES));
+
+        while (!isOutOfTime()) {
+            FrequencyTrial next = getBetter(measure(best.frequencyMHz - step, FINE_TRIES),
+                measure(best.frequencyMHz + step, FINE_TRIES));
+
+            if (!isHeard(next) || next.averageRSSI <= best.averageRSSI) {
+                break;
+            }
+
+            boolean plateau = (next.averageRSSI - best.averageRSSI) < PLATEAU_RSSI;
+            best = next;
+
+            if (plateau) {
+                break;
+            }
+        }
+
+        best = getBetter(best, measure(best.frequencyMHz - step / 2, FINE_TRIES));
+        best = getBetter(best, measure(best.frequencyMHz + step / 2, FINE_TRIES));
+
+        return best;
+    }
+
+
+    /**
+     * Probes frequency (if it was already probed, only missing tries are done).
+     *
+     * @return trial, or null if frequency is out of range or time is up before it could be probed
+     */
+    private FrequencyTrial measure(double frequencyMHz, int tries) {
+        if (!isInRange(frequencyMHz)) {
+            return null;
+        }
+
+        long key = Math.round(frequencyMHz * 1000.0d);
+        FrequencyTrial trial = trials.get(key);
+
+        if (trial != null && trial.tries >= tries) {
+            return trial;
+        }
+
+        if (isOutOfTime()) {
+            return trial;
+        }
+
+        FrequencyTrial newTrial = probe.tryFrequency(key / 1000.0d, tries - ((trial == null) ? 0 : trial.tries));
+        probeCount++;
+
+        if (trial == null) {
+            trial = newTrial;
+        } else {
+            double sum = trial.averageRSSI * trial.tries + newTrial.averageRSSI * newTrial.tries;
+            trial.tries += newTrial.tries;
+            trial.successes += newTrial.successes;
+            trial.averageRSSI = sum / trial.tries;
+        }
+
+        trials.put(key, trial);
+
+        LOG.debug("Tune-up: frequency {} MHz, {}/{} responses, avg RSSI = {}", trial.frequencyMHz, trial.successes,
+            trial.tries, trial.averageRSSI);
+
+        return trial;
+    }
+
+
+    private FrequencyScanResults getResults() {
+        FrequencyScanResults results = new FrequencyScanResults();
+        results.trials.addAll(trials.values());
+        results.sort();
+
+        FrequencyTrial best = results.trials.isEmpty() ? null : results.trials.get(results.trials.size() - 1);
+        results.bestFrequencyMHz = isHeard(best) ? best.frequencyMHz : 0.0d;
+        return results;
+    }
+
+
+    private boolean isInRange(double frequencyMHz) {
+        // frequencies are compared in kHz, so that rounding errors don't matter
+        long frequency = Math.round(frequencyMHz * 1000.0d);
+        return Math.round(scanFrequencies[0] * 1000.0d) <= frequency
+            && frequency <= Math.round(scanFrequencies[scanFrequencies.length - 1] * 1000.0d);
+    }
+
+
+    private boolean isOutOfTime() {
+        boolean outOfTime = System.currentTimeMillis() >= deadline;
+
+        if (outOfTime) {
+            LOG.warn("Tune-up time budget ({} ms) used up", timeBudget_ms);
+        }
+
+        return outOfTime;
+    }
+
+
+    private static boolean isHeard(FrequencyTrial trial) {
+        return trial != null && trial.successes > 0;
+    }
+
+
+    private static FrequencyTrial getBetter(FrequencyTrial trial1, FrequencyTrial trial2) {
+        if (trial1 == null)
+            return trial2;
+
+        if (trial2 == null)
+            return trial1;
+
+        return (trial2.averageRSSI > trial1.averageRSSI) ? trial2 : trial1;
+    }
+
+
+    public int getProbeCount() {
+        return probeCount;
+    }
+
+
+    public interface FrequencyProbe {
+
+        /**
+         * Sends tries probes on frequency.
+         *
+         * @return trial with tries, successes and average RSSI (-99 counted for missed responses)
+         */
+        FrequencyTrial tryFrequency(double frequencyMHz, int tries);
+    }
+
+}
@@ -10,7 +10,11 @@ import com.gxwtech.roundtrip2.RoundtripService.RileyLinkIPCConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.List;
 
 import info.nightscout.androidaps.plugins.PumpCommon.defs.PumpType;
@@ -18,6 +22,7 @@ import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.IRileyLink
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.RileyLinkBLE;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkEncodingType;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkTargetFrequency;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.data.RLHistory;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.data.RLHistoryItem;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.defs.RileyLinkError;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.defs.RileyLinkServiceState;
@@ -29,6 +34,7 @@ import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.data.S
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.tasks.ServiceTask;
 import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicDeviceType;
 import info.nightscout.androidaps.plugins.PumpMedtronic.driver.MedtronicPumpStatus;
+import info.nightscout.androidaps.plugins.PumpMedtronic.util.MedtronicUtil;
 
 
 /**
@@ -39,16 +45,17 @@ public class RileyLinkUtil {
 
     private static final Logger LOG = LoggerFactory.getLogger(RileyLinkUtil.class);
 
+    private static final String HISTORY_FILE = "RileyLinkHistory";
+
     private static Context context;
     private static IRileyLinkBLE rileyLinkBLE;
     private static RileyLinkServiceData rileyLinkServiceData;
-    private static List<RLHistoryItem> historyRileyLink = new ArrayList<>();
+    private static final RLHistory historyRileyLink = new RLHistory();
     private static PumpType pumpType;
     private static MedtronicPumpStatus medtronicPumpStatus;
     private static RileyLinkService rileyLinkService;
     private static RileyLinkCommunicationManager rileyLinkCommunicationManager;
     private static RileyLinkIPCConnection rileyLinkIPCConnection;
-    private static MedtronicDeviceType medtronicPumpModel;
     private static RileyLinkTargetFrequency rileyLinkTargetFrequency;
     // BAD dependencies in Classes: RileyLinkService
 
@@ -96,7 +103,68 @@ public class RileyLinkUtil {
 
         LOG.warn("RileyLink State Changed: {} {}", newState, errorCode == null ? "" : " - Error State: " + errorCode.name());
 
-        RileyLinkUtil.historyRileyLink.add(new RLHistoryItem(rileyLinkServiceData.serviceState, rileyLinkServiceData.errorCode));
+        RileyLinkUtil.historyRileyLink.add(new RLHistoryItem(newState, errorCode));
+    }
+
+
+    /**
+     * Snapshot of RileyLink state history (oldest first), for UI.
+     */
+    public static List<RLHistoryItem> getRileyLinkHistory() {
+        return RileyLinkUtil.historyRileyLink.getSnapshot();
+    }
+
+
+    /**
+     * Saves newest part of state history, so it can be restored with loadRileyLinkHistory after restart.
+     */
+    public static void saveRileyLinkHistory() {
+        if (context == null)
+            return;
+
+        FileOutputStream outputStream = null;
+        try {
+            outputStream = context.openFileOutput(HISTORY_FILE, Context.MODE_PRIVATE);
+            historyRileyLink.writeTail(outputStream, RLHistory.PERSISTED_ITEMS);
+        } catch (IOException ex) {
+            LOG.warn("Could not save RileyLink history: {}", ex.getMessage());
+        } finally {
+            closeQuietly(outputStream);
+        }
+    }
+
+
+    /**
+     * Restores state history saved by saveRileyLinkHistory. Must be called before first state is set, otherwise
+     * restored items would be newer than current ones.
+     */
+    public static void loadRileyLinkHistory() {
+        if (context == null || historyRileyLink.size() > 0)
+            return;
+
+        FileInputStream inputStream = null;
+        try {
+            inputStream = context.openFileInput(HISTORY_FILE);
+            int count = historyRileyLink.readTail(inputStream);
+            LOG.debug("Restored {} RileyLink history item(s)", count);
+        } catch (FileNotFoundException ex) {
+            // nothing saved yet
+        } catch (IOException ex) {
+            LOG.warn("Could not load RileyLink history: {}", ex.getMessage());
+        } finally {
+            closeQuietly(inputStream);
+        }
+    }
+
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
     }
 
 
@@ -188,15 +256,35 @@ public class RileyLinkUtil {
     }
 
 
+    public static ServiceTask getCurrentTask() {
+        return currentTask;
+    }
+
+
+    /**
+     * Current task is preempted by more urgent one, it is set back with resumeCurrentTask.
+     */
+    public static void suspendCurrentTask() {
+        currentTask = null;
+    }
+
+
+    public static void resumeCurrentTask(ServiceTask task) {
+        currentTask = task;
+    }
+
+
     public static void finishCurrentTask(ServiceTask task) {
         if (task != currentTask) {
             LOG.error("finishCurrentTask: task does not match");
         }
-        // hack to force deep copy of transport contents
-        ServiceTransport transport = task.getServiceTransport().clone();
+        if (task.getServiceTransport() != null) {
+            // hack to force deep copy of transport contents
+            ServiceTransport transport = task.getServiceTransport().clone();
 
-        if (transport.hasServiceResult()) {
-            sendServiceTransportResponse(transport, transport.getServiceResult());
+            if (transport.hasServiceResult()) {
+                sendServiceTransportResponse(transport, transport.getServiceResult());
+            }
         }
         currentTask = null;
     }
@@ -219,19 +307,17 @@ public class RileyLinkUtil {
 
 
     public static boolean isModelSet() {
-        return RileyLinkUtil.medtronicPumpModel != null;
+        return MedtronicUtil.isModelSet();
     }
 
 
     public static void setMedtronicPumpModel(MedtronicDeviceType medtronicPumpModel) {
-        if (medtronicPumpModel != null && medtronicPumpModel != MedtronicDeviceType.Unknown_Device) {
-            RileyLinkUtil.medtronicPumpModel = medtronicPumpModel;
-        }
+        MedtronicUtil.setMedtronicPumpModel(medtronicPumpModel);
     }
 
 
     public static MedtronicDeviceType getMedtronicPumpModel() {
-        return RileyLinkUtil.medtronicPumpModel;
+        return MedtronicUtil.getMedtronicPumpModel();
     }
 
 
@@ -0,0 +1,259 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Table driven 4b6b codec. Works directly on caller supplied arrays/buffers, so a history download (16 pages, 16
+ * frames each) doesn't allocate anything per byte. Output is bit-for-bit the same as the old ArrayList based code
+ * in RFTools (including the 0x14 marker on uneven packet boundary).
+ */
+public class FourByteSixByteCodec {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FourByteSixByteCodec.class);
+
+    /**
+     * For each byte value, its two 6 bit codes (high nibble code in bits 11-6, low nibble code in bits 5-0).
+     */
+    private static final int[] ENCODE_TABLE = new int[256];
+
+    /**
+     * 6 bit code -> 4 bit value, -1 for codes that are not valid symbols.
+     */
+    private static final byte[] DECODE_TABLE = new byte[64];
+
+    // marks uneven packet boundary
+    private static final int ODD_BOUNDARY_MARKER = 0x14;
+
+    static {
+        for (int i = 0; i < DECODE_TABLE.length; i++) {
+            DECODE_TABLE[i] = -1;
+        }
+
+        for (int i = 0; i < RFTools.codes.length; i++) {
+            DECODE_TABLE[RFTools.codes[i]] = (byte) i;
+        }
+
+        for (int i = 0; i < ENCODE_TABLE.length; i++) {
+            ENCODE_TABLE[i] = (RFTools.codes[i >> 4] << 6) | RFTools.codes[i & 0x0f];
+        }
+    }
+
+
+    private FourByteSixByteCodec() {
+    }
+
+
+    /**
+     * Returns 4 bit value for 6 bit code, or -1 if code is not valid.
+     */
+    public static int decodeSymbol(int code) {
+        return DECODE_TABLE[code & 0x3f];
+    }
+
+
+    /**
+     * Number of bytes encode will write for input of given length.
+     */
+    public static int encodedLength(int length) {
+        // 12 bits per input byte, odd inputs get 6 bit marker appended and leftover bits dropped
+        return ((length * 3) + (length & 1)) / 2;
+    }
+
+
+    /**
+     * Max number of bytes decode can write for input of given length.
+     */
+    public static int decodedLength(int encodedLength) {
+        return (encodedLength * 2) / 3;
+    }
+
+
+    /**
+     * Encodes length bytes from in (starting at inOffset) into out (starting at outOffset).
+     *
+     * @return number of bytes written
+     */
+    public static int encode(byte[] in, int inOffset, int length, byte[] out, int outOffset) {
+        checkBounds(in.length, inOffset, length);
+        checkBounds(out.length, outOffset, encodedLength(length));
+
+        int o = outOffset;
+        int end = inOffset + length;
+        int i = inOffset;
+
+        // two input bytes make 24 bits, which is exactly 3 output bytes
+        for (; i + 1 < end; i += 2) {
+            int acc = (ENCODE_TABLE[in[i] & 0xff] << 12) | ENCODE_TABLE[in[i + 1] & 0xff];
+            out[o++] = (byte) (acc >> 16);
+            out[o++] = (byte) (acc >> 8);
+            out[o++] = (byte) acc;
+        }
+
+        if (i < end) {
+            // 12 bits + 6 bit marker = 18 bits, 2 bytes are written, last 2 bits are dropped
+            int acc = (ENCODE_TABLE[in[i] & 0xff] << 6) | ODD_BOUNDARY_MARKER;
+            out[o++] = (byte) (acc >> 10);
+            out[o++] = (byte) (acc >> 2);
+        }
+
+        return o - outOffset;
+    }
+
+
+    /**
+     * Encodes remaining bytes of in into out, advancing positions of both buffers.
+     *
+     * @return number of bytes written
+     */
+    public static int encode(ByteBuffer in, ByteBuffer out) {
+        int length = in.remaining();
+        int encodedLength = encodedLength(length);
+
+        if (out.remaining() < encodedLength) {
+            throw new IndexOutOfBoundsException("Output buffer too small: " + out.remaining() + " < " + encodedLength);
+        }
+
+        if (in.hasArray() && out.hasArray()) {
+            int written = encode(in.array(), in.arrayOffset() + in.position(), length, out.array(), out.arrayOffset()
+                + out.position());
+            in.position(in.position() + length);
+            out.position(out.position() + written);
+            return written;
+        }
+
+        for (int i = 0; i + 1 < length; i += 2) {
+            int acc = (ENCODE_TABLE[in.get() & 0xff] << 12) | ENCODE_TABLE[in.get() & 0xff];
+            out.put((byte) (acc >> 16));
+            out.put((byte) (acc >> 8));
+            out.put((byte) acc);
+        }
+
+        if ((length & 1) != 0) {
+            int acc = (ENCODE_TABLE[in.get() & 0xff] << 6) | ODD_BOUNDARY_MARKER;
+            out.put((byte) (acc >> 10));
+            out.put((byte) (acc >> 2));
+        }
+
+        return encodedLength;
+    }
+
+
+    /**
+     * Decodes length bytes from in (starting at inOffset) into out (starting at outOffset).
+     *
+     * @return number of bytes written
+     * @throws NumberFormatException if data contains invalid symbols or is not terminated correctly
+     */
+    public static int decode(byte[] in, int inOffset, int length, byte[] out, int outOffset)
+            throws NumberFormatException {
+        checkBounds(in.length, inOffset, length);
+        checkBounds(out.length, outOffset, decodedLength(length));
+
+        int o = outOffset;
+        int end = inOffset + length;
+        int codingErrors = 0;
+        int availableBits = 0;
+        int x = 0;
+
+        for (int i = inOffset; i < end; i++) {
+            x = (x << 8) | (in[i] & 0xff);
+            availableBits += 8;
+
+            if (availableBits >= 12) {
+                int highIndex = DECODE_TABLE[(x >> (availableBits - 6)) & 0x3f];
+                int lowIndex = DECODE_TABLE[(x >> (availableBits - 12)) & 0x3f];
+
+                if ((highIndex | lowIndex) >= 0) {
+                    out[o++] = (byte) ((highIndex << 4) | lowIndex);
+                } else {
+                    codingErrors++;
+                }
+
+                availableBits -= 12;
+                x &= (0xffff >> (16 - availableBits));
+            }
+        }
+
+        checkEnd(availableBits, x, codingErrors);
+
+        return o - outOffset;
+    }
+
+
+    /**
+     * Decodes remaining bytes of in into out, advancing positions of both buffers.
+     *
+     * @return number of bytes written
+     * @throws NumberFormatException if data contains invalid symbols or is not terminated correctly
+     */
+    public static int decode(ByteBuffer in, ByteBuffer out) throws NumberFormatException {
+        int length = in.remaining();
+
+        if (out.remaining() < decodedLength(length)) {
+            throw new IndexOutOfBoundsException("Output buffer too small: " + out.remaining() + " < "
+                + decodedLength(length));
+        }
+
+        if (in.hasArray() && out.hasArray()) {
+            int written = decode(in.array(), in.arrayOffset() + in.position(), length, out.array(), out.arrayOffset()
+                + out.position());
+            in.position(in.position() + length);
+            out.position(out.position() + written);
+            return written;
+        }
+
+        int start = out.position();
+        int codingErrors = 0;
+        int availableBits = 0;
+        int x = 0;
+
+        for (int i = 0; i < length; i++) {
+            x = (x << 8) | (in.get() & 0xff);
+            availableBits += 8;
+
+            if (availableBits >= 12) {
+                int highIndex = DECODE_TABLE[(x >> (availableBits - 6)) & 0x3f];
+                int lowIndex = DECODE_TABLE[(x >> (availableBits - 12)) & 0x3f];
+
+                if ((highIndex | lowIndex) >= 0) {
+                    out.put((byte) ((highIndex << 4) | lowIndex));
+                } else {
+                    codingErrors++;
+                }
+
+                availableBits -= 12;
+                x &= (0xffff >> (16 - availableBits));
+            }
+        }
+
+        checkEnd(availableBits, x, codingErrors);
+
+        return out.position() - start;
+    }
+
+
+    private static void checkEnd(int availableBits, int x, int codingErrors) throws NumberFormatException {
+        // normal end is either no bits left, or 4 bits with end marker (uneven boundary)
+        if ((availableBits != 0) && !((availableBits == 4) && (x == 0x05))) {
+            LOG.error("decode4b6b: failed clean decode -- extra bits available (not marker)({})", availableBits);
+            codingErrors++;
+        }
+
+        if (codingErrors > 0) {
+            LOG.error("decode4b6b: {} coding errors encountered.", codingErrors);
+            throw new NumberFormatException();
+        }
+    }
+
+
+    private static void checkBounds(int arrayLength, int offset, int length) {
+        if ((offset < 0) || (length < 0) || (offset + length > arrayLength)) {
+            throw new IndexOutOfBoundsException("offset=" + offset + ", length=" + length + ", array length="
+                + arrayLength);
+        }
+    }
+
+}
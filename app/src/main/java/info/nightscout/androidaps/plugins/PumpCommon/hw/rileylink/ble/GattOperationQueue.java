@@ -0,0 +1,224 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operations.BLECommOperation;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operations.BLECommOperationFuture;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operations.BLECommOperationResult;
+
+/**
+ * Android allows only one outstanding GATT operation, so operations are queued here and started one by one (on queue
+ * thread), next one is started when GATT callback for current one arrives or when it times out. Callers get
+ * BLECommOperationFuture and don't need to wait (concurrent callers are queued instead of getting RESULT_BUSY).
+ */
+public class GattOperationQueue {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GattOperationQueue.class);
+
+    private final ScheduledExecutorService executor;
+    private final LinkedList<BLECommOperationFuture> pending = new LinkedList<>();
+
+    private BLECommOperationFuture current;
+    private ScheduledFuture<?> currentTimeout;
+
+
+    public GattOperationQueue() {
+        this(Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "GattOperationQueue");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }));
+    }
+
+
+    GattOperationQueue(ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+
+    public BLECommOperationFuture submit(BLECommOperation operation) {
+        if (executor.isShutdown()) {
+            return BLECommOperationFuture.completed(BLECommOperationResult.RESULT_NOT_CONFIGURED, operation.getValue());
+        }
+
+        BLECommOperationFuture future = new BLECommOperationFuture(operation, this);
+
+        synchronized (this) {
+            pending.add(future);
+        }
+
+        scheduleNext();
+        return future;
+    }
+
+
+    /**
+     * GATT callback arrived (called on IBinder thread). Callback that doesn't belong to current operation (late
+     * callback of timed out operation, or wrong UUID) is ignored.
+     */
+    public void onGattOperationCompleted(UUID uuid, byte[] value) {
+        BLECommOperationFuture future;
+
+        synchronized (this) {
+            future = current;
+        }
+
+        if (future == null) {
+            LOG.warn("GATT callback for {} arrived, but no operation is running (timed out?)", uuid);
+            return;
+        }
+
+        if (future.getOperation().gattOperationCompletionCallback(uuid, value)) {
+            finish(future, BLECommOperationResult.RESULT_SUCCESS);
+        }
+    }
+
+
+    public boolean cancel(BLECommOperationFuture future) {
+        synchronized (this) {
+            if (!pending.remove(future) && current != future) {
+                return false;
+            }
+        }
+
+        // current operation keeps its slot in queue until callback or timeout arrives
+        return future.complete(BLECommOperationResult.RESULT_CANCELLED);
+    }
+
+
+    /**
+     * Fails all operations (running and pending), used when connection is lost (callbacks for them won't arrive).
+     */
+    public void cancelAll(int resultCode) {
+        List<BLECommOperationFuture> cancelled;
+
+        synchronized (this) {
+            cancelled = new ArrayList<>(pending);
+            pending.clear();
+
+            if (current != null) {
+                cancelled.add(current);
+                clearCurrent();
+            }
+        }
+
+        if (!cancelled.isEmpty()) {
+            LOG.warn("Cancelling {} GATT operation(s), result code {}", cancelled.size(), resultCode);
+        }
+
+        for (BLECommOperationFuture future : cancelled) {
+            future.complete(resultCode);
+        }
+    }
+
+
+    public synchronized int getPendingCount() {
+        return pending.size() + (current == null ? 0 : 1);
+    }
+
+
+    public void shutdown() {
+        cancelAll(BLECommOperationResult.RESULT_NOT_CONFIGURED);
+        executor.shutdownNow();
+    }
+
+
+    private void scheduleNext() {
+        if (executor.isShutdown()) {
+            return;
+        }
+
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                startNext();
+            }
+        });
+    }
+
+
+    private void startNext() {
+        final BLECommOperationFuture next;
+
+        synchronized (this) {
+            if (current != null || pending.isEmpty()) {
+                return;
+            }
+
+            next = pending.poll();
+            current = next;
+        }
+
+        boolean started;
+
+        try {
+            started = next.getOperation().start();
+        } catch (RuntimeException ex) {
+            LOG.error("GATT operation could not be started: " + ex.getMessage(), ex);
+            started = false;
+        }
+
+        if (!started) {
+            LOG.error("GATT operation {} was not started", next.getOperation().getClass().getSimpleName());
+            finish(next, BLECommOperationResult.RESULT_NONE);
+            return;
+        }
+
+        synchronized (this) {
+            // callback might have already arrived
+            if (current == next) {
+                currentTimeout = executor.schedule(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        LOG.error("Timeout waiting for GATT operation {} to complete", next.getOperation().getClass()
+                            .getSimpleName());
+                        finish(next, BLECommOperationResult.RESULT_TIMEOUT);
+                    }
+                }, next.getOperation().getGattOperationTimeout_ms(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+
+    private void finish(BLECommOperationFuture future, int resultCode) {
+        synchronized (this) {
+            if (current != future) {
+                return;
+            }
+
+            clearCurrent();
+        }
+
+        // if operation was cancelled while running, it already has result
+        future.complete(resultCode);
+        scheduleNext();
+    }
+
+
+    private void clearCurrent() {
+        current = null;
+
+        if (currentTimeout != null) {
+            currentTimeout.cancel(false);
+            currentTimeout = null;
+        }
+    }
+
+}
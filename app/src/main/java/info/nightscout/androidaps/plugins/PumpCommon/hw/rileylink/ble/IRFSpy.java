@@ -44,4 +44,10 @@ public interface IRFSpy {
     void setBaseFrequency(double freqMHz);
 
     void setTestingFunction(String functionName);
+
+    // Time between write of last command and arrival of its response, -1 if there was no response yet
+    long getLastRoundTripLatency_ms();
+
+    // Moving average of round trip latency, -1 if there was no response yet
+    long getAverageRoundTripLatency_ms();
 }
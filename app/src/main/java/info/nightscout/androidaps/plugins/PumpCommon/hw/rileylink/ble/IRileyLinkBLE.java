@@ -4,6 +4,7 @@ import android.bluetooth.BluetoothGattService;
 
 import java.util.UUID;
 
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operations.BLECommOperationFuture;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operations.BLECommOperationResult;
 
 public interface IRileyLinkBLE {
@@ -32,4 +33,11 @@ public interface IRileyLinkBLE {
     BLECommOperationResult writeCharacteristic_blocking(UUID serviceUUID, UUID charaUUID, byte[] value);
 
     BLECommOperationResult readCharacteristic_blocking(UUID serviceUUID, UUID charaUUID);
+
+    // non-blocking variants, operations are queued and run one after another
+    BLECommOperationFuture setNotification(UUID serviceUUID, UUID charaUUID);
+
+    BLECommOperationFuture writeCharacteristic(UUID serviceUUID, UUID charaUUID, byte[] value, int timeout_ms);
+
+    BLECommOperationFuture readCharacteristic(UUID serviceUUID, UUID charaUUID, int timeout_ms);
 }
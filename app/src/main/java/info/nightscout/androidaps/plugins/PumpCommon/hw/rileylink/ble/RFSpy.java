@@ -7,12 +7,18 @@ import com.gxwtech.roundtrip2.util.StringUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkUtil;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.CC111XRegisterShadow;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.GattAttributes;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.RFSpyLatencyEstimator;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.RFSpyResponse;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.RFSpySettleDelays;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.RadioPacket;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.RadioPacketBuffer;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.CC111XRegister;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RXFilterMode;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkEncodingType;
@@ -25,8 +31,7 @@ import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.comma
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.command.SetSoftwareEncoding;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.command.UpdateRegister;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operations.BLECommOperationResult;
-import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
-import info.nightscout.androidaps.plugins.PumpCommon.utils.HexDump;
+import info.nightscout.androidaps.plugins.PumpCommon.utils.LazyHex;
 import info.nightscout.androidaps.plugins.PumpCommon.utils.ThreadUtil;
 
 
@@ -43,6 +48,9 @@ public class RFSpy implements IRFSpy {
 
     public static final int EXPECTED_MAX_BLUETOOTH_LATENCY_MS = 7500; // 1500
 
+    // time we wait for response on top of radio time, learned from round trips (EXPECTED_MAX_BLUETOOTH_LATENCY_MS is ceiling)
+    private final RFSpyLatencyEstimator latencyEstimator = new RFSpyLatencyEstimator(EXPECTED_MAX_BLUETOOTH_LATENCY_MS);
+
     private IRileyLinkBLE rileyLinkBle;
     private RFSpyReader reader;
     private RileyLinkTargetFrequency selectedTargetFrequency;
@@ -55,9 +63,26 @@ public class RFSpy implements IRFSpy {
     private RileyLinkFirmwareVersion firmwareVersion;
     private String bleVersion; //We don't use it so no need of sofisticated logic
 
+    // measured time from write of command to arrival of response (exponential moving average, last 5 weigh most)
+    private static final double LATENCY_SMOOTHING = 0.2d;
+    private volatile long lastRoundTripLatency_ms = -1;
+    private volatile double averageRoundTripLatency_ms = -1;
+
+    // last written register values, so that unchanged registers are not written again
+    private final CC111XRegisterShadow registerShadow = new CC111XRegisterShadow();
+
+    // command whose response didn't arrive in time, its response can still come until lateResponseDeadline
+    private boolean responseOutstanding = false;
+    private long lateResponseDeadline = 0L;
+
     public RFSpy(IRileyLinkBLE rileyLinkBle) {
+        this(rileyLinkBle, new RFSpyReader(rileyLinkBle));
+    }
+
+
+    RFSpy(IRileyLinkBLE rileyLinkBle, RFSpyReader reader) {
         this.rileyLinkBle = rileyLinkBle;
-        reader = new RFSpyReader(rileyLinkBle);
+        this.reader = reader;
     }
 @Override
 public RileyLinkFirmwareVersion getRLVersionCached() {
@@ -88,8 +113,15 @@ public String getBLEVersionCached() {
     public void initializeRileyLink() {
         //We have to call raw version of communication to get firmware version
         //So that we can adjust other commands accordingly afterwords
-        byte[] getVersionRaw = getByteArray(RileyLinkCommandType.GetVersion.code);
-        byte[] response = writeToDataRaw(getVersionRaw, 5000);
+        // we don't know what RileyLink has in its registers (it might have been restarted)
+        registerShadow.invalidateAll();
+
+        RadioPacketBuffer buffer = RadioPacketBuffer.obtain();
+        buffer.put(RileyLinkCommandType.GetVersion.code);
+        byte[] getVersionFrame = buffer.getFrame();
+        buffer.release();
+
+        byte[] response = writeToDataRaw(getVersionFrame, 5000);
         if (response != null) { // && response[0] == (byte) 0xDD) {
 
             //This throws an exception if version not supported, we should treat exceptions somehow
@@ -97,7 +129,8 @@ public String getBLEVersionCached() {
             RileyLinkFirmwareVersion version = RileyLinkFirmwareVersion.getByVersionString(StringUtil.fromBytes(response));
 
             this.firmwareVersion = version;
-
+            reader.setSettleDelays(RFSpySettleDelays.forFirmware(version));
+            LOG.debug("Firmware {}, using {}", version, reader.getSettleDelays());
         }
         bleVersion = getVersion();
     }
@@ -124,44 +157,124 @@ public String getBLEVersionCached() {
         }
     }
 
-    private byte[] writeToDataRaw(byte[] bytes, int responseTimeout_ms) {
-        SystemClock.sleep(100);
-        // FIXME drain read queue?
+    @Override
+    public long getLastRoundTripLatency_ms() {
+        return lastRoundTripLatency_ms;
+    }
+
+
+    @Override
+    public long getAverageRoundTripLatency_ms() {
+        return Math.round(averageRoundTripLatency_ms);
+    }
+
+
+    private void recordRoundTripLatency(long latency_ms) {
+        lastRoundTripLatency_ms = latency_ms;
+
+        if (averageRoundTripLatency_ms < 0) {
+            averageRoundTripLatency_ms = latency_ms;
+        } else {
+            averageRoundTripLatency_ms += LATENCY_SMOOTHING * (latency_ms - averageRoundTripLatency_ms);
+        }
+    }
+
+
+    // frame already has length prefix (see RadioPacketBuffer)
+    private byte[] writeToDataRaw(byte[] frame, int responseTimeout_ms) {
+        return writeToDataRaw(frame, responseTimeout_ms, responseTimeout_ms);
+    }
+
+
+    // if response doesn't arrive in responseTimeout_ms, it can still come until maxResponseTime_ms
+    private byte[] writeToDataRaw(byte[] frame, int responseTimeout_ms, int maxResponseTime_ms) {
+        int writeDelay_ms = reader.getSettleDelays().getWriteDelay_ms();
+        if (writeDelay_ms > 0) {
+            SystemClock.sleep(writeDelay_ms);
+        }
+
+        // RileyLink answers commands in order, so late response to previous command would arrive before response to
+        // this one and would be taken for it
+        if (responseOutstanding) {
+            responseOutstanding = false;
+            long lateWait_ms = lateResponseDeadline - now();
+
+            if (lateWait_ms > 0) {
+                byte[] lateResponse = reader.poll((int) lateWait_ms);
+
+                if (lateResponse != null) {
+                    LOG.warn("writeToData: dropping late response to previous command: {}", LazyHex.shortHex(lateResponse));
+                }
+            }
+        }
+
         byte[] junkInBuffer = reader.poll(0);
 
         while (junkInBuffer != null) {
-            LOG.warn(ThreadUtil.sig() + "writeToData: draining read queue, found this: " + ByteUtil.shortHexString(junkInBuffer));
+            LOG.warn("{}writeToData: draining read queue, found this: {}", ThreadUtil.sig(), LazyHex.shortHex(junkInBuffer));
             junkInBuffer = reader.poll(0);
         }
 
-        // prepend length, and send it.
-        byte[] prepended = ByteUtil.concat(new byte[]{(byte) (bytes.length)}, bytes);
+        LOG.debug("writeToData (raw={})", LazyHex.displayable(frame));
 
-        LOG.debug("writeToData (raw={})", HexDump.toHexStringDisplayable(prepended));
+        long start = now();
 
-        BLECommOperationResult writeCheck = rileyLinkBle.writeCharacteristic_blocking(radioServiceUUID, radioDataUUID, prepended);
+        BLECommOperationResult writeCheck = rileyLinkBle.writeCharacteristic_blocking(radioServiceUUID, radioDataUUID, frame);
         if (writeCheck.resultCode != BLECommOperationResult.RESULT_SUCCESS) {
             LOG.error("BLE Write operation failed, code=" + writeCheck.resultCode);
             return null; // will be a null (invalid) response
         }
-        SystemClock.sleep(100);
-        //Log.i(TAG,ThreadUtil.sig()+String.format(" writeToData:(timeout %d) %s",(responseTimeout_ms),ByteUtil.shortHexString(prepended)));
+        //Log.i(TAG,ThreadUtil.sig()+String.format(" writeToData:(timeout %d) %s",(responseTimeout_ms),ByteUtil.shortHexString(frame)));
         byte[] rawResponse = reader.poll(responseTimeout_ms);
+
+        if (rawResponse != null) {
+            recordRoundTripLatency(now() - start);
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("writeToData: round trip took {} ms (average {} ms)", lastRoundTripLatency_ms, getAverageRoundTripLatency_ms());
+        } else {
+            responseOutstanding = true;
+            lateResponseDeadline = start + maxResponseTime_ms;
+        }
+
         return rawResponse;
 
     }
 
-    // The caller has to know how long the RFSpy will be busy with what was sent to it.
-    private RFSpyResponse writeToData(RileyLinkCommand command, int responseTimeout_ms) {
 
-        byte[] bytes = command.getRaw();
-        String myString =  ByteUtil.shortHexString(bytes);
-        byte[] rawResponse = writeToDataRaw(bytes, responseTimeout_ms);
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    // The caller has to know how long the RFSpy will be busy with what was sent to it (radioTime_ms), time for BLE
+    // round trip is added by latency estimator.
+    private RFSpyResponse writeToData(RileyLinkCommand command, int radioTime_ms) {
+
+        // command (with encoded packet) is written in place into pooled buffer, only frame for BLE is allocated
+        RadioPacketBuffer buffer = RadioPacketBuffer.obtain();
+        byte[] frame;
+
+        try {
+            command.writeTo(buffer);
+            frame = buffer.getFrame();
+        } finally {
+            buffer.release();
+        }
+
+        RileyLinkCommandType commandType = command.getCommandType();
+        int responseTimeout_ms = radioTime_ms + latencyEstimator.getTimeout_ms(firmwareVersion, commandType);
+        byte[] rawResponse = writeToDataRaw(frame, responseTimeout_ms, radioTime_ms + EXPECTED_MAX_BLUETOOTH_LATENCY_MS);
 
         RFSpyResponse resp = new RFSpyResponse(command, rawResponse);
         if (rawResponse == null) {
-            LOG.error("writeToData: No response from RileyLink");
+            LOG.error("writeToData: No response from RileyLink (waited {} ms)", responseTimeout_ms);
+            latencyEstimator.responseMissing(firmwareVersion, commandType);
         } else {
+            // for radio commands we know how much of round trip was BLE only if RileyLink waited whole radio time
+            if (radioTime_ms == 0 || resp.wasTimeout()) {
+                latencyEstimator.addSample(firmwareVersion, commandType, lastRoundTripLatency_ms - radioTime_ms);
+            }
+
             if (resp.wasInterrupted()) {
                 LOG.error("writeToData: RileyLink was interrupted");
             } else if (resp.wasTimeout()) {
@@ -268,26 +381,66 @@ public String getBLEVersionCached() {
 
         );
 
-        return writeToData(command, sendDelay + receiveDelay + EXPECTED_MAX_BLUETOOTH_LATENCY_MS);
+        return writeToData(command, sendDelay + receiveDelay);
     }
 
 
     @Override
     public RFSpyResponse updateRegister(CC111XRegister reg, int val) {
-        RFSpyResponse resp = writeToData(new UpdateRegister(firmwareVersion, reg, (byte) val), EXPECTED_MAX_BLUETOOTH_LATENCY_MS);
+        if (!registerShadow.isChanged(reg, val)) {
+            registerShadow.countSkippedWrite();
+            if (LOG.isTraceEnabled())
+                LOG.trace("updateRegister: {} already has value {}, skipping write", reg, val);
+            return new RFSpyResponse(getByteArray((byte) 0xdd));
+        }
+
+        return writeRegister(reg, val);
+    }
+
+
+    private RFSpyResponse writeRegister(CC111XRegister reg, int val) {
+        RFSpyResponse resp = writeToData(new UpdateRegister(firmwareVersion, reg, (byte) val), 0);
+
+        if (resp.isOK()) {
+            registerShadow.setWritten(reg, val);
+        } else {
+            // we don't know what is in register now
+            registerShadow.invalidate(reg);
+        }
+
         return resp;
     }
 
 
+    /**
+     * Writes all staged registers that changed. RileyLink firmware updates one register per command, so batch saves
+     * only the writes of unchanged registers (freq2 doesn't change during scan, region settings are written once).
+     */
+    private void flushRegisters() {
+        Map<CC111XRegister, Integer> batch = registerShadow.takeStaged();
+
+        for (Map.Entry<CC111XRegister, Integer> entry : batch.entrySet()) {
+            RFSpyResponse resp = writeRegister(entry.getKey(), entry.getValue());
+
+            if (!resp.isOK()) {
+                LOG.error("Failed to update register {} ({})", entry.getKey(), resp);
+            }
+        }
+
+        LOG.debug("Register batch: {} register(s) written, {} write(s) skipped so far", batch.size(),
+                registerShadow.getSkippedWrites());
+    }
+
+
     @Override
     public void setBaseFrequency(double freqMHz) {
         int value = (int) (freqMHz * 1000000 / ((double) (RILEYLINK_FREQ_XTAL) / Math.pow(2.0, 16.0)));
-        updateRegister(CC111XRegister.freq0, (byte) (value & 0xff));
-        updateRegister(CC111XRegister.freq1, (byte) ((value >> 8) & 0xff));
-        updateRegister(CC111XRegister.freq2, (byte) ((value >> 16) & 0xff));
-        LOG.warn("Set frequency to {}", freqMHz);
+        registerShadow.stage(CC111XRegister.freq0, (byte) (value & 0xff));
+        registerShadow.stage(CC111XRegister.freq1, (byte) ((value >> 8) & 0xff));
+        registerShadow.stage(CC111XRegister.freq2, (byte) ((value >> 16) & 0xff));
 
         configureRadioForRegion(RileyLinkUtil.getRileyLinkTargetFrequency());
+        LOG.warn("Set frequency to {}", freqMHz);
     }
 
     @Override
@@ -299,8 +452,10 @@ public String getBLEVersionCached() {
     private void configureRadioForRegion(RileyLinkTargetFrequency frequency) {
 
         // we update registers only on first run, or if region changed
-        if (selectedTargetFrequency == frequency)
+        if (selectedTargetFrequency == frequency) {
+            flushRegisters();
             return;
+        }
 
         switch (frequency) {
             case Medtronic_WorldWide: {
@@ -308,9 +463,9 @@ public String getBLEVersionCached() {
                 setRXFilterMode(RXFilterMode.Wide);
                 //updateRegister(CC111X_MDMCFG3, (byte) 0x66);
                 //updateRegister(CC111X_MDMCFG2, (byte) 0x33);
-                updateRegister(CC111XRegister.mdmcfg1, 0x62);
-                updateRegister(CC111XRegister.mdmcfg0, 0x1A);
-                updateRegister(CC111XRegister.deviatn, 0x13);
+                registerShadow.stage(CC111XRegister.mdmcfg1, 0x62);
+                registerShadow.stage(CC111XRegister.mdmcfg0, 0x1A);
+                registerShadow.stage(CC111XRegister.deviatn, 0x13);
                 //RileyLinkUtil.setEncoding(RileyLinkEncodingType.FourByteSixByte);
             }
             break;
@@ -320,9 +475,9 @@ public String getBLEVersionCached() {
                 setRXFilterMode(RXFilterMode.Narrow);
                 //updateRegister(CC111X_MDMCFG3, (byte) 0x66);
                 //updateRegister(CC111X_MDMCFG2, (byte) 0x33);
-                updateRegister(CC111XRegister.mdmcfg1, 0x61);
-                updateRegister(CC111XRegister.mdmcfg0, 0x7E);
-                updateRegister(CC111XRegister.deviatn, 0x15);
+                registerShadow.stage(CC111XRegister.mdmcfg1, 0x61);
+                registerShadow.stage(CC111XRegister.mdmcfg0, 0x7E);
+                registerShadow.stage(CC111XRegister.deviatn, 0x15);
                 //RileyLinkUtil.setEncoding(RileyLinkEncodingType.FourByteSixByte);
 
             }
@@ -332,27 +487,29 @@ public String getBLEVersionCached() {
                 //RL initialization for Omnipod is a copy/paste from OmniKit implementation.
                 //Last commit from original repository: 5c3beb4144
                 //so if something is terribly wrong, please check git diff PodCommsSession.swift  since that commit
-                r = updateRegister(CC111XRegister.pktctrl1, 0x20);
-                r = updateRegister(CC111XRegister.agcctrl0, 0x00);
-                r = updateRegister(CC111XRegister.fsctrl1, 0x06);
-                r = updateRegister(CC111XRegister.mdmcfg4, 0xCA);
-                r = updateRegister(CC111XRegister.mdmcfg3, 0xBC);
-                r = updateRegister(CC111XRegister.mdmcfg2, 0x06);
-                r = updateRegister(CC111XRegister.mdmcfg1, 0x70);
-                r = updateRegister(CC111XRegister.mdmcfg0, 0x11);
-                r = updateRegister(CC111XRegister.deviatn, 0x44);
-                r = updateRegister(CC111XRegister.mcsm0, 0x18);
-                r = updateRegister(CC111XRegister.foccfg, 0x17);
-                r = updateRegister(CC111XRegister.fscal3, 0xE9);
-                r = updateRegister(CC111XRegister.fscal2, 0x2A);
-                r = updateRegister(CC111XRegister.fscal1, 0x00);
-                r = updateRegister(CC111XRegister.fscal0, 0x1F);
-
-                r = updateRegister(CC111XRegister.test1, 0x31);
-                r = updateRegister(CC111XRegister.test0, 0x09);
-                r = updateRegister(CC111XRegister.paTable0, 0x84);
-                r = updateRegister(CC111XRegister.sync1, 0xA5);
-                r = updateRegister(CC111XRegister.sync0, 0x5A);
+                registerShadow.stage(CC111XRegister.pktctrl1, 0x20);
+                registerShadow.stage(CC111XRegister.agcctrl0, 0x00);
+                registerShadow.stage(CC111XRegister.fsctrl1, 0x06);
+                registerShadow.stage(CC111XRegister.mdmcfg4, 0xCA);
+                registerShadow.stage(CC111XRegister.mdmcfg3, 0xBC);
+                registerShadow.stage(CC111XRegister.mdmcfg2, 0x06);
+                registerShadow.stage(CC111XRegister.mdmcfg1, 0x70);
+                registerShadow.stage(CC111XRegister.mdmcfg0, 0x11);
+                registerShadow.stage(CC111XRegister.deviatn, 0x44);
+                registerShadow.stage(CC111XRegister.mcsm0, 0x18);
+                registerShadow.stage(CC111XRegister.foccfg, 0x17);
+                registerShadow.stage(CC111XRegister.fscal3, 0xE9);
+                registerShadow.stage(CC111XRegister.fscal2, 0x2A);
+                registerShadow.stage(CC111XRegister.fscal1, 0x00);
+                registerShadow.stage(CC111XRegister.fscal0, 0x1F);
+
+                registerShadow.stage(CC111XRegister.test1, 0x31);
+                registerShadow.stage(CC111XRegister.test0, 0x09);
+                registerShadow.stage(CC111XRegister.paTable0, 0x84);
+                registerShadow.stage(CC111XRegister.sync1, 0xA5);
+                registerShadow.stage(CC111XRegister.sync0, 0x5A);
+
+                flushRegisters();
 
                 r = setSoftwareEncoding(RileyLinkEncodingType.Manchester);
                 RileyLinkUtil.setEncoding(RileyLinkEncodingType.Manchester);
@@ -366,13 +523,15 @@ public String getBLEVersionCached() {
 
         }
 
+        flushRegisters();
+
         this.selectedTargetFrequency = frequency;
     }
 
     private RFSpyResponse setPreamble(int preamble) {
         RFSpyResponse resp = null;
         try {
-            resp = writeToData(new SetPreamble(firmwareVersion, preamble), EXPECTED_MAX_BLUETOOTH_LATENCY_MS);
+            resp = writeToData(new SetPreamble(firmwareVersion, preamble), 0);
         } catch (Exception e) {
             e.toString();
         }
@@ -380,7 +539,7 @@ public String getBLEVersionCached() {
     }
 
     private RFSpyResponse setSoftwareEncoding(RileyLinkEncodingType encoding) {
-        RFSpyResponse resp = writeToData(new SetSoftwareEncoding(firmwareVersion, encoding), EXPECTED_MAX_BLUETOOTH_LATENCY_MS);
+        RFSpyResponse resp = writeToData(new SetSoftwareEncoding(firmwareVersion, encoding), 0);
         return resp;
     }
 
@@ -390,7 +549,7 @@ public String getBLEVersionCached() {
         byte drate_e = (byte) 0x9;  // exponent of symbol rate (16kbps)
         byte chanbw = mode.value;
 
-        updateRegister(CC111XRegister.mdmcfg4, (byte) (chanbw | drate_e));
+        registerShadow.stage(CC111XRegister.mdmcfg4, (byte) (chanbw | drate_e));
     }
 
 
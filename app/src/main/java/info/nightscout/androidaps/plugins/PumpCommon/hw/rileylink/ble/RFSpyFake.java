@@ -233,4 +233,14 @@ public class RFSpyFake implements IRFSpy {
         this.testingFunction = functionName;
 
     }
+
+    @Override
+    public long getLastRoundTripLatency_ms() {
+        return 0;
+    }
+
+    @Override
+    public long getAverageRoundTripLatency_ms() {
+        return 0;
+    }
 }
@@ -13,6 +13,7 @@ import java.util.concurrent.TimeUnit;
 
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkUtil;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.GattAttributes;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.RFSpySettleDelays;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkEncodingType;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.command.SetSoftwareEncoding;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operations.BLECommOperationResult;
@@ -33,6 +34,7 @@ public class RFSpyReader {
     private LinkedBlockingQueue<byte[]> mDataQueue = new LinkedBlockingQueue<>();
     private int acquireCount = 0;
     private int releaseCount = 0;
+    private volatile RFSpySettleDelays settleDelays = RFSpySettleDelays.forFirmware(null);
 
 
     public RFSpyReader(/*Context context,*/ IRileyLinkBLE rileyLinkBle) {
@@ -55,23 +57,31 @@ public class RFSpyReader {
     }
 
 
+    public void setSettleDelays(RFSpySettleDelays settleDelays) {
+        this.settleDelays = settleDelays;
+    }
+
+
+    public RFSpySettleDelays getSettleDelays() {
+        return settleDelays;
+    }
+
+
     // This timeout must be coordinated with the length of the RFSpy radio operation or Bad Things Happen.
     public byte[] poll(int timeout_ms) {
-        LOG.trace(ThreadUtil.sig() + "Entering poll at t==" + SystemClock.uptimeMillis() + ", timeout is " + timeout_ms + " mDataQueue size is " + mDataQueue.size());
-        if (mDataQueue.isEmpty())
-            try {
-                // block until timeout or data available.
-                // returns null if timeout.
-                byte[] dataFromQueue = mDataQueue.poll(timeout_ms, TimeUnit.MILLISECONDS);
-                if (dataFromQueue != null) {
-                    LOG.debug("Got data [" + ByteUtil.shortHexString(dataFromQueue) + "] at t==" + SystemClock.uptimeMillis());
-                } else {
-                    LOG.debug("Got data [null] at t==" + SystemClock.uptimeMillis());
-                }
-                return dataFromQueue;
-            } catch (InterruptedException e) {
-                LOG.error("poll: Interrupted waiting for data");
+        if (LOG.isTraceEnabled())
+            LOG.trace(ThreadUtil.sig() + "Entering poll at t==" + SystemClock.uptimeMillis() + ", timeout is " + timeout_ms + " mDataQueue size is " + mDataQueue.size());
+        try {
+            // block until timeout or data available (data already in queue is returned at once).
+            // returns null if timeout.
+            byte[] dataFromQueue = mDataQueue.poll(timeout_ms, TimeUnit.MILLISECONDS);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Got data [" + (dataFromQueue == null ? "null" : ByteUtil.shortHexString(dataFromQueue)) + "] at t==" + SystemClock.uptimeMillis());
             }
+            return dataFromQueue;
+        } catch (InterruptedException e) {
+            LOG.error("poll: Interrupted waiting for data");
+        }
         return null;
     }
 
@@ -80,7 +90,8 @@ public class RFSpyReader {
     public void newDataIsAvailable() {
         releaseCount++;
 
-        LOG.trace(ThreadUtil.sig() + "waitForRadioData released(count=" + releaseCount + ") at t=" + SystemClock.uptimeMillis());
+        if (LOG.isTraceEnabled())
+            LOG.trace(ThreadUtil.sig() + "waitForRadioData released(count=" + releaseCount + ") at t=" + SystemClock.uptimeMillis());
         waitForRadioData.release();
     }
 
@@ -89,48 +100,68 @@ public class RFSpyReader {
         readerTask = new AsyncTask<Void, Void, Void>() {
             @Override
             protected Void doInBackground(Void... voids) {
-                UUID serviceUUID = UUID.fromString(GattAttributes.SERVICE_RADIO);
-                UUID radioDataUUID = UUID.fromString(GattAttributes.CHARA_RADIO_DATA);
-                BLECommOperationResult result;
-                boolean stopAtNull = true;
-                if (RileyLinkUtil.getEncoding() == RileyLinkEncodingType.Manchester)
-                    stopAtNull = false;
-                while (true) {
-                    try {
-                        acquireCount++;
-                        waitForRadioData.acquire();
-                        LOG.trace(ThreadUtil.sig() + "waitForRadioData acquired (count=" + acquireCount + ") at t=" + SystemClock.uptimeMillis());
-                        SystemClock.sleep(100);
-                        SystemClock.sleep(1);
-                        result = rileyLinkBle.readCharacteristic_blocking(serviceUUID, radioDataUUID);
-                        SystemClock.sleep(100);
-
-                        if (result.resultCode == BLECommOperationResult.RESULT_SUCCESS) {
-                            if (stopAtNull) {
-                                // only data up to the first null is valid
-                                for (int i = 0; i < result.value.length; i++) {
-                                    if (result.value[i] == 0) {
-                                        result.value = ByteUtil.substring(result.value, 0, i);
-                                        break;
-                                    }
-                                }
+                readLoop();
+                return null;
+            }
+        }.execute();
+    }
+
+
+    // Reads radio data each time RileyLink notifies that response is available, runs until thread is stopped.
+    void readLoop() {
+        UUID serviceUUID = UUID.fromString(GattAttributes.SERVICE_RADIO);
+        UUID radioDataUUID = UUID.fromString(GattAttributes.CHARA_RADIO_DATA);
+        BLECommOperationResult result;
+        boolean stopAtNull = true;
+        if (RileyLinkUtil.getEncoding() == RileyLinkEncodingType.Manchester)
+            stopAtNull = false;
+        while (true) {
+            try {
+                acquireCount++;
+                waitForRadioData.acquire();
+                if (LOG.isTraceEnabled())
+                    LOG.trace(ThreadUtil.sig() + "waitForRadioData acquired (count=" + acquireCount + ") at t=" + SystemClock.uptimeMillis());
+
+                // we read as soon as notification arrives, older firmware needs some time to settle
+                RFSpySettleDelays delays = settleDelays;
+                if (delays.getReadDelay_ms() > 0) {
+                    SystemClock.sleep(delays.getReadDelay_ms());
+                }
+
+                result = rileyLinkBle.readCharacteristic_blocking(serviceUUID, radioDataUUID);
+
+                if (result.resultCode == BLECommOperationResult.RESULT_SUCCESS) {
+                    if (stopAtNull) {
+                        // only data up to the first null is valid
+                        for (int i = 0; i < result.value.length; i++) {
+                            if (result.value[i] == 0) {
+                                result.value = ByteUtil.substring(result.value, 0, i);
+                                break;
                             }
-                            mDataQueue.add(result.value);
-                        } else if (result.resultCode == BLECommOperationResult.RESULT_INTERRUPTED) {
-                            LOG.error("Read operation was interrupted");
-                        } else if (result.resultCode == BLECommOperationResult.RESULT_TIMEOUT) {
-                            LOG.error("Read operation on Radio Data timed out");
-                        } else if (result.resultCode == BLECommOperationResult.RESULT_BUSY) {
-                            LOG.error("FAIL: RileyLinkBLE reports operation already in progress");
-                        } else if (result.resultCode == BLECommOperationResult.RESULT_NONE) {
-                            LOG.error("FAIL: got invalid result code: " + result.resultCode);
                         }
-                    } catch (InterruptedException e) {
-                        LOG.error("Interrupted while waiting for data");
                     }
+
+                    if (result.value.length == 0) {
+                        delays.readFailed();
+                    } else {
+                        delays.readSucceeded();
+                    }
+
+                    mDataQueue.add(result.value);
+                } else if (result.resultCode == BLECommOperationResult.RESULT_INTERRUPTED) {
+                    LOG.error("Read operation was interrupted");
+                } else if (result.resultCode == BLECommOperationResult.RESULT_TIMEOUT) {
+                    delays.readFailed();
+                    LOG.error("Read operation on Radio Data timed out");
+                } else if (result.resultCode == BLECommOperationResult.RESULT_BUSY) {
+                    LOG.error("FAIL: RileyLinkBLE reports operation already in progress");
+                } else if (result.resultCode == BLECommOperationResult.RESULT_NONE) {
+                    LOG.error("FAIL: got invalid result code: " + result.resultCode);
                 }
+            } catch (InterruptedException e) {
+                LOG.error("Interrupted while waiting for data");
             }
-        }.execute();
+        }
     }
 
 }
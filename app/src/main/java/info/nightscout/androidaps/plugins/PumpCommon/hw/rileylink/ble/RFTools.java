@@ -52,7 +52,8 @@ public class RFTools {
         byte[] rval = new byte[input.length + 1];
         System.arraycopy(input, 0, rval, 0, input.length);
         byte mycrc = CRC.crc8(input);
-        LOG.debug(String.format("Adding checksum 0x%02X to %d byte array from 0x%02X to 0x%02X", mycrc, input.length, input[0], input[input.length - 1]));
+        if (LOG.isDebugEnabled())
+            LOG.debug(String.format("Adding checksum 0x%02X to %d byte array from 0x%02X to 0x%02X", mycrc, input.length, input[0], input[input.length - 1]));
         rval[input.length] = mycrc;
         return rval;
     }
@@ -113,66 +114,18 @@ public class RFTools {
     public static final byte[] codes = new byte[]{21, 49, 50, 35, 52, 37, 38, 22, 26, 25, 42, 11, 44, 13, 14, 28};
 
 
-    /* O(n) lookup.  Run on an O(n) translation of a byte-stream, gives O(n**2) performance. Sigh. */
     public static int codeIndex(byte b) {
-        for(int i = 0; i < codes.length; i++) {
-            if (b == codes[i]) {
-                return i;
-            }
+        if ((b & 0xc0) != 0) {
+            return -1;
         }
-        return -1;
+        return FourByteSixByteCodec.decodeSymbol(b);
     }
 
 
     public static byte[] encode4b6b(byte[] data) {
-        if ((data.length % 2) != 0) {
-            // LOG.error("Warning: data is odd number of bytes");
-        }
-        // use arraylists because byte[] is annoying.
-        ArrayList<Byte> inData = fromBytes(data);
-        ArrayList<Byte> outData = new ArrayList<>();
-
-        int acc = 0;
-        int bitcount = 0;
-        int i;
-        for(i = 0; i < inData.size(); i++) {
-            acc <<= 6;
-            acc |= codes[(inData.get(i) >> 4) & 0x0f];
-            bitcount += 6;
-
-            acc <<= 6;
-            acc |= codes[inData.get(i) & 0x0f];
-            bitcount += 6;
-
-            while (bitcount >= 8) {
-                byte outByte = (byte) (acc >> (bitcount - 8) & 0xff);
-                outData.add(outByte);
-                bitcount -= 8;
-                acc &= (0xffff >> (16 - bitcount));
-            }
-        }
-        if (bitcount > 0) {
-            acc <<= 6;
-            acc |= 0x14; // marks uneven packet boundary.
-            bitcount += 6;
-            if (bitcount >= 8) {
-                byte outByte = (byte) ((acc >> (bitcount - 8)) & 0xff);
-                outData.add(outByte);
-                bitcount -= 8;
-                // acc &= (0xffff >> (16 - bitcount));
-            }
-            while (bitcount >= 8) {
-                outData.add((byte) 0);
-                bitcount -= 8;
-            }
-        }
-
-
-        // convert back to byte[]
-        byte[] rval = toBytes(outData);
-
+        byte[] rval = new byte[FourByteSixByteCodec.encodedLength(data.length)];
+        FourByteSixByteCodec.encode(data, 0, data.length, rval, 0);
         return rval;
-
     }
 
 
@@ -219,63 +172,10 @@ public class RFTools {
 
 
     public static byte[] decode4b6b(byte[] raw) throws NumberFormatException {
-        /*
-        if ((raw.length % 2) != 0) {
-            LOG.error("Warning: data is odd number of bytes");
-        }
-        */
-        byte[] rval = new byte[]{};
-        int availableBits = 0;
-        int codingErrors = 0;
-        int x = 0;
-        //Log.w(TAG,"decode4b6b: untested code");
-        //Log.w(TAG,String.format("Decoding %d bytes: %s",raw.length,ByteUtil.shortHexString(raw)));
-        for(int i = 0; i < raw.length; i++) {
-            int unsignedValue = raw[i];
-            if (unsignedValue < 0) {
-                unsignedValue += 256;
-            }
-            x = (x << 8) + unsignedValue;
-            availableBits += 8;
-            if (availableBits >= 12) {
-                // take top six
-                int highcode = (x >> (availableBits - 6)) & 0x3F;
-                int highIndex = codeIndex((byte) (highcode));
-                // take bottom six
-                int lowcode = (x >> (availableBits - 12)) & 0x3F;
-                int lowIndex = codeIndex((byte) (lowcode));
-                // special case at end of transmission on uneven boundaries:
-                if ((highIndex >= 0) && (lowIndex >= 0)) {
-                    byte decoded = (byte) ((highIndex << 4) + lowIndex);
-                    rval = ByteUtil.concat(rval, decoded);
-                    /*
-                    LOG.debug(String.format("i=%d,x=0x%08X,0x%02X->0x%02X, 0x%02X->0x%02X, result: 0x%02X, %d bits remaining, errors %d, bytes remaining: %s",
-                            i,x,highcode,highIndex, lowcode, lowIndex,decoded,availableBits,codingErrors,ByteUtil.shortHexString(ByteUtil.substring(raw,i+1,raw.length-i-1))));
-                    */
-                } else {
-                    //LOG.debug(String.format("i=%d,x=%08X, coding error: highcode=0x%02X, lowcode=0x%02X, %d bits remaining",i,x,highcode,lowcode,availableBits));
-                    codingErrors++;
-                }
-
-                availableBits -= 12;
-                x = x & (0x0000ffff >> (16 - availableBits));
-            } else {
-                //LOG.debug(String.format("i=%d, skip: x=0x%08X, available bits %d",i,x,availableBits));
-            }
-        }
-        if (availableBits != 0) {
-            if ((availableBits == 4) && (x == 0x05)) {
-                // normal end
-            } else {
-                LOG.error("decode4b6b: failed clean decode -- extra bits available (not marker)(" + availableBits + ")");
-                codingErrors++;
-            }
-        } else {
-            // also normal end.
-        }
-        if (codingErrors > 0) {
-            LOG.error("decode4b6b: " + codingErrors + " coding errors encountered.");
-            throw new NumberFormatException();
+        byte[] rval = new byte[FourByteSixByteCodec.decodedLength(raw.length)];
+        int length = FourByteSixByteCodec.decode(raw, 0, raw.length, rval, 0);
+        if (length != rval.length) {
+            rval = ByteUtil.substring(rval, 0, length);
         }
         return rval;
     }
@@ -9,7 +9,6 @@ import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothProfile;
 import android.content.Context;
-import android.os.SystemClock;
 import android.widget.Toast;
 
 import com.gxwtech.roundtrip2.RT2Const;
@@ -20,12 +19,12 @@ import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.Semaphore;
 
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkConst;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkUtil;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.GattAttributes;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operations.BLECommOperation;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operations.BLECommOperationFuture;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operations.BLECommOperationResult;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operations.CharacteristicReadOperation;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operations.CharacteristicWriteOperation;
@@ -42,7 +41,7 @@ import info.nightscout.androidaps.plugins.PumpCommon.utils.ThreadUtil;
  */
 public class RileyLinkBLE implements IRileyLinkBLE {
 
-    private static final Logger LOG = LoggerFactory.getLogger(RFTools.class);
+    private static final Logger LOG = LoggerFactory.getLogger(RileyLinkBLE.class);
 
     public boolean gattDebugEnabled = true;
 
@@ -54,8 +53,7 @@ public class RileyLinkBLE implements IRileyLinkBLE {
     private BluetoothDevice rileyLinkDevice;
     private BluetoothGatt bluetoothConnectionGatt = null;
 
-    private BLECommOperation mCurrentOperation;
-    private Semaphore gattOperationSema = new Semaphore(1, true);
+    private final GattOperationQueue operationQueue = new GattOperationQueue();
 
     private Runnable radioResponseCountNotified;
 
@@ -93,7 +91,7 @@ public class RileyLinkBLE implements IRileyLinkBLE {
                 if (gattDebugEnabled) {
                     LOG.trace(ThreadUtil.sig() + "onCharacteristicRead (" + GattAttributes.lookup(characteristic.getUuid()) + ") " + statusMessage + ":" + HexDump.toHexString(characteristic.getValue()));
                 }
-                mCurrentOperation.gattOperationCompletionCallback(characteristic.getUuid(), characteristic.getValue());
+                operationQueue.onGattOperationCompleted(characteristic.getUuid(), characteristic.getValue());
             }
 
 
@@ -105,7 +103,7 @@ public class RileyLinkBLE implements IRileyLinkBLE {
                 if (gattDebugEnabled) {
                     LOG.trace(ThreadUtil.sig() + "onCharacteristicWrite " + getGattStatusMessage(status) + " " + uuidString + " " + HexDump.toHexString(characteristic.getValue()));
                 }
-                mCurrentOperation.gattOperationCompletionCallback(characteristic.getUuid(), characteristic.getValue());
+                operationQueue.onGattOperationCompleted(characteristic.getUuid(), characteristic.getValue());
             }
 
 
@@ -148,6 +146,8 @@ public class RileyLinkBLE implements IRileyLinkBLE {
                         (newState == BluetoothProfile.STATE_DISCONNECTING)) {
                     //LOG.debug("We are in {} state.", status == BluetoothProfile.STATE_CONNECTING ? "Connecting" : "Disconnecting");
                 } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
+                    // callbacks for running operations won't arrive anymore
+                    operationQueue.cancelAll(BLECommOperationResult.RESULT_NOT_CONFIGURED);
                     RileyLinkUtil.sendBroadcastMessage(RileyLinkConst.Intents.RileyLinkDisconnected);
                     if (manualDisconnect)
                         close();
@@ -164,14 +164,14 @@ public class RileyLinkBLE implements IRileyLinkBLE {
                 if (gattDebugEnabled) {
                     LOG.warn("onDescriptorWrite " + GattAttributes.lookup(descriptor.getUuid()) + " " + getGattStatusMessage(status) + " written: " + HexDump.toHexString(descriptor.getValue()));
                 }
-                mCurrentOperation.gattOperationCompletionCallback(descriptor.getUuid(), descriptor.getValue());
+                operationQueue.onGattOperationCompleted(descriptor.getUuid(), descriptor.getValue());
             }
 
 
             @Override
             public void onDescriptorRead(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
                 super.onDescriptorRead(gatt, descriptor, status);
-                mCurrentOperation.gattOperationCompletionCallback(descriptor.getUuid(), descriptor.getValue());
+                operationQueue.onGattOperationCompleted(descriptor.getUuid(), descriptor.getValue());
                 if (gattDebugEnabled) {
                     LOG.warn("onDescriptorRead " + getGattStatusMessage(status) + " status " + descriptor);
                 }
@@ -399,6 +399,7 @@ public class RileyLinkBLE implements IRileyLinkBLE {
 
     @Override
     public void close() {
+        operationQueue.cancelAll(BLECommOperationResult.RESULT_NOT_CONFIGURED);
         if (bluetoothConnectionGatt != null) {
             bluetoothConnectionGatt.close();
             bluetoothConnectionGatt = null;
@@ -408,138 +409,103 @@ public class RileyLinkBLE implements IRileyLinkBLE {
 
     @Override
     public BLECommOperationResult setNotification_blocking(UUID serviceUUID, UUID charaUUID) {
-        BLECommOperationResult rval = new BLECommOperationResult();
-        if (bluetoothConnectionGatt != null) {
-
-            try {
-                gattOperationSema.acquire();
-                SystemClock.sleep(1); // attempting to yield thread, to make sequence of events easier to follow
-            } catch (InterruptedException e) {
-                LOG.error("setNotification_blocking: interrupted waiting for gattOperationSema");
-                return rval;
-            }
-            if (mCurrentOperation != null) {
-                rval.resultCode = BLECommOperationResult.RESULT_BUSY;
-            } else {
-                if (bluetoothConnectionGatt.getService(serviceUUID) == null) {
-                    // Catch if the service is not supported by the BLE device
-                    rval.resultCode = BLECommOperationResult.RESULT_NONE;
-                    LOG.error("BT Device not supported");
-                    // TODO: 11/07/2016 UI update for user
-                } else {
-                    BluetoothGattCharacteristic chara = bluetoothConnectionGatt.getService(serviceUUID).getCharacteristic(charaUUID);
-                    // Tell Android that we want the notifications
-                    bluetoothConnectionGatt.setCharacteristicNotification(chara, true);
-                    List<BluetoothGattDescriptor> list = chara.getDescriptors();
-                    if (gattDebugEnabled) {
-                        for(int i = 0; i < list.size(); i++) {
-                            LOG.debug("Found descriptor: " + list.get(i).toString());
-                        }
-                    }
-                    BluetoothGattDescriptor descr = list.get(0);
-                    // Tell the remote device to send the notifications
-                    mCurrentOperation = new DescriptorWriteOperation(bluetoothConnectionGatt, descr, BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
-                    mCurrentOperation.execute(this);
-                    if (mCurrentOperation.timedOut) {
-                        rval.resultCode = BLECommOperationResult.RESULT_TIMEOUT;
-                    } else if (mCurrentOperation.interrupted) {
-                        rval.resultCode = BLECommOperationResult.RESULT_INTERRUPTED;
-                    } else {
-                        rval.resultCode = BLECommOperationResult.RESULT_SUCCESS;
-                    }
-                }
-                mCurrentOperation = null;
-                gattOperationSema.release();
-            }
-        } else {
-            LOG.error("setNotification_blocking: not configured!");
-            rval.resultCode = BLECommOperationResult.RESULT_NOT_CONFIGURED;
-        }
-        return rval;
+        return setNotification(serviceUUID, charaUUID).getResult();
     }
 
 
     // call from main
     @Override
     public BLECommOperationResult writeCharacteristic_blocking(UUID serviceUUID, UUID charaUUID, byte[] value) {
-        BLECommOperationResult rval = new BLECommOperationResult();
-        if (bluetoothConnectionGatt != null) {
-            rval.value = value;
-            try {
-                gattOperationSema.acquire();
-                SystemClock.sleep(1); // attempting to yield thread, to make sequence of events easier to follow
-            } catch (InterruptedException e) {
-                LOG.error("writeCharacteristic_blocking: interrupted waiting for gattOperationSema");
-                return rval;
-            }
+        return writeCharacteristic(serviceUUID, charaUUID, value, BLECommOperation.DEFAULT_GATT_OPERATION_TIMEOUT_MS)
+                .getResult();
+    }
 
-            if (mCurrentOperation != null) {
-                rval.resultCode = BLECommOperationResult.RESULT_BUSY;
-            } else {
-                if (bluetoothConnectionGatt.getService(serviceUUID) == null) {
-                    // Catch if the service is not supported by the BLE device
-                    // GGW: Tue Jul 12 01:14:01 UTC 2016:  This can also happen if the
-                    // app that created the bluetoothConnectionGatt has been destroyed/created,
-                    // e.g. when the user switches from portrait to landscape.
-                    rval.resultCode = BLECommOperationResult.RESULT_NONE;
-                    LOG.error("BT Device not supported");
-                    // TODO: 11/07/2016 UI update for user
-                } else {
-                    BluetoothGattCharacteristic chara = bluetoothConnectionGatt.getService(serviceUUID).getCharacteristic(charaUUID);
-                    mCurrentOperation = new CharacteristicWriteOperation(bluetoothConnectionGatt, chara, value);
-                    mCurrentOperation.execute(this);
-                    if (mCurrentOperation.timedOut) {
-                        rval.resultCode = BLECommOperationResult.RESULT_TIMEOUT;
-                    } else if (mCurrentOperation.interrupted) {
-                        rval.resultCode = BLECommOperationResult.RESULT_INTERRUPTED;
-                    } else {
-                        rval.resultCode = BLECommOperationResult.RESULT_SUCCESS;
-                    }
-                }
-                mCurrentOperation = null;
-                gattOperationSema.release();
+
+    @Override
+    public BLECommOperationResult readCharacteristic_blocking(UUID serviceUUID, UUID charaUUID) {
+        return readCharacteristic(serviceUUID, charaUUID, BLECommOperation.DEFAULT_GATT_OPERATION_TIMEOUT_MS)
+                .getResult();
+    }
+
+
+    @Override
+    public BLECommOperationFuture setNotification(UUID serviceUUID, UUID charaUUID) {
+        if (bluetoothConnectionGatt == null) {
+            LOG.error("setNotification: not configured!");
+            return BLECommOperationFuture.completed(BLECommOperationResult.RESULT_NOT_CONFIGURED, null);
+        }
+
+        BluetoothGattCharacteristic chara = getCharacteristic(serviceUUID, charaUUID);
+
+        if (chara == null) {
+            return BLECommOperationFuture.completed(BLECommOperationResult.RESULT_NONE, null);
+        }
+
+        // Tell Android that we want the notifications
+        bluetoothConnectionGatt.setCharacteristicNotification(chara, true);
+        List<BluetoothGattDescriptor> list = chara.getDescriptors();
+        if (gattDebugEnabled) {
+            for(int i = 0; i < list.size(); i++) {
+                LOG.debug("Found descriptor: " + list.get(i).toString());
             }
-        } else {
-            LOG.error("writeCharacteristic_blocking: not configured!");
-            rval.resultCode = BLECommOperationResult.RESULT_NOT_CONFIGURED;
         }
-        return rval;
+        BluetoothGattDescriptor descr = list.get(0);
+        // Tell the remote device to send the notifications
+        return operationQueue.submit(new DescriptorWriteOperation(bluetoothConnectionGatt, descr,
+                BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE));
     }
 
 
     @Override
-    public BLECommOperationResult readCharacteristic_blocking(UUID serviceUUID, UUID charaUUID) {
-        BLECommOperationResult rval = new BLECommOperationResult();
-        if (bluetoothConnectionGatt != null) {
-            try {
-                gattOperationSema.acquire();
-                SystemClock.sleep(1); // attempting to yield thread, to make sequence of events easier to follow
-            } catch (InterruptedException e) {
-                LOG.error("readCharacteristic_blocking: Interrupted waiting for gattOperationSema");
-                return rval;
-            }
-            if (mCurrentOperation != null) {
-                rval.resultCode = BLECommOperationResult.RESULT_BUSY;
-            } else {
-                BluetoothGattCharacteristic chara = bluetoothConnectionGatt.getService(serviceUUID).getCharacteristic(charaUUID);
-                mCurrentOperation = new CharacteristicReadOperation(bluetoothConnectionGatt, chara);
-                mCurrentOperation.execute(this);
-                if (mCurrentOperation.timedOut) {
-                    rval.resultCode = BLECommOperationResult.RESULT_TIMEOUT;
-                } else if (mCurrentOperation.interrupted) {
-                    rval.resultCode = BLECommOperationResult.RESULT_INTERRUPTED;
-                } else {
-                    rval.resultCode = BLECommOperationResult.RESULT_SUCCESS;
-                    rval.value = mCurrentOperation.getValue();
-                }
-            }
-            mCurrentOperation = null;
-            gattOperationSema.release();
-        } else {
-            LOG.error("readCharacteristic_blocking: not configured!");
-            rval.resultCode = BLECommOperationResult.RESULT_NOT_CONFIGURED;
+    public BLECommOperationFuture writeCharacteristic(UUID serviceUUID, UUID charaUUID, byte[] value, int timeout_ms) {
+        if (bluetoothConnectionGatt == null) {
+            LOG.error("writeCharacteristic: not configured!");
+            return BLECommOperationFuture.completed(BLECommOperationResult.RESULT_NOT_CONFIGURED, value);
+        }
+
+        BluetoothGattCharacteristic chara = getCharacteristic(serviceUUID, charaUUID);
+
+        if (chara == null) {
+            return BLECommOperationFuture.completed(BLECommOperationResult.RESULT_NONE, value);
         }
-        return rval;
+
+        return operationQueue.submit(new CharacteristicWriteOperation(bluetoothConnectionGatt, chara, value)
+                .setGattOperationTimeout_ms(timeout_ms));
+    }
+
+
+    @Override
+    public BLECommOperationFuture readCharacteristic(UUID serviceUUID, UUID charaUUID, int timeout_ms) {
+        if (bluetoothConnectionGatt == null) {
+            LOG.error("readCharacteristic: not configured!");
+            return BLECommOperationFuture.completed(BLECommOperationResult.RESULT_NOT_CONFIGURED, null);
+        }
+
+        BluetoothGattCharacteristic chara = getCharacteristic(serviceUUID, charaUUID);
+
+        if (chara == null) {
+            return BLECommOperationFuture.completed(BLECommOperationResult.RESULT_NONE, null);
+        }
+
+        return operationQueue.submit(new CharacteristicReadOperation(bluetoothConnectionGatt, chara)
+                .setGattOperationTimeout_ms(timeout_ms));
+    }
+
+
+    private BluetoothGattCharacteristic getCharacteristic(UUID serviceUUID, UUID charaUUID) {
+        BluetoothGattService service = bluetoothConnectionGatt.getService(serviceUUID);
+
+        if (service == null) {
+            // Catch if the service is not supported by the BLE device
+            // GGW: Tue Jul 12 01:14:01 UTC 2016:  This can also happen if the
+            // app that created the bluetoothConnectionGatt has been destroyed/created,
+            // e.g. when the user switches from portrait to landscape.
+            LOG.error("BT Device not supported");
+            // TODO: 11/07/2016 UI update for user
+            return null;
+        }
+
+        return service.getCharacteristic(charaUUID);
     }
 
 
@@ -8,6 +8,7 @@ import java.util.UUID;
 
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkConst;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkUtil;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operations.BLECommOperationFuture;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operations.BLECommOperationResult;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.data.ServiceNotification;
 
@@ -78,4 +79,19 @@ public class RileyLinkBLEFake implements IRileyLinkBLE {
     public BLECommOperationResult readCharacteristic_blocking(UUID serviceUUID, UUID charaUUID) {
         return new BLECommOperationResult();
     }
+
+    @Override
+    public BLECommOperationFuture setNotification(UUID serviceUUID, UUID charaUUID) {
+        return BLECommOperationFuture.completed(BLECommOperationResult.RESULT_NONE, null);
+    }
+
+    @Override
+    public BLECommOperationFuture writeCharacteristic(UUID serviceUUID, UUID charaUUID, byte[] value, int timeout_ms) {
+        return BLECommOperationFuture.completed(BLECommOperationResult.RESULT_NONE, null);
+    }
+
+    @Override
+    public BLECommOperationFuture readCharacteristic(UUID serviceUUID, UUID charaUUID, int timeout_ms) {
+        return BLECommOperationFuture.completed(BLECommOperationResult.RESULT_NONE, null);
+    }
 }
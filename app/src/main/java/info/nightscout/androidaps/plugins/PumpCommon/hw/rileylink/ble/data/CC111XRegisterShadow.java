@@ -0,0 +1,76 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.CC111XRegister;
+
+/**
+ * Last values written to CC111X registers (only writes that RileyLink confirmed), so that RFSpy can skip writes which
+ * wouldn't change anything. Changes can also be staged and then taken as one batch (in register order). Shadow must be
+ * invalidated when state of radio is not known anymore (new connection, failed write).
+ */
+public class CC111XRegisterShadow {
+
+    private final Map<CC111XRegister, Integer> written = new EnumMap<>(CC111XRegister.class);
+    private final Map<CC111XRegister, Integer> staged = new EnumMap<>(CC111XRegister.class);
+
+    private int skippedWrites = 0;
+
+
+    public synchronized boolean isChanged(CC111XRegister register, int value) {
+        Integer current = written.get(register);
+        return current == null || current != (value & 0xff);
+    }
+
+
+    public synchronized void setWritten(CC111XRegister register, int value) {
+        written.put(register, value & 0xff);
+    }
+
+
+    public synchronized void invalidate(CC111XRegister register) {
+        written.remove(register);
+    }
+
+
+    public synchronized void invalidateAll() {
+        written.clear();
+        staged.clear();
+    }
+
+
+    /**
+     * Stages value for next batch (if it differs from written value). Staging same register again replaces value.
+     */
+    public synchronized void stage(CC111XRegister register, int value) {
+        if (isChanged(register, value)) {
+            staged.put(register, value & 0xff);
+        } else {
+            staged.remove(register);
+            skippedWrites++;
+        }
+    }
+
+
+    /**
+     * @return staged registers that need to be written (in register order), staging is cleared
+     */
+    public synchronized Map<CC111XRegister, Integer> takeStaged() {
+        Map<CC111XRegister, Integer> batch = new EnumMap<>(CC111XRegister.class);
+        batch.putAll(staged);
+        staged.clear();
+        return batch;
+    }
+
+
+    public synchronized void countSkippedWrite() {
+        skippedWrites++;
+    }
+
+
+    public synchronized int getSkippedWrites() {
+        return skippedWrites;
+    }
+
+}
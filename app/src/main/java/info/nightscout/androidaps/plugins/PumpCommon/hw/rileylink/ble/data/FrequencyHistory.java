@@ -0,0 +1,147 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Frequencies on which device was heard (with smoothed RSSI), so that next tune-up can start with best candidates.
+ * History is kept per device and stored (in SP) as simple string: "frequency:rssi:count;...".
+ */
+public class FrequencyHistory {
+
+    public static final int MAX_ENTRIES = 8;
+    private static final double RSSI_SMOOTHING = 0.5d;
+
+    private final List<Entry> entries = new ArrayList<>();
+
+
+    public static FrequencyHistory fromString(String value) {
+        FrequencyHistory history = new FrequencyHistory();
+
+        if (value == null || value.isEmpty()) {
+            return history;
+        }
+
+        for (String part : value.split(";")) {
+            String[] fields = part.split(":");
+
+            if (fields.length != 3) {
+                continue;
+            }
+
+            try {
+                Entry entry = new Entry(Double.parseDouble(fields[0]), Double.parseDouble(fields[1]));
+                entry.count = Integer.parseInt(fields[2]);
+                history.entries.add(entry);
+            } catch (NumberFormatException ex) {
+                // ignore broken entry
+            }
+        }
+
+        history.sort();
+        return history;
+    }
+
+
+    /**
+     * Adds result of trial. Frequencies where device was not heard are removed from history.
+     */
+    public void addTrial(FrequencyTrial trial) {
+        Entry entry = findEntry(trial.frequencyMHz);
+
+        if (trial.successes == 0) {
+            if (entry != null) {
+                entries.remove(entry);
+            }
+            return;
+        }
+
+        if (entry == null) {
+            entries.add(new Entry(trial.frequencyMHz, trial.averageRSSI));
+        } else {
+            entry.rssi += RSSI_SMOOTHING * (trial.averageRSSI - entry.rssi);
+            entry.count++;
+        }
+
+        sort();
+
+        while (entries.size() > MAX_ENTRIES) {
+            entries.remove(entries.size() - 1);
+        }
+    }
+
+
+    /**
+     * @return frequencies from history, best (highest RSSI) first
+     */
+    public List<Double> getBestFrequencies(int count) {
+        List<Double> frequencies = new ArrayList<>();
+
+        for (int i = 0; i < entries.size() && i < count; i++) {
+            frequencies.add(entries.get(i).frequencyMHz);
+        }
+
+        return frequencies;
+    }
+
+
+    public int size() {
+        return entries.size();
+    }
+
+
+    private Entry findEntry(double frequencyMHz) {
+        for (Entry entry : entries) {
+            if (Math.round(entry.frequencyMHz * 1000) == Math.round(frequencyMHz * 1000)) {
+                return entry;
+            }
+        }
+
+        return null;
+    }
+
+
+    private void sort() {
+        Collections.sort(entries, new Comparator<Entry>() {
+
+            @Override
+            public int compare(Entry entry1, Entry entry2) {
+                return Double.compare(entry2.rssi, entry1.rssi);
+            }
+        });
+    }
+
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        for (Entry entry : entries) {
+            if (sb.length() > 0) {
+                sb.append(";");
+            }
+
+            sb.append(String.format(Locale.ENGLISH, "%.3f:%.1f:%d", entry.frequencyMHz, entry.rssi, entry.count));
+        }
+
+        return sb.toString();
+    }
+
+
+    private static class Entry {
+
+        double frequencyMHz;
+        double rssi;
+        int count = 1;
+
+
+        Entry(double frequencyMHz, double rssi) {
+            this.frequencyMHz = frequencyMHz;
+            this.rssi = rssi;
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkFirmwareVersion;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.command.RileyLinkCommandType;
+
+/**
+ * Estimates how long RileyLink needs (on top of radio time) to answer a command, per firmware version and command
+ * type. Smoothed latency and its deviation are tracked (as TCP does it for retransmission timeout) and timeout is
+ * latency + 4 * deviation, limited to [MIN_TIMEOUT_MS, ceiling]. Until there are enough samples, command type falls back
+ * to estimate for whole firmware, and then to ceiling. Every missing response doubles timeout for that command (until
+ * next good sample), so flaky link doesn't fail over and over with too short timeout.
+ */
+public class RFSpyLatencyEstimator {
+
+    public static final int MIN_TIMEOUT_MS = 300;
+    public static final int MIN_SAMPLES = 5;
+    private static final int MAX_BACKOFF = 16;
+
+    private final int ceiling_ms;
+    private final Map<String, Stats> statsMap = new HashMap<>();
+
+
+    public RFSpyLatencyEstimator(int ceiling_ms) {
+        this.ceiling_ms = ceiling_ms;
+    }
+
+
+    /**
+     * Adds latency of response (round trip time minus time RileyLink spent on radio).
+     */
+    public synchronized void addSample(RileyLinkFirmwareVersion firmware, RileyLinkCommandType commandType,
+            long latency_ms) {
+        latency_ms = Math.max(0, latency_ms);
+
+        getStats(getKey(firmware, commandType)).addSample(latency_ms);
+        getStats(getKey(firmware, null)).addSample(latency_ms);
+    }
+
+
+    /**
+     * Response didn't arrive in time.
+     */
+    public synchronized void responseMissing(RileyLinkFirmwareVersion firmware, RileyLinkCommandType commandType) {
+        getStats(getKey(firmware, commandType)).backOff();
+    }
+
+
+    /**
+     * @return time to wait for response (without radio time)
+     */
+    public synchronized int getTimeout_ms(RileyLinkFirmwareVersion firmware, RileyLinkCommandType commandType) {
+        Stats commandStats = statsMap.get(getKey(firmware, commandType));
+        Stats stats = commandStats;
+
+        if (stats == null || stats.samples < MIN_SAMPLES) {
+            stats = statsMap.get(getKey(firmware, null));
+        }
+
+        if (stats == null || stats.samples < MIN_SAMPLES) {
+            return ceiling_ms;
+        }
+
+        long timeout = Math.round(stats.latency + 4 * stats.deviation);
+
+        if (commandStats != null) {
+            timeout *= commandStats.backoff;
+        }
+
+        return (int) Math.max(MIN_TIMEOUT_MS, Math.min(ceiling_ms, timeout));
+    }
+
+
+    private Stats getStats(String key) {
+        Stats stats = statsMap.get(key);
+
+        if (stats == null) {
+            stats = new Stats();
+            statsMap.put(key, stats);
+        }
+
+        return stats;
+    }
+
+
+    private static String getKey(RileyLinkFirmwareVersion firmware, RileyLinkCommandType commandType) {
+        return ((firmware == null) ? "none" : firmware.name()) + ":" + ((commandType == null) ? "*" : commandType.name());
+    }
+
+
+    private static class Stats {
+
+        double latency;
+        double deviation;
+        int samples = 0;
+        int backoff = 1;
+
+
+        void addSample(long latency_ms) {
+            if (samples == 0) {
+                latency = latency_ms;
+                deviation = latency_ms / 2.0d;
+            } else {
+                deviation = 0.75d * deviation + 0.25d * Math.abs(latency - latency_ms);
+                latency = 0.875d * latency + 0.125d * latency_ms;
+            }
+
+            samples++;
+            backoff = 1;
+        }
+
+
+        void backOff() {
+            backoff = Math.min(MAX_BACKOFF, backoff * 2);
+        }
+    }
+
+}
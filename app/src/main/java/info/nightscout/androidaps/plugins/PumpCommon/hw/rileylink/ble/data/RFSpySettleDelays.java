@@ -0,0 +1,79 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkFirmwareVersion;
+
+/**
+ * Delays RFSpy waits before writing command and before reading radio data (after response count notification
+ * arrived). Firmware 2.x and higher has data ready when it notifies, so no delays are needed there. Older (and not
+ * yet identified) firmware gets small delays, which are adapted: every failed/empty read doubles read delay (up to
+ * MAX_READ_DELAY_MS), and after a run of good reads it is halved again (down to firmware minimum).
+ */
+public class RFSpySettleDelays {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RFSpySettleDelays.class);
+
+    public static final int MAX_READ_DELAY_MS = 200;
+    private static final int GOOD_READS_BEFORE_DECREASE = 10;
+
+    private final int minReadDelay_ms;
+    private final int writeDelay_ms;
+    private volatile int readDelay_ms;
+    private int goodReads = 0;
+
+
+    public RFSpySettleDelays(int readDelay_ms, int writeDelay_ms) {
+        this.minReadDelay_ms = readDelay_ms;
+        this.readDelay_ms = readDelay_ms;
+        this.writeDelay_ms = writeDelay_ms;
+    }
+
+
+    public static RFSpySettleDelays forFirmware(RileyLinkFirmwareVersion version) {
+        if (version != null && version.isSameVersion(RileyLinkFirmwareVersion.Version2AndHigher)) {
+            return new RFSpySettleDelays(0, 0);
+        } else {
+            return new RFSpySettleDelays(100, 10);
+        }
+    }
+
+
+    public int getReadDelay_ms() {
+        return readDelay_ms;
+    }
+
+
+    public int getWriteDelay_ms() {
+        return writeDelay_ms;
+    }
+
+
+    public synchronized void readSucceeded() {
+        goodReads++;
+
+        if (goodReads >= GOOD_READS_BEFORE_DECREASE && readDelay_ms > minReadDelay_ms) {
+            readDelay_ms = Math.max(minReadDelay_ms, readDelay_ms / 2);
+            goodReads = 0;
+            LOG.debug("Decreasing read settle delay to {} ms", readDelay_ms);
+        }
+    }
+
+
+    public synchronized void readFailed() {
+        goodReads = 0;
+
+        if (readDelay_ms < MAX_READ_DELAY_MS) {
+            readDelay_ms = Math.min(MAX_READ_DELAY_MS, Math.max(10, readDelay_ms * 2));
+            LOG.warn("Increasing read settle delay to {} ms", readDelay_ms);
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return "RFSpySettleDelays [read=" + readDelay_ms + " ms (min=" + minReadDelay_ms + "), write=" + writeDelay_ms
+            + " ms]";
+    }
+}
@@ -3,7 +3,7 @@ package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data;
 import org.apache.commons.lang3.NotImplementedException;
 
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkUtil;
-import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.RFTools;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.FourByteSixByteCodec;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkFirmwareVersion;
 import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
 import info.nightscout.androidaps.plugins.PumpCommon.utils.CRC;
@@ -32,24 +32,67 @@ public class RadioPacket {
     }
 
     public byte[] getEncoded() {
-        byte[] encoded;
+        RadioPacketBuffer buffer = RadioPacketBuffer.obtain();
+
+        try {
+            buffer.putPacket(this);
+            return buffer.getBody();
+        } finally {
+            buffer.release();
+        }
+    }
+
+
+    /**
+     * Number of bytes writeEncoded writes.
+     */
+    public int getEncodedLength() {
+        int length;
         switch (RileyLinkUtil.getEncoding()) {
-            case Manchester://We have this encoding in RL firmware
-                encoded = pkt;
+            case Manchester:
+                length = pkt.length;
                 break;
             case FourByteSixByte:
-                byte[] withCRC = ByteUtil.concat(pkt, CRC.crc8(pkt));
-                encoded = RFTools.encode4b6b(withCRC);
+                length = FourByteSixByteCodec.encodedLength(pkt.length + 1);
                 break;
             default:
                 throw new NotImplementedException(("Encoding not supported: " + RileyLinkUtil.getEncoding().toString()));
         }
         // Starting with 2.0 we don't put ending 0
-        if (version.isSameVersion(RileyLinkFirmwareVersion.Version2AndHigher))
-            return encoded;
+        return version.isSameVersion(RileyLinkFirmwareVersion.Version2AndHigher) ? length : length + 1;
+    }
+
+
+    /**
+     * Writes encoded packet (with crc, and null terminator for firmware 1.x) into buffer at offset.
+     *
+     * @return number of bytes written
+     */
+    int writeEncoded(RadioPacketBuffer buffer, int offset) {
+        byte[] data = buffer.data;
+        int length;
+        switch (RileyLinkUtil.getEncoding()) {
+            case Manchester://We have this encoding in RL firmware
+                System.arraycopy(pkt, 0, data, offset, pkt.length);
+                length = pkt.length;
+                break;
+            case FourByteSixByte:
+                // packet and crc are put into staging area and encoded from there into frame
+                int staging = RadioPacketBuffer.STAGING_OFFSET;
+                System.arraycopy(pkt, 0, data, staging, pkt.length);
+                data[staging + pkt.length] = CRC.crc8(pkt);
+                length = FourByteSixByteCodec.encode(data, staging, pkt.length + 1, data, offset);
+                break;
+            default:
+                throw new NotImplementedException(("Encoding not supported: " + RileyLinkUtil.getEncoding().toString()));
+        }
+
+        if (!version.isSameVersion(RileyLinkFirmwareVersion.Version2AndHigher)) {
+            data[offset + length] = 0;
+            length++;
+        }
 
-        byte[] withNullTerm = ByteUtil.concat(encoded, (byte) 0);
-        return withNullTerm;
+        return length;
     }
 
 }
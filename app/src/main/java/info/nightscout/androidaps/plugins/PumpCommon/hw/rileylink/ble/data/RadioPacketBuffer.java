@@ -0,0 +1,147 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data;
+
+import java.util.ArrayDeque;
+
+/**
+ * Buffer for one frame sent to RileyLink (length prefix, command and encoded radio packet), written in place at
+ * offsets. Buffers are pooled (one is taken per exchange and released after it), so sending doesn't allocate
+ * anything per packet, except the final frame array that is handed to BLE.
+ * <p>
+ * Array has two parts: frame (length byte + up to 255 bytes) and staging area, where packet with its crc is put
+ * before it is encoded into frame.
+ */
+public class RadioPacketBuffer {
+
+    public static final int MAX_FRAME_LENGTH = 256;
+
+    static final int STAGING_OFFSET = MAX_FRAME_LENGTH;
+
+    private static final int POOL_SIZE = 4;
+
+    private static final ArrayDeque<RadioPacketBuffer> pool = new ArrayDeque<>(POOL_SIZE);
+
+    final byte[] data = new byte[MAX_FRAME_LENGTH * 2];
+    int position = 1;
+
+
+    RadioPacketBuffer() {
+    }
+
+
+    /**
+     * Empty buffer from pool (or new one, if pool is empty). Call release when done with it.
+     */
+    public static RadioPacketBuffer obtain() {
+        RadioPacketBuffer buffer;
+
+        synchronized (pool) {
+            buffer = pool.poll();
+        }
+
+        if (buffer == null) {
+            buffer = new RadioPacketBuffer();
+        }
+
+        buffer.position = 1;
+        return buffer;
+    }
+
+
+    /**
+     * Returns buffer to pool. Buffer (and views of it) must not be used after this.
+     */
+    public void release() {
+        synchronized (pool) {
+            if (pool.size() < POOL_SIZE) {
+                pool.push(this);
+            }
+        }
+    }
+
+
+    public RadioPacketBuffer put(byte value) {
+        ensureCapacity(1);
+        data[position++] = value;
+        return this;
+    }
+
+
+    public RadioPacketBuffer put(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, data, position, bytes.length);
+        position += bytes.length;
+        return this;
+    }
+
+
+    /**
+     * Unsigned 16 bit value, big endian.
+     */
+    public RadioPacketBuffer putShort(int value) {
+        ensureCapacity(2);
+        data[position++] = (byte) (value >> 8);
+        data[position++] = (byte) value;
+        return this;
+    }
+
+
+    /**
+     * 32 bit value, big endian.
+     */
+    public RadioPacketBuffer putInt(int value) {
+        ensureCapacity(4);
+        data[position++] = (byte) (value >> 24);
+        data[position++] = (byte) (value >> 16);
+        data[position++] = (byte) (value >> 8);
+        data[position++] = (byte) value;
+        return this;
+    }
+
+
+    /**
+     * Appends packet with crc, encoded as RileyLink expects it.
+     */
+    public RadioPacketBuffer putPacket(RadioPacket packet) {
+        ensureCapacity(packet.getEncodedLength());
+        position += packet.writeEncoded(this, position);
+        return this;
+    }
+
+
+    void ensureCapacity(int length) {
+        if (position + length > MAX_FRAME_LENGTH) {
+            throw new IllegalArgumentException("Frame too long: " + (position + length - 1) + " bytes");
+        }
+    }
+
+
+    /**
+     * Length of frame body (without length prefix).
+     */
+    public int getBodyLength() {
+        return position - 1;
+    }
+
+
+    /**
+     * Frame as it is sent to RileyLink: length prefix and body.
+     */
+    public byte[] getFrame() {
+        data[0] = (byte) getBodyLength();
+
+        byte[] frame = new byte[position];
+        System.arraycopy(data, 0, frame, 0, position);
+        return frame;
+    }
+
+
+    /**
+     * Copy of frame body (command and packet, without length prefix).
+     */
+    public byte[] getBody() {
+        byte[] body = new byte[getBodyLength()];
+        System.arraycopy(data, 1, body, 0, body.length);
+        return body;
+    }
+
+}
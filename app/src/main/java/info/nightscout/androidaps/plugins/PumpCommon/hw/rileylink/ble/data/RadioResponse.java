@@ -4,12 +4,14 @@ import org.apache.commons.lang3.NotImplementedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
+
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkUtil;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.FourByteSixByteCodec;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.RFTools;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkFirmwareVersion;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.command.RileyLinkCommand;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.command.RileyLinkCommandType;
-import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
 import info.nightscout.androidaps.plugins.PumpCommon.utils.CRC;
 
 /**
@@ -22,8 +24,12 @@ public class RadioResponse {
     public boolean decodedOK = false;
     public int rssi;
     public int responseNumber;
-    public byte[] decodedPayload = new byte[0];
     public byte receivedCRC;
+    // decoded payload is view into decodedData (for Manchester and non-radio commands, into raw response)
+    private byte[] decodedData = new byte[0];
+    private int payloadOffset;
+    private int payloadLength;
+    private byte[] payload;
     private RileyLinkCommand command;
 
 
@@ -52,12 +58,7 @@ public class RadioResponse {
         if (!decodedOK) {
             return false;
         }
-        if (decodedPayload != null) {
-            if (receivedCRC == CRC.crc8(decodedPayload)) {
-                return true;
-            }
-        }
-        return false;
+        return receivedCRC == calculateCRC();
     }
 
 
@@ -71,13 +72,15 @@ public class RadioResponse {
         }
         rssi = rxData[0];
         responseNumber = rxData[1];
-        byte[] encodedPayload;
+        // encoded payload is read in place, starting after header
+        int encodedOffset;
         if (RileyLinkFirmwareVersion.isSameVersion(RileyLinkUtil.getRileyLinkServiceData().versionCC110, RileyLinkFirmwareVersion.Version2)) {
-            encodedPayload = ByteUtil.substring(rxData, 3, rxData.length - 3);
+            encodedOffset = 3;
         } else {
-            encodedPayload = ByteUtil.substring(rxData, 2, rxData.length - 2);
+            encodedOffset = 2;
 
         }
+        int encodedLength = rxData.length - encodedOffset;
         try {
 
             // for non-radio commands we just return the raw response
@@ -86,24 +89,25 @@ public class RadioResponse {
             if (command != null && //
                     command.getCommandType() != RileyLinkCommandType.SendAndListen) {
                 decodedOK = true;
-                decodedPayload = encodedPayload;
+                setPayload(rxData, encodedOffset, encodedLength);
                 return;
             }
             //boolean isEncoded = command==null || command.isEncoded();
 
             switch (RileyLinkUtil.getEncoding()) {
                 case Manchester:
-                    //decodedPayload = ByteUtil.substring(encodedPayload, 0, encodedPayload.length - 1);
                     decodedOK = true;
-                    decodedPayload = encodedPayload;
+                    setPayload(rxData, encodedOffset, encodedLength);
                     //receivedCRC = encodedPayload[encodedPayload.length - 1];
                     break;
                 case FourByteSixByte:
-                    byte[] decodeThis = RFTools.decode4b6b(encodedPayload);
+                    // decoded straight from response into one array, last byte is crc
+                    byte[] decoded = new byte[FourByteSixByteCodec.decodedLength(encodedLength)];
+                    int decodedLength = FourByteSixByteCodec.decode(rxData, encodedOffset, encodedLength, decoded, 0);
                     decodedOK = true;
-                    decodedPayload = ByteUtil.substring(decodeThis, 0, decodeThis.length - 1);
-                    receivedCRC = decodeThis[decodeThis.length - 1];
-                    byte calculatedCRC = CRC.crc8(decodedPayload);
+                    setPayload(decoded, 0, decodedLength - 1);
+                    receivedCRC = decoded[decodedLength - 1];
+                    byte calculatedCRC = calculateCRC();
                     if (receivedCRC != calculatedCRC) {
                         LOG.error(String.format("RadioResponse: CRC mismatch, calculated 0x%02x, received 0x%02x", calculatedCRC, receivedCRC));
                     }
@@ -113,11 +117,24 @@ public class RadioResponse {
             }
         } catch (NumberFormatException e) {
             decodedOK = false;
-            LOG.error("Failed to decode radio data: " + ByteUtil.shortHexString(encodedPayload));
+            LOG.error("Failed to decode radio data: " + RFTools.toHexString(rxData, encodedOffset, encodedLength));
         }
     }
 
 
+    private void setPayload(byte[] data, int offset, int length) {
+        decodedData = data;
+        payloadOffset = offset;
+        payloadLength = length;
+        payload = null;
+    }
+
+
+    private byte calculateCRC() {
+        return CRC.crc8(decodedData, payloadOffset, payloadLength);
+    }
+
+
 //    public void init(byte[] rxData, boolean isEncoded) {
 //        if (rxData == null) {
 //            return;
@@ -145,7 +162,23 @@ public class RadioResponse {
 //    }
 
 
+    /**
+     * Decoded payload (without crc) as array. Array is created on first call; use getPayloadBuffer to read payload
+     * without copying.
+     */
     public byte[] getPayload() {
-        return decodedPayload;
+        if (payload == null) {
+            payload = new byte[payloadLength];
+            System.arraycopy(decodedData, payloadOffset, payload, 0, payloadLength);
+        }
+        return payload;
+    }
+
+
+    /**
+     * Read-only view of decoded payload (without crc).
+     */
+    public ByteBuffer getPayloadBuffer() {
+        return ByteBuffer.wrap(decodedData, payloadOffset, payloadLength).slice().asReadOnlyBuffer();
     }
 }
@@ -1,5 +1,6 @@
 package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.command;
 
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.RadioPacketBuffer;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkFirmwareVersion;
 
 public abstract class RileyLinkCommand {
@@ -14,6 +15,14 @@ public abstract class RileyLinkCommand {
 
     public abstract byte[] getRaw();
 
+
+    /**
+     * Writes command into frame buffer (commands with radio packet override this, so packet is encoded in place).
+     */
+    public void writeTo(RadioPacketBuffer buffer) {
+        buffer.put(getRaw());
+    }
+
     protected byte[] getRawSimple() {
         return getByteArray(getCommandType().code);
 
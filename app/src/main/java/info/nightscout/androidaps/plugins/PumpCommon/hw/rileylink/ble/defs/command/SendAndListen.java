@@ -1,11 +1,8 @@
 package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.command;
 
-import java.nio.ByteBuffer;
-import java.util.ArrayList;
-
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.RadioPacket;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.RadioPacketBuffer;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkFirmwareVersion;
-import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
 
 public class SendAndListen extends RileyLinkCommand {
 
@@ -73,40 +70,40 @@ public class SendAndListen extends RileyLinkCommand {
 
     @Override
     public byte[] getRaw() {
+        RadioPacketBuffer buffer = RadioPacketBuffer.obtain();
+
+        try {
+            writeTo(buffer);
+            return buffer.getBody();
+        } finally {
+            buffer.release();
+        }
+    }
+
+
+    @Override
+    public void writeTo(RadioPacketBuffer buffer) {
 
         boolean isPacketV2 = this.version.isSameVersion(RileyLinkFirmwareVersion.Version2AndHigher);
 
-        ArrayList<Byte> bytes = new ArrayList<Byte>();
-        bytes.add(this.getCommandType().code);
-        bytes.add(this.sendChannel);
-        bytes.add(this.repeatCount);
+        buffer.put(this.getCommandType().code);
+        buffer.put(this.sendChannel);
+        buffer.put(this.repeatCount);
 
         if (isPacketV2) { //delay is unsigned 16-bit integer
-            byte[] delayBuff = ByteBuffer.allocate(4).putInt(delayBetweenPackets_ms).array();
-            bytes.add(delayBuff[2]);
-            bytes.add(delayBuff[3]);
+            buffer.putShort(delayBetweenPackets_ms);
         } else {
-            bytes.add((byte) delayBetweenPackets_ms);
+            buffer.put((byte) delayBetweenPackets_ms);
         }
-        
-        bytes.add(this.listenChannel);
-
-        byte[] timeoutBuff = ByteBuffer.allocate(4).putInt(timeout_ms).array();
 
-        bytes.add(timeoutBuff[0]);
-        bytes.add(timeoutBuff[1]);
-        bytes.add(timeoutBuff[2]);
-        bytes.add(timeoutBuff[3]);
-
-        bytes.add(retryCount);
+        buffer.put(this.listenChannel);
+        buffer.putInt(timeout_ms);
+        buffer.put(retryCount);
 
         if (isPacketV2) { //2.x (and probably higher versions) support preamble extension
-            byte[] preambleBuf = ByteBuffer.allocate(4).putInt(preambleExtension_ms).array();
-            bytes.add(preambleBuf[2]);
-            bytes.add(preambleBuf[3]);
+            buffer.putShort(preambleExtension_ms);
         }
 
-        return ByteUtil.concat(ByteUtil.fromByteArray(bytes), packetToSend.getEncoded());
-
+        buffer.putPacket(packetToSend);
     }
 }
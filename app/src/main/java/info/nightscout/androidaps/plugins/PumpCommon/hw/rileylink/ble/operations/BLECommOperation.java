@@ -3,31 +3,48 @@ package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operation
 import android.bluetooth.BluetoothGatt;
 
 import java.util.UUID;
-import java.util.concurrent.Semaphore;
-
-import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.RileyLinkBLE;
 
 /**
  * Created by geoff on 5/26/16.
+ * Changed: operation only starts GATT request, completion comes through callback (operations are run by
+ * GattOperationQueue).
  */
 public abstract class BLECommOperation {
 
-    public boolean timedOut = false;
-    public boolean interrupted = false;
+    public static final int DEFAULT_GATT_OPERATION_TIMEOUT_MS = 22000;
+
     protected byte[] value;
     protected BluetoothGatt gatt;
-    protected Semaphore operationComplete = new Semaphore(0, true);
+    private int gattOperationTimeout_ms = DEFAULT_GATT_OPERATION_TIMEOUT_MS;
 
-    // This is to be run on the main thread
-    public abstract void execute(RileyLinkBLE comm);
 
-    public void gattOperationCompletionCallback(UUID uuid, byte[] value) {
-    }
+    /**
+     * Starts GATT request, this must not block (result comes through gattOperationCompletionCallback).
+     *
+     * @return false if request could not be started
+     */
+    public abstract boolean start();
+
+
+    /**
+     * Called when GATT callback for this operation arrives (this will be run on the IBinder thread).
+     *
+     * @return false if callback doesn't belong to this operation (wrong UUID)
+     */
+    public abstract boolean gattOperationCompletionCallback(UUID uuid, byte[] value);
+
 
     public int getGattOperationTimeout_ms() {
-        return 22000;
+        return gattOperationTimeout_ms;
     }
 
+
+    public BLECommOperation setGattOperationTimeout_ms(int gattOperationTimeout_ms) {
+        this.gattOperationTimeout_ms = gattOperationTimeout_ms;
+        return this;
+    }
+
+
     public byte[] getValue() {
         return value;
     }
@@ -0,0 +1,162 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.GattOperationQueue;
+
+/**
+ * Handle for BLE operation submitted to GattOperationQueue. Future is completed exactly once (first completion wins),
+ * with success, timeout, cancel or disconnect result. Listeners are run on thread that completes the future (GATT
+ * callback or queue thread), so they must not block.
+ */
+public class BLECommOperationFuture implements Future<BLECommOperationResult> {
+
+    private final BLECommOperation operation;
+    private final GattOperationQueue queue;
+    private final CountDownLatch completed = new CountDownLatch(1);
+    private final List<Runnable> listeners = new ArrayList<>();
+    private volatile BLECommOperationResult result;
+
+
+    public BLECommOperationFuture(BLECommOperation operation, GattOperationQueue queue) {
+        this.operation = operation;
+        this.queue = queue;
+    }
+
+
+    /**
+     * Future that is already done (for operations that can't be queued, for example when there is no connection).
+     */
+    public static BLECommOperationFuture completed(int resultCode, byte[] value) {
+        BLECommOperationFuture future = new BLECommOperationFuture(null, null);
+        BLECommOperationResult result = new BLECommOperationResult();
+        result.resultCode = resultCode;
+        result.value = value;
+        future.complete(result);
+        return future;
+    }
+
+
+    public BLECommOperation getOperation() {
+        return operation;
+    }
+
+
+    /**
+     * Completes future with result code (value is taken from operation).
+     *
+     * @return false if future was already completed
+     */
+    public boolean complete(int resultCode) {
+        BLECommOperationResult result = new BLECommOperationResult();
+        result.resultCode = resultCode;
+        result.value = (operation == null) ? null : operation.getValue();
+        return complete(result);
+    }
+
+
+    private boolean complete(BLECommOperationResult result) {
+        List<Runnable> toRun;
+
+        synchronized (this) {
+            if (this.result != null) {
+                return false;
+            }
+
+            this.result = result;
+            toRun = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+
+        completed.countDown();
+
+        for (Runnable listener : toRun) {
+            listener.run();
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Adds listener that is run when future completes (or immediately, if it is already done).
+     */
+    public void addListener(Runnable listener) {
+        synchronized (this) {
+            if (result == null) {
+                listeners.add(listener);
+                return;
+            }
+        }
+
+        listener.run();
+    }
+
+
+    /**
+     * Cancels operation. Operation that is still waiting in queue is removed from it. If operation was already sent to
+     * RileyLink, future completes now, but queue still waits for its callback (or timeout) before starting next one.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (queue == null) {
+            return false;
+        }
+
+        return queue.cancel(this);
+    }
+
+
+    @Override
+    public boolean isCancelled() {
+        BLECommOperationResult result = this.result;
+        return result != null && result.resultCode == BLECommOperationResult.RESULT_CANCELLED;
+    }
+
+
+    @Override
+    public boolean isDone() {
+        return result != null;
+    }
+
+
+    @Override
+    public BLECommOperationResult get() throws InterruptedException {
+        completed.await();
+        return result;
+    }
+
+
+    @Override
+    public BLECommOperationResult get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        if (!completed.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Waits for result (same as blocking calls did). If waiting thread is interrupted, operation is cancelled and
+     * RESULT_INTERRUPTED is returned.
+     */
+    public BLECommOperationResult getResult() {
+        try {
+            return get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            cancel(true);
+
+            BLECommOperationResult interrupted = new BLECommOperationResult();
+            interrupted.resultCode = BLECommOperationResult.RESULT_INTERRUPTED;
+            return interrupted;
+        }
+    }
+
+}
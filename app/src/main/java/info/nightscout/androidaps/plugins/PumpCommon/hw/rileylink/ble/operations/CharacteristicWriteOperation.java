@@ -2,15 +2,12 @@ package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operation
 
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
-import android.os.SystemClock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
 
-import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.RileyLinkBLE;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.GattAttributes;
 
 /**
@@ -29,35 +26,20 @@ public class CharacteristicWriteOperation extends BLECommOperation {
     }
 
     @Override
-    public void execute(RileyLinkBLE comm) {
-
+    public boolean start() {
         characteristic.setValue(value);
-        gatt.writeCharacteristic(characteristic);
-        // wait here for callback to notify us that value was written.
-        try {
-            boolean didAcquire = operationComplete.tryAcquire(getGattOperationTimeout_ms(), TimeUnit.MILLISECONDS);
-            if (didAcquire) {
-                SystemClock.sleep(1); // This is to allow the IBinder thread to exit before we continue, allowing easier understanding of the sequence of events.
-                // success
-            } else {
-                LOG.error("Timeout waiting for gatt write operation to complete");
-                timedOut = true;
-            }
-        } catch (InterruptedException e) {
-            LOG.error("Interrupted while waiting for gatt write operation to complete");
-            interrupted = true;
-        }
-
+        return gatt.writeCharacteristic(characteristic);
     }
 
     // This will be run on the IBinder thread
     @Override
-    public void gattOperationCompletionCallback(UUID uuid, byte[] value) {
+    public boolean gattOperationCompletionCallback(UUID uuid, byte[] value) {
         if (!characteristic.getUuid().equals(uuid)) {
             LOG.error(String.format("Completion callback: UUID does not match! out of sequence? Found: %s, should be %s",
-                    GattAttributes.lookup(characteristic.getUuid()), GattAttributes.lookup(uuid)));
+                    GattAttributes.lookup(uuid), GattAttributes.lookup(characteristic.getUuid())));
+            return false;
         }
-        operationComplete.release();
+        return true;
     }
 
 
@@ -2,15 +2,11 @@ package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operation
 
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattDescriptor;
-import android.os.SystemClock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
-
-import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.RileyLinkBLE;
 
 /**
  * Created by geoff on 5/26/16.
@@ -29,28 +25,17 @@ public class DescriptorWriteOperation extends BLECommOperation {
     }
 
     @Override
-    public void gattOperationCompletionCallback(UUID uuid, byte[] value) {
-        super.gattOperationCompletionCallback(uuid, value);
-        operationComplete.release();
+    public boolean gattOperationCompletionCallback(UUID uuid, byte[] value) {
+        if (!descr.getUuid().equals(uuid)) {
+            LOG.error("Completion callback: descriptor UUID does not match! Found: {}, should be {}", uuid, descr.getUuid());
+            return false;
+        }
+        return true;
     }
 
     @Override
-    public void execute(RileyLinkBLE comm) {
+    public boolean start() {
         descr.setValue(value);
-        gatt.writeDescriptor(descr);
-        // wait here for callback to notify us that value was read.
-        try {
-            boolean didAcquire = operationComplete.tryAcquire(getGattOperationTimeout_ms(), TimeUnit.MILLISECONDS);
-            if (didAcquire) {
-                SystemClock.sleep(1); // This is to allow the IBinder thread to exit before we continue, allowing easier understanding of the sequence of events.
-                // success
-            } else {
-                LOG.error("Timeout waiting for descriptor write operation to complete");
-                timedOut = true;
-            }
-        } catch (InterruptedException e) {
-            LOG.error("Interrupted while waiting for descriptor write operation to complete");
-            interrupted = true;
-        }
+        return gatt.writeDescriptor(descr);
     }
 }
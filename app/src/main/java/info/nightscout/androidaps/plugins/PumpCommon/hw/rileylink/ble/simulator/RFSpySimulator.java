@@ -0,0 +1,266 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.simulator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkUtil;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.IRFSpy;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.RFTools;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.RFSpyResponse;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.RadioPacket;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.CC111XRegister;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkEncodingType;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkFirmwareVersion;
+import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
+import info.nightscout.androidaps.plugins.PumpCommon.utils.CRC;
+
+/**
+ * IRFSpy that talks to simulated device instead of RileyLink, so that communication managers can be run (and timed)
+ * without hardware. Responses are built same way as RileyLink builds them (rssi, response number, encoded packet), and
+ * RadioConditions decide if (and when) device answers.
+ */
+public class RFSpySimulator implements IRFSpy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RFSpySimulator.class);
+    private static final double LATENCY_SMOOTHING = 0.2d;
+
+    private static final byte RESPONSE_TIMEOUT = (byte) 0xaa;
+    private static final byte RESPONSE_SUCCESS = (byte) 0xdd;
+
+    private final SimulatedDevice device;
+    private final RadioConditions radioConditions;
+    private final RileyLinkFirmwareVersion firmwareVersion;
+
+    private volatile double frequencyMHz;
+    private int responseNumber = 0;
+
+    private volatile long lastRoundTripLatency_ms = -1;
+    private volatile double averageRoundTripLatency_ms = -1;
+
+    private int packetsSent = 0;
+    private int responsesReceived = 0;
+    private int timeouts = 0;
+    private long airTime_ms = 0L;
+
+
+    public RFSpySimulator(SimulatedDevice device, RadioConditions radioConditions) {
+        this(device, radioConditions, RileyLinkFirmwareVersion.Version_2_2);
+    }
+
+
+    public RFSpySimulator(SimulatedDevice device, RadioConditions radioConditions,
+            RileyLinkFirmwareVersion firmwareVersion) {
+        this.device = device;
+        this.radioConditions = radioConditions;
+        this.firmwareVersion = firmwareVersion;
+    }
+
+
+    @Override
+    public RileyLinkFirmwareVersion getRLVersionCached() {
+        return firmwareVersion;
+    }
+
+
+    @Override
+    public String getBLEVersionCached() {
+        return "ble_rfspy 1.0";
+    }
+
+
+    @Override
+    public void startReader() {
+    }
+
+
+    @Override
+    public void initializeRileyLink() {
+        RileyLinkUtil.setEncoding(device.getEncoding());
+    }
+
+
+    @Override
+    public void newDataIsAvailable() {
+    }
+
+
+    @Override
+    public String getVersion() {
+        return firmwareVersion.toString();
+    }
+
+
+    @Override
+    public RFSpyResponse transmitThenReceive(RadioPacket pkt, byte sendChannel, byte repeatCount, byte delay_ms,
+            byte listenChannel, int timeout_ms, byte retryCount) {
+        return transmitThenReceive(pkt, sendChannel, repeatCount, delay_ms, listenChannel, timeout_ms, retryCount, 0);
+    }
+
+
+    @Override
+    public RFSpyResponse transmitThenReceive(RadioPacket pkt, byte sendChannel, byte repeatCount, byte delay_ms,
+            byte listenChannel, int timeout_ms, byte retryCount, int extendPreamble_ms) {
+
+        return new RFSpyResponse(exchange(pkt.getRaw(), timeout_ms));
+    }
+
+
+    private byte[] exchange(byte[] packet, int timeout_ms) {
+        synchronized (this) {
+            packetsSent++;
+        }
+
+        byte[] devicePacket = null;
+
+        if (!radioConditions.isInRange(frequencyMHz)) {
+            LOG.debug("Simulator: device not in range at {} MHz", frequencyMHz);
+        } else if (radioConditions.isPacketLost()) {
+            LOG.debug("Simulator: packet lost");
+        } else {
+            devicePacket = device.processPacket(packet);
+        }
+
+        int latency_ms = radioConditions.getLatency_ms();
+
+        if (devicePacket == null || latency_ms > timeout_ms) {
+            waitFor(timeout_ms);
+
+            synchronized (this) {
+                timeouts++;
+            }
+            return new byte[]{RESPONSE_TIMEOUT};
+        }
+
+        waitFor(latency_ms);
+        // simulated latency, so that reported timings don't depend on time scale
+        recordRoundTripLatency(latency_ms);
+
+        byte[] encoded = encode(devicePacket);
+
+        if (radioConditions.isCorrupted()) {
+            int index = radioConditions.nextInt(encoded.length);
+            encoded[index] ^= 0x01;
+            LOG.debug("Simulator: corrupted byte {} of response", index);
+        }
+
+        byte[] header;
+
+        synchronized (this) {
+            responsesReceived++;
+            responseNumber = (responseNumber + 1) & 0xff;
+
+            // firmware 2.x has one more byte (counter) before packet
+            if (RileyLinkFirmwareVersion.isSameVersion(firmwareVersion, RileyLinkFirmwareVersion.Version2)) {
+                header = new byte[]{(byte) radioConditions.getRssi(frequencyMHz), (byte) responseNumber, 0};
+            } else {
+                header = new byte[]{(byte) radioConditions.getRssi(frequencyMHz), (byte) responseNumber};
+            }
+        }
+
+        return ByteUtil.concat(header, encoded);
+    }
+
+
+    private byte[] encode(byte[] packet) {
+        if (device.getEncoding() == RileyLinkEncodingType.FourByteSixByte) {
+            return RFTools.encode4b6b(ByteUtil.concat(packet, CRC.crc8(packet)));
+        } else {
+            return ByteUtil.substring(packet, 0, packet.length);
+        }
+    }
+
+
+    private void waitFor(int time_ms) {
+        synchronized (this) {
+            airTime_ms += time_ms;
+        }
+
+        long sleep_ms = Math.round(time_ms * radioConditions.getTimeScale());
+
+        if (sleep_ms > 0) {
+            try {
+                Thread.sleep(sleep_ms);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    @Override
+    public RFSpyResponse updateRegister(CC111XRegister reg, int val) {
+        return new RFSpyResponse(new byte[]{RESPONSE_SUCCESS});
+    }
+
+
+    @Override
+    public void setBaseFrequency(double freqMHz) {
+        this.frequencyMHz = freqMHz;
+        RileyLinkUtil.setEncoding(device.getEncoding());
+        LOG.debug("Simulator: set frequency to {}", freqMHz);
+    }
+
+
+    public double getBaseFrequency() {
+        return frequencyMHz;
+    }
+
+
+    @Override
+    public void setTestingFunction(String functionName) {
+    }
+
+
+    @Override
+    public long getLastRoundTripLatency_ms() {
+        return lastRoundTripLatency_ms;
+    }
+
+
+    @Override
+    public long getAverageRoundTripLatency_ms() {
+        return Math.round(averageRoundTripLatency_ms);
+    }
+
+
+    private void recordRoundTripLatency(long latency_ms) {
+        lastRoundTripLatency_ms = latency_ms;
+
+        if (averageRoundTripLatency_ms < 0) {
+            averageRoundTripLatency_ms = latency_ms;
+        } else {
+            averageRoundTripLatency_ms += LATENCY_SMOOTHING * (latency_ms - averageRoundTripLatency_ms);
+        }
+    }
+
+
+    public synchronized int getPacketsSent() {
+        return packetsSent;
+    }
+
+
+    public synchronized int getResponsesReceived() {
+        return responsesReceived;
+    }
+
+
+    public synchronized int getTimeouts() {
+        return timeouts;
+    }
+
+
+    /**
+     * Time radio spent waiting for responses (simulated time, not scaled with time scale).
+     */
+    public synchronized long getAirTime_ms() {
+        return airTime_ms;
+    }
+
+
+    @Override
+    public synchronized String toString() {
+        return "RFSpySimulator [frequency=" + frequencyMHz + ", packetsSent=" + packetsSent + ", responsesReceived="
+            + responsesReceived + ", timeouts=" + timeouts + ", airTime=" + airTime_ms + " ms]";
+    }
+
+}
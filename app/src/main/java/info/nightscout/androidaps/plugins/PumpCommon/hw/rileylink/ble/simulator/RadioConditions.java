@@ -0,0 +1,152 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.simulator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Radio link between simulated RileyLink and device: RSSI per frequency (device is heard only when RSSI is above
+ * sensitivity), response latency, packet loss and corruption. All random decisions come from one seeded Random, so
+ * test runs can be repeated.
+ */
+public class RadioConditions {
+
+    public static final int NO_SIGNAL_RSSI = -99;
+
+    private final Random random;
+
+    private double deviceFrequencyMHz;
+    private int peakRssi = -45;
+    private double rssiDropPerMHz = 400.0d; // 4 dB per 10 kHz
+    private int sensitivityRssi = -90;
+    private final Map<Long, Integer> rssiOverrides = new HashMap<>();
+
+    private int latency_ms = 0;
+    private int latencyJitter_ms = 0;
+    private double packetLossProbability = 0.0d;
+    private double corruptionProbability = 0.0d;
+    private double timeScale = 1.0d;
+
+
+    public RadioConditions(double deviceFrequencyMHz) {
+        this(deviceFrequencyMHz, 0L);
+    }
+
+
+    public RadioConditions(double deviceFrequencyMHz, long seed) {
+        this.deviceFrequencyMHz = deviceFrequencyMHz;
+        this.random = new Random(seed);
+    }
+
+
+    public RadioConditions setDeviceFrequency(double deviceFrequencyMHz, int peakRssi, double rssiDropPerMHz) {
+        this.deviceFrequencyMHz = deviceFrequencyMHz;
+        this.peakRssi = peakRssi;
+        this.rssiDropPerMHz = rssiDropPerMHz;
+        return this;
+    }
+
+
+    public RadioConditions setSensitivityRssi(int sensitivityRssi) {
+        this.sensitivityRssi = sensitivityRssi;
+        return this;
+    }
+
+
+    /**
+     * Fixed RSSI for one frequency (overrides calculated one), for example to make shape of tuning curve.
+     */
+    public synchronized RadioConditions setRssi(double frequencyMHz, int rssi) {
+        rssiOverrides.put(getFrequencyKey(frequencyMHz), rssi);
+        return this;
+    }
+
+
+    public RadioConditions setLatency(int latency_ms, int latencyJitter_ms) {
+        this.latency_ms = latency_ms;
+        this.latencyJitter_ms = latencyJitter_ms;
+        return this;
+    }
+
+
+    /**
+     * Probability (0-1) that packet sent by RileyLink is not heard by device (so device state doesn't change and
+     * RileyLink times out).
+     */
+    public RadioConditions setPacketLossProbability(double packetLossProbability) {
+        this.packetLossProbability = packetLossProbability;
+        return this;
+    }
+
+
+    /**
+     * Probability (0-1) that response from device arrives with one corrupted byte (so its crc doesn't match).
+     */
+    public RadioConditions setCorruptionProbability(double corruptionProbability) {
+        this.corruptionProbability = corruptionProbability;
+        return this;
+    }
+
+
+    /**
+     * Scale for all waiting (latency and timeouts): 1.0 is real time, 0 means simulator doesn't sleep at all (simulated
+     * air time is still counted).
+     */
+    public RadioConditions setTimeScale(double timeScale) {
+        this.timeScale = timeScale;
+        return this;
+    }
+
+
+    public double getTimeScale() {
+        return timeScale;
+    }
+
+
+    public synchronized int getRssi(double frequencyMHz) {
+        Integer rssi = rssiOverrides.get(getFrequencyKey(frequencyMHz));
+
+        if (rssi != null) {
+            return rssi;
+        }
+
+        double drop = Math.abs(frequencyMHz - deviceFrequencyMHz) * rssiDropPerMHz;
+
+        return Math.max(NO_SIGNAL_RSSI, (int) Math.round(peakRssi - drop));
+    }
+
+
+    public boolean isInRange(double frequencyMHz) {
+        return getRssi(frequencyMHz) >= sensitivityRssi;
+    }
+
+
+    public synchronized boolean isPacketLost() {
+        return packetLossProbability > 0.0d && random.nextDouble() < packetLossProbability;
+    }
+
+
+    public synchronized boolean isCorrupted() {
+        return corruptionProbability > 0.0d && random.nextDouble() < corruptionProbability;
+    }
+
+
+    public synchronized int getLatency_ms() {
+        if (latencyJitter_ms <= 0) {
+            return latency_ms;
+        }
+
+        return latency_ms + random.nextInt(latencyJitter_ms + 1);
+    }
+
+
+    public synchronized int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+
+
+    private static long getFrequencyKey(double frequencyMHz) {
+        return Math.round(frequencyMHz * 1000.0d); // kHz
+    }
+
+}
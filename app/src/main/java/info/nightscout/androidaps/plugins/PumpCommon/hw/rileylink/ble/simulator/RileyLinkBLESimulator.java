@@ -0,0 +1,176 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.simulator;
+
+import android.bluetooth.BluetoothGattService;
+
+import com.gxwtech.roundtrip2.RT2Const;
+
+import java.util.UUID;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkConst;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkUtil;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.IRileyLinkBLE;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operations.BLECommOperationFuture;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operations.BLECommOperationResult;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.data.ServiceNotification;
+
+/**
+ * IRileyLinkBLE used together with RFSpySimulator. Keeps connection state (connection can be dropped from test), and
+ * GATT operations take configured time and fail when not connected.
+ */
+public class RileyLinkBLESimulator implements IRileyLinkBLE {
+
+    private volatile boolean connected = false;
+    private volatile int operationLatency_ms = 0;
+    private volatile boolean broadcastReady = true;
+    private int operations = 0;
+
+
+    public RileyLinkBLESimulator setOperationLatency(int operationLatency_ms) {
+        this.operationLatency_ms = operationLatency_ms;
+        return this;
+    }
+
+
+    /**
+     * If set, RileyLinkReady is broadcast on connect (as RileyLinkBLE does it). Needs application context, so it
+     * should be turned off when simulator runs outside of the app.
+     */
+    public RileyLinkBLESimulator setBroadcastReady(boolean broadcastReady) {
+        this.broadcastReady = broadcastReady;
+        return this;
+    }
+
+
+    @Override
+    public void debugService(BluetoothGattService service, int indentCount) {
+    }
+
+
+    @Override
+    public void registerRadioResponseCountNotification(Runnable notifier) {
+    }
+
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+
+    @Override
+    public boolean discoverServices() {
+        return connected;
+    }
+
+
+    @Override
+    public boolean enableNotifications() {
+        return connected;
+    }
+
+
+    @Override
+    public void findRileyLink(String RileyLinkAddress) {
+        connectGatt();
+    }
+
+
+    @Override
+    public void connectGatt() {
+        connected = true;
+
+        if (broadcastReady) {
+            RileyLinkUtil.sendBroadcastMessage(RileyLinkConst.Intents.RileyLinkReady);
+            RileyLinkUtil.sendNotification(new ServiceNotification(RT2Const.IPC.MSG_BLE_RileyLinkReady), null);
+        }
+    }
+
+
+    @Override
+    public void disconnect() {
+        connected = false;
+    }
+
+
+    @Override
+    public void close() {
+        connected = false;
+    }
+
+
+    @Override
+    public BLECommOperationResult setNotification_blocking(UUID serviceUUID, UUID charaUUID) {
+        return runOperation(null);
+    }
+
+
+    @Override
+    public BLECommOperationResult writeCharacteristic_blocking(UUID serviceUUID, UUID charaUUID, byte[] value) {
+        return runOperation(null);
+    }
+
+
+    @Override
+    public BLECommOperationResult readCharacteristic_blocking(UUID serviceUUID, UUID charaUUID) {
+        return runOperation(new byte[0]);
+    }
+
+
+    // simulated operations run on calling thread, so returned futures are already done
+
+    @Override
+    public BLECommOperationFuture setNotification(UUID serviceUUID, UUID charaUUID) {
+        return toFuture(setNotification_blocking(serviceUUID, charaUUID));
+    }
+
+
+    @Override
+    public BLECommOperationFuture writeCharacteristic(UUID serviceUUID, UUID charaUUID, byte[] value, int timeout_ms) {
+        return toFuture(writeCharacteristic_blocking(serviceUUID, charaUUID, value));
+    }
+
+
+    @Override
+    public BLECommOperationFuture readCharacteristic(UUID serviceUUID, UUID charaUUID, int timeout_ms) {
+        return toFuture(readCharacteristic_blocking(serviceUUID, charaUUID));
+    }
+
+
+    private BLECommOperationFuture toFuture(BLECommOperationResult result) {
+        return BLECommOperationFuture.completed(result.resultCode, result.value);
+    }
+
+
+    private BLECommOperationResult runOperation(byte[] value) {
+        BLECommOperationResult result = new BLECommOperationResult();
+
+        if (!connected) {
+            result.resultCode = BLECommOperationResult.RESULT_NOT_CONFIGURED;
+            return result;
+        }
+
+        if (operationLatency_ms > 0) {
+            try {
+                Thread.sleep(operationLatency_ms);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                result.resultCode = BLECommOperationResult.RESULT_INTERRUPTED;
+                return result;
+            }
+        }
+
+        synchronized (this) {
+            operations++;
+        }
+
+        result.value = value;
+        result.resultCode = BLECommOperationResult.RESULT_SUCCESS;
+        return result;
+    }
+
+
+    public synchronized int getOperations() {
+        return operations;
+    }
+
+}
@@ -0,0 +1,22 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.simulator;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkEncodingType;
+
+/**
+ * Device (pump or pod) that RFSpySimulator talks to. Device gets unencoded packets (as they are given to RadioPacket)
+ * and returns unencoded response packet, encoding and radio conditions are handled by simulator.
+ */
+public interface SimulatedDevice {
+
+    RileyLinkEncodingType getEncoding();
+
+
+    /**
+     * Processes packet that was heard by device.
+     *
+     * @param packet packet without encoding and crc
+     * @return response packet (without encoding and crc) or null if device doesn't answer
+     */
+    byte[] processPacket(byte[] packet);
+
+}
@@ -0,0 +1,172 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.data;
+
+import org.joda.time.LocalDateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.defs.RileyLinkError;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.defs.RileyLinkServiceState;
+
+/**
+ * RileyLink service state history, with fixed capacity (oldest items are overwritten). States are set from BLE
+ * callbacks and from task threads, so adding is lock-free: writer takes next sequence number and puts item into its
+ * slot. Snapshot reads slots from oldest to newest and skips slots that are being overwritten.
+ * <p>
+ * Tail of history can be written to (and read from) stream in compact binary format, so that history survives
+ * restart of service.
+ */
+public class RLHistory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RLHistory.class);
+
+    public static final int DEFAULT_CAPACITY = 256;
+    public static final int PERSISTED_ITEMS = 64;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final AtomicReferenceArray<Slot> slots;
+    private final AtomicLong nextSequence = new AtomicLong();
+
+
+    public RLHistory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+
+    public RLHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+
+    public void add(RLHistoryItem item) {
+        long sequence = nextSequence.getAndIncrement();
+        slots.set((int) (sequence % slots.length()), new Slot(sequence, item));
+    }
+
+
+    /**
+     * Items from oldest to newest. Items that are added while snapshot is made might be missing.
+     */
+    public List<RLHistoryItem> getSnapshot() {
+        return getSnapshot(slots.length());
+    }
+
+
+    /**
+     * Newest maxItems items, from oldest to newest.
+     */
+    public List<RLHistoryItem> getSnapshot(int maxItems) {
+        long end = nextSequence.get();
+        long start = Math.max(0L, end - Math.min(maxItems, slots.length()));
+
+        List<RLHistoryItem> items = new ArrayList<>((int) (end - start));
+
+        for (long sequence = start; sequence < end; sequence++) {
+            Slot slot = slots.get((int) (sequence % slots.length()));
+
+            // slot is null or older while writer has sequence but didn't set it yet, and newer when it was
+            // overwritten in the meantime
+            if (slot != null && slot.sequence == sequence) {
+                items.add(slot.item);
+            }
+        }
+
+        return items;
+    }
+
+
+    public int size() {
+        return (int) Math.min(nextSequence.get(), slots.length());
+    }
+
+
+    public int getCapacity() {
+        return slots.length();
+    }
+
+
+    /**
+     * Writes newest maxItems items: version, count and for each item time (millis of local time), state and error
+     * (as enum names, so that reordering of enums doesn't break stored data).
+     */
+    public void writeTail(OutputStream outputStream, int maxItems) throws IOException {
+        List<RLHistoryItem> items = getSnapshot(maxItems);
+        DataOutputStream out = new DataOutputStream(outputStream);
+
+        out.writeByte(FORMAT_VERSION);
+        out.writeShort(items.size());
+
+        for (RLHistoryItem item : items) {
+            out.writeLong(item.getDateTime().toDateTime().getMillis());
+            out.writeUTF(item.getServiceState() == null ? "" : item.getServiceState().name());
+            out.writeUTF(item.getErrorCode() == null ? "" : item.getErrorCode().name());
+        }
+
+        out.flush();
+    }
+
+
+    /**
+     * Reads items written by writeTail and adds them to history (they should be read before new items are added).
+     * Items with unknown states are skipped.
+     *
+     * @return number of items added
+     */
+    public int readTail(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+
+        int version = in.readUnsignedByte();
+
+        if (version != FORMAT_VERSION) {
+            LOG.warn("readTail: unsupported format version {}, history is not restored", version);
+            return 0;
+        }
+
+        int count = in.readUnsignedShort();
+        int added = 0;
+
+        for (int i = 0; i < count; i++) {
+            LocalDateTime dateTime = new LocalDateTime(in.readLong());
+            String state = in.readUTF();
+            String error = in.readUTF();
+
+            try {
+                add(new RLHistoryItem(dateTime, //
+                    state.isEmpty() ? null : RileyLinkServiceState.valueOf(state), //
+                    error.isEmpty() ? null : RileyLinkError.valueOf(error)));
+                added++;
+            } catch (IllegalArgumentException ex) {
+                LOG.debug("readTail: skipping item with unknown state {} / {}", state, error);
+            }
+        }
+
+        return added;
+    }
+
+    private static class Slot {
+
+        final long sequence;
+        final RLHistoryItem item;
+
+
+        Slot(long sequence, RLHistoryItem item) {
+            this.sequence = sequence;
+            this.item = item;
+        }
+    }
+
+}
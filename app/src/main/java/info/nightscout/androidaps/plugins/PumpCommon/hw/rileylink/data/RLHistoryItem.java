@@ -17,7 +17,12 @@ public class RLHistoryItem {
 
 
     public RLHistoryItem(RileyLinkServiceState serviceState, RileyLinkError errorCode) {
-        this.dateTime = new LocalDateTime();
+        this(new LocalDateTime(), serviceState, errorCode);
+    }
+
+
+    public RLHistoryItem(LocalDateTime dateTime, RileyLinkServiceState serviceState, RileyLinkError errorCode) {
+        this.dateTime = dateTime;
         this.serviceState = serviceState;
         this.errorCode = errorCode;
     }
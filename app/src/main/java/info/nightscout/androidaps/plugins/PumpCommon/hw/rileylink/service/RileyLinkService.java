@@ -77,6 +77,7 @@ public abstract class RileyLinkService extends Service {
         determineRileyLinkTargetFrequency();
         RileyLinkUtil.setRileyLinkTargetFrequency(rileyLinkTargetFrequency);
         RileyLinkUtil.setEncoding(getEncoding());
+        RileyLinkUtil.loadRileyLinkHistory();
         initRileyLinkServiceData();
     }
 
@@ -115,6 +116,8 @@ public abstract class RileyLinkService extends Service {
         super.onDestroy();
         LOG.error("I die! I die!");
 
+        RileyLinkUtil.saveRileyLinkHistory();
+
         // FIXME this might not work
         if (rileyLinkBLE != null) {
             rileyLinkBLE.disconnect(); // dispose of Gatt (disconnect and close)
@@ -397,16 +400,10 @@ public abstract class RileyLinkService extends Service {
         double newFrequency;
         if ((lastGoodFrequency > 0.0d) && getRileyLinkCommunicationManager().isValidFrequency(lastGoodFrequency)) {
             LOG.info("Checking for pump near last saved frequency of {}MHz", lastGoodFrequency);
-            // we have an old frequency, so let's start there.
-            newFrequency = getDeviceCommunicationManager().quickTuneForPump(lastGoodFrequency);
-            if (newFrequency == 0.0) {
-                // quick scan failed to find pump.  Try full scan
-                LOG.warn("Failed to find pump near last saved frequency, doing full scan");
-                newFrequency = getDeviceCommunicationManager().tuneForDevice();
-            }
+            // we have an old frequency, so tune-up starts there (and scans whole range only if pump is not found)
+            newFrequency = getDeviceCommunicationManager().tuneForDevice(lastGoodFrequency);
         } else {
-            LOG.warn("No saved frequency for pump, doing full scan.");
-            // we don't have a saved frequency, so do the full scan.
+            LOG.warn("No saved frequency for pump, tune-up starts with frequency history.");
             newFrequency = getDeviceCommunicationManager().tuneForDevice();
         }
 
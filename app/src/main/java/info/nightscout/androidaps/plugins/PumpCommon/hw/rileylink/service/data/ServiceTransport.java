@@ -1,7 +1,6 @@
 package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.data;
 
 import android.os.Bundle;
-import android.os.Parcel;
 
 /**
  * Created by geoff on 7/6/16.
@@ -136,14 +135,9 @@ public class ServiceTransport extends ServiceMessage {
     }
 
 
+    // deep copy, through same encoding that is used for IPC
     public ServiceTransport clone() {
-        Parcel p = Parcel.obtain();
-        Parcel p2 = Parcel.obtain();
-        getMap().writeToParcel(p, 0);
-        byte[] bytes = p.marshall();
-        p2.unmarshall(bytes, 0, bytes.length);
-        p2.setDataPosition(0);
-        Bundle b = p2.readBundle();
+        Bundle b = ServiceTransportCodec.decode(ServiceTransportCodec.encode(getMap()));
         ServiceTransport rval = new ServiceTransport();
         rval.setMap(b);
         return rval;
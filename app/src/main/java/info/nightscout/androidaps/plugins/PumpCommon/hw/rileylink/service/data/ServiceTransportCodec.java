@@ -0,0 +1,410 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.data;
+
+import android.os.Bundle;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary wire format for service transports (Bundle of ServiceTransport is sent over IPC as one byte array,
+ * instead of nested Bundles that are parcelled and unparcelled key by key).
+ * <p>
+ * Format: version byte, then bundle: entry count (varint) and entries. Entry is key, type byte and value. Keys are
+ * written once and then referenced by index (same keys repeat in every nested bundle). Numbers are varints (ints
+ * zigzag encoded), strings are UTF-8 with length. Supported values are those used in service messages: String,
+ * Integer, Long, Short, Byte, Boolean, Double, Float, byte[], int[], float[], Bundle and ArrayList of Bundles.
+ */
+public class ServiceTransportCodec {
+
+    public static final int VERSION = 1;
+
+    /**
+     * Key under which encoded transport is put into Message data.
+     */
+    public static final String WIRE_KEY = "ServiceTransportWire";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int T_NULL = 0;
+    private static final int T_STRING = 1;
+    private static final int T_INT = 2;
+    private static final int T_LONG = 3;
+    private static final int T_BOOLEAN = 4;
+    private static final int T_DOUBLE = 5;
+    private static final int T_FLOAT = 6;
+    private static final int T_SHORT = 7;
+    private static final int T_BYTE = 8;
+    private static final int T_BYTE_ARRAY = 9;
+    private static final int T_INT_ARRAY = 10;
+    private static final int T_FLOAT_ARRAY = 11;
+    private static final int T_BUNDLE = 12;
+    private static final int T_BUNDLE_LIST = 13;
+
+
+    private ServiceTransportCodec() {
+    }
+
+
+    /**
+     * Message data for transport: one byte array with encoded transport map.
+     */
+    public static Bundle toMessageData(Bundle transportMap) {
+        Bundle data = new Bundle();
+        data.putByteArray(WIRE_KEY, encode(transportMap));
+        return data;
+    }
+
+
+    /**
+     * Transport map from message data. Data without encoded transport (sent by older peer) is returned as is.
+     *
+     * @throws IllegalArgumentException if data can't be decoded
+     */
+    public static Bundle fromMessageData(Bundle data) {
+        if (data == null) {
+            return null;
+        }
+
+        byte[] wire = data.getByteArray(WIRE_KEY);
+
+        return wire == null ? data : decode(wire);
+    }
+
+
+    public static byte[] encode(Bundle bundle) {
+        Writer writer = new Writer();
+        writer.out.write(VERSION);
+        writer.writeBundle(bundle);
+        return writer.out.toByteArray();
+    }
+
+
+    /**
+     * @throws IllegalArgumentException if data is not valid or has unsupported version
+     */
+    public static Bundle decode(byte[] data) {
+        if (data.length == 0 || data[0] != VERSION) {
+            throw new IllegalArgumentException("Unsupported transport encoding version: "
+                + (data.length == 0 ? "none" : String.valueOf(data[0])));
+        }
+
+        Reader reader = new Reader(data, 1);
+
+        try {
+            return reader.readBundle();
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            throw new IllegalArgumentException("Transport data is truncated.");
+        }
+    }
+
+    private static class Writer {
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        final Map<String, Integer> keys = new HashMap<>();
+
+
+        void writeBundle(Bundle bundle) {
+            writeVarInt(bundle.keySet().size());
+
+            for (String key : bundle.keySet()) {
+                writeKey(key);
+                writeValue(key, bundle.get(key));
+            }
+        }
+
+
+        void writeKey(String key) {
+            Integer index = keys.get(key);
+
+            if (index != null) {
+                writeVarInt(index + 1);
+            } else {
+                keys.put(key, keys.size());
+                writeVarInt(0);
+                writeString(key);
+            }
+        }
+
+
+        void writeValue(String key, Object value) {
+            if (value == null) {
+                out.write(T_NULL);
+            } else if (value instanceof String) {
+                out.write(T_STRING);
+                writeString((String) value);
+            } else if (value instanceof Integer) {
+                out.write(T_INT);
+                writeZigZag((Integer) value);
+            } else if (value instanceof Long) {
+                out.write(T_LONG);
+                writeLong((Long) value);
+            } else if (value instanceof Boolean) {
+                out.write(T_BOOLEAN);
+                out.write((Boolean) value ? 1 : 0);
+            } else if (value instanceof Double) {
+                out.write(T_DOUBLE);
+                writeLong(Double.doubleToLongBits((Double) value));
+            } else if (value instanceof Float) {
+                out.write(T_FLOAT);
+                writeZigZag(Float.floatToIntBits((Float) value));
+            } else if (value instanceof Short) {
+                out.write(T_SHORT);
+                writeZigZag((Short) value);
+            } else if (value instanceof Byte) {
+                out.write(T_BYTE);
+                out.write((Byte) value);
+            } else if (value instanceof byte[]) {
+                byte[] array = (byte[]) value;
+                out.write(T_BYTE_ARRAY);
+                writeVarInt(array.length);
+                out.write(array, 0, array.length);
+            } else if (value instanceof int[]) {
+                int[] array = (int[]) value;
+                out.write(T_INT_ARRAY);
+                writeVarInt(array.length);
+                for (int element : array) {
+                    writeZigZag(element);
+                }
+            } else if (value instanceof float[]) {
+                float[] array = (float[]) value;
+                out.write(T_FLOAT_ARRAY);
+                writeVarInt(array.length);
+                for (float element : array) {
+                    writeZigZag(Float.floatToIntBits(element));
+                }
+            } else if (value instanceof Bundle) {
+                out.write(T_BUNDLE);
+                writeBundle((Bundle) value);
+            } else if (value instanceof List) {
+                List<?> list = (List<?>) value;
+                out.write(T_BUNDLE_LIST);
+                writeVarInt(list.size());
+                for (Object element : list) {
+                    if (!(element instanceof Bundle)) {
+                        throw new IllegalArgumentException("List " + key + " contains unsupported element: "
+                            + (element == null ? "null" : element.getClass().getSimpleName()));
+                    }
+                    writeBundle((Bundle) element);
+                }
+            } else {
+                throw new IllegalArgumentException("Value " + key + " has unsupported type: "
+                    + value.getClass().getSimpleName());
+            }
+        }
+
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(UTF8);
+            writeVarInt(bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+
+
+        void writeZigZag(int value) {
+            writeVarInt((value << 1) ^ (value >> 31));
+        }
+
+
+        void writeVarInt(int value) {
+            while ((value & ~0x7f) != 0) {
+                out.write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+
+
+        void writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (value >>> shift));
+            }
+        }
+    }
+
+    private static class Reader {
+
+        final byte[] data;
+        int position;
+        final List<String> keys = new ArrayList<>();
+
+
+        Reader(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+
+        Bundle readBundle() {
+            Bundle bundle = new Bundle();
+            int count = readVarInt();
+
+            for (int i = 0; i < count; i++) {
+                String key = readKey();
+                readValue(bundle, key);
+            }
+
+            return bundle;
+        }
+
+
+        String readKey() {
+            int index = readVarInt();
+
+            if (index == 0) {
+                String key = readString();
+                keys.add(key);
+                return key;
+            }
+
+            if (index > keys.size()) {
+                throw new IllegalArgumentException("Unknown key reference: " + index);
+            }
+
+            return keys.get(index - 1);
+        }
+
+
+        void readValue(Bundle bundle, String key) {
+            int type = data[position++];
+
+            switch (type) {
+                case T_NULL:
+                    bundle.putString(key, null);
+                    break;
+
+                case T_STRING:
+                    bundle.putString(key, readString());
+                    break;
+
+                case T_INT:
+                    bundle.putInt(key, readZigZag());
+                    break;
+
+                case T_LONG:
+                    bundle.putLong(key, readLong());
+                    break;
+
+                case T_BOOLEAN:
+                    bundle.putBoolean(key, data[position++] != 0);
+                    break;
+
+                case T_DOUBLE:
+                    bundle.putDouble(key, Double.longBitsToDouble(readLong()));
+                    break;
+
+                case T_FLOAT:
+                    bundle.putFloat(key, Float.intBitsToFloat(readZigZag()));
+                    break;
+
+                case T_SHORT:
+                    bundle.putShort(key, (short) readZigZag());
+                    break;
+
+                case T_BYTE:
+                    bundle.putByte(key, data[position++]);
+                    break;
+
+                case T_BYTE_ARRAY: {
+                    int length = readLength();
+                    byte[] array = new byte[length];
+                    System.arraycopy(data, position, array, 0, length);
+                    position += length;
+                    bundle.putByteArray(key, array);
+                }
+                break;
+
+                case T_INT_ARRAY: {
+                    int[] array = new int[readLength()];
+                    for (int i = 0; i < array.length; i++) {
+                        array[i] = readZigZag();
+                    }
+                    bundle.putIntArray(key, array);
+                }
+                break;
+
+                case T_FLOAT_ARRAY: {
+                    float[] array = new float[readLength()];
+                    for (int i = 0; i < array.length; i++) {
+                        array[i] = Float.intBitsToFloat(readZigZag());
+                    }
+                    bundle.putFloatArray(key, array);
+                }
+                break;
+
+                case T_BUNDLE:
+                    bundle.putBundle(key, readBundle());
+                    break;
+
+                case T_BUNDLE_LIST: {
+                    int count = readLength();
+                    ArrayList<Bundle> list = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        list.add(readBundle());
+                    }
+                    bundle.putParcelableArrayList(key, list);
+                }
+                break;
+
+                default:
+                    throw new IllegalArgumentException("Unknown value type " + type + " for " + key);
+            }
+        }
+
+
+        String readString() {
+            int length = readLength();
+            String value = new String(data, position, length, UTF8);
+            position += length;
+            return value;
+        }
+
+
+        int readLength() {
+            int length = readVarInt();
+
+            if (length < 0 || length > data.length - position) {
+                throw new IllegalArgumentException("Invalid length: " + length);
+            }
+
+            return length;
+        }
+
+
+        int readZigZag() {
+            int value = readVarInt();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+
+        int readVarInt() {
+            int value = 0;
+
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = data[position++];
+                value |= (b & 0x7f) << shift;
+
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+
+            throw new IllegalArgumentException("Malformed varint.");
+        }
+
+
+        long readLong() {
+            long value = 0;
+
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (data[position++] & 0xff);
+            }
+
+            return value;
+        }
+    }
+
+}
@@ -1,5 +1,7 @@
 package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.tasks;
 
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkUtil;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.data.ServiceResult;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.data.ServiceTransport;
 
 /**
@@ -45,6 +47,64 @@ public class ServiceTask implements Runnable {
         return mTransport;
     }
 
+
+    public ServiceTaskPriority getPriority() {
+        return ServiceTaskPriority.Normal;
+    }
+
+
+    /**
+     * How long task can wait in queue, before it's dropped (0 = no limit).
+     */
+    public long getMaxQueueTime_ms() {
+        return 0;
+    }
+
+
+    /**
+     * Tasks with same key are duplicates, so new one is not queued while one is already waiting (null = no
+     * coalescing).
+     */
+    public String getCoalesceKey() {
+        return null;
+    }
+
+
+    /**
+     * Client is waiting for result of this task (task was started by service command).
+     */
+    public boolean hasClient() {
+        return mTransport != null && mTransport.hasServiceCommand();
+    }
+
+
+    /**
+     * Sends error to client, when task is not run.
+     */
+    public void sendErrorResponse(String errorDescription) {
+        if (!hasClient()) {
+            return;
+        }
+
+        ServiceResult result = new ServiceResult();
+        result.setResultError(-1, errorDescription);
+        RileyLinkUtil.sendServiceTransportResponse(mTransport.clone(), result);
+    }
+
+
+    /**
+     * Sends result of task, that was run instead of this one (same coalesce key), to client of this task.
+     */
+    public void sendResponseOf(ServiceTask task) {
+        ServiceTransport transport = task.getServiceTransport();
+
+        if (!hasClient() || transport == null || !transport.hasServiceResult()) {
+            return;
+        }
+
+        RileyLinkUtil.sendServiceTransportResponse(mTransport.clone(), transport.getServiceResult());
+    }
+
     /*
     protected void sendResponse(ServiceResult result) {
         RoundtripService.getInstance().sendServiceTransportResponse(mTransport,result);
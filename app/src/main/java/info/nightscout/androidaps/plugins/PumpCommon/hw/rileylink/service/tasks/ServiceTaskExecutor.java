@@ -2,19 +2,49 @@ package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.tasks
 
 import android.util.Log;
 
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkUtil;
 
 /**
  * Created by geoff on 7/9/16.
+ * <p>
+ * Runs tasks one at a time, ordered by priority (FIFO within same priority). Task that waited longer than its max
+ * queue time is dropped, and task with coalesce key isn't queued if same task is already waiting (its client gets
+ * result of waiting task). Long running tasks call runUrgentTasks at points where they can be interrupted, so that
+ * therapy commands don't wait for them.
  */
 public class ServiceTaskExecutor extends ThreadPoolExecutor {
     private static final String TAG = "ServiceTaskExecutor";
     private static ServiceTaskExecutor instance;
-    private static LinkedBlockingQueue<Runnable> taskQueue = new LinkedBlockingQueue<>();
+    private static AtomicLong sequence = new AtomicLong();
+    private static final Map<String, ServiceTaskMetrics> metrics = new HashMap<>();
+    private static volatile Thread executorThread;
+
+    private static PriorityBlockingQueue<Runnable> taskQueue = new PriorityBlockingQueue<>(11, new Comparator<Runnable>() {
+
+        @Override
+        public int compare(Runnable r1, Runnable r2) {
+            QueuedTask task1 = (QueuedTask) r1;
+            QueuedTask task2 = (QueuedTask) r2;
+
+            int priority = task1.priority.compareTo(task2.priority);
+
+            if (priority != 0) {
+                return priority;
+            }
+
+            return task1.sequence < task2.sequence ? -1 : (task1.sequence == task2.sequence ? 0 : 1);
+        }
+    });
 
     static {
         instance = new ServiceTaskExecutor();
@@ -26,27 +56,200 @@ public class ServiceTaskExecutor extends ThreadPoolExecutor {
 
 
     public static ServiceTask startTask(ServiceTask task) {
-        instance.execute(task); // task will be run on async thread from pool.
+        synchronized (taskQueue) {
+            String coalesceKey = task.getCoalesceKey();
+
+            if (coalesceKey != null) {
+                for(Runnable runnable : taskQueue) {
+                    QueuedTask queued = (QueuedTask) runnable;
+
+                    if (coalesceKey.equals(queued.task.getCoalesceKey()) && queued.addDuplicate(task)) {
+                        Log.v(TAG, "Task " + getTaskName(task) + " already queued, not queuing it again.");
+                        getMetrics(task).addCoalesced();
+                        return queued.task;
+                    }
+                }
+            }
+
+            instance.execute(new QueuedTask(task)); // task will be run on async thread from pool.
+        }
+
         return task;
     }
 
 
-    // FIXME
-    protected void beforeExecute(Thread t, Runnable r) {
-        // This is run on either caller UI thread or Service UI thread.
-        ServiceTask task = (ServiceTask) r;
-        Log.v(TAG, "About to run task " + task.getClass().getSimpleName());
+    /**
+     * Called by long running tasks at points where they can be interrupted (for example between history pages). Runs
+     * (on calling thread) queued tasks that have higher priority than task that is running.
+     */
+    public static void runUrgentTasks() {
+        if (Thread.currentThread() != executorThread) {
+            return;
+        }
+
+        ServiceTask current = RileyLinkUtil.getCurrentTask();
+
+        if (current == null) {
+            return;
+        }
+
+        QueuedTask urgent;
+
+        while ((urgent = pollTaskWithHigherPriority(current.getPriority())) != null) {
+            Log.i(TAG, "Task " + getTaskName(urgent.task) + " preempts " + getTaskName(current));
+
+            RileyLinkUtil.suspendCurrentTask();
+            try {
+                runTask(urgent, true);
+            } finally {
+                RileyLinkUtil.resumeCurrentTask(current);
+            }
+        }
+    }
+
+
+    private static QueuedTask pollTaskWithHigherPriority(ServiceTaskPriority priority) {
+        synchronized (taskQueue) {
+            QueuedTask head = (QueuedTask) taskQueue.peek();
+
+            if (head != null && head.priority.isHigherThan(priority) && taskQueue.remove(head)) {
+                return head;
+            }
+
+            return null;
+        }
+    }
+
+
+    private static void runTask(QueuedTask queued, boolean preempting) {
+        ServiceTask task = queued.task;
+        List<ServiceTask> duplicates = queued.start();
+        long start = now();
+        long queueWait = start - queued.queuedAt;
+
+        if (task.getMaxQueueTime_ms() > 0 && queueWait > task.getMaxQueueTime_ms()) {
+            Log.w(TAG, "Dropping task " + getTaskName(task) + ", it waited " + queueWait + " ms in queue (max "
+                + task.getMaxQueueTime_ms() + " ms).");
+            getMetrics(task).addExpired(queueWait);
+
+            task.sendErrorResponse("Task expired before it was run.");
+
+            for(ServiceTask duplicate : duplicates) {
+                duplicate.sendErrorResponse("Task expired before it was run.");
+            }
+            return;
+        }
+
+        Log.v(TAG, "About to run task " + getTaskName(task));
         RileyLinkUtil.setCurrentTask(task);
         task.preOp();
+
+        try {
+            task.run();
+        } finally {
+            task.postOp();
+            Log.v(TAG, "Finishing task " + getTaskName(task));
+            RileyLinkUtil.finishCurrentTask(task);
+
+            for(ServiceTask duplicate : duplicates) {
+                duplicate.sendResponseOf(task);
+            }
+
+            long serviceTime = now() - start;
+            ServiceTaskMetrics taskMetrics = getMetrics(task);
+            taskMetrics.addExecuted(queueWait, serviceTime, preempting);
+            Log.v(TAG, "Task " + getTaskName(task) + " waited " + queueWait + " ms, ran " + serviceTime + " ms. "
+                + taskMetrics);
+        }
     }
 
 
-    // FIXME
-    protected void afterExecute(Runnable r, Throwable t) {
-        // This is run on either caller UI thread or Service UI thread.
-        ServiceTask task = (ServiceTask) r;
-        task.postOp();
-        Log.v(TAG, "Finishing task " + task.getClass().getSimpleName());
-        RileyLinkUtil.finishCurrentTask(task);
+    // monotonic time (SystemClock.elapsedRealtime would do too, but this also works outside of Android)
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+
+    private static String getTaskName(ServiceTask task) {
+        return task.getClass().getSimpleName();
+    }
+
+
+    private static ServiceTaskMetrics getMetrics(ServiceTask task) {
+        synchronized (metrics) {
+            String name = getTaskName(task);
+            ServiceTaskMetrics taskMetrics = metrics.get(name);
+
+            if (taskMetrics == null) {
+                taskMetrics = new ServiceTaskMetrics(name);
+                metrics.put(name, taskMetrics);
+            }
+
+            return taskMetrics;
+        }
+    }
+
+
+    /**
+     * Snapshot of metrics for all task types that were started so far.
+     */
+    public static List<ServiceTaskMetrics> getTaskMetrics() {
+        synchronized (metrics) {
+            List<ServiceTaskMetrics> list = new ArrayList<>();
+
+            for(ServiceTaskMetrics taskMetrics : metrics.values()) {
+                list.add(new ServiceTaskMetrics(taskMetrics));
+            }
+
+            return list;
+        }
+    }
+
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        executorThread = t;
+    }
+
+
+    private static class QueuedTask implements Runnable {
+
+        final ServiceTask task;
+        final ServiceTaskPriority priority;
+        final long sequence;
+        final long queuedAt;
+        // coalesced tasks, their clients get result of this task
+        private final List<ServiceTask> duplicates = new ArrayList<>();
+        private boolean started = false;
+
+
+        QueuedTask(ServiceTask task) {
+            this.task = task;
+            this.priority = task.getPriority();
+            this.sequence = ServiceTaskExecutor.sequence.incrementAndGet();
+            this.queuedAt = now();
+        }
+
+
+        synchronized boolean addDuplicate(ServiceTask duplicate) {
+            if (started) {
+                return false;
+            }
+
+            duplicates.add(duplicate);
+            return true;
+        }
+
+
+        synchronized List<ServiceTask> start() {
+            started = true;
+            return duplicates;
+        }
+
+
+        @Override
+        public void run() {
+            runTask(this, false);
+        }
     }
 }
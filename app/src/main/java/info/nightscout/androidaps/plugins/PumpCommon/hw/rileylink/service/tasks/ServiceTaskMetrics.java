@@ -0,0 +1,126 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.tasks;
+
+/**
+ * Queue wait and service (run) time statistics for one task type.
+ */
+public class ServiceTaskMetrics {
+
+    private final String taskName;
+
+    private int executed = 0;
+    private int expired = 0;
+    private int coalesced = 0;
+    private int preempting = 0;
+
+    private long totalQueueWait_ms = 0;
+    private long maxQueueWait_ms = 0;
+    private long totalServiceTime_ms = 0;
+    private long maxServiceTime_ms = 0;
+
+
+    public ServiceTaskMetrics(String taskName) {
+        this.taskName = taskName;
+    }
+
+
+    public ServiceTaskMetrics(ServiceTaskMetrics metrics) {
+        synchronized (metrics) {
+            this.taskName = metrics.taskName;
+            this.executed = metrics.executed;
+            this.expired = metrics.expired;
+            this.coalesced = metrics.coalesced;
+            this.preempting = metrics.preempting;
+            this.totalQueueWait_ms = metrics.totalQueueWait_ms;
+            this.maxQueueWait_ms = metrics.maxQueueWait_ms;
+            this.totalServiceTime_ms = metrics.totalServiceTime_ms;
+            this.maxServiceTime_ms = metrics.maxServiceTime_ms;
+        }
+    }
+
+
+    synchronized void addExecuted(long queueWait_ms, long serviceTime_ms, boolean preempted) {
+        executed++;
+        if (preempted)
+            preempting++;
+
+        addQueueWait(queueWait_ms);
+        totalServiceTime_ms += serviceTime_ms;
+        maxServiceTime_ms = Math.max(maxServiceTime_ms, serviceTime_ms);
+    }
+
+
+    synchronized void addExpired(long queueWait_ms) {
+        expired++;
+        addQueueWait(queueWait_ms);
+    }
+
+
+    synchronized void addCoalesced() {
+        coalesced++;
+    }
+
+
+    private void addQueueWait(long queueWait_ms) {
+        totalQueueWait_ms += queueWait_ms;
+        maxQueueWait_ms = Math.max(maxQueueWait_ms, queueWait_ms);
+    }
+
+
+    public String getTaskName() {
+        return taskName;
+    }
+
+
+    public synchronized int getExecuted() {
+        return executed;
+    }
+
+
+    public synchronized int getExpired() {
+        return expired;
+    }
+
+
+    public synchronized int getCoalesced() {
+        return coalesced;
+    }
+
+
+    /**
+     * Number of runs in which task preempted long running task.
+     */
+    public synchronized int getPreempting() {
+        return preempting;
+    }
+
+
+    public synchronized long getAverageQueueWait_ms() {
+        int count = executed + expired;
+        return count == 0 ? 0 : totalQueueWait_ms / count;
+    }
+
+
+    public synchronized long getMaxQueueWait_ms() {
+        return maxQueueWait_ms;
+    }
+
+
+    public synchronized long getAverageServiceTime_ms() {
+        return executed == 0 ? 0 : totalServiceTime_ms / executed;
+    }
+
+
+    public synchronized long getMaxServiceTime_ms() {
+        return maxServiceTime_ms;
+    }
+
+
+    @Override
+    public synchronized String toString() {
+        return "ServiceTaskMetrics [task=" + taskName + ", executed=" + executed + ", expired=" + expired
+            + ", coalesced=" + coalesced + ", preempting=" + preempting + ", queueWait avg/max="
+            + getAverageQueueWait_ms() + "/" + maxQueueWait_ms + " ms, serviceTime avg/max="
+            + getAverageServiceTime_ms() + "/" + maxServiceTime_ms + " ms]";
+    }
+
+}
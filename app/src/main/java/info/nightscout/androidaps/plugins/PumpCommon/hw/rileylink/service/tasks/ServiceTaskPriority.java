@@ -0,0 +1,18 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.tasks;
+
+/**
+ * Order in which queued tasks are run (first has highest priority).
+ */
+public enum ServiceTaskPriority {
+
+    Therapy, // set TBR, bolus, cancel
+    Normal, // status reads, tuning
+    Background, // long running reads (history, profiles)
+    ;
+
+
+    public boolean isHigherThan(ServiceTaskPriority other) {
+        return this.ordinal() < other.ordinal();
+    }
+
+}
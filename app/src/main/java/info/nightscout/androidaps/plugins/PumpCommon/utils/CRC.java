@@ -44,24 +44,67 @@ public class CRC {
     }
 
 
+    /**
+     * Crc8 of length bytes of data, starting at offset.
+     */
+    public static byte crc8(byte[] data, int offset, int length) {
+        int result = 0;
+        for(int i = offset; i < offset + length; i++) {
+            result = crc8lookup[(result ^ data[i]) & 0xFF];
+        }
+        return (byte) result;
+    }
+
+
+    public static final int CRC16_CCITT_INIT = 0xFFFF;
+
+    private static final int CRC16_CCITT_POLYNOMIAL = 0x1021;
+
+    static final int[] crc16lookup = createCrc16Lookup();
+
+
+    private static int[] createCrc16Lookup() {
+        int[] table = new int[256];
+
+        for(int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for(int bit = 0; bit < 8; bit++) {
+                crc = ((crc & 0x8000) != 0) ? (crc << 1) ^ CRC16_CCITT_POLYNOMIAL : crc << 1;
+            }
+            table[i] = crc & 0xffff;
+        }
+
+        return table;
+    }
+
+
     public static byte[] calculate16CCITT(byte[] data) {
-        int crc = 0xFFFF;
-        int polynomial = 0x1021;
+        int crc = CRC16_CCITT_INIT;
         if (data != null) {
-            if (data.length > 0) {
-                for(int j = 0; j < data.length; j++) {
-                    byte b = data[j];
-                    for(int i = 0; i < 8; i++) {
-                        boolean bit = ((b >> (7 - i) & 1) == 1);
-                        boolean c15 = ((crc >> 15 & 1) == 1);
-                        crc <<= 1;
-                        if (c15 ^ bit) crc ^= polynomial;
-                    }
-                }
-            }
+            crc = update16CCITT(crc, data, 0, data.length);
         }
-        crc &= 0xffff;
         return new byte[]{(byte) ((crc & 0xFF00) >> 8), (byte) (crc & 0xFF)};
     }
 
+
+    /**
+     * CRC16-CCITT of length bytes of data (starting at offset), as int (no array is allocated).
+     */
+    public static int calculate16CCITT(byte[] data, int offset, int length) {
+        return update16CCITT(CRC16_CCITT_INIT, data, offset, length);
+    }
+
+
+    /**
+     * Continues CRC16-CCITT calculation (started with CRC16_CCITT_INIT) over length bytes of data, starting at
+     * offset. Used for checking history pages while frames are still arriving (see CRC16CCITT).
+     */
+    public static int update16CCITT(int crc, byte[] data, int offset, int length) {
+        int end = offset + length;
+        for(int i = offset; i < end; i++) {
+            crc = (crc << 8) ^ crc16lookup[((crc >> 8) ^ data[i]) & 0xff];
+        }
+        return crc & 0xffff;
+    }
+
 }
@@ -0,0 +1,46 @@
+package info.nightscout.androidaps.plugins.PumpCommon.utils;
+
+/**
+ * Incremental CRC16-CCITT (same result as CRC.calculate16CCITT), for data that arrives in parts (history page
+ * frames). Not thread safe.
+ */
+public class CRC16CCITT {
+
+    private int crc = CRC.CRC16_CCITT_INIT;
+    private int length = 0;
+
+
+    public CRC16CCITT update(byte[] data, int offset, int length) {
+        crc = CRC.update16CCITT(crc, data, offset, length);
+        this.length += length;
+        return this;
+    }
+
+
+    public CRC16CCITT update(byte[] data) {
+        return update(data, 0, data.length);
+    }
+
+
+    /**
+     * @return CRC of all data passed to update so far (calculator can still be updated after this)
+     */
+    public int finish() {
+        return crc;
+    }
+
+
+    /**
+     * @return number of bytes included in CRC so far
+     */
+    public int getLength() {
+        return length;
+    }
+
+
+    public void reset() {
+        crc = CRC.CRC16_CCITT_INIT;
+        length = 0;
+    }
+
+}
@@ -131,6 +131,24 @@ public class HexDump {
     }
 
 
+    public static String toHexStringDisplayable(byte[] arr, int offset, int length) {
+        StringBuilder sb = new StringBuilder();
+
+        if (arr == null) {
+            sb.append("Null array");
+        } else if (length == 0) {
+            sb.append("Zero-length array");
+        } else {
+            for(int i = offset; i < offset + length; i++) {
+                sb.append(getCorrectHexValue(arr[i]));
+                sb.append(" ");
+            }
+        }
+
+        return sb.toString();
+    }
+
+
     public static String toHexStringDisplayable(List<Byte> data) {
         StringBuilder sb = new StringBuilder();
 
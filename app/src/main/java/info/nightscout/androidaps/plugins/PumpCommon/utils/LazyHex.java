@@ -0,0 +1,111 @@
+package info.nightscout.androidaps.plugins.PumpCommon.utils;
+
+/**
+ * Hex dumps for log arguments. Returned objects only keep reference to data, hex string is created when toString is
+ * called, which slf4j does only when level is enabled. So use it with parameterized messages:
+ * LOG.debug("Sent: {}", LazyHex.shortHex(data)), never with string concatenation.
+ * <p>
+ * Data is not copied, so it must not be changed after it was logged (logging is synchronous, so this is only problem
+ * with async appenders).
+ */
+public class LazyHex {
+
+    private static final char[] HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+
+
+    private LazyHex() {
+    }
+
+
+    /**
+     * Same format as ByteUtil.shortHexString ("0A 1B 2C").
+     */
+    public static Object shortHex(byte[] data) {
+        return new ShortHex(data);
+    }
+
+
+    /**
+     * Same format as HexDump.toHexStringDisplayable ("0A 1B 2C ").
+     */
+    public static Object displayable(byte[] data) {
+        return new Displayable(data);
+    }
+
+
+    /**
+     * One byte as "0x0A".
+     */
+    public static Object hexByte(byte value) {
+        return new HexByte(value);
+    }
+
+
+    static String toShortHex(byte[] data) {
+        if (data == null || data.length == 0) {
+            return "";
+        }
+
+        char[] chars = new char[data.length * 3 - 1];
+        int index = 0;
+
+        for(int i = 0; i < data.length; i++) {
+            if (i > 0) {
+                chars[index++] = ' ';
+            }
+            chars[index++] = HEX_DIGITS[(data[i] >> 4) & 0x0F];
+            chars[index++] = HEX_DIGITS[data[i] & 0x0F];
+        }
+
+        return new String(chars);
+    }
+
+    private static class ShortHex {
+
+        private final byte[] data;
+
+
+        ShortHex(byte[] data) {
+            this.data = data;
+        }
+
+
+        @Override
+        public String toString() {
+            return toShortHex(data);
+        }
+    }
+
+    private static class Displayable {
+
+        private final byte[] data;
+
+
+        Displayable(byte[] data) {
+            this.data = data;
+        }
+
+
+        @Override
+        public String toString() {
+            return HexDump.toHexStringDisplayable(data);
+        }
+    }
+
+    private static class HexByte {
+
+        private final byte value;
+
+
+        HexByte(byte value) {
+            this.value = value;
+        }
+
+
+        @Override
+        public String toString() {
+            return new String(new char[]{'0', 'x', HEX_DIGITS[(value >> 4) & 0x0F], HEX_DIGITS[value & 0x0F]});
+        }
+    }
+
+}
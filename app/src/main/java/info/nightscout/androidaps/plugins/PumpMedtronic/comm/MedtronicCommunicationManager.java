@@ -12,6 +12,13 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkCommunicationManager;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkUtil;
@@ -22,13 +29,18 @@ import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.Radio
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RLMessage;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RLMessageType;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkTargetFrequency;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.tasks.ServiceTaskExecutor;
 import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
 import info.nightscout.androidaps.plugins.PumpCommon.utils.HexDump;
 import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.BasalProfile;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.HistoryPageBuffer;
 import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.Page;
 import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.RawHistoryPage;
 import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.TempBasalPair;
 import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history.Record;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2.MedtronicPumpHistoryDecoder;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2.PumpHistoryCursor;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2.PumpHistorySync;
 import info.nightscout.androidaps.plugins.PumpMedtronic.comm.message.ButtonPressCarelinkMessageBody;
 import info.nightscout.androidaps.plugins.PumpMedtronic.comm.message.CarelinkLongMessageBody;
 import info.nightscout.androidaps.plugins.PumpMedtronic.comm.message.CarelinkShortMessageBody;
@@ -56,9 +68,21 @@ public class MedtronicCommunicationManager extends RileyLinkCommunicationManager
     private static final Logger LOG = LoggerFactory.getLogger(MedtronicCommunicationManager.class);
     private static final int MAX_COMMAND_RETRIES = 2;
     private static final int DEFAULT_TIMEOUT = 2000;
+    private static final int MAX_FRAME_RETRIES = 6;
 
     static MedtronicCommunicationManager medtronicCommunicationManager;
     private MedtronicConverter medtronicConverter;
+    private final MedtronicResponseCache responseCache = new MedtronicResponseCache();
+    // CRC checking and decoding of history pages, so that it doesn't hold up radio communication
+    private final ExecutorService historyWorker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "MedtronicHistoryWorker");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
 
     String errorMessage;
 
@@ -88,14 +112,15 @@ public class MedtronicCommunicationManager extends RileyLinkCommunicationManager
 
         wakeUp(true);
 
-        MedtronicDeviceType pumpModel = getPumpModel();
+        // we need real response here, not cached one
+        MedtronicDeviceType pumpModel = getPumpModel(false);
 
         // Andy (4.6.2018): we do retry if no data returned. We might need to do that everywhere, but that might require little bit of rewrite of RF Code.
         if (pumpModel == MedtronicDeviceType.Unknown_Device) {
 
             SystemClock.sleep(1000);
 
-            pumpModel = getPumpModel();
+            pumpModel = getPumpModel(false);
         }
 
         return (pumpModel != MedtronicDeviceType.Unknown_Device);
@@ -204,35 +229,99 @@ public class MedtronicCommunicationManager extends RileyLinkCommunicationManager
 
 
     public Page getPumpHistoryPage(int pageNumber) {
-        RawHistoryPage rval = new RawHistoryPage();
+        return getPage(downloadPumpHistoryPage(pageNumber), pageNumber);
+    }
+
+
+    /**
+     * Downloads history page. Frames are copied into preallocated page buffer, while CRC (per frame), progress
+     * announcements and (after last frame) page decoding run on history worker, so radio loop only waits for the
+     * pump. Returned future completes when page is decoded, so next page can already be downloaded while this one
+     * is still being parsed.
+     */
+    private Future<Page> downloadPumpHistoryPage(final int pageNumber) {
+        final HistoryPageBuffer pageBuffer = downloadHistoryPageBuffer(pageNumber);
+
+        FutureTask<Page> decodeTask = new FutureTask<Page>(new Callable<Page>() {
+
+            @Override
+            public Page call() throws Exception {
+                pageBuffer.updateCrc(pageBuffer.getLength());
+
+                if (!pageBuffer.isComplete()) {
+                    LOG.warn("getPumpHistoryPage: short page.  Expected length of 1024, found length of {}", pageBuffer.getLength());
+                }
+                if (!pageBuffer.isChecksumOK()) {
+                    LOG.error("getPumpHistoryPage: checksum is wrong");
+                }
+
+                if (MedtronicUtil.isLowLevelDebug()) {
+                    pageBuffer.toRawHistoryPage().dumpToDebug();
+                }
+
+                Page page = new Page();
+                // FIXME
+                page.parseFrom(pageBuffer.getData(), MedtronicDeviceType.Medtronic_522);
+
+                return page;
+            }
+        });
+
+        historyWorker.execute(decodeTask);
+
+        return decodeTask;
+    }
+
+
+    /**
+     * Downloads history page, without decoding it.
+     */
+    public RawHistoryPage getRawPumpHistoryPage(int pageNumber) {
+        return downloadHistoryPageBuffer(pageNumber).toRawHistoryPage();
+    }
+
+
+    private HistoryPageBuffer downloadHistoryPageBuffer(int pageNumber) {
+        final HistoryPageBuffer pageBuffer = new HistoryPageBuffer(pageNumber);
         wakeUp(receiverDeviceAwakeForMinutes, false);
         PumpMessage getHistoryMsg = makePumpMessage(MedtronicCommandType.GetHistoryData, new GetHistoryPageCarelinkMessageBody(pageNumber));
-        //LOG.info("getPumpHistoryPage("+pageNumber+"): "+ByteUtil.shortHexString(getHistoryMsg.getTxData()));
         // Ask the pump to transfer history (we get first frame?)
         PumpMessage firstResponse = runCommandWithArgs(getHistoryMsg);
-        //LOG.info("getPumpHistoryPage("+pageNumber+"): " + ByteUtil.shortHexString(firstResponse.getContents()));
 
         PumpMessage ackMsg = makePumpMessage(MedtronicCommandType.CommandACK, new PumpAckMessageBody());
         GetHistoryPageCarelinkMessageBody currentResponse = new GetHistoryPageCarelinkMessageBody(firstResponse.getMessageBody().getTxData());
         int expectedFrameNum = 1;
         boolean done = false;
-        //while (expectedFrameNum == currentResponse.getFrameNumber()) {
         int failures = 0;
+
         while (!done) {
             // examine current response for problems.
             byte[] frameData = currentResponse.getFrameData();
-            if ((frameData != null) && (frameData.length > 0) && currentResponse.getFrameNumber() == expectedFrameNum) {
+            final int frameNumber = currentResponse.getFrameNumber();
+
+            if ((frameData != null) && (frameData.length > 0) && frameNumber == expectedFrameNum) {
                 // success! got a frame.
-                if (frameData.length != 64) {
-                    LOG.warn("Expected frame of length 64, got frame of length " + frameData.length);
-                    // but append it anyway?
+                if (frameData.length != HistoryPageBuffer.FRAME_SIZE) {
+                    LOG.warn("Expected frame of length 64, got frame of length {}", frameData.length);
                 }
-                // handle successful frame data
-                rval.appendData(currentResponse.getFrameData());
-                RileyLinkMedtronicService.getInstance().announceProgress(((100 / 16) * currentResponse.getFrameNumber() + 1));
-                LOG.info("getPumpHistoryPage: Got frame " + currentResponse.getFrameNumber());
+
+                final int filledLength = pageBuffer.putFrame(frameNumber, frameData);
+
+                historyWorker.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        pageBuffer.updateCrc(filledLength);
+                        RileyLinkMedtronicService.getInstance().announceProgress(((100 / 16) * frameNumber + 1));
+                    }
+                });
+
+                LOG.info("getPumpHistoryPage: Got frame {}", frameNumber);
+
+                failures = 0;
+
                 // Do we need to ask for the next frame?
-                if (expectedFrameNum < 16) { // This number may not be correct for pumps other than 522/722
+                if (expectedFrameNum < HistoryPageBuffer.FRAME_COUNT) { // This number may not be correct for pumps other than 522/722
                     expectedFrameNum++;
                 } else {
                     done = true; // successful completion
@@ -240,67 +329,120 @@ public class MedtronicCommunicationManager extends RileyLinkCommunicationManager
             } else {
                 if (frameData == null) {
                     LOG.error("null frame data, retrying");
-                } else if (currentResponse.getFrameNumber() != expectedFrameNum) {
-                    LOG.warn("Expected frame number {}, received {} (retrying)", expectedFrameNum, currentResponse.getFrameNumber());
+                } else if (frameNumber != expectedFrameNum) {
+                    LOG.warn("Expected frame number {}, received {} (retrying)", expectedFrameNum, frameNumber);
                 } else if (frameData.length == 0) {
                     LOG.warn("Frame has zero length, retrying");
                 }
+
+                // only this frame is retried (pump resends frame it didn't get ACK for), frames already received
+                // are kept
                 failures++;
-                if (failures == 6) {
-                    LOG.error("6 failures in attempting to download frame {} of page {}, giving up.", expectedFrameNum, pageNumber);
+                if (failures == MAX_FRAME_RETRIES) {
+                    LOG.error("{} failures in attempting to download frame {} of page {}, giving up.", MAX_FRAME_RETRIES, expectedFrameNum, pageNumber);
                     done = true; // failure completion.
                 }
             }
+
             if (!done) {
                 // ask for next frame
                 PumpMessage nextMsg = (PumpMessage)sendAndListen(ackMsg);
                 currentResponse = new GetHistoryPageCarelinkMessageBody(nextMsg.getMessageBody().getTxData());
             }
         }
-        if (rval.getLength() != 1024) {
-            LOG.warn("getPumpHistoryPage: short page.  Expected length of 1024, found length of " + rval.getLength());
-        }
-        if (!rval.isChecksumOK()) {
-            LOG.error("getPumpHistoryPage: checksum is wrong");
-        }
 
-        rval.dumpToDebug();
+        return pageBuffer;
+    }
+
 
-        Page page = new Page();
-        //page.parseFrom(rval.getData(),PumpModel.MM522);
-        // FIXME
-        page.parseFrom(rval.getData(), MedtronicDeviceType.Medtronic_522);
+    private Page getPage(Future<Page> pageFuture, int pageNumber) {
+        try {
+            return pageFuture.get();
+        } catch (InterruptedException ex) {
+            LOG.error("Interrupted while waiting for decode of page {}.", pageNumber);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            LOG.error("Error decoding page {}: {}", pageNumber, ex.getCause().getMessage(), ex.getCause());
+        }
 
-        return page;
+        return new Page();
     }
 
 
     public ArrayList<Page> getAllHistoryPages() {
-        ArrayList<Page> pages = new ArrayList<>();
+        List<Future<Page>> pageFutures = new ArrayList<>();
 
         for(int pageNum = 0; pageNum < 16; pageNum++) {
-            pages.add(getPumpHistoryPage(pageNum));
+            // therapy commands don't need to wait for whole history
+            ServiceTaskExecutor.runUrgentTasks();
+            pageFutures.add(downloadPumpHistoryPage(pageNum));
+        }
+
+        ArrayList<Page> pages = new ArrayList<>();
+
+        for(int pageNum = 0; pageNum < pageFutures.size(); pageNum++) {
+            pages.add(getPage(pageFutures.get(pageNum), pageNum));
         }
 
         return pages;
     }
 
 
+    /**
+     * Reads pages (newest first), until we get to page with records older than when.
+     */
     public ArrayList<Page> getHistoryEventsSinceDate(Instant when) {
         ArrayList<Page> pages = new ArrayList<>();
+        LocalDateTime since = when.toDateTime().toLocalDateTime();
+
         for(int pageNum = 0; pageNum < 16; pageNum++) {
-            pages.add(getPumpHistoryPage(pageNum));
-            for(Page page : pages) {
-                for(Record r : page.mRecordList) {
-                    LocalDateTime timestamp = r.getTimestamp().getLocalDateTime();
-                    LOG.info("Found record: (" + r.getClass().getSimpleName() + ") " + timestamp.toString());
+            ServiceTaskExecutor.runUrgentTasks();
+            Page page = getPumpHistoryPage(pageNum);
+            pages.add(page);
+
+            boolean reachedOlder = false;
+
+            for(Record r : page.mRecordList) {
+                LocalDateTime timestamp = r.getTimestamp().getLocalDateTime();
+                LOG.info("Found record: ({}) {}", r.getClass().getSimpleName(), timestamp);
+
+                if (timestamp.isBefore(since)) {
+                    reachedOlder = true;
                 }
             }
+
+            if (reachedOlder) {
+                break;
+            }
         }
         return pages;
     }
 
 
+    /**
+     * Reads only history that is newer than the last sync (position is stored in PumpHistoryCursor). Usually
+     * that is just page 0. New cursor is not stored here, caller commits it (PumpHistorySync.commitCursor) once the
+     * records are stored, so records are never skipped if storing fails.
+     */
+    public PumpHistorySync getPumpHistorySinceLastSync() {
+        PumpHistoryCursor cursor = PumpHistoryCursor.load(RileyLinkUtil.getRileyLinkServiceData().pumpID);
+        PumpHistorySync historySync = new PumpHistorySync(new MedtronicPumpHistoryDecoder(), cursor, null);
+
+        LOG.debug("History sync from {}", cursor);
+
+        for(int pageNum = 0; pageNum < PumpHistorySync.MAX_PAGES; pageNum++) {
+            ServiceTaskExecutor.runUrgentTasks();
+            if (!historySync.processPage(pageNum, getRawPumpHistoryPage(pageNum))) {
+                break;
+            }
+        }
+
+        LOG.debug("History sync: {} pages read, {} new records.", historySync.getPages().size(), historySync.getNewEntries().size());
+
+        return historySync;
+    }
+
+
     public String getErrorResponse() {
         return this.errorMessage;
     }
@@ -342,11 +484,11 @@ public class MedtronicCommunicationManager extends RileyLinkCommunicationManager
     public byte[] createPumpMessageContent(RLMessageType type) {
         switch (type) {
             case PowerOn:
-                return MedtronicUtil.buildCommandPayload(MedtronicCommandType.RFPowerOn, //
+                return MedtronicUtil.buildCommandPayload(rileyLinkServiceData.pumpIDBytes, MedtronicCommandType.RFPowerOn, //
                         new byte[]{2, 1, (byte) receiverDeviceAwakeForMinutes}); // maybe this is better FIXME
 
             case ReadSimpleData:
-                return MedtronicUtil.buildCommandPayload(MedtronicCommandType.PumpModel, null);
+                return MedtronicUtil.buildCommandPayload(rileyLinkServiceData.pumpIDBytes, MedtronicCommandType.PumpModel, null);
         }
         return new byte[0];
     }
@@ -478,6 +620,26 @@ public class MedtronicCommunicationManager extends RileyLinkCommunicationManager
     }
 
 
+    /**
+     * Same as sendAndGetResponseWithCheck, but response can come from cache (see MedtronicResponseCache).
+     */
+    private MedtronicResponseCache.CachedResponse sendAndGetCachedResponse(final MedtronicCommandType commandType) {
+
+        return responseCache.get(commandType, new Callable<Object>() {
+
+            @Override
+            public Object call() {
+                return sendAndGetResponseWithCheck(commandType);
+            }
+        });
+    }
+
+
+    public MedtronicResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+
     private String checkResponseContent(PumpMessage response, String method, int expectedLength) {
 
         if (!response.isValid()) {
@@ -548,15 +710,26 @@ public class MedtronicCommunicationManager extends RileyLinkCommunicationManager
 
     public Float getRemainingInsulin() {
 
-        Object responseObject = sendAndGetResponseWithCheck(MedtronicCommandType.GetRemainingInsulin);
+        Object responseObject = sendAndGetCachedResponse(MedtronicCommandType.GetRemainingInsulin).getValue();
 
         return responseObject == null ? null : (Float) responseObject;
     }
 
 
     public MedtronicDeviceType getPumpModel() {
+        return getPumpModel(true);
+    }
 
-        Object responseObject = sendAndGetResponseWithCheck(MedtronicCommandType.PumpModel);
+
+    private MedtronicDeviceType getPumpModel(boolean useCache) {
+
+        Object responseObject;
+
+        if (useCache) {
+            responseObject = sendAndGetCachedResponse(MedtronicCommandType.PumpModel).getValue();
+        } else {
+            responseObject = sendAndGetResponseWithCheck(MedtronicCommandType.PumpModel);
+        }
 
         if (!RileyLinkUtil.isModelSet()) {
             RileyLinkUtil.setMedtronicPumpModel((MedtronicDeviceType) responseObject);
@@ -569,7 +742,7 @@ public class MedtronicCommunicationManager extends RileyLinkCommunicationManager
 
     public BasalProfile getBasalProfile() {
 
-        Object responseObject = sendAndGetResponseWithCheck(MedtronicCommandType.GetBasalProfileSTD);
+        Object responseObject = sendAndGetCachedResponse(MedtronicCommandType.GetBasalProfileSTD).getValue();
 
         return responseObject == null ? null : (BasalProfile) responseObject;
     }
@@ -577,15 +750,16 @@ public class MedtronicCommunicationManager extends RileyLinkCommunicationManager
 
     public LocalDateTime getPumpTime() {
 
-        Object responseObject = sendAndGetResponseWithCheck(MedtronicCommandType.RealTimeClock);
+        MedtronicResponseCache.CachedResponse response = sendAndGetCachedResponse(MedtronicCommandType.RealTimeClock);
 
-        return responseObject == null ? null : (LocalDateTime) responseObject;
+        // pump clock kept running since response was cached
+        return response.getValue() == null ? null : ((LocalDateTime) response.getValue()).plusMillis((int) response.getAge_ms());
     }
 
 
     public TempBasalPair getTemporaryBasal() {
 
-        Object responseObject = sendAndGetResponseWithCheck(MedtronicCommandType.ReadTemporaryBasal);
+        Object responseObject = sendAndGetCachedResponse(MedtronicCommandType.ReadTemporaryBasal).getValue();
 
         return responseObject == null ? null : (TempBasalPair) responseObject;
     }
@@ -593,7 +767,7 @@ public class MedtronicCommunicationManager extends RileyLinkCommunicationManager
 
     public List<PumpSettingDTO> getPumpSettings() {
 
-        Object responseObject = sendAndGetResponseWithCheck(MedtronicCommandType.getSettings(RileyLinkUtil.getMedtronicPumpModel()));
+        Object responseObject = sendAndGetCachedResponse(MedtronicCommandType.getSettings(RileyLinkUtil.getMedtronicPumpModel())).getValue();
 
         return responseObject == null ? null : (List<PumpSettingDTO>) responseObject;
     }
@@ -614,6 +788,8 @@ public class MedtronicCommunicationManager extends RileyLinkCommunicationManager
 
         PumpMessage pumpMessage = runCommandWithArgs(msg);
 
+        responseCache.invalidate(MedtronicCommandType.GetRemainingInsulin);
+
         if (debugSetCommands)
             LOG.debug("Set Bolus: {}", pumpMessage.getResponseContent());
 
@@ -636,6 +812,8 @@ public class MedtronicCommunicationManager extends RileyLinkCommunicationManager
 
         PumpMessage pumpMessage = runCommandWithArgs(msg);
 
+        responseCache.invalidate(MedtronicCommandType.ReadTemporaryBasal);
+
         if (debugSetCommands)
             LOG.debug("Set TBR: {}", pumpMessage.getResponseContent());
 
@@ -651,7 +829,7 @@ public class MedtronicCommunicationManager extends RileyLinkCommunicationManager
     // FIXME:
     public BatteryStatusDTO getRemainingBattery() {
 
-        Object responseObject = sendAndGetResponseWithCheck(MedtronicCommandType.GetBatteryStatus);
+        Object responseObject = sendAndGetCachedResponse(MedtronicCommandType.GetBatteryStatus).getValue();
 
         return responseObject == null ? null : (BatteryStatusDTO) responseObject;
     }
@@ -714,6 +892,8 @@ public class MedtronicCommunicationManager extends RileyLinkCommunicationManager
             responseMessage = runCommandWithArgsLong(MedtronicCommandType.SetBasalProfileA, body);
         }
 
+        responseCache.invalidate(MedtronicCommandType.GetBasalProfileSTD, MedtronicCommandType.GetBasalProfileA);
+
         if (debugSetCommands)
             LOG.debug("Set Basal Profile: {}", HexDump.toHexStringDisplayable(responseMessage.getRawContent()));
 
@@ -755,6 +935,8 @@ public class MedtronicCommunicationManager extends RileyLinkCommunicationManager
         // FIXME see decocare
         PumpMessage response = (PumpMessage)sendAndGetResponse(MedtronicCommandType.SetBolus, MedtronicUtil.getBolusStrokes(units));
 
+        responseCache.invalidate(MedtronicCommandType.GetRemainingInsulin);
+
         return response;
     }
 
@@ -0,0 +1,186 @@
+package info.nightscout.androidaps.plugins.PumpMedtronic.comm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicCommandType;
+
+/**
+ * Read-through cache for converted responses of Medtronic read commands. Each command type has its own time to live
+ * (0 = not cached), entries are invalidated by set commands that change them, and concurrent reads of same command
+ * share one radio exchange (callers that come while read is running, wait for its result).
+ */
+public class MedtronicResponseCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MedtronicResponseCache.class);
+
+    private final Map<MedtronicCommandType, CachedResponse> responses = new HashMap<>();
+    private final Map<MedtronicCommandType, FutureTask<Object>> inFlight = new HashMap<>();
+    private final Map<MedtronicCommandType, Integer> invalidations = new HashMap<>();
+
+
+    public static long getTimeToLive_ms(MedtronicCommandType commandType) {
+        switch (commandType) {
+            case PumpModel:
+                return 60 * 60 * 1000L;
+
+            case Settings:
+            case Settings_511:
+            case Settings_512:
+            case GetBasalProfileSTD:
+                return 10 * 60 * 1000L;
+
+            case GetBatteryStatus:
+                return 5 * 60 * 1000L;
+
+            case GetRemainingInsulin:
+                return 60 * 1000L;
+
+            case ReadTemporaryBasal:
+                return 30 * 1000L;
+
+            case RealTimeClock:
+                return 10 * 1000L;
+
+            default:
+                return 0L;
+        }
+    }
+
+
+    /**
+     * Returns cached response (if it's not older than TTL), otherwise runs loader (or waits for the same read that
+     * is already running). Null responses are not cached.
+     */
+    public CachedResponse get(MedtronicCommandType commandType, Callable<Object> loader) {
+        FutureTask<Object> task;
+        boolean owner = false;
+        int invalidationCount;
+
+        synchronized (this) {
+            CachedResponse cached = getValidResponse(commandType);
+
+            if (cached != null) {
+                LOG.debug("Response for {} from cache (age {} ms).", commandType.name(), cached.getAge_ms());
+                return cached;
+            }
+
+            task = inFlight.get(commandType);
+
+            if (task == null) {
+                task = new FutureTask<Object>(loader);
+                inFlight.put(commandType, task);
+                owner = true;
+            } else {
+                LOG.debug("Read of {} is already running, waiting for it.", commandType.name());
+            }
+
+            invalidationCount = getInvalidationCount(commandType);
+        }
+
+        if (owner) {
+            try {
+                task.run();
+            } finally {
+                synchronized (this) {
+                    inFlight.remove(commandType);
+                }
+            }
+        }
+
+        Object value;
+
+        try {
+            value = task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return new CachedResponse(null, System.currentTimeMillis());
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)ex.getCause();
+            }
+            throw new RuntimeException(ex.getCause());
+        }
+
+        CachedResponse response = new CachedResponse(value, System.currentTimeMillis());
+
+        if (owner && value != null && getTimeToLive_ms(commandType) > 0) {
+            synchronized (this) {
+                // set command was run while we were reading, so value might be old already
+                if (invalidationCount == getInvalidationCount(commandType)) {
+                    responses.put(commandType, response);
+                }
+            }
+        }
+
+        return response;
+    }
+
+
+    public synchronized void invalidate(MedtronicCommandType... commandTypes) {
+        for(MedtronicCommandType commandType : commandTypes) {
+            responses.remove(commandType);
+            invalidations.put(commandType, getInvalidationCount(commandType) + 1);
+        }
+    }
+
+
+    public synchronized void invalidateAll() {
+        invalidate(responses.keySet().toArray(new MedtronicCommandType[0]));
+    }
+
+
+    private CachedResponse getValidResponse(MedtronicCommandType commandType) {
+        CachedResponse cached = responses.get(commandType);
+
+        if (cached == null) {
+            return null;
+        }
+
+        if (cached.getAge_ms() > getTimeToLive_ms(commandType)) {
+            responses.remove(commandType);
+            return null;
+        }
+
+        return cached;
+    }
+
+
+    private int getInvalidationCount(MedtronicCommandType commandType) {
+        Integer count = invalidations.get(commandType);
+        return count == null ? 0 : count;
+    }
+
+
+    public static class CachedResponse {
+
+        private final Object value;
+        private final long time;
+
+
+        CachedResponse(Object value, long time) {
+            this.value = value;
+            this.time = time;
+        }
+
+
+        public Object getValue() {
+            return value;
+        }
+
+
+        /**
+         * Time (in ms) since response was received from pump.
+         */
+        public long getAge_ms() {
+            return System.currentTimeMillis() - time;
+        }
+    }
+
+}
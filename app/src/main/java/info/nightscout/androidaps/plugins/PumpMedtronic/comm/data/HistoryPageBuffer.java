@@ -0,0 +1,130 @@
+package info.nightscout.androidaps.plugins.PumpMedtronic.comm.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
+import info.nightscout.androidaps.plugins.PumpCommon.utils.CRC16CCITT;
+
+/**
+ * Preallocated buffer for one history page (16 frames of 64 bytes, last 2 bytes of page are CRC). Radio thread
+ * copies each frame into its slot (putFrame), while CRC is calculated incrementally (updateCrc) on worker thread,
+ * so when last frame arrives, only its 62 bytes still need to be checked.
+ * <p>
+ * updateCrc must be called with lengths returned by putFrame, in the same order (single worker thread).
+ */
+public class HistoryPageBuffer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HistoryPageBuffer.class);
+
+    public static final int FRAME_SIZE = 64;
+    public static final int FRAME_COUNT = 16;
+    public static final int PAGE_SIZE = FRAME_SIZE * FRAME_COUNT;
+    public static final int DATA_SIZE = PAGE_SIZE - 2;
+
+    private final int pageNumber;
+    private final byte[] data = new byte[PAGE_SIZE];
+    private int length = 0;
+
+    // worker thread only
+    private final CRC16CCITT crc = new CRC16CCITT();
+
+
+    public HistoryPageBuffer(int pageNumber) {
+        this.pageNumber = pageNumber;
+    }
+
+
+    public int getPageNumber() {
+        return pageNumber;
+    }
+
+
+    /**
+     * Copies frame (frameNumber is 1 based) into its slot of the page.
+     *
+     * @return number of page bytes that are filled after this frame
+     */
+    public int putFrame(int frameNumber, byte[] frameData) {
+        int offset = (frameNumber - 1) * FRAME_SIZE;
+
+        if (offset != length) {
+            LOG.warn("Frame {} doesn't follow frame data already received ({} bytes), ignoring it.", frameNumber,
+                length);
+            return length;
+        }
+
+        int frameLength = Math.min(frameData.length, PAGE_SIZE - offset);
+
+        if (frameLength != frameData.length) {
+            LOG.warn("Frame {} is too long ({} bytes), only {} bytes used.", frameNumber, frameData.length,
+                frameLength);
+        }
+
+        System.arraycopy(frameData, 0, data, offset, frameLength);
+        length = offset + frameLength;
+
+        return length;
+    }
+
+
+    /**
+     * Continues CRC calculation up to filledLength (as returned by putFrame). Called on worker thread.
+     */
+    public void updateCrc(int filledLength) {
+        int end = Math.min(filledLength, DATA_SIZE);
+
+        if (end > crc.getLength()) {
+            crc.update(data, crc.getLength(), end - crc.getLength());
+        }
+    }
+
+
+    public int getLength() {
+        return length;
+    }
+
+
+    public boolean isComplete() {
+        return length == PAGE_SIZE;
+    }
+
+
+    /**
+     * Must be called after updateCrc(getLength()) was run (worker thread).
+     */
+    public boolean isChecksumOK() {
+        if (!isComplete() || crc.getLength() != DATA_SIZE) {
+            return false;
+        }
+
+        int crcStored = ByteUtil.toInt(data[DATA_SIZE], data[DATA_SIZE + 1]);
+        int crcCalculated = crc.finish();
+
+        if (crcCalculated != crcStored) {
+            LOG.error("Stored CRC ({}) is different than calculated ({}).", crcStored, crcCalculated);
+        }
+
+        return crcCalculated == crcStored;
+    }
+
+
+    /**
+     * Page data (only filled part, no copy when page is complete).
+     */
+    public byte[] getData() {
+        if (isComplete()) {
+            return data;
+        } else {
+            return ByteUtil.substring(data, 0, length);
+        }
+    }
+
+
+    public RawHistoryPage toRawHistoryPage() {
+        RawHistoryPage page = new RawHistoryPage();
+        page.appendData(getData());
+        return page;
+    }
+
+}
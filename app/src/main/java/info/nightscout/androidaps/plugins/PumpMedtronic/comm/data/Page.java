@@ -86,6 +86,27 @@ public class Page {
     }
 
 
+    private boolean checkCrc() {
+        if (DEBUG_PAGE) {
+            Log.i(TAG, String.format("Data length: %d", data.length));
+        }
+
+        int expectedCrc = CRC.calculate16CCITT(data, 0, data.length);
+        int storedCrc = ByteUtil.toInt(crc[0], crc[1]);
+
+        if (expectedCrc != storedCrc) {
+            Log.w(TAG, String.format("CRC does not match expected value. Expected: %04X Was: %04X", expectedCrc, storedCrc));
+            return false;
+        }
+
+        if (DEBUG_PAGE) {
+            Log.i(TAG, "CRC OK");
+        }
+
+        return true;
+    }
+
+
     public boolean parsePicky(byte[] rawPage, MedtronicDeviceType model) {
         mRecordList = new ArrayList<>();
         this.model = model;
@@ -94,17 +115,7 @@ public class Page {
         if ((rawPage == null) || (rawPage.length == 0)) return false;
         this.data = Arrays.copyOfRange(rawPage, 0, rawPage.length - 2);
         this.crc = Arrays.copyOfRange(rawPage, rawPage.length - 2, rawPage.length);
-        byte[] expectedCrc = CRC.calculate16CCITT(this.data);
-        if (DEBUG_PAGE) {
-            Log.i(TAG, String.format("Data length: %d", data.length));
-        }
-        if (!Arrays.equals(crc, expectedCrc)) {
-            Log.w(TAG, String.format("CRC does not match expected value. Expected: %s Was: %s", HexDump.toHexString(expectedCrc), HexDump.toHexString(crc)));
-        } else {
-            if (DEBUG_PAGE) {
-                Log.i(TAG, "CRC OK");
-            }
-        }
+        checkCrc();
 
         Record record = null;
         while (pageOffset < data.length) {
@@ -161,17 +172,7 @@ public class Page {
 
         this.data = Arrays.copyOfRange(rawPage, 0, rawPage.length - 2);
         this.crc = Arrays.copyOfRange(rawPage, rawPage.length - 2, rawPage.length);
-        byte[] expectedCrc = CRC.calculate16CCITT(this.data);
-        if (DEBUG_PAGE) {
-            Log.i(TAG, String.format("Data length: %d", data.length));
-        }
-        if (!Arrays.equals(crc, expectedCrc)) {
-            Log.w(TAG, String.format("CRC does not match expected value. Expected: %s Was: %s", HexDump.toHexString(expectedCrc), HexDump.toHexString(crc)));
-        } else {
-            if (DEBUG_PAGE) {
-                Log.i(TAG, "CRC OK");
-            }
-        }
+        checkCrc();
 
         int pageOffset = 0;
         PumpTimeStamp lastPumpTimeStamp = new PumpTimeStamp();
@@ -224,17 +225,7 @@ public class Page {
 
         this.data = Arrays.copyOfRange(rawPage, 0, rawPage.length - 2);
         this.crc = Arrays.copyOfRange(rawPage, rawPage.length - 2, rawPage.length);
-        byte[] expectedCrc = CRC.calculate16CCITT(this.data);
-        if (DEBUG_PAGE) {
-            Log.i(TAG, String.format("Data length: %d", data.length));
-        }
-        if (!Arrays.equals(crc, expectedCrc)) {
-            Log.w(TAG, String.format("CRC does not match expected value. Expected: %s Was: %s", HexDump.toHexString(expectedCrc), HexDump.toHexString(crc)));
-        } else {
-            if (DEBUG_PAGE) {
-                Log.i(TAG, "CRC OK");
-            }
-        }
+        checkCrc();
 
         int dataIndex = 0;
         boolean done = false;
@@ -254,11 +245,9 @@ public class Page {
                 StringBuilder stringBuilder = new StringBuilder();
                 stringBuilder.append("Possible parsing problem: ");
                 stringBuilder.append("Previous record: " + previousRecord);
-                stringBuilder.append("  Content of previous record: " + HexDump.toHexStringDisplayable(previousRecord.getRawbytes()));
+                stringBuilder.append("  Content of previous record: " + HexDump.toHexStringDisplayable(previousRecord == null ? null : previousRecord.getRawbytes()));
 
-                int remainingData = rawPage.length - dataIndex;
-                byte[] tmpData = new byte[remainingData + 10];
-                System.arraycopy(data, dataIndex, tmpData, 0, remainingData - 10);
+                byte[] tmpData = Arrays.copyOfRange(data, dataIndex, data.length);
 
                 stringBuilder.append("  Remaining data: " + HexDump.toHexStringDisplayable(tmpData));
 
@@ -283,7 +272,7 @@ public class Page {
                 StringBuilder stringBuilder = new StringBuilder();
                 stringBuilder.append("Possible parsing problem: ");
                 stringBuilder.append("Previous record: " + previousRecord);
-                stringBuilder.append("  Content of previous record: " + HexDump.toHexStringDisplayable(previousRecord.getRawbytes()));
+                stringBuilder.append("  Content of previous record: " + HexDump.toHexStringDisplayable(previousRecord == null ? null : previousRecord.getRawbytes()));
 
                 int remainingData = data.length - dataIndex;
                 byte[] tmpData = Arrays.copyOfRange(data, dataIndex, 1022);
@@ -337,10 +326,8 @@ public class Page {
         RecordTypeEnum en = RecordTypeEnum.fromByte(data[offsetStart]);
         T record = en.getRecordClassInstance(model);
         if (record != null) {
-            // have to do this to set the record's opCode
-            byte[] tmpData = new byte[data.length];
-            System.arraycopy(data, offsetStart, tmpData, 0, data.length - offsetStart);
-            boolean didParse = record.parseWithOffset(tmpData, model, offsetStart);
+            // record reads page directly from its offset (no copy of page per record)
+            boolean didParse = record.parseWithOffset(data, model, offsetStart);
             if (!didParse) {
                 Log.e(TAG, String.format("attemptParseRecord: class %s (opcode 0x%02X) failed to parse at offset %d", record.getShortTypeName(), data[offsetStart], offsetStart));
             }
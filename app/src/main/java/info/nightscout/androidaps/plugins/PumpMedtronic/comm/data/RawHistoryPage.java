@@ -48,9 +48,7 @@ public class RawHistoryPage {
         if (getLength() != 1024) {
             return false;
         }
-        byte[] computedCRC = CRC.calculate16CCITT(ByteUtil.substring(data, 0, 1022));
-
-        int crcCalculated = ByteUtil.toInt(computedCRC[0], computedCRC[1]);
+        int crcCalculated = CRC.calculate16CCITT(data, 0, 1022);
         int crcStored = ByteUtil.toInt(data[1022], data[1023]);
 
         if (crcCalculated != crcStored) {
@@ -39,31 +39,38 @@ abstract public class Record {
     }
 
 
+    /**
+     * Parses record that starts at foundAtOffset in data (whole page). Records read page directly, so page doesn't
+     * need to be copied for each record.
+     */
     public boolean parseWithOffset(byte[] data, MedtronicDeviceType model, int foundAtOffset) {
         // keep track of where the record was found for later analysis
         this.foundAtOffset = foundAtOffset;
         if (data == null) {
             return false;
         }
-        if (data.length < 1) {
+        if (data.length <= foundAtOffset) {
             return false;
         }
-        recordOp = data[0];
-        boolean didParse = parseFrom(data, model);
+        recordOp = data[foundAtOffset];
+        boolean didParse = parseFrom(data, foundAtOffset, model);
         if (didParse) {
-            captureRawBytes(data);
+            captureRawBytes(data, foundAtOffset);
         }
         return didParse;
     }
 
 
-    public void captureRawBytes(byte[] data) {
+    public void captureRawBytes(byte[] data, int offset) {
         this.rawbytes = new byte[getLength()];
-        System.arraycopy(data, 0, this.rawbytes, 0, getLength() - 1);
+        System.arraycopy(data, offset, this.rawbytes, 0, Math.min(getLength() - 1, data.length - offset));
     }
 
 
-    public boolean parseFrom(byte[] data, MedtronicDeviceType model) {
+    /**
+     * Parses record from data, starting at offset (where op code is).
+     */
+    public boolean parseFrom(byte[] data, int offset, MedtronicDeviceType model) {
         return true;
     }
 
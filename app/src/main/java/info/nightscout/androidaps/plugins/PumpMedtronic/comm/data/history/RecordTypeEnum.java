@@ -2,10 +2,6 @@ package info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history;
 
 import android.os.Bundle;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.util.Map;
-
 import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history.record.AlarmClockReminderPumpEvent;
 import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history.record.AlarmSensorPumpEvent;
 import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history.record.BGReceivedPumpEvent;
@@ -181,7 +177,7 @@ public enum RecordTypeEnum {
 
     ;
 
-    private static Map<Byte, RecordTypeEnum> mapByOpCode = null;
+    private static final RecordTypeEnum[] typesByOpCode = new RecordTypeEnum[256];
     private byte opcode;
     private Class mRecordClass;
     private int length;
@@ -216,53 +212,169 @@ public enum RecordTypeEnum {
     }
 
 
-    public static RecordTypeEnum fromByte(byte b) {
-        for(RecordTypeEnum en : RecordTypeEnum.values()) {
-            if (en.opcode() == b) {
-                return en;
-            }
+    static {
+        for(int i = 0; i < 256; i++) {
+            typesByOpCode[i] = Null;
+        }
+
+        // first type with op code wins (as it did with search through values)
+        RecordTypeEnum[] types = values();
+        for(int i = types.length - 1; i >= 0; i--) {
+            typesByOpCode[types[i].opcode & 0xff] = types[i];
         }
-        return Null;
+    }
+
+
+    public static RecordTypeEnum fromByte(byte b) {
+        return typesByOpCode[b & 0xff];
     }
 
 
     private static final String TAG = "RecordTypeEnum";
 
 
+    @SuppressWarnings("unchecked")
     public <T extends Record> T getRecordClassInstance(MedtronicDeviceType model) {
-        Constructor<T> ctor;
-        T record = null;
-        try {
-            Class c = recordClass();
-            if (c != null) {
-                ctor = recordClass().getConstructor();
-                if (ctor != null) {
-                    record = ctor.newInstance();
-                    record.setPumpModel(model);
-
-                    // if this is IgnoredHistoryEntry we need to set type so that we get correct length and name
-                    if (record instanceof IgnoredHistoryEntry) {
-                        IgnoredHistoryEntry he = (IgnoredHistoryEntry) record;
-                        he.init(this);
-                    }
-                }
+        Record record = createRecord();
+
+        if (record != null) {
+            record.setPumpModel(model);
+
+            // if this is IgnoredHistoryEntry we need to set type so that we get correct length and name
+            if (record instanceof IgnoredHistoryEntry) {
+                IgnoredHistoryEntry he = (IgnoredHistoryEntry) record;
+                he.init(this);
             }
-        } catch (NoSuchMethodException e) {
-            // NOTE: these were all OR'd together, but android requires us to separate them.
-            e.printStackTrace();
-        } catch (InvocationTargetException e) {
-            e.printStackTrace();
-        } catch (InstantiationException e) {
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
         }
-        return record;
+
+        return (T) record;
+    }
+
+
+    /**
+     * Registry of record constructors (replaces reflection, which was the most expensive part of parsing a record).
+     * New type with its own record class needs its case here.
+     */
+    private Record createRecord() {
+        if (mRecordClass == IgnoredHistoryEntry.class) {
+            return new IgnoredHistoryEntry();
+        }
+
+        switch (this) {
+            case BolusNormal:
+                return new BolusNormalPumpEvent();
+            case Prime:
+                return new PrimePumpEvent();
+            case AlarmPump:
+                return new PumpAlarmPumpEvent();
+            case ResultDailyTotal:
+                return new ResultDailyTotalPumpEvent();
+            case ChangeBasalProfile_old_profile:
+                return new ChangeBasalProfilePatternPumpEvent();
+            case ChangeBasalProfile_new_profile:
+                return new ChangeBasalProfilePumpEvent();
+            case CalBgForPh:
+                return new CalBgForPhPumpEvent();
+            case AlarmSensor:
+                return new AlarmSensorPumpEvent();
+            case ClearAlarm:
+                return new ClearAlarmPumpEvent();
+            case TempBasalDuration:
+                return new TempBasalDurationPumpEvent();
+            case ChangeTime:
+                return new ChangeTimePumpEvent();
+            case NewTimeSet:
+                return new NewTimeSet();
+            case JournalEntryPumpLowBattery:
+                return new JournalEntryPumpLowBatteryPumpEvent();
+            case RECORD_TYPE_BATTERY:
+                return new BatteryPumpEvent();
+            case Suspend:
+                return new SuspendPumpEvent();
+            case Resume:
+                return new ResumePumpEvent();
+            case Rewind:
+                return new RewindPumpEvent();
+            case ChangeChildBlockEnable:
+                return new ChangeChildBlockEnablePumpEvent();
+            case ChangeMaxBolus:
+                return new ChangeMaxBolusPumpEvent();
+            case EnableDisableRemote:
+                return new EnableDisableRemotePumpEvent();
+            case tempBasal:
+                return new TempBasalRatePumpEvent();
+            case journalEntryPumpLowReservoir:
+                return new JournalEntryPumpLowReservoirPumpEvent();
+            case AlarmClockReminder:
+                return new AlarmClockReminderPumpEvent();
+            case bgReceived:
+                return new BGReceivedPumpEvent();
+            case JournalEntryExerciseMarker:
+                return new JournalEntryExerciseMarkerPumpEvent();
+            case JournalEntryInsulinMarker:
+                return new Unknown7ByteEvent1();
+            case journalEntryOtherMarker:
+                return new InsulinMarkerEvent();
+            case changeSensorSetup2:
+                return new ChangeSensorSetup2PumpEvent();
+            case ChangeSensorRateOfChangeAlertSetup:
+                return new ChangeSensorRateOfChangeAlertSetupPumpEvent();
+            case ChangeBolusScrollStepSize:
+                return new ChangeBolusScrollStepSizePumpEvent();
+            case ChangeBolusWizardSetup:
+                return new ChangeBolusWizardSetupPumpEvent();
+            case BolusWizardBolusEstimate:
+                return new BolusWizardBolusEstimatePumpEvent();
+            case unabsorbedInsulin:
+                return new UnabsorbedInsulin();
+            case changeVariableBolus:
+                return new ChangeVariableBolusPumpEvent();
+            case changeAudioBolus:
+                return new ChangeAudioBolusPumpEvent();
+            case ChangeBGReminderEnable:
+                return new ChangeBGReminderEnablePumpEvent();
+            case ChangeAlarmClockEnable:
+                return new ChangeAlarmClockEnablePumpEvent();
+            case ChangeTempBasalType:
+                return new ChangeTempBasalTypePumpEvent();
+            case ChangeAlarmNotifyMode:
+                return new ChangeAlarmNotifyModePumpEvent();
+            case ChangeTimeFormat:
+                return new ChangeTimeFormatPumpEvent();
+            case ChangeReservoirWarningTime:
+                return new ChangeReservoirWarningTimePumpEvent();
+            case ChangeBolusReminderEnable:
+                return new ChangeBolusReminderEnablePumpEvent();
+            case ChangeBolusReminderTime:
+                return new ChangeBolusReminderTimePumpEvent();
+            case DeleteBolusReminderTime:
+                return new DeleteBolusReminderTimePumpEvent();
+            case DeleteAlarmClockTime:
+                return new DeleteAlarmClockTimePumpEvent();
+            case dailyTotal522:
+                return new Model522ResultTotalsPumpEvent();
+            case ChangeCarbUnits:
+                return new ChangeCarbUnitsPumpEvent();
+            case basalProfileStart:
+                return new BasalProfileStart();
+            case ChangeWatchdogEnable:
+                return new ChangeWatchdogEnablePumpEvent();
+            case ChangeOtherDeviceID:
+                return new ChangeOtherDeviceIDPumpEvent();
+            case ChangeWatchdogMarriageProfile:
+                return new ChangeWatchdogMarriageProfilePumpEvent();
+            case DeleteOtherDeviceID:
+                return new DeleteOtherDeviceIDPumpEvent();
+            case ChangeCaptureEventEnable:
+                return new ChangeCaptureEventEnablePumpEvent();
+            default:
+                return null;
+        }
     }
 
 
     public static <T extends Record> T getRecordClassInstance(Bundle bundle, MedtronicDeviceType model) {
-        byte opcode = bundle.getByte("_opcode");
+        byte opcode = (byte) bundle.getInt("_opcode");
         RecordTypeEnum e = RecordTypeEnum.fromByte(opcode);
         return e.getRecordClassInstance(model);
     }
@@ -41,20 +41,20 @@ abstract public class TimeStampedRecord extends Record {
 
 
     @Override
-    public boolean parseFrom(byte[] data, MedtronicDeviceType model) {
-        return simpleParse(data, getDatestampOffset());
+    public boolean parseFrom(byte[] data, int offset, MedtronicDeviceType model) {
+        return simpleParse(data, offset, getDatestampOffset());
     }
 
 
     // This is useful if there is no data inside, or we don't care about the data.
-    public boolean simpleParse(byte[] data, int fiveByteDateOffset) {
-        if (getLength() > data.length) {
+    public boolean simpleParse(byte[] data, int offset, int fiveByteDateOffset) {
+        if (offset + getLength() > data.length) {
             return false;
         }
-        if (!collectTimeStamp(data, fiveByteDateOffset)) {
+        if (!collectTimeStamp(data, offset + fiveByteDateOffset)) {
             return false;
         }
-        rawbytes = ByteUtil.substring(data, 0, getLength());
+        rawbytes = ByteUtil.substring(data, offset, getLength());
         return true;
     }
 
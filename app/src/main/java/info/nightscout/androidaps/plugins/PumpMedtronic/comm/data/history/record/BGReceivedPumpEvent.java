@@ -29,12 +29,12 @@ public class BGReceivedPumpEvent extends TimeStampedRecord {
 
 
     @Override
-    public boolean parseFrom(byte[] data, MedtronicDeviceType model) {
-        if (!super.simpleParse(data, 2)) {
+    public boolean parseFrom(byte[] data, int offset, MedtronicDeviceType model) {
+        if (!super.simpleParse(data, offset, 2)) {
             return false;
         }
-        amount = (asUINT8(data[1]) << 3) + (asUINT8(data[4]) >> 5);
-        meter = ByteUtil.substring(data, 7, 3);
+        amount = (asUINT8(data[offset + 1]) << 3) + (asUINT8(data[offset + 4]) >> 5);
+        meter = ByteUtil.substring(data, offset + 7, 3);
         return true;
     }
 
@@ -29,14 +29,14 @@ public class BasalProfileStart extends TimeStampedRecord {
 
 
     @Override
-    public boolean parseFrom(byte[] data, MedtronicDeviceType model) {
-        if (!simpleParse(data, 2)) {
+    public boolean parseFrom(byte[] data, int offset, MedtronicDeviceType model) {
+        if (!simpleParse(data, offset, 2)) {
             return false;
         }
 
-        profileIndex = asUINT8(data[1]);
-        offset = asUINT8(data[7]) * 30 * 1000 * 60;
-        rate = (double) (asUINT8(data[8])) / 40.0;
+        profileIndex = asUINT8(data[offset + 1]);
+        this.offset = asUINT8(data[offset + 7]) * 30 * 1000 * 60;
+        rate = (double) (asUINT8(data[offset + 8])) / 40.0;
         return true;
     }
 
@@ -40,27 +40,27 @@ public class BolusNormalPumpEvent extends TimeStampedRecord {
 
 
     @Override
-    public boolean parseFrom(byte[] data, MedtronicDeviceType model) {
-        if (getLength() > data.length) {
+    public boolean parseFrom(byte[] data, int offset, MedtronicDeviceType model) {
+        if (offset + getLength() > data.length) {
             return false;
         }
         if (MedtronicDeviceType.isLargerFormat(model)) {
-            programmedAmount = insulinDecode(asUINT8(data[1]), asUINT8(data[2]));
-            deliveredAmount = insulinDecode(asUINT8(data[3]), asUINT8(data[4]));
-            unabsorbedInsulinTotal = insulinDecode(asUINT8(data[5]), asUINT8(data[6]));
-            duration = asUINT8(data[7]) * 30;
+            programmedAmount = insulinDecode(asUINT8(data[offset + 1]), asUINT8(data[offset + 2]));
+            deliveredAmount = insulinDecode(asUINT8(data[offset + 3]), asUINT8(data[offset + 4]));
+            unabsorbedInsulinTotal = insulinDecode(asUINT8(data[offset + 5]), asUINT8(data[offset + 6]));
+            duration = asUINT8(data[offset + 7]) * 30;
             try {
-                timestamp = new PumpTimeStamp(TimeFormat.parse5ByteDate(data, 8));
+                timestamp = new PumpTimeStamp(TimeFormat.parse5ByteDate(data, offset + 8));
             } catch (org.joda.time.IllegalFieldValueException e) {
                 return false;
             }
         } else {
-            programmedAmount = asUINT8(data[1]) / 10.0f;
-            deliveredAmount = asUINT8(data[2]) / 10.0f;
-            duration = asUINT8(data[3]) * 30;
+            programmedAmount = asUINT8(data[offset + 1]) / 10.0f;
+            deliveredAmount = asUINT8(data[offset + 2]) / 10.0f;
+            duration = asUINT8(data[offset + 3]) * 30;
             unabsorbedInsulinTotal = 0;
             try {
-                timestamp = new PumpTimeStamp(TimeFormat.parse5ByteDate(data, 4));
+                timestamp = new PumpTimeStamp(TimeFormat.parse5ByteDate(data, offset + 4));
             } catch (org.joda.time.IllegalFieldValueException e) {
                 return false;
             }
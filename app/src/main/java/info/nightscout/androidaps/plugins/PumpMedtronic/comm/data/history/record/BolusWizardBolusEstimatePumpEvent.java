@@ -133,32 +133,33 @@ public class BolusWizardBolusEstimatePumpEvent extends TimeStampedRecord {
 
 
     @Override
-    public boolean parseFrom(byte[] data, MedtronicDeviceType model) {
-        if (!simpleParse(data, 2)) {
+    public boolean parseFrom(byte[] data, int offset, MedtronicDeviceType model) {
+        if (!simpleParse(data, offset, 2)) {
             return false;
         }
         if (MedtronicDeviceType.isLargerFormat(model)) {
-            carbohydrates = (asUINT8(data[8]) & 0x0c << 6) + asUINT8(data[7]);
-            bloodGlucose = (asUINT8(data[8]) & 0x03 << 8) + asUINT8(data[1]);
-            foodEstimate = insulinDecode(asUINT8(data[14]), asUINT8(data[15]));
-            correctionEstimate = (double) ((asUINT8(data[16]) & 0b111000) << 5 + asUINT8(data[13])) / 40.0;
-            bolusEstimate = insulinDecode(asUINT8(data[19]), asUINT8(data[20]));
-            unabsorbedInsulinTotal = insulinDecode(asUINT8(data[17]), asUINT8(data[18]));
-            bgTargetLow = asUINT8(data[12]);
-            bgTargetHigh = asUINT8(data[21]);
-            insulinSensitivity = asUINT8(data[11]);
-            carbRatio = (double) (((asUINT8(data[9]) & 0x07) << 8) + asUINT8(data[10])) / 40.0;
+            carbohydrates = (asUINT8(data[offset + 8]) & 0x0c << 6) + asUINT8(data[offset + 7]);
+            bloodGlucose = (asUINT8(data[offset + 8]) & 0x03 << 8) + asUINT8(data[offset + 1]);
+            foodEstimate = insulinDecode(asUINT8(data[offset + 14]), asUINT8(data[offset + 15]));
+            correctionEstimate = (double) ((asUINT8(data[offset + 16]) & 0b111000) << 5 + asUINT8(data[offset + 13]))
+                / 40.0;
+            bolusEstimate = insulinDecode(asUINT8(data[offset + 19]), asUINT8(data[offset + 20]));
+            unabsorbedInsulinTotal = insulinDecode(asUINT8(data[offset + 17]), asUINT8(data[offset + 18]));
+            bgTargetLow = asUINT8(data[offset + 12]);
+            bgTargetHigh = asUINT8(data[offset + 21]);
+            insulinSensitivity = asUINT8(data[offset + 11]);
+            carbRatio = (double) (((asUINT8(data[offset + 9]) & 0x07) << 8) + asUINT8(data[offset + 10])) / 40.0;
         } else {
-            carbohydrates = asUINT8(data[7]);
-            bloodGlucose = ((asUINT8(data[8]) & 0x03) << 8) + asUINT8(data[1]);
-            foodEstimate = (double) (asUINT8(data[13])) / 10.0;
-            correctionEstimate = (double) ((asUINT8(data[14]) << 8) + asUINT8(data[12])) / 10.0;
-            bolusEstimate = (double) (asUINT8(data[18])) / 10.0;
-            unabsorbedInsulinTotal = (double) (asUINT8(data[16])) / 10.0;
-            bgTargetLow = asUINT8(data[11]);
-            bgTargetHigh = asUINT8(data[19]);
-            insulinSensitivity = asUINT8(data[10]);
-            carbRatio = (double) asUINT8(data[9]);
+            carbohydrates = asUINT8(data[offset + 7]);
+            bloodGlucose = ((asUINT8(data[offset + 8]) & 0x03) << 8) + asUINT8(data[offset + 1]);
+            foodEstimate = (double) (asUINT8(data[offset + 13])) / 10.0;
+            correctionEstimate = (double) ((asUINT8(data[offset + 14]) << 8) + asUINT8(data[offset + 12])) / 10.0;
+            bolusEstimate = (double) (asUINT8(data[offset + 18])) / 10.0;
+            unabsorbedInsulinTotal = (double) (asUINT8(data[offset + 16])) / 10.0;
+            bgTargetLow = asUINT8(data[offset + 11]);
+            bgTargetHigh = asUINT8(data[offset + 19]);
+            insulinSensitivity = asUINT8(data[offset + 10]);
+            carbRatio = (double) asUINT8(data[offset + 9]);
         }
 
         return true;
@@ -20,11 +20,11 @@ public class CalBgForPhPumpEvent extends TimeStampedRecord {
 
 
     @Override
-    public boolean parseFrom(byte[] data, MedtronicDeviceType model) {
-        if (!simpleParse(data, 2)) {
+    public boolean parseFrom(byte[] data, int offset, MedtronicDeviceType model) {
+        if (!simpleParse(data, offset, 2)) {
             return false;
         }
-        amount = ((asUINT8(data[6]) & 0x80) << 1) + asUINT8(data[1]);
+        amount = ((asUINT8(data[offset + 6]) & 0x80) << 1) + asUINT8(data[offset + 1]);
         return true;
     }
 
@@ -23,11 +23,11 @@ public class ChangeTempBasalTypePumpEvent extends TimeStampedRecord {
 
 
     @Override
-    public boolean parseFrom(byte[] data, MedtronicDeviceType model) {
-        if (!simpleParse(data, 2)) {
+    public boolean parseFrom(byte[] data, int offset, MedtronicDeviceType model) {
+        if (!simpleParse(data, offset, 2)) {
             return false;
         }
-        if (asUINT8(data[1]) == 1) {
+        if (asUINT8(data[offset + 1]) == 1) {
             isPercent = true;
         } else {
             isPercent = false;
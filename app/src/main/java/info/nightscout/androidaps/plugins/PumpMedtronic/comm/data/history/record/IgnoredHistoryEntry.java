@@ -42,7 +42,7 @@ public class IgnoredHistoryEntry extends Record {
 
 
     @Override
-    public boolean parseFrom(byte[] data, MedtronicDeviceType model) {
+    public boolean parseFrom(byte[] data, int offset, MedtronicDeviceType model) {
         return true;
     }
 
@@ -11,7 +11,7 @@ public class NewTimeSet extends TimeStampedRecord {
 
 
     @Override
-    public boolean parseFrom(byte[] data, MedtronicDeviceType model) {
+    public boolean parseFrom(byte[] data, int offset, MedtronicDeviceType model) {
         return false;
     }
 
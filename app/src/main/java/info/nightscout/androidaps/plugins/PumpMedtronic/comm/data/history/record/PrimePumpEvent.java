@@ -29,12 +29,12 @@ public class PrimePumpEvent extends TimeStampedRecord {
 
 
     @Override
-    public boolean parseFrom(byte[] data, MedtronicDeviceType model) {
-        if (!simpleParse(data, 5)) {
+    public boolean parseFrom(byte[] data, int offset, MedtronicDeviceType model) {
+        if (!simpleParse(data, offset, 5)) {
             return false;
         }
-        amount = (double) (asUINT8(data[4]) << 2) / 40.0;
-        programmedAmount = (double) (asUINT8(data[2]) << 2) / 40.0;
+        amount = (double) (asUINT8(data[offset + 4]) << 2) / 40.0;
+        programmedAmount = (double) (asUINT8(data[offset + 2]) << 2) / 40.0;
         primeType = programmedAmount == 0 ? "manual" : "fixed";
         return true;
     }
@@ -27,11 +27,11 @@ public class PumpAlarmPumpEvent extends TimeStampedRecord {
 
 
     @Override
-    public boolean parseFrom(byte[] data, MedtronicDeviceType model) {
-        if (!simpleParse(data, 4)) {
+    public boolean parseFrom(byte[] data, int offset, MedtronicDeviceType model) {
+        if (!simpleParse(data, offset, 4)) {
             return false;
         }
-        rawtype = asUINT8(data[1]);
+        rawtype = asUINT8(data[offset + 1]);
         return true;
     }
 
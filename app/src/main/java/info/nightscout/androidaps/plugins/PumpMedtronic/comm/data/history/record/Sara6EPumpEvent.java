@@ -23,14 +23,14 @@ public class Sara6EPumpEvent extends TimeStampedRecord {
 
 
     @Override
-    public boolean parseFrom(byte[] data, MedtronicDeviceType model) {
+    public boolean parseFrom(byte[] data, int offset, MedtronicDeviceType model) {
         // We don't understand this event...
         // Minimum 16 characters? date components?
-        if (16 > data.length) {
+        if (offset + 16 > data.length) {
             return false;
         }
         try {
-            timestamp = new PumpTimeStamp(TimeFormat.parse2ByteDate(data, 1));
+            timestamp = new PumpTimeStamp(TimeFormat.parse2ByteDate(data, offset + 1));
         } catch (org.joda.time.IllegalFieldValueException e) {
             return false;
         }
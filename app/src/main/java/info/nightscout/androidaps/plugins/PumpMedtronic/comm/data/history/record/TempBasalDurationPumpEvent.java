@@ -25,11 +25,11 @@ public class TempBasalDurationPumpEvent extends TimeStampedRecord {
 
 
     @Override
-    public boolean parseFrom(byte[] data, MedtronicDeviceType model) {
-        if (!simpleParse(data, 2)) {
+    public boolean parseFrom(byte[] data, int offset, MedtronicDeviceType model) {
+        if (!simpleParse(data, offset, 2)) {
             return false;
         }
-        durationMinutes = asUINT8(data[1]) * 30;
+        durationMinutes = asUINT8(data[offset + 1]) * 30;
         return true;
     }
 
@@ -38,16 +38,16 @@ public class TempBasalRatePumpEvent extends TimeStampedRecord {
 
 
     @Override
-    public boolean parseFrom(byte[] data, MedtronicDeviceType model) {
-        if (!simpleParse(data, 2)) {
+    public boolean parseFrom(byte[] data, int offset, MedtronicDeviceType model) {
+        if (!simpleParse(data, offset, 2)) {
             return false;
         }
-        if ((asUINT8(data[7]) >> 3) == 0) {
+        if ((asUINT8(data[offset + 7]) >> 3) == 0) {
             mIsPercent = false;
-            basalRate = (double) (asUINT8(data[1])) / 40.0;
+            basalRate = (double) (asUINT8(data[offset + 1])) / 40.0;
         } else {
             mIsPercent = true;
-            basalRate = asUINT8(data[1]);
+            basalRate = asUINT8(data[offset + 1]);
         }
         return true;
     }
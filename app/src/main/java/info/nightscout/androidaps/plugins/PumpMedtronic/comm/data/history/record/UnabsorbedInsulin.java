@@ -46,25 +46,25 @@ public class UnabsorbedInsulin extends Record {
 
 
     @Override
-    public boolean parseFrom(byte[] data, MedtronicDeviceType model) {
-        if (data.length < 2) {
+    public boolean parseFrom(byte[] data, int offset, MedtronicDeviceType model) {
+        if (offset + 2 > data.length) {
             return false;
         }
-        length = asUINT8(data[1]);
+        length = asUINT8(data[offset + 1]);
         if (length < 2) {
             length = 2;
         }
-        if (length > data.length) {
+        if (offset + length > data.length) {
             return false;
         }
 
-        int numRecords = (asUINT8(data[1]) - 2) / 3;
+        int numRecords = (asUINT8(data[offset + 1]) - 2) / 3;
         for(int i = 0; i < numRecords; i++) {
-            double amount = (double) (asUINT8(data[2 + (i * 3)])) / 40.0;
-            int age = asUINT8(data[3 + (i * 3)]) + (((asUINT8(data[4 + (i * 3)])) & 0b110000) << 4);
+            double amount = (double) (asUINT8(data[offset + 2 + (i * 3)])) / 40.0;
+            int age = asUINT8(data[offset + 3 + (i * 3)]) + (((asUINT8(data[offset + 4 + (i * 3)])) & 0b110000) << 4);
             records.add(new UnabsorbedInsulinRecord(amount, age));
         }
-        rawbytes = ByteUtil.substring(data, 0, length);
+        rawbytes = ByteUtil.substring(data, offset, length);
         return true;
     }
 
@@ -107,6 +107,29 @@ public abstract class MedtronicHistoryDecoder {
     }
 
 
+    /**
+     * Same checks as checkPage, but page buffer is returned as is (without conversion to list or copying). Valid
+     * data are in first 1022 bytes, last 2 bytes are CRC.
+     */
+    public byte[] checkPageData(RawHistoryPage page) {
+        if (page.getData().length != 1024 /*page.commandType.getRecordLength()*/) {
+            LOG.error("Page size is not correct. Size should be {}, but it was {} instead.", 1024, page.getData().length);
+            return new byte[0];
+        }
+
+        if (MedtronicUtil.getMedtronicPumpModel() == null) {
+            LOG.error("Device Type is not defined.");
+            return new byte[0];
+        }
+
+        if (page.isChecksumOK()) {
+            return page.getData();
+        } else {
+            return null;
+        }
+    }
+
+
     public abstract List<? extends MedtronicHistoryEntry> processPageAndCreateRecords(RawHistoryPage page) throws Exception;
 
 
@@ -3,8 +3,10 @@ package info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2;
 
 import org.joda.time.LocalDateTime;
 
+import java.util.Arrays;
 import java.util.List;
 
+import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
 import info.nightscout.androidaps.plugins.PumpCommon.utils.HexDump;
 import info.nightscout.androidaps.plugins.PumpCommon.utils.StringUtil;
 import info.nightscout.androidaps.plugins.PumpMedtronic.data.dto.PumpTimeStampedRecord;
@@ -37,6 +39,13 @@ import info.nightscout.androidaps.plugins.PumpMedtronic.data.dto.PumpTimeStamped
 
 public abstract class MedtronicHistoryEntry {
 
+    // raw data of record is a view into page buffer (rawDataBuffer, rawDataOffset, rawDataLength), parts of it
+    // (head, datetime, body, rawData list) are only copied out when somebody asks for them
+    protected byte[] rawDataBuffer;
+    protected int rawDataOffset;
+    protected int rawDataLength;
+    protected boolean splitData;
+
     protected List<Byte> rawData;
 
     protected int[] sizes = new int[3];
@@ -50,36 +59,42 @@ public abstract class MedtronicHistoryEntry {
 
 
     public void setData(List<Byte> listRawData, boolean doNotProcess) {
+        setData(ByteUtil.fromByteArray(listRawData), 0, listRawData.size(), doNotProcess);
         this.rawData = listRawData;
+    }
 
-        // System.out.println("Head: " + sizes[0] + ", dates: " + sizes[1] +
-        // ", body=" + sizes[2]);
 
-        if (doNotProcess)
-            return;
+    /**
+     * Sets data of record as view into buffer. Buffer is not copied, so it must not be changed while record is in use.
+     */
+    public void setData(byte[] buffer, int offset, int length, boolean doNotProcess) {
+        this.rawDataBuffer = buffer;
+        this.rawDataOffset = offset;
+        this.rawDataLength = length;
+        this.splitData = !doNotProcess;
 
-        head = new byte[getHeadLength() - 1];
-        for(int i = 1; i < (getHeadLength()); i++) {
-            head[i - 1] = listRawData.get(i);
-        }
+        this.rawData = null;
+        this.head = null;
+        this.datetime = null;
+        this.body = null;
+    }
 
-        if (getDateTimeLength() > 0) {
-            datetime = new byte[getDateTimeLength()];
 
-            for(int i = getHeadLength(), j = 0; j < getDateTimeLength(); i++, j++) {
-                datetime[j] = listRawData.get(i);
-            }
-        }
+    private byte[] copyRawData(int start, int length) {
+        return Arrays.copyOfRange(rawDataBuffer, rawDataOffset + start, rawDataOffset + start + length);
+    }
 
-        if (getBodyLength() > 0) {
-            body = new byte[getBodyLength()];
 
-            for(int i = (getHeadLength() + getDateTimeLength()), j = 0; j < getBodyLength(); i++, j++) {
-                body[j] = listRawData.get(i);
-            }
+    /**
+     * Returns byte at index of raw data (opCode is at index 0), without copying anything.
+     */
+    public byte getRawDataByte(int index) {
+        return rawDataBuffer[rawDataOffset + index];
+    }
 
-        }
 
+    public int getRawDataLength() {
+        return rawDataLength;
     }
 
 
@@ -114,23 +129,27 @@ public abstract class MedtronicHistoryEntry {
         sb.append((getHeadLength() + getDateTimeLength() + getBodyLength()));
         sb.append(")");
 
-        if (head != null) {
+        if (getHead() != null) {
             sb.append(", head=");
             sb.append(HexDump.toHexStringDisplayable(this.head));
         }
 
-        if (datetime != null) {
+        if (getDatetime() != null) {
             sb.append(", datetime=");
             sb.append(HexDump.toHexStringDisplayable(this.datetime));
         }
 
-        if (body != null) {
+        if (getBody() != null) {
             sb.append(", body=");
             sb.append(HexDump.toHexStringDisplayable(this.body));
         }
 
         sb.append(", rawData=");
-        sb.append(HexDump.toHexStringDisplayable(this.rawData));
+        if (rawDataBuffer != null) {
+            sb.append(HexDump.toHexStringDisplayable(rawDataBuffer, rawDataOffset, rawDataLength));
+        } else {
+            sb.append(HexDump.toHexStringDisplayable(this.rawData));
+        }
         sb.append("]");
 
         sb.append(" DT: ");
@@ -149,16 +168,35 @@ public abstract class MedtronicHistoryEntry {
 
 
     public List<Byte> getRawData() {
+        if (rawData == null && rawDataBuffer != null) {
+            rawData = ByteUtil.getListFromByteArray(copyRawData(0, rawDataLength));
+        }
+
         return rawData;
     }
 
 
+    /**
+     * Copy of raw data of record.
+     */
+    public byte[] getRawDataBytes() {
+        return rawDataBuffer == null ? null : copyRawData(0, rawDataLength);
+    }
+
+
     public void setRawData(List<Byte> rawData) {
         this.rawData = rawData;
+        this.rawDataBuffer = (rawData == null) ? null : ByteUtil.fromByteArray(rawData);
+        this.rawDataOffset = 0;
+        this.rawDataLength = (rawData == null) ? 0 : rawData.size();
     }
 
 
     public byte[] getHead() {
+        if (head == null && splitData && rawDataBuffer != null) {
+            head = copyRawData(1, getHeadLength() - 1);
+        }
+
         return head;
     }
 
@@ -169,6 +207,10 @@ public abstract class MedtronicHistoryEntry {
 
 
     public byte[] getDatetime() {
+        if (datetime == null && splitData && rawDataBuffer != null && getDateTimeLength() > 0) {
+            datetime = copyRawData(getHeadLength(), getDateTimeLength());
+        }
+
         return datetime;
     }
 
@@ -179,6 +221,10 @@ public abstract class MedtronicHistoryEntry {
 
 
     public byte[] getBody() {
+        if (body == null && splitData && rawDataBuffer != null && getBodyLength() > 0) {
+            body = copyRawData(getHeadLength() + getDateTimeLength(), getBodyLength());
+        }
+
         return body;
     }
 
@@ -199,7 +245,7 @@ public abstract class MedtronicHistoryEntry {
 
 
     public String toShortString() {
-        if (head == null) {
+        if (getHead() == null) {
             return "Unidentified record. ";
         } else {
             return "HistoryRecord: head=[" + HexDump.toHexStringDisplayable(this.head) + "]";
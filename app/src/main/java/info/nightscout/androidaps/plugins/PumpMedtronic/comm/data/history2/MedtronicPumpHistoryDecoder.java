@@ -1,8 +1,6 @@
 package info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2;
 
 
-import android.util.Log;
-
 import org.joda.time.LocalDateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,7 +9,6 @@ import java.util.ArrayList;
 import java.util.List;
 
 import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
-import info.nightscout.androidaps.plugins.PumpCommon.utils.HexDump;
 import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.BasalProfileEntry;
 import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.RawHistoryPage;
 import info.nightscout.androidaps.plugins.PumpMedtronic.data.dto.BolusDTO;
@@ -49,7 +46,6 @@ import info.nightscout.androidaps.plugins.PumpMedtronic.util.MedtronicUtil;
 public class MedtronicPumpHistoryDecoder extends MedtronicHistoryDecoder {
 
     private static final Logger LOG = LoggerFactory.getLogger(MedtronicPumpHistoryDecoder.class);
-    private static final String TAG = "MdtPumpHistoryDecoder";
 
     //PumpValuesWriter pumpValuesWriter = null;
 
@@ -59,177 +55,88 @@ public class MedtronicPumpHistoryDecoder extends MedtronicHistoryDecoder {
     private PumpHistoryEntry tbrPreviousRecord;
     private PumpHistoryEntry changeTimeRecord;
 
+    // when set, records that depend on other records (tbr, bolus, time change) are linked later by linkRecords
+    private boolean deferLinking = false;
 
-    public MedtronicPumpHistoryDecoder() {
-
-    }
 
+    public MedtronicPumpHistoryDecoder() {
 
-    public List<? extends MedtronicHistoryEntry> processPageAndCreateRecords(RawHistoryPage page) {
-        List<Byte> dataClear = checkPage(page);
-        return createRecords(dataClear);
     }
 
 
-    public List<? extends MedtronicHistoryEntry> createRecords(List<Byte> dataClear) {
-        prepareStatistics();
-
-        int counter = 0;
-        int record = 0;
-        boolean incompletePacket = false;
-
-        List<MedtronicHistoryEntry> outList = new ArrayList<MedtronicHistoryEntry>();
-        String skipped = null;
-        int elementStart = 0;
-
-        do {
-            int opCode = dataClear.get(counter);
-            boolean special = false;
-            incompletePacket = false;
-
-
-            if (opCode == 0) {
-                counter++;
-                if (skipped == null)
-                    skipped = "0x00";
-                else
-                    skipped += " 0x00";
-                continue;
-            } else {
-                if (skipped != null) {
-                    Log.v(TAG, " ... Skipped " + skipped);
-                    skipped = null;
-                }
-            }
-
-            PumpHistoryEntryType entryType = PumpHistoryEntryType.getByCode(opCode);
-
-            PumpHistoryEntry pe = new PumpHistoryEntry();
-            pe.setEntryType(entryType);
-            pe.setOffset(counter);
-
-            counter++;
-
-            if (counter >= 1022) {
-                break;
-            }
-
-            List<Byte> listRawData = new ArrayList<Byte>();
-            listRawData.add((byte) opCode);
+    public List<PumpHistoryEntry> processPageAndCreateRecords(RawHistoryPage page) {
+        byte[] data = checkPageData(page);
 
-            if (entryType == PumpHistoryEntryType.UnabsorbedInsulin) {
-                int elements = dataClear.get(counter);
-                listRawData.add((byte) elements);
-                counter++;
-
-                int els = getUnsignedInt(elements);
-
-                for(int k = 0; k < (els - 2); k++) {
-                    listRawData.add((byte) dataClear.get(counter));
-                    counter++;
-                }
+        if (data == null) {
+            return new ArrayList<PumpHistoryEntry>();
+        }
 
-                special = true;
-            } else {
+        return createRecords(data, 0, Math.min(data.length, 1022));
+    }
 
-                for(int j = 0; j < (entryType.getTotalLength() - 1); j++) {
 
-                    try {
-                        listRawData.add(dataClear.get(counter));
-                        counter++;
-                    } catch (Exception ex) {
-                        Log.e(TAG, "OpCode: " + HexDump.getCorrectHexValue((byte) opCode) + ", Invalid package: " + HexDump.toHexStringDisplayable(listRawData));
-                        //throw ex;
-                        incompletePacket = true;
-                        break;
-                    }
+    public List<PumpHistoryEntry> createRecords(List<Byte> dataClear) {
+        return createRecords(ByteUtil.fromByteArray(dataClear), 0, dataClear.size());
+    }
 
 
-                }
+    /**
+     * Creates records of one page, without linking them to records before them (tbr rate/duration pairs, multiwave
+     * boluses, time changes), so pages can be decoded independently (and in parallel, each with its own decoder).
+     * Records of all pages are then linked in time order with linkRecords.
+     */
+    public List<PumpHistoryEntry> createPageRecords(byte[] data, int offset, int length) {
+        deferLinking = true;
 
+        try {
+            return createRecords(data, offset, length);
+        } finally {
+            deferLinking = false;
+        }
+    }
 
-                if (incompletePacket)
-                    break;
 
+    /**
+     * Links records created with createPageRecords (records must be oldest first, over all pages). Does the same as
+     * createRecords does while decoding.
+     */
+    public void linkRecords(List<PumpHistoryEntry> records) {
+        for(PumpHistoryEntry entry : records) {
+            try {
+                linkRecord(entry);
+            } catch (Exception ex) {
+                LOG.error("     Error linking: type={}, ex={}", entry.getEntryType().name(), ex.getMessage(), ex);
             }
+        }
+    }
 
-            if (entryType == PumpHistoryEntryType.None) {
-                LOG.error("Error in code. We should have not come into this branch.");
-                // System.out.println("!!! Unknown Entry: 0x" +
-                // bitUtils.getCorrectHexValue(opCode) + "[" + opCode + "]");
-                //
-                // addToStatistics(null, null, opCode);
-                // counter += 6; // we assume this is unknown packet with size
-                // // 2,5,0 (standard packet)
-                //
-                // pe.setEntryType(PumpHistoryEntryType.UnknownBasePacket);
-                // pe.setOpCode(opCode);
-
-            } else {
-
-                // System.out.println(pe.getEntryType());
-
-                if (pe.getEntryType() == PumpHistoryEntryType.UnknownBasePacket) {
-                    pe.setOpCode(opCode);
-                }
-
-                if (entryType.getHeadLength() == 0)
-                    special = true;
-
-                pe.setData(listRawData, special);
-
-                RecordDecodeStatus decoded = decodeRecord(pe);
-
-                // if (pe.getEntryType() ==
-                // PumpHistoryEntryType.UnknownBasePacket)
-                // {
-                // decoded = RecordDecodeStatus.Unknown;
-                // }
-                // else
-                // {
-                // decoded = decodeRecord(pe);
-                // }
-
-                // System.out.println("Found entry: " + entryType.name() +
-                // " ["
-                // + bitUtils.getDebugByteListHex(listRawData) + "] ");
-
-                // FIXME
-
-                // if (!decoded)
-                // System.out.println("#" + record + " " + pe);
 
-                // if (decoded)
-                // LOG.info("#" + record + " " + pe);
-                // else
-                // LOG.warn("#" + record + " BAD: " + pe);
+    /**
+     * Creates records from length bytes of data (starting at offset). Records are not copied out of data, they keep
+     * view into it, so data must not be changed while records are in use.
+     */
+    public List<PumpHistoryEntry> createRecords(byte[] data, int offset, int length) {
+        PumpHistoryRecordReader reader = readRecords(data, offset, length);
 
-                if ((decoded == RecordDecodeStatus.OK) || (decoded == RecordDecodeStatus.Ignored)) {
-                    LOG.info("#" + record + " " + decoded.getDescription() + " " + pe);
-                    Log.i(TAG, "#" + record + " " + decoded.getDescription() + " -- " + pe);
-                } else {
-                    LOG.warn("#" + record + " " + decoded.getDescription() + "  " + pe);
-                    Log.w(TAG, "#" + record + " " + decoded.getDescription() + " -- " + pe);
-                }
+        List<PumpHistoryEntry> outList = new ArrayList<PumpHistoryEntry>();
+        PumpHistoryEntry entry;
 
-                addToStatistics(pe, decoded, null);
-
-                record++;
-
-                if (decoded == RecordDecodeStatus.OK) // we add only OK records, all others are ignored
-                {
-                    outList.add(pe);
-                }
-            }
+        while ((entry = reader.next()) != null) {
+            outList.add(entry);
+        }
 
-            // System.out.println("Counter: " + counter);
+        return outList;
+    }
 
-            // if (counter > 100)
-            // break;
 
-        } while (counter < dataClear.size());
+    /**
+     * Same as createRecords, but records are decoded one at a time, when caller asks for them (see
+     * PumpHistoryRecordReader).
+     */
+    public PumpHistoryRecordReader readRecords(byte[] data, int offset, int length) {
+        prepareStatistics();
 
-        return outList;
+        return new PumpHistoryRecordReader(this, data, offset, length);
     }
 
 
@@ -371,24 +278,13 @@ public class MedtronicPumpHistoryDecoder extends MedtronicHistoryDecoder {
             // **** Implemented records ****
 
             case ChangeTime:
-                changeTimeRecord = entry;
-                return RecordDecodeStatus.OK;
-
             case NewTimeSet:
-                decodeChangeTime(entry);
-                return RecordDecodeStatus.OK;
-
-
             case TempBasalDuration:
-                decodeTempBasal(entry);
-                return RecordDecodeStatus.OK;
-
             case TempBasalRate:
-                decodeTempBasal(entry);
-                return RecordDecodeStatus.OK;
-
             case Bolus:
-                decodeBolus(entry);
+                if (!deferLinking) {
+                    linkRecord(entry);
+                }
                 return RecordDecodeStatus.OK;
 
             case EndResultTotals:
@@ -458,6 +354,34 @@ public class MedtronicPumpHistoryDecoder extends MedtronicHistoryDecoder {
     }
 
 
+    /**
+     * Decoding of records, that depends on records before them.
+     */
+    private void linkRecord(PumpHistoryEntry entry) {
+        switch (entry.getEntryType()) {
+            case ChangeTime:
+                changeTimeRecord = entry;
+                break;
+
+            case NewTimeSet:
+                decodeChangeTime(entry);
+                break;
+
+            case TempBasalDuration:
+            case TempBasalRate:
+                decodeTempBasal(entry);
+                break;
+
+            case Bolus:
+                decodeBolus(entry);
+                break;
+
+            default:
+                break;
+        }
+    }
+
+
     // FIXME
     private void decodeChangeTime(PumpHistoryEntry entry) {
         if (changeTimeRecord == null)
@@ -0,0 +1,124 @@
+package info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.RawHistoryPage;
+
+/**
+ * Decodes several history pages at once (for example archived history for reports). Each page is decoded on small
+ * shared worker pool, with its own decoder and without linking to records on other pages. Results are then merged
+ * in time order (oldest page first, records in page order) and linked on calling thread, so tbr pairs, boluses and
+ * time changes that cross page boundary are resolved the same way every time, regardless of which page finished
+ * first.
+ */
+public class ParallelPumpHistoryDecoder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelPumpHistoryDecoder.class);
+
+    public static final int MAX_WORKERS = 4;
+
+    private static final int PAGE_DATA_SIZE = 1022;
+
+    private static ForkJoinPool pool;
+
+
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(Math.max(1, Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors())));
+        }
+
+        return pool;
+    }
+
+
+    /**
+     * Decodes pages and returns their records oldest first.
+     *
+     * @param pages pages in pump order (page 0, the newest, first). Pages with wrong crc are skipped.
+     */
+    public List<PumpHistoryEntry> decodePages(List<RawHistoryPage> pages) {
+        List<List<PumpHistoryEntry>> pageRecords = new ArrayList<>(pages.size());
+
+        if (pages.size() == 1) {
+            pageRecords.add(decodePage(pages.get(0)));
+        } else {
+            List<Callable<List<PumpHistoryEntry>>> tasks = new ArrayList<>(pages.size());
+
+            for(final RawHistoryPage page : pages) {
+                tasks.add(new Callable<List<PumpHistoryEntry>>() {
+
+                    @Override
+                    public List<PumpHistoryEntry> call() {
+                        return decodePage(page);
+                    }
+                });
+            }
+
+            // futures are in same order as tasks
+            for(Future<List<PumpHistoryEntry>> future : getPool().invokeAll(tasks)) {
+                pageRecords.add(getResult(future));
+            }
+        }
+
+        return mergePages(pageRecords);
+    }
+
+
+    private static List<PumpHistoryEntry> decodePage(RawHistoryPage page) {
+        MedtronicPumpHistoryDecoder decoder = new MedtronicPumpHistoryDecoder();
+
+        byte[] data = decoder.checkPageData(page);
+
+        if (data == null || data.length == 0) {
+            LOG.warn("Page is not valid, skipped.");
+            return new ArrayList<>();
+        }
+
+        return decoder.createPageRecords(data, 0, PAGE_DATA_SIZE);
+    }
+
+
+    private static List<PumpHistoryEntry> getResult(Future<List<PumpHistoryEntry>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            LOG.error("Decoding of page was interrupted.");
+        } catch (ExecutionException ex) {
+            LOG.error("Error decoding page: {}", ex.getCause().getMessage(), ex.getCause());
+        }
+
+        return new ArrayList<>();
+    }
+
+
+    /**
+     * Puts records of pages (page 0 first) into one list, oldest first, and links them.
+     */
+    static List<PumpHistoryEntry> mergePages(List<List<PumpHistoryEntry>> pageRecords) {
+        int count = 0;
+
+        for(List<PumpHistoryEntry> records : pageRecords) {
+            count += records.size();
+        }
+
+        List<PumpHistoryEntry> merged = new ArrayList<>(count);
+
+        for(int i = pageRecords.size() - 1; i >= 0; i--) {
+            merged.addAll(pageRecords.get(i));
+        }
+
+        new MedtronicPumpHistoryDecoder().linkRecords(merged);
+
+        return merged;
+    }
+
+}
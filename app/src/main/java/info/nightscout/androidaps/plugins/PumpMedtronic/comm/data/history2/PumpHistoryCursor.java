@@ -0,0 +1,106 @@
+package info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2;
+
+import org.joda.time.LocalDateTime;
+
+import info.nightscout.androidaps.plugins.PumpMedtronic.util.MedtronicConst;
+import info.nightscout.utils.SP;
+
+/**
+ * Position in pump history up to which we have already read records: time and offset (on page 0) of newest record
+ * seen and hash (CRC16) of page 0 up to the end of that record. As long as that part of page 0 is unchanged, pump
+ * didn't start a new page, so everything after offset is new and nothing else needs to be read.
+ */
+public class PumpHistoryCursor {
+
+    private String pumpSerial;
+    private LocalDateTime newestDateTime;
+    private int newestOffset = -1;
+    private int newestEndOffset = 0;
+    private int page0Hash = 0;
+
+
+    public PumpHistoryCursor(String pumpSerial) {
+        this.pumpSerial = pumpSerial;
+    }
+
+
+    public boolean isEmpty() {
+        return newestDateTime == null;
+    }
+
+
+    public String getPumpSerial() {
+        return pumpSerial;
+    }
+
+
+    public LocalDateTime getNewestDateTime() {
+        return newestDateTime;
+    }
+
+
+    public int getNewestOffset() {
+        return newestOffset;
+    }
+
+
+    public int getNewestEndOffset() {
+        return newestEndOffset;
+    }
+
+
+    public int getPage0Hash() {
+        return page0Hash;
+    }
+
+
+    public void setNewest(LocalDateTime dateTime, int offset, int endOffset, int page0Hash) {
+        this.newestDateTime = dateTime;
+        this.newestOffset = offset;
+        this.newestEndOffset = endOffset;
+        this.page0Hash = page0Hash;
+    }
+
+
+    /**
+     * Loads cursor for pump, if stored cursor is for different pump, empty cursor is returned.
+     */
+    public static PumpHistoryCursor load(String pumpSerial) {
+        PumpHistoryCursor cursor = new PumpHistoryCursor(pumpSerial);
+
+        String serial = SP.getString(MedtronicConst.Prefs.HistoryCursorPumpSerial, "");
+        String dateTime = SP.getString(MedtronicConst.Prefs.HistoryCursorDateTime, "");
+
+        if (!serial.equals(pumpSerial) || dateTime.length() == 0) {
+            return cursor;
+        }
+
+        cursor.setNewest(LocalDateTime.parse(dateTime), //
+            SP.getInt(MedtronicConst.Prefs.HistoryCursorOffset, -1), //
+            SP.getInt(MedtronicConst.Prefs.HistoryCursorEndOffset, 0), //
+            SP.getInt(MedtronicConst.Prefs.HistoryCursorPage0Hash, 0));
+
+        return cursor;
+    }
+
+
+    public void save() {
+        if (isEmpty()) {
+            return;
+        }
+
+        SP.putString(MedtronicConst.Prefs.HistoryCursorPumpSerial, pumpSerial);
+        SP.putString(MedtronicConst.Prefs.HistoryCursorDateTime, newestDateTime.toString());
+        SP.putInt(MedtronicConst.Prefs.HistoryCursorOffset, newestOffset);
+        SP.putInt(MedtronicConst.Prefs.HistoryCursorEndOffset, newestEndOffset);
+        SP.putInt(MedtronicConst.Prefs.HistoryCursorPage0Hash, page0Hash);
+    }
+
+
+    @Override
+    public String toString() {
+        return "PumpHistoryCursor [serial=" + pumpSerial + ", newest=" + newestDateTime + ", offset=" + newestOffset
+            + ", endOffset=" + newestEndOffset + ", page0Hash=" + page0Hash + "]";
+    }
+
+}
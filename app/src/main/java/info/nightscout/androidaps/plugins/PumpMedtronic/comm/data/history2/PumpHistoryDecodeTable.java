@@ -0,0 +1,105 @@
+package info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicDeviceType;
+
+/**
+ * Decode table for one pump model: entry type and record lengths (head, date, body, total) for each of 256 op codes,
+ * with special rules of model already applied. Record scanner needs just one array index per record, instead of map
+ * lookup and walking special rules (which also read pump model each time).
+ * <p>
+ * Tables are built once per model and cached. Op codes are indexed unsigned (0xff is slot 255).
+ */
+public class PumpHistoryDecodeTable {
+
+    private static final Map<MedtronicDeviceType, PumpHistoryDecodeTable> tables = new EnumMap<>(
+        MedtronicDeviceType.class);
+
+    // used while model is not known (no special rules apply)
+    private static PumpHistoryDecodeTable defaultTable;
+
+    private final MedtronicDeviceType model;
+    private final PumpHistoryEntryType[] entryTypes = new PumpHistoryEntryType[256];
+    private final int[] headLengths = new int[256];
+    private final int[] dateLengths = new int[256];
+    private final int[] bodyLengths = new int[256];
+    private final int[] totalLengths = new int[256];
+
+
+    private PumpHistoryDecodeTable(MedtronicDeviceType model) {
+        this.model = model;
+
+        for(int i = 0; i < 256; i++) {
+            setEntry(i, PumpHistoryEntryType.UnknownBasePacket);
+        }
+
+        // same precedence as PumpHistoryEntryType.getByCode (later type with same code wins)
+        for(PumpHistoryEntryType type : PumpHistoryEntryType.values()) {
+            setEntry(type.getCode() & 0xff, type);
+        }
+    }
+
+
+    private void setEntry(int index, PumpHistoryEntryType type) {
+        entryTypes[index] = type;
+        headLengths[index] = type.getHeadLength(model);
+        dateLengths[index] = type.getDateLength();
+        bodyLengths[index] = type.getBodyLength(model);
+        totalLengths[index] = type.getTotalLength(model);
+    }
+
+
+    /**
+     * Table for pump model (model can be null, then lengths are without special rules).
+     */
+    public static synchronized PumpHistoryDecodeTable getTable(MedtronicDeviceType model) {
+        if (model == null) {
+            if (defaultTable == null) {
+                defaultTable = new PumpHistoryDecodeTable(null);
+            }
+            return defaultTable;
+        }
+
+        PumpHistoryDecodeTable table = tables.get(model);
+
+        if (table == null) {
+            table = new PumpHistoryDecodeTable(model);
+            tables.put(model, table);
+        }
+
+        return table;
+    }
+
+
+    public MedtronicDeviceType getModel() {
+        return model;
+    }
+
+
+    public PumpHistoryEntryType getEntryType(int opCode) {
+        return entryTypes[opCode & 0xff];
+    }
+
+
+    public int getHeadLength(int opCode) {
+        return headLengths[opCode & 0xff];
+    }
+
+
+    public int getDateLength(int opCode) {
+        return dateLengths[opCode & 0xff];
+    }
+
+
+    public int getBodyLength(int opCode) {
+        return bodyLengths[opCode & 0xff];
+    }
+
+
+    public int getTotalLength(int opCode) {
+        return totalLengths[opCode & 0xff];
+    }
+
+}
@@ -51,6 +51,18 @@ public class PumpHistoryEntry extends MedtronicHistoryEntry {
     }
 
 
+    /**
+     * Sets entry type and record sizes for op code from decode table (no lookups of pump model).
+     */
+    public void setEntryType(PumpHistoryDecodeTable decodeTable, int opCode) {
+        this.entryType = decodeTable.getEntryType(opCode);
+
+        this.sizes[0] = decodeTable.getHeadLength(opCode);
+        this.sizes[1] = decodeTable.getDateLength(opCode);
+        this.sizes[2] = decodeTable.getBodyLength(opCode);
+    }
+
+
     @Override
     public int getOpCode() {
         if (opCode == null)
@@ -273,8 +273,13 @@ public enum PumpHistoryEntryType //implements CodeEnum
 
 
     public int getTotalLength() {
+        return getTotalLength(MedtronicUtil.getMedtronicPumpModel());
+    }
+
+
+    public int getTotalLength(MedtronicDeviceType model) {
         if (hasSpecialRules()) {
-            return getHeadLength() + getBodyLength() + getDateLength();
+            return getHeadLength(model) + getBodyLength(model) + getDateLength();
         } else {
             return totalLength;
         }
@@ -306,6 +311,9 @@ public enum PumpHistoryEntryType //implements CodeEnum
     }
 
 
+    /**
+     * For decoding use PumpHistoryDecodeTable (array lookup, with lengths for pump model).
+     */
     public static PumpHistoryEntryType getByCode(int opCode) {
         if (opCodeMap.containsKey(opCode)) {
             return opCodeMap.get(opCode);
@@ -326,9 +334,14 @@ public enum PumpHistoryEntryType //implements CodeEnum
 
 
     public int getHeadLength() {
+        return getHeadLength(MedtronicUtil.getMedtronicPumpModel());
+    }
+
+
+    public int getHeadLength(MedtronicDeviceType model) {
         if (hasSpecialRules) {
             if (CollectionUtils.isNotEmpty(specialRulesHead)) {
-                return determineSizeByRule(headLength, specialRulesHead);
+                return determineSizeByRule(model, headLength, specialRulesHead);
             } else {
                 return headLength;
             }
@@ -344,9 +357,14 @@ public enum PumpHistoryEntryType //implements CodeEnum
 
 
     public int getBodyLength() {
+        return getBodyLength(MedtronicUtil.getMedtronicPumpModel());
+    }
+
+
+    public int getBodyLength(MedtronicDeviceType model) {
         if (hasSpecialRules) {
             if (CollectionUtils.isNotEmpty(specialRulesBody)) {
-                return determineSizeByRule(bodyLength, specialRulesBody);
+                return determineSizeByRule(model, bodyLength, specialRulesBody);
             } else {
                 return bodyLength;
             }
@@ -356,11 +374,11 @@ public enum PumpHistoryEntryType //implements CodeEnum
     }
 
 
-    private int determineSizeByRule(int defaultValue, List<SpecialRule> rules) {
+    private int determineSizeByRule(MedtronicDeviceType model, int defaultValue, List<SpecialRule> rules) {
         int size = defaultValue;
 
         for(SpecialRule rule : rules) {
-            if (MedtronicDeviceType.isSameDevice(MedtronicUtil.getMedtronicPumpModel(), rule.deviceType)) {
+            if (MedtronicDeviceType.isSameDevice(model, rule.deviceType)) {
                 size = rule.size;
                 break;
             }
@@ -0,0 +1,145 @@
+package info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import info.nightscout.androidaps.plugins.PumpCommon.utils.HexDump;
+import info.nightscout.androidaps.plugins.PumpMedtronic.util.MedtronicUtil;
+
+/**
+ * Pull reader of history records. Each call to next scans page data only up to next decoded record, so caller can
+ * stop (just stop calling next) as soon as it has what it needs, and doesn't need to hold list of all records of
+ * page. Records are returned in page order (oldest first) and are decoded (and linked) by decoder that created
+ * reader, same as with createRecords.
+ */
+public class PumpHistoryRecordReader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PumpHistoryRecordReader.class);
+
+    private final MedtronicPumpHistoryDecoder decoder;
+    private final PumpHistoryDecodeTable decodeTable;
+    private final byte[] data;
+    private final int offset;
+    private final int end;
+
+    private int counter;
+    private int record = 0;
+    private int skipped = 0;
+
+
+    PumpHistoryRecordReader(MedtronicPumpHistoryDecoder decoder, byte[] data, int offset, int length) {
+        this.decoder = decoder;
+        this.decodeTable = PumpHistoryDecodeTable.getTable(MedtronicUtil.getMedtronicPumpModel());
+        this.data = data;
+        this.offset = offset;
+        this.end = offset + length;
+        this.counter = offset;
+    }
+
+
+    /**
+     * Returns next correctly decoded record, or null when end of data is reached.
+     */
+    public PumpHistoryEntry next() {
+        while (counter < end) {
+            int opCode = data[counter];
+            boolean special = false;
+
+            if (opCode == 0) {
+                counter++;
+                skipped++;
+                continue;
+            } else {
+                if (skipped > 0) {
+                    LOG.trace(" ... Skipped {} x 0x00", skipped);
+                    skipped = 0;
+                }
+            }
+
+            PumpHistoryEntryType entryType = decodeTable.getEntryType(opCode);
+
+            PumpHistoryEntry pe = new PumpHistoryEntry();
+            pe.setEntryType(decodeTable, opCode);
+            pe.setOffset(counter - offset);
+
+            int recordStart = counter;
+
+            if (recordStart + 1 >= end) {
+                counter = end;
+                break;
+            }
+
+            int recordLength;
+
+            if (entryType == PumpHistoryEntryType.UnabsorbedInsulin) {
+                int els = decoder.getUnsignedInt(data[recordStart + 1]);
+                recordLength = Math.max(els, 2);
+                special = true;
+            } else {
+                recordLength = decodeTable.getTotalLength(opCode);
+            }
+
+            if (recordStart + recordLength > end) {
+                LOG.error("OpCode: {}, Invalid package: {}", HexDump.getCorrectHexValue((byte) opCode),
+                    HexDump.toHexStringDisplayable(data, recordStart, end - recordStart));
+                counter = end;
+                break;
+            }
+
+            counter = recordStart + recordLength;
+
+            if (entryType == PumpHistoryEntryType.None) {
+                LOG.error("Error in code. We should have not come into this branch.");
+                continue;
+            }
+
+            if (pe.getEntryType() == PumpHistoryEntryType.UnknownBasePacket) {
+                pe.setOpCode(opCode);
+            }
+
+            if (decodeTable.getHeadLength(opCode) == 0)
+                special = true;
+
+            pe.setData(data, recordStart, recordLength, special);
+
+            RecordDecodeStatus decoded = decoder.decodeRecord(pe);
+
+            // record is formatted (and its lazy parts read) only if it is logged
+            if ((decoded == RecordDecodeStatus.OK) || (decoded == RecordDecodeStatus.Ignored)) {
+                LOG.debug("#{} {} {}", record, decoded.getDescription(), pe);
+            } else {
+                LOG.warn("#{} {}  {}", record, decoded.getDescription(), pe);
+            }
+
+            decoder.addToStatistics(pe, decoded, null);
+
+            record++;
+
+            if (decoded == RecordDecodeStatus.OK) // we add only OK records, all others are ignored
+            {
+                return pe;
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Continues scanning at position (relative to start of data), which must be start of record. Records before it
+     * are not decoded.
+     */
+    public void skipTo(int position) {
+        counter = offset + position;
+        skipped = 0;
+    }
+
+
+    /**
+     * Position (relative to start of data) where scanning will continue.
+     */
+    public int getPosition() {
+        return counter - offset;
+    }
+
+}
@@ -0,0 +1,323 @@
+package info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2;
+
+import org.joda.time.LocalDateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import info.nightscout.androidaps.plugins.PumpCommon.utils.CRC;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.RawHistoryPage;
+
+/**
+ * Incremental reading of pump history. Pages are fed (page 0 first) into processPage, until it returns false. Only
+ * records newer than cursor are collected, and reading stops on first page that contains already seen records. In
+ * usual case (pump still writing to same page 0 as on last sync), only page 0 is read.
+ * <p>
+ * Pump often writes several records with same time (tbr rate and duration, bolus wizard and bolus). Records with
+ * same time as newest record seen are considered seen only if they come before (or are) that record, which is
+ * found by its time and offset. If it isn't on page (pump started new page in same minute), they are new.
+ * <p>
+ * Undated records (unabsorbed insulin, daily totals) can't be checked against cursor, so they are seen or new same as
+ * dated record before them (records at start of page same as first dated record).
+ */
+public class PumpHistorySync {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PumpHistorySync.class);
+
+    public static final int MAX_PAGES = 16;
+    private static final int PAGE_DATA_SIZE = 1022;
+
+    private final MedtronicPumpHistoryDecoder decoder;
+    private final PumpHistoryCursor cursor;
+    private final LocalDateTime since;
+
+    // new entries per page (page 0 first), entries in page are oldest first
+    private final List<List<PumpHistoryEntry>> newEntriesByPage = new ArrayList<>();
+    // time of first dated record per page (null if page has none), page 0 first
+    private final List<LocalDateTime> pageStartTimes = new ArrayList<>();
+    private final List<RawHistoryPage> pages = new ArrayList<>();
+    private PumpHistoryCursor newCursor;
+    private boolean done = false;
+    private boolean successful = true;
+
+
+    /**
+     * @param cursor position of last sync (can be empty)
+     * @param since used only if cursor is empty: records before this time are not needed (null means all pages)
+     */
+    public PumpHistorySync(MedtronicPumpHistoryDecoder decoder, PumpHistoryCursor cursor, LocalDateTime since) {
+        this.decoder = decoder;
+        this.cursor = cursor;
+        this.since = since;
+    }
+
+
+    /**
+     * Processes next page.
+     *
+     * @return true if next page needs to be read too
+     */
+    public boolean processPage(int pageNumber, RawHistoryPage page) {
+        if (done) {
+            return false;
+        }
+
+        pages.add(page);
+
+        byte[] data = decoder.checkPageData(page);
+
+        if (data == null || data.length == 0) {
+            LOG.error("Page {} is not valid, history sync stopped (cursor will not be moved).", pageNumber);
+            successful = false;
+            done = true;
+            return false;
+        }
+
+        // records are read one by one, so only new ones are kept
+        PumpHistoryRecordReader reader = decoder.readRecords(data, 0, PAGE_DATA_SIZE);
+        List<PumpHistoryEntry> pageEntries = new ArrayList<>();
+        newEntriesByPage.add(pageEntries);
+
+        boolean page0Unchanged = (pageNumber == 0) && isPage0Unchanged(data);
+        boolean reachedSeen = false;
+        LocalDateTime firstDateTime = null;
+
+        if (page0Unchanged) {
+            // everything before cursor record was read on last sync. Cursor record is decoded again, so that record
+            // after it can be linked to it (tbr rate and duration, ...)
+            firstDateTime = getFirstDateTime(data);
+            reader.skipTo(cursor.getNewestOffset());
+        }
+
+        PumpHistoryEntry lastDated = null;
+        // undated records (unabsorbed insulin, daily totals) are seen if dated record before them is seen
+        boolean lastDatedSeen = false;
+        PumpHistoryEntry entry;
+        // undated records at start of page, until we know if first dated record is seen
+        List<PumpHistoryEntry> leadingUndated = new ArrayList<>();
+        // records with same time as cursor (and undated records between them), until we know where cursor record is
+        List<PumpHistoryEntry> sameTime = new ArrayList<>();
+
+        while ((entry = reader.next()) != null) {
+            if (entry.getLocalDateTime() == null) {
+                if (lastDated == null) {
+                    leadingUndated.add(entry);
+                } else if (!sameTime.isEmpty()) {
+                    sameTime.add(entry);
+                } else if (!lastDatedSeen) {
+                    pageEntries.add(entry);
+                }
+                continue;
+            }
+
+            if (firstDateTime == null) {
+                firstDateTime = entry.getLocalDateTime();
+            }
+
+            if (page0Unchanged) {
+                lastDatedSeen = (entry.getOffset() <= cursor.getNewestOffset());
+
+                if (!lastDatedSeen) {
+                    pageEntries.add(entry);
+                }
+            } else if (isCursorRecord(entry)) {
+                // newest record seen, records with same time before it were seen too
+                reachedSeen = true;
+                lastDatedSeen = true;
+                leadingUndated.clear();
+                sameTime.clear();
+            } else if (isSameTimeAsCursor(entry)) {
+                sameTime.addAll(leadingUndated);
+                leadingUndated.clear();
+                sameTime.add(entry);
+            } else {
+                // cursor record is not after records with same time, so they are new
+                pageEntries.addAll(sameTime);
+                sameTime.clear();
+
+                lastDatedSeen = isSeen(entry);
+
+                if (lastDatedSeen) {
+                    reachedSeen = true;
+                } else {
+                    pageEntries.addAll(leadingUndated);
+                    pageEntries.add(entry);
+                }
+
+                leadingUndated.clear();
+            }
+
+            lastDated = entry;
+        }
+
+        // page without dated records can't be checked, its records are taken as new
+        pageEntries.addAll(sameTime);
+        pageEntries.addAll(leadingUndated);
+
+        pageStartTimes.add(firstDateTime);
+
+        if (newCursor == null && lastDated != null) {
+            setNewCursor(pageNumber, data, lastDated);
+        }
+
+        if (page0Unchanged) {
+            LOG.debug("Page 0 unchanged since last sync, {} new records.", pageEntries.size());
+
+            done = true;
+            return false;
+        }
+
+        LOG.debug("Page {}: {} new records{}.", pageNumber, pageEntries.size(), reachedSeen ? ", reached already seen records" : "");
+
+        done = reachedSeen || (pageNumber + 1 >= MAX_PAGES);
+
+        return !done;
+    }
+
+
+    private static LocalDateTime getFirstDateTime(byte[] data) {
+        // own decoder, so that linking state of sync decoder is not changed
+        PumpHistoryRecordReader reader = new MedtronicPumpHistoryDecoder().readRecords(data, 0, PAGE_DATA_SIZE);
+        PumpHistoryEntry entry;
+
+        while ((entry = reader.next()) != null) {
+            if (entry.getLocalDateTime() != null) {
+                return entry.getLocalDateTime();
+            }
+        }
+
+        return null;
+    }
+
+
+    private boolean isPage0Unchanged(byte[] data) {
+        if (cursor.isEmpty() || cursor.getNewestOffset() < 0 || cursor.getNewestEndOffset() <= 0
+            || cursor.getNewestEndOffset() > PAGE_DATA_SIZE) {
+            return false;
+        }
+
+        return CRC.calculate16CCITT(data, 0, cursor.getNewestEndOffset()) == cursor.getPage0Hash();
+    }
+
+
+    private boolean isSeen(PumpHistoryEntry entry) {
+        LocalDateTime dateTime = entry.getLocalDateTime();
+
+        if (dateTime == null) {
+            return false;
+        }
+
+        if (cursor.isEmpty()) {
+            return (since != null) && dateTime.isBefore(since);
+        } else {
+            return dateTime.isBefore(cursor.getNewestDateTime());
+        }
+    }
+
+
+    private boolean isSameTimeAsCursor(PumpHistoryEntry entry) {
+        return !cursor.isEmpty() && entry.getLocalDateTime() != null
+            && entry.getLocalDateTime().isEqual(cursor.getNewestDateTime());
+    }
+
+
+    private boolean isCursorRecord(PumpHistoryEntry entry) {
+        return isSameTimeAsCursor(entry) && entry.getOffset() == cursor.getNewestOffset();
+    }
+
+
+    private void setNewCursor(int pageNumber, byte[] data, PumpHistoryEntry entry) {
+        newCursor = new PumpHistoryCursor(cursor.getPumpSerial());
+
+        if (pageNumber == 0) {
+            int end = entry.getOffset() + entry.getRawDataLength();
+            newCursor.setNewest(entry.getLocalDateTime(), entry.getOffset(), end, //
+                CRC.calculate16CCITT(data, 0, end));
+        } else {
+            // not on page 0, so we can't anchor it there (offset still identifies record on its page)
+            newCursor.setNewest(entry.getLocalDateTime(), entry.getOffset(), -1, 0);
+        }
+    }
+
+
+    public boolean isDone() {
+        return done;
+    }
+
+
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+
+    /**
+     * New records, oldest first.
+     */
+    public List<PumpHistoryEntry> getNewEntries() {
+        List<PumpHistoryEntry> entries = new ArrayList<>();
+
+        for(int i = newEntriesByPage.size() - 1; i >= 0; i--) {
+            entries.addAll(newEntriesByPage.get(i));
+        }
+
+        return entries;
+    }
+
+
+    /**
+     * Number of pages that were decoded (pages after invalid page are not).
+     */
+    public int getDecodedPageCount() {
+        return newEntriesByPage.size();
+    }
+
+
+    /**
+     * New records of decoded page (index 0 is page 0), oldest first.
+     */
+    public List<PumpHistoryEntry> getNewEntries(int pageIndex) {
+        return newEntriesByPage.get(pageIndex);
+    }
+
+
+    /**
+     * Time of first dated record on decoded page. It doesn't change while pump fills the page, so it identifies
+     * the page between syncs.
+     */
+    public LocalDateTime getPageStartTime(int pageIndex) {
+        return pageStartTimes.get(pageIndex);
+    }
+
+
+    /**
+     * Pages that were read, page 0 first.
+     */
+    public List<RawHistoryPage> getPages() {
+        return pages;
+    }
+
+
+    /**
+     * Stores new cursor. Call it only after new records were stored, then next sync starts after them.
+     */
+    public void commitCursor() {
+        if (successful) {
+            getCursor().save();
+        }
+    }
+
+
+    /**
+     * Cursor to be stored after sync. If sync failed (or found no dated records), old cursor is returned.
+     */
+    public PumpHistoryCursor getCursor() {
+        if (!successful || newCursor == null) {
+            return cursor;
+        }
+
+        return newCursor;
+    }
+
+}
@@ -11,9 +11,8 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.List;
 
-import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkUtil;
 import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
-import info.nightscout.androidaps.plugins.PumpCommon.utils.HexDump;
+import info.nightscout.androidaps.plugins.PumpCommon.utils.LazyHex;
 import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.BasalProfile;
 import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.TempBasalPair;
 import info.nightscout.androidaps.plugins.PumpMedtronic.data.dto.BatteryStatusDTO;
@@ -36,9 +35,9 @@ public class MedtronicConverter {
 
     public Object convertResponse(MedtronicCommandType commandType, byte[] rawContent) {
 
-        LOG.debug("Raw response before convert: " + HexDump.toHexStringDisplayable(rawContent));
+        LOG.debug("Raw response before convert: {}", LazyHex.displayable(rawContent));
 
-        this.pumpModel = RileyLinkUtil.getMedtronicPumpModel();
+        this.pumpModel = MedtronicUtil.getMedtronicPumpModel();
 
         switch (commandType) {
 
@@ -176,7 +175,7 @@ public class MedtronicConverter {
 
         float value = ByteUtil.toInt(rawData[0], rawData[1]) / 10.0f;
 
-        System.out.println("Remaining insulin: " + value);
+        LOG.debug("Remaining insulin: {}", value);
         return value;
     }
 
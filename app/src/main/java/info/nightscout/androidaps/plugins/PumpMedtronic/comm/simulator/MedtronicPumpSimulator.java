@@ -0,0 +1,276 @@
+package info.nightscout.androidaps.plugins.PumpMedtronic.comm.simulator;
+
+import org.joda.time.LocalDateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkEncodingType;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.simulator.SimulatedDevice;
+import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.message.CarelinkLongMessageBody;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.message.PacketType;
+import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicCommandType;
+import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicDeviceType;
+
+/**
+ * Simulated Medtronic 5xx/7xx pump. Answers model, clock, battery, remaining insulin and temp basal reads, accepts
+ * bolus and TBR commands (with attention packet and ACK, same as pump does it), and serves history pages (frame by
+ * frame, next frame is sent when ACK is received). History pages are recorded pages (for example from
+ * historyDebugging), page 0 is the newest one.
+ */
+public class MedtronicPumpSimulator implements SimulatedDevice {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MedtronicPumpSimulator.class);
+
+    public static final int PAGE_SIZE = 1024;
+    public static final int FRAME_SIZE = 64;
+    public static final int FRAME_COUNT = PAGE_SIZE / FRAME_SIZE;
+
+    private final byte[] pumpId;
+    private final MedtronicDeviceType pumpModel;
+
+    private List<byte[]> historyPages = new ArrayList<>();
+
+    private double remainingInsulin = 150.0d;
+    private double batteryVoltage = 1.40d;
+    private double lastBolus = 0.0d;
+    private int bolusCount = 0;
+    private double tbrRate = 0.0d;
+    private int tbrDuration = 0;
+
+    // command that was announced with attention packet (and ACK-ed), its arguments come in next packet
+    private MedtronicCommandType pendingCommand;
+
+    private byte[] historyPage;
+    private int historyFrame;
+
+
+    public MedtronicPumpSimulator(String pumpId, MedtronicDeviceType pumpModel) {
+        this.pumpId = ByteUtil.fromHexString(pumpId);
+        this.pumpModel = pumpModel;
+    }
+
+
+    public synchronized void setHistoryPages(List<byte[]> historyPages) {
+        this.historyPages = historyPages;
+    }
+
+
+    public synchronized void setRemainingInsulin(double remainingInsulin) {
+        this.remainingInsulin = remainingInsulin;
+    }
+
+
+    public synchronized void setBatteryVoltage(double batteryVoltage) {
+        this.batteryVoltage = batteryVoltage;
+    }
+
+
+    @Override
+    public RileyLinkEncodingType getEncoding() {
+        return RileyLinkEncodingType.FourByteSixByte;
+    }
+
+
+    @Override
+    public synchronized byte[] processPacket(byte[] packet) {
+        if (packet.length < 5 || packet[0] != PacketType.Carelink.getValue()) {
+            return null;
+        }
+
+        if (!Arrays.equals(pumpId, ByteUtil.substring(packet, 1, 3))) {
+            return null; // not for us
+        }
+
+        MedtronicCommandType commandType = MedtronicCommandType.getByCode(packet[4]);
+        byte[] body = ByteUtil.substring(packet, 5, packet.length - 5);
+
+        LOG.debug("Pump simulator: received {}", commandType.name());
+
+        if (commandType == MedtronicCommandType.CommandACK) {
+            return getNextHistoryFrame();
+        }
+
+        historyPage = null;
+
+        if (isCommandWithArguments(commandType)) {
+            if (body.length <= 1) {
+                pendingCommand = commandType;
+                return createAck();
+            }
+
+            if (pendingCommand != commandType) {
+                LOG.warn("Pump simulator: got arguments for {} without attention packet", commandType.name());
+                pendingCommand = null;
+                return createNak();
+            }
+
+            pendingCommand = null;
+            return runCommandWithArguments(commandType, body);
+        }
+
+        pendingCommand = null;
+
+        switch (commandType) {
+            case PumpModel: {
+                // pump sends 9 bytes: length of model string, model string and zeros
+                byte[] model = pumpModel.getPumpModel().getBytes();
+                return createResponse(commandType, Arrays.copyOf(ByteUtil.concat((byte) model.length, model), 9));
+            }
+
+            case RealTimeClock: {
+                LocalDateTime now = new LocalDateTime();
+                return createResponse(commandType, new byte[]{(byte) now.getHourOfDay(), (byte) now.getMinuteOfHour(),
+                    (byte) now.getSecondOfMinute(), (byte) (now.getYear() >> 8), (byte) now.getYear(),
+                    (byte) now.getMonthOfYear(), (byte) now.getDayOfMonth()});
+            }
+
+            case GetBatteryStatus: {
+                int voltage = (int) Math.round(batteryVoltage * 100);
+                return createResponse(commandType, new byte[]{0, (byte) (voltage >> 8), (byte) voltage});
+            }
+
+            case GetRemainingInsulin: {
+                int insulin = (int) Math.round(remainingInsulin * 10);
+                return createResponse(commandType, new byte[]{(byte) (insulin >> 8), (byte) insulin});
+            }
+
+            case ReadTemporaryBasal: {
+                int strokes = (int) Math.round(tbrRate * 40);
+                return createResponse(commandType, new byte[]{0, 0, (byte) (strokes >> 8), (byte) strokes,
+                    (byte) (tbrDuration >> 8), (byte) tbrDuration});
+            }
+
+            default:
+                LOG.warn("Pump simulator: command {} is not supported", commandType.name());
+                return createNak();
+        }
+    }
+
+
+    private boolean isCommandWithArguments(MedtronicCommandType commandType) {
+        switch (commandType) {
+            case GetHistoryData:
+            case SetBolus:
+            case SetTemporaryBasal:
+            case RFPowerOff: // same code as RFPowerOn
+            case PushButton:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+
+    private byte[] runCommandWithArguments(MedtronicCommandType commandType, byte[] body) {
+        switch (commandType) {
+            case GetHistoryData: {
+                int pageNumber = ByteUtil.asUINT8(body[1]);
+
+                if (pageNumber >= historyPages.size()) {
+                    LOG.warn("Pump simulator: history page {} doesn't exist", pageNumber);
+                    return createNak();
+                }
+
+                historyPage = historyPages.get(pageNumber);
+                historyFrame = 0;
+                return getNextHistoryFrame();
+            }
+
+            case SetBolus: {
+                int strokes = body[0] == 1 ? ByteUtil.asUINT8(body[1]) : ByteUtil.toInt(body[1], body[2]);
+                double units = strokes / (double) pumpModel.getBolusStrokes();
+
+                lastBolus = units;
+                bolusCount++;
+                remainingInsulin = Math.max(0.0d, remainingInsulin - units);
+                LOG.debug("Pump simulator: bolus {} U", units);
+                return createAck();
+            }
+
+            case SetTemporaryBasal: {
+                tbrRate = ByteUtil.toInt(body[1], body[2]) / 40.0d;
+                tbrDuration = ByteUtil.asUINT8(body[3]) * 30;
+                LOG.debug("Pump simulator: TBR {} U/h for {} min", tbrRate, tbrDuration);
+                return createAck();
+            }
+
+            default:
+                return createAck();
+        }
+    }
+
+
+    private byte[] getNextHistoryFrame() {
+        if (historyPage == null) {
+            return null; // nothing to send, pump stays quiet
+        }
+
+        historyFrame++;
+
+        byte[] frame = new byte[1 + FRAME_SIZE];
+        frame[0] = (byte) (historyFrame == FRAME_COUNT ? (historyFrame | 0x80) : historyFrame);
+        System.arraycopy(historyPage, (historyFrame - 1) * FRAME_SIZE, frame, 1, FRAME_SIZE);
+
+        if (historyFrame == FRAME_COUNT) {
+            historyPage = null;
+        }
+
+        return createPacket(MedtronicCommandType.GetHistoryData, frame);
+    }
+
+
+    private byte[] createResponse(MedtronicCommandType commandType, byte[] content) {
+        // length of content in first byte, padded to long body
+        return createPacket(commandType, new CarelinkLongMessageBody(ByteUtil.concat((byte) content.length, content))
+            .getTxData());
+    }
+
+
+    private byte[] createAck() {
+        return createPacket(MedtronicCommandType.CommandACK, new byte[]{0});
+    }
+
+
+    private byte[] createNak() {
+        return createPacket(MedtronicCommandType.CommandNAK, new byte[]{0});
+    }
+
+
+    private byte[] createPacket(MedtronicCommandType commandType, byte[] body) {
+        byte[] header = ByteUtil.concat(new byte[]{PacketType.Carelink.getValue()}, pumpId);
+        header = ByteUtil.concat(header, commandType.getCommandCode());
+        return ByteUtil.concat(header, body);
+    }
+
+
+    public synchronized double getRemainingInsulin() {
+        return remainingInsulin;
+    }
+
+
+    public synchronized double getLastBolus() {
+        return lastBolus;
+    }
+
+
+    public synchronized int getBolusCount() {
+        return bolusCount;
+    }
+
+
+    public synchronized double getTbrRate() {
+        return tbrRate;
+    }
+
+
+    public synchronized int getTbrDuration() {
+        return tbrDuration;
+    }
+
+}
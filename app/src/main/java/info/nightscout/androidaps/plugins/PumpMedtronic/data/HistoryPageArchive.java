@@ -0,0 +1,371 @@
+package info.nightscout.androidaps.plugins.PumpMedtronic.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import info.nightscout.androidaps.plugins.PumpCommon.utils.CRC;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.RawHistoryPage;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2.MedtronicPumpHistoryDecoder;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2.ParallelPumpHistoryDecoder;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2.PumpHistoryEntry;
+
+/**
+ * Archive of raw history pages (as read from pump, with crc) in one memory-mapped file. File has header with index
+ * (page number, fetch time, crc of slot data and pump serial per slot) and fixed number of 1026 byte slots (data
+ * length and up to 1024 bytes of page). When archive is full, oldest slot is overwritten.
+ * <p>
+ * Pages can be read into caller's buffer (one bulk copy out of mapped file, buffer can be reused for all pages) or as
+ * read-only view of slot, so historic pages can be decoded again (for example after decoder fix) without radio.
+ */
+public class HistoryPageArchive implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HistoryPageArchive.class);
+
+    public static final int DEFAULT_CAPACITY = 256;
+    public static final int PAGE_SIZE = 1024;
+    public static final int SLOT_SIZE = PAGE_SIZE + 2;
+
+    private static final int MAGIC = 0x4d504841; // "MPHA"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16; // magic, version, capacity, count, next slot
+    private static final int SERIAL_SIZE = 8;
+    private static final int INDEX_ENTRY_SIZE = 2 + 8 + 2 + SERIAL_SIZE; // page number, fetch time, crc, serial
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int slotsOffset;
+
+    private int count;
+    private int nextSlot;
+
+
+    public HistoryPageArchive(File archiveFile) throws IOException {
+        this(archiveFile, DEFAULT_CAPACITY);
+    }
+
+
+    /**
+     * Opens archive (or creates new one). If existing file has different format or capacity, it is recreated.
+     */
+    public HistoryPageArchive(File archiveFile, int capacity) throws IOException {
+        this.capacity = capacity;
+        this.slotsOffset = HEADER_SIZE + capacity * INDEX_ENTRY_SIZE;
+
+        long size = slotsOffset + (long) capacity * SLOT_SIZE;
+        boolean existing = archiveFile.exists() && archiveFile.length() == size;
+
+        this.file = new RandomAccessFile(archiveFile, "rw");
+        this.file.setLength(size);
+        this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        if (existing && buffer.getInt(0) == MAGIC && buffer.getShort(4) == VERSION && buffer.getShort(6) == capacity) {
+            count = buffer.getInt(8);
+            nextSlot = buffer.getInt(12);
+        } else {
+            if (existing) {
+                LOG.warn("History archive {} has unknown format, it will be recreated.", archiveFile.getName());
+            }
+
+            buffer.putInt(0, MAGIC);
+            buffer.putShort(4, (short) VERSION);
+            buffer.putShort(6, (short) capacity);
+            writeCounters(0, 0);
+        }
+    }
+
+
+    /**
+     * Adds page to archive.
+     *
+     * @return slot where page was written
+     */
+    public synchronized int addPage(String pumpSerial, int pageNumber, long fetchTime, byte[] data) {
+        return addPage(pumpSerial, pageNumber, fetchTime, data, 0, data.length);
+    }
+
+
+    public synchronized int addPage(String pumpSerial, int pageNumber, long fetchTime, byte[] data, int offset,
+            int length) {
+        if (length > PAGE_SIZE) {
+            throw new IllegalArgumentException("Page is too long: " + length);
+        }
+
+        int slot = nextSlot;
+
+        ByteBuffer slotBuffer = buffer.duplicate();
+        slotBuffer.position(getSlotOffset(slot));
+        slotBuffer.putShort((short) length);
+        slotBuffer.put(data, offset, length);
+
+        // index is written after data, so that slot is consistent if we die in between
+        ByteBuffer indexBuffer = buffer.duplicate();
+        indexBuffer.position(getIndexOffset(slot));
+        indexBuffer.putShort((short) pageNumber);
+        indexBuffer.putLong(fetchTime);
+        indexBuffer.putShort((short) CRC.calculate16CCITT(data, offset, length));
+        indexBuffer.put(getSerialBytes(pumpSerial));
+
+        writeCounters(Math.min(count + 1, capacity), (slot + 1) % capacity);
+
+        return slot;
+    }
+
+
+    /**
+     * Adds page to archive, unless newest archived copy of same page (same pump and page number) has same crc. Pages
+     * that didn't change since last sync are so not archived again.
+     *
+     * @return slot where page was written, or -1 if page didn't change
+     */
+    public synchronized int addChangedPage(String pumpSerial, int pageNumber, long fetchTime, byte[] data) {
+        int lastSlot = findLastSlot(pumpSerial, pageNumber);
+
+        if (lastSlot >= 0 && getPageLength(lastSlot) == data.length
+            && getCrc(lastSlot) == (CRC.calculate16CCITT(data, 0, data.length) & 0xffff)) {
+            return -1;
+        }
+
+        return addPage(pumpSerial, pageNumber, fetchTime, data);
+    }
+
+
+    /**
+     * Slot of newest archived copy of page.
+     *
+     * @return slot, or -1 if page of that pump is not in archive
+     */
+    public synchronized int findLastSlot(String pumpSerial, int pageNumber) {
+        byte[] serial = getSerialBytes(pumpSerial);
+        byte[] slotSerial = new byte[SERIAL_SIZE];
+
+        for(int index = count - 1; index >= 0; index--) {
+            int slot = getSlot(index);
+
+            if (getPageNumber(slot) != pageNumber) {
+                continue;
+            }
+
+            ByteBuffer indexBuffer = buffer.duplicate();
+            indexBuffer.position(getIndexOffset(slot) + 12);
+            indexBuffer.get(slotSerial);
+
+            if (Arrays.equals(serial, slotSerial)) {
+                return slot;
+            }
+        }
+
+        return -1;
+    }
+
+
+    private static byte[] getSerialBytes(String pumpSerial) {
+        byte[] serial = new byte[SERIAL_SIZE];
+        if (pumpSerial != null) {
+            byte[] serialBytes = pumpSerial.getBytes(ASCII);
+            System.arraycopy(serialBytes, 0, serial, 0, Math.min(serialBytes.length, SERIAL_SIZE));
+        }
+        return serial;
+    }
+
+
+    private void writeCounters(int count, int nextSlot) {
+        this.count = count;
+        this.nextSlot = nextSlot;
+        buffer.putInt(8, count);
+        buffer.putInt(12, nextSlot);
+    }
+
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+
+    /**
+     * Slot of i-th page, where 0 is oldest page in archive.
+     */
+    public synchronized int getSlot(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index " + index + ", count " + count);
+        }
+
+        return (nextSlot - count + index + capacity) % capacity;
+    }
+
+
+    public synchronized int getPageNumber(int slot) {
+        return buffer.getShort(getIndexOffset(slot)) & 0xffff;
+    }
+
+
+    public synchronized long getFetchTime(int slot) {
+        return buffer.getLong(getIndexOffset(slot) + 2);
+    }
+
+
+    public synchronized int getCrc(int slot) {
+        return buffer.getShort(getIndexOffset(slot) + 10) & 0xffff;
+    }
+
+
+    public synchronized String getPumpSerial(int slot) {
+        byte[] serial = new byte[SERIAL_SIZE];
+        ByteBuffer indexBuffer = buffer.duplicate();
+        indexBuffer.position(getIndexOffset(slot) + 12);
+        indexBuffer.get(serial);
+
+        int length = 0;
+        while (length < SERIAL_SIZE && serial[length] != 0) {
+            length++;
+        }
+
+        return new String(serial, 0, length, ASCII);
+    }
+
+
+    public synchronized int getPageLength(int slot) {
+        return buffer.getShort(getSlotOffset(slot)) & 0xffff;
+    }
+
+
+    /**
+     * Copies page from slot into target (which must have at least PAGE_SIZE bytes, so it can be reused).
+     *
+     * @return length of page
+     */
+    public synchronized int readPage(int slot, byte[] target) {
+        int length = getPageLength(slot);
+
+        ByteBuffer slotBuffer = buffer.duplicate();
+        slotBuffer.position(getSlotOffset(slot) + 2);
+        slotBuffer.get(target, 0, length);
+
+        return length;
+    }
+
+
+    /**
+     * Page in slot as new array.
+     */
+    public synchronized byte[] getPage(int slot) {
+        byte[] page = new byte[getPageLength(slot)];
+        readPage(slot, page);
+        return page;
+    }
+
+
+    /**
+     * Read-only view of page in slot, nothing is copied. View is valid only until slot is overwritten.
+     */
+    public synchronized ByteBuffer getPageView(int slot) {
+        ByteBuffer view = buffer.asReadOnlyBuffer();
+        int start = getSlotOffset(slot) + 2;
+        view.position(start);
+        view.limit(start + getPageLength(slot));
+        return view.slice();
+    }
+
+
+    /**
+     * Checks that slot data matches crc in index.
+     */
+    public boolean isValid(int slot, byte[] page, int length) {
+        return CRC.calculate16CCITT(page, 0, length) == getCrc(slot);
+    }
+
+
+    /**
+     * Decodes archived page again. Page is copied out of archive once, records are views into that copy.
+     *
+     * @return records of page, or empty list if slot data doesn't match its crc
+     */
+    public List<PumpHistoryEntry> decodePage(int slot, MedtronicPumpHistoryDecoder decoder) {
+        byte[] page = getPage(slot);
+
+        if (!isValid(slot, page, page.length)) {
+            LOG.warn("Archived page in slot {} is corrupted.", slot);
+            return new ArrayList<>();
+        }
+
+        // last 2 bytes of page are its crc
+        return decoder.createRecords(page, 0, Math.max(0, page.length - 2));
+    }
+
+
+    /**
+     * Decodes several archived pages in parallel (see ParallelPumpHistoryDecoder).
+     *
+     * @param slots slots of pages in pump order (page 0, the newest, first); corrupted slots are skipped
+     * @return records of all pages, oldest first
+     */
+    public List<PumpHistoryEntry> decodePages(List<Integer> slots, ParallelPumpHistoryDecoder decoder) {
+        List<RawHistoryPage> pages = new ArrayList<>(slots.size());
+
+        for(int slot : slots) {
+            byte[] page = getPage(slot);
+
+            if (!isValid(slot, page, page.length)) {
+                LOG.warn("Archived page in slot {} is corrupted.", slot);
+                continue;
+            }
+
+            RawHistoryPage rawPage = new RawHistoryPage();
+            rawPage.appendData(page);
+            pages.add(rawPage);
+        }
+
+        return decoder.decodePages(pages);
+    }
+
+
+    public synchronized void flush() {
+        buffer.force();
+    }
+
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+
+    private int getIndexOffset(int slot) {
+        checkSlot(slot);
+        return HEADER_SIZE + slot * INDEX_ENTRY_SIZE;
+    }
+
+
+    private int getSlotOffset(int slot) {
+        checkSlot(slot);
+        return slotsOffset + slot * SLOT_SIZE;
+    }
+
+
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= capacity) {
+            throw new IndexOutOfBoundsException("Slot " + slot + ", capacity " + capacity);
+        }
+    }
+
+}
@@ -0,0 +1,267 @@
+package info.nightscout.androidaps.plugins.PumpMedtronic.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.RawHistoryPage;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2.PumpHistoryEntry;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2.PumpHistorySync;
+
+/**
+ * Append-only store of pump history, per pump serial. Raw pages are kept in pages table, where page is identified by
+ * time of its first record (it doesn't change while pump fills the page), so when same page is read again on later
+ * sync, stored page is replaced with longer version instead of added again. Dated records are indexed in records
+ * table by time, with reference to their page; records that were already stored are ignored (unique on serial, time
+ * and data).
+ * <p>
+ * One sync is written in one transaction. Times are pump (local) times, stored as millis of that time in UTC, so they
+ * don't move when timezone of phone changes.
+ */
+public class PumpHistoryStore extends SQLiteOpenHelper {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PumpHistoryStore.class);
+
+    private static final int DATABASE_VERSION = 1;
+    private static final String DATABASE_NAME = "MedtronicPumpHistory";
+
+    private static final String TABLE_PAGES = "pages";
+    private static final String TABLE_RECORDS = "records";
+
+
+    public PumpHistoryStore(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_PAGES + " (id INTEGER PRIMARY KEY, pump_serial TEXT NOT NULL, "
+            + "start_time INTEGER NOT NULL, end_time INTEGER, stored_at INTEGER, data BLOB, "
+            + "UNIQUE (pump_serial, start_time))");
+
+        db.execSQL("CREATE TABLE " + TABLE_RECORDS + " (id INTEGER PRIMARY KEY, pump_serial TEXT NOT NULL, "
+            + "record_time INTEGER NOT NULL, op_code INTEGER, page_id INTEGER, page_offset INTEGER, data BLOB NOT NULL, "
+            + "UNIQUE (pump_serial, record_time, data))");
+    }
+
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_RECORDS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PAGES);
+        onCreate(db);
+    }
+
+
+    /**
+     * Stores pages and new records of sync in one transaction. Pages without dated records are not stored (they
+     * can't be identified).
+     *
+     * @return number of records that were added
+     */
+    public int store(String pumpSerial, PumpHistorySync sync) {
+        SQLiteDatabase db = getWritableDatabase();
+        List<RawHistoryPage> pages = sync.getPages();
+        long now = System.currentTimeMillis();
+        int added = 0;
+
+        db.beginTransaction();
+
+        try {
+            SQLiteStatement insertRecord = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_RECORDS
+                + " (pump_serial, record_time, op_code, page_id, page_offset, data) VALUES (?, ?, ?, ?, ?, ?)");
+
+            for(int i = 0; i < sync.getDecodedPageCount(); i++) {
+                LocalDateTime startTime = sync.getPageStartTime(i);
+                List<PumpHistoryEntry> entries = sync.getNewEntries(i);
+
+                if (startTime == null) {
+                    LOG.debug("Page {} has no dated records, not stored.", i);
+                    continue;
+                }
+
+                long pageId = storePage(db, pumpSerial, toMillis(startTime), getEndTime(entries), now,
+                    pages.get(i).getData());
+
+                for(PumpHistoryEntry entry : entries) {
+                    if (entry.getLocalDateTime() == null) {
+                        continue; // only in raw page
+                    }
+
+                    insertRecord.clearBindings();
+                    insertRecord.bindString(1, pumpSerial);
+                    insertRecord.bindLong(2, toMillis(entry.getLocalDateTime()));
+                    insertRecord.bindLong(3, entry.getOpCode());
+                    insertRecord.bindLong(4, pageId);
+                    insertRecord.bindLong(5, entry.getOffset());
+                    insertRecord.bindBlob(6, entry.getRawDataBytes());
+
+                    if (insertRecord.executeInsert() != -1) {
+                        added++;
+                    }
+                }
+            }
+
+            insertRecord.close();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        LOG.debug("History store: {} page(s), {} new record(s) stored.", sync.getDecodedPageCount(), added);
+
+        return added;
+    }
+
+
+    private long storePage(SQLiteDatabase db, String pumpSerial, long startTime, Long endTime, long now, byte[] data) {
+        ContentValues values = new ContentValues();
+        values.put("stored_at", now);
+        values.put("data", data);
+
+        if (endTime != null) {
+            values.put("end_time", endTime);
+        }
+
+        Cursor cursor = db.query(TABLE_PAGES, new String[]{"id"}, "pump_serial = ? AND start_time = ?",
+            new String[]{pumpSerial, String.valueOf(startTime)}, null, null, null);
+
+        try {
+            if (cursor.moveToFirst()) {
+                long id = cursor.getLong(0);
+                db.update(TABLE_PAGES, values, "id = ?", new String[]{String.valueOf(id)});
+                return id;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        values.put("pump_serial", pumpSerial);
+        values.put("start_time", startTime);
+
+        return db.insert(TABLE_PAGES, null, values);
+    }
+
+
+    private static Long getEndTime(List<PumpHistoryEntry> entries) {
+        for(int i = entries.size() - 1; i >= 0; i--) {
+            if (entries.get(i).getLocalDateTime() != null) {
+                return toMillis(entries.get(i).getLocalDateTime());
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Records of pump with time in [from, to), oldest first.
+     */
+    public List<StoredRecord> getRecords(String pumpSerial, LocalDateTime from, LocalDateTime to) {
+        SQLiteDatabase db = getReadableDatabase();
+        List<StoredRecord> records = new ArrayList<>();
+
+        Cursor cursor = db.query(TABLE_RECORDS, new String[]{"record_time", "op_code", "page_id", "page_offset",
+            "data"}, "pump_serial = ? AND record_time >= ? AND record_time < ?", new String[]{pumpSerial,
+            String.valueOf(toMillis(from)), String.valueOf(toMillis(to))}, null, null, "record_time, id");
+
+        try {
+            while (cursor.moveToNext()) {
+                records.add(new StoredRecord(toLocalDateTime(cursor.getLong(0)), cursor.getInt(1), cursor.getLong(2),
+                    cursor.getInt(3), cursor.getBlob(4)));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return records;
+    }
+
+
+    /**
+     * Raw data of stored page (as read from pump, with crc), or null if there is no such page.
+     */
+    public byte[] getPageData(long pageId) {
+        Cursor cursor = getReadableDatabase().query(TABLE_PAGES, new String[]{"data"}, "id = ?",
+            new String[]{String.valueOf(pageId)}, null, null, null);
+
+        try {
+            return cursor.moveToFirst() ? cursor.getBlob(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+
+    public void clear() {
+        SQLiteDatabase db = getWritableDatabase();
+        db.delete(TABLE_RECORDS, null, null);
+        db.delete(TABLE_PAGES, null, null);
+    }
+
+
+    static long toMillis(LocalDateTime dateTime) {
+        return dateTime.toDateTime(DateTimeZone.UTC).getMillis();
+    }
+
+
+    static LocalDateTime toLocalDateTime(long millis) {
+        return new LocalDateTime(millis, DateTimeZone.UTC);
+    }
+
+    public static class StoredRecord {
+
+        private final LocalDateTime dateTime;
+        private final int opCode;
+        private final long pageId;
+        private final int pageOffset;
+        private final byte[] data;
+
+
+        StoredRecord(LocalDateTime dateTime, int opCode, long pageId, int pageOffset, byte[] data) {
+            this.dateTime = dateTime;
+            this.opCode = opCode;
+            this.pageId = pageId;
+            this.pageOffset = pageOffset;
+            this.data = data;
+        }
+
+
+        public LocalDateTime getDateTime() {
+            return dateTime;
+        }
+
+
+        public int getOpCode() {
+            return opCode;
+        }
+
+
+        public long getPageId() {
+            return pageId;
+        }
+
+
+        public int getPageOffset() {
+            return pageOffset;
+        }
+
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+
+}
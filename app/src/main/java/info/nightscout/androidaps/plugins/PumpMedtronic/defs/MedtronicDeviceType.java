@@ -126,6 +126,11 @@ public enum MedtronicDeviceType {
     }
 
 
+    public String getPumpModel() {
+        return pumpModel;
+    }
+
+
     public MedtronicConverterType getCGMSConverterType() {
         return cgmsConverter;
     }
@@ -23,11 +23,13 @@ import com.gxwtech.roundtrip2.RoundtripService.medtronic.PumpData.PumpHistoryMan
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkCommunicationManager;
 import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkConst;
@@ -48,6 +50,10 @@ import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.tasks.
 import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
 import info.nightscout.androidaps.plugins.PumpMedtronic.comm.MedtronicCommunicationManager;
 import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.Page;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.RawHistoryPage;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2.PumpHistorySync;
+import info.nightscout.androidaps.plugins.PumpMedtronic.data.HistoryPageArchive;
+import info.nightscout.androidaps.plugins.PumpMedtronic.data.PumpHistoryStore;
 import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicDeviceType;
 import info.nightscout.androidaps.plugins.PumpMedtronic.util.MedtronicConst;
 import info.nightscout.utils.SP;
@@ -69,6 +75,10 @@ public class RileyLinkMedtronicService extends RileyLinkService {
     // cache of most recently received set of pump history pages. Probably shouldn't be here.
     ArrayList<Page> mHistoryPages;
     PumpHistoryManager pumpHistoryManager;
+    PumpHistoryStore pumpHistoryStore;
+    HistoryPageArchive historyPageArchive;
+
+    private static final String HISTORY_ARCHIVE_FILE = "HistoryPages.archive";
 
     public MedtronicCommunicationManager medtronicCommunicationManager;
     private static ServiceTask currentTask = null;
@@ -205,6 +215,21 @@ public class RileyLinkMedtronicService extends RileyLinkService {
     }
 
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        if (historyPageArchive != null) {
+            try {
+                historyPageArchive.close();
+            } catch (IOException ex) {
+                LOG.error("Could not close history archive: {}", ex.getMessage());
+            }
+            historyPageArchive = null;
+        }
+    }
+
+
     @Override
     public void onConfigurationChanged(Configuration newConfig) {
         LOG.warn("onConfigurationChanged");
@@ -412,20 +437,54 @@ public class RileyLinkMedtronicService extends RileyLinkService {
     }
 
 
-    public void saveHistoryPage(int pagenumber, Page page) {
-        if ((page == null) || (page.getRawData() == null)) {
-            return;
+    /**
+     * Stores pages and new records read by history sync (all in one transaction).
+     *
+     * @return true if records were stored
+     */
+    public boolean saveHistory(PumpHistorySync historySync) {
+        String pumpSerial = historySync.getCursor().getPumpSerial();
+
+        if (pumpSerial == null) {
+            LOG.warn("saveHistory: pump serial is not known, history not stored.");
+            return false;
         }
-        String filename = "history-" + pagenumber;
-        FileOutputStream os;
+
+        if (pumpHistoryStore == null) {
+            pumpHistoryStore = new PumpHistoryStore(context);
+        }
+
+        pumpHistoryStore.store(pumpSerial, historySync);
+
+        archiveHistoryPages(pumpSerial, historySync.getPages());
+
+        return true;
+    }
+
+
+    private void archiveHistoryPages(String pumpSerial, List<RawHistoryPage> pages) {
         try {
-            os = openFileOutput(filename, Context.MODE_PRIVATE);
-            os.write(page.getRawData());
-            os.close();
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
+            if (historyPageArchive == null) {
+                historyPageArchive = new HistoryPageArchive(new File(context.getFilesDir(), HISTORY_ARCHIVE_FILE));
+            }
+
+            long now = System.currentTimeMillis();
+            int archived = 0;
+
+            // most pages didn't change since last sync, only changed ones are archived
+            for(int i = 0; i < pages.size(); i++) {
+                if (historyPageArchive.addChangedPage(pumpSerial, i, now, pages.get(i).getData()) >= 0) {
+                    archived++;
+                }
+            }
+
+            if (archived > 0) {
+                historyPageArchive.flush();
+            }
+
+            LOG.debug("archiveHistoryPages: {} of {} pages changed", archived, pages.size());
+        } catch (IOException ex) {
+            LOG.error("Could not archive history pages: {}", ex.getMessage());
         }
     }
 
@@ -18,6 +18,12 @@ public class MedtronicConst {
         public static final String MaxBolus = PrefPrefix + "max_bolus";
         public static final String MaxBasal = PrefPrefix + "max_basal";
 
+        public static final String HistoryCursorPumpSerial = Prefix + "HistoryCursor.PumpSerial";
+        public static final String HistoryCursorDateTime = Prefix + "HistoryCursor.DateTime";
+        public static final String HistoryCursorOffset = Prefix + "HistoryCursor.Offset";
+        public static final String HistoryCursorEndOffset = Prefix + "HistoryCursor.EndOffset";
+        public static final String HistoryCursorPage0Hash = Prefix + "HistoryCursor.Page0Hash";
+
         //public static final String LastGoodPumpCommunicationTime = Prefix + "lastGoodPumpCommunicationTime";
         //public static final String LastGoodPumpFrequency = Prefix + "LastGoodPumpFrequency";
 
@@ -8,7 +8,6 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.List;
 
-import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkUtil;
 import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
 import info.nightscout.androidaps.plugins.PumpCommon.utils.HexDump;
 import info.nightscout.androidaps.plugins.PumpMedtronic.comm.message.MessageType;
@@ -17,14 +16,18 @@ import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicDeviceType
 
 /**
  * Created by andy on 5/9/18.
+ * <p>
+ * Pure Java helpers (no Android dependencies), so that converters and history decoders can also be used outside the
+ * app (unit tests, benchmark module).
  */
 
-public class MedtronicUtil extends RileyLinkUtil {
+public class MedtronicUtil {
 
     private static final Logger LOG = LoggerFactory.getLogger(MedtronicUtil.class);
     //private static MedtronicDeviceType deviceType;
     private static boolean lowLevelDebug = true;
     private static MedtronicDeviceType deviceType;
+    private static MedtronicDeviceType medtronicPumpModel;
 
 
     public static LocalTime getTimeFrom30MinInterval(int interval) {
@@ -152,17 +155,18 @@ public class MedtronicUtil extends RileyLinkUtil {
     static int CRC_SIZE = 1;
 
 
-    public static byte[] buildCommandPayload(MessageType commandType, byte[] parameters) {
-        return buildCommandPayload(commandType.getValue(), parameters);
+    public static byte[] buildCommandPayload(byte[] serialNumberBCD, MessageType commandType, byte[] parameters) {
+        return buildCommandPayload(serialNumberBCD, commandType.getValue(), parameters);
     }
 
 
-    public static byte[] buildCommandPayload(MedtronicCommandType commandType, byte[] parameters) {
-        return buildCommandPayload((byte) commandType.commandCode, parameters);
+    public static byte[] buildCommandPayload(byte[] serialNumberBCD, MedtronicCommandType commandType,
+            byte[] parameters) {
+        return buildCommandPayload(serialNumberBCD, (byte) commandType.commandCode, parameters);
     }
 
 
-    public static byte[] buildCommandPayload(byte commandType, byte[] parameters) {
+    public static byte[] buildCommandPayload(byte[] serialNumberBCD, byte commandType, byte[] parameters) {
         // A7 31 65 51 C0 00 52
 
         byte commandLength = (byte) (parameters == null ? 2 : 2 + parameters.length);
@@ -170,8 +174,6 @@ public class MedtronicUtil extends RileyLinkUtil {
         ByteBuffer sendPayloadBuffer = ByteBuffer.allocate(ENVELOPE_SIZE + commandLength); //  + CRC_SIZE
         sendPayloadBuffer.order(ByteOrder.BIG_ENDIAN);
 
-        byte[] serialNumberBCD = RileyLinkUtil.getRileyLinkServiceData().pumpIDBytes;
-
         sendPayloadBuffer.put((byte) 0xA7);
         sendPayloadBuffer.put(serialNumberBCD[0]);
         sendPayloadBuffer.put(serialNumberBCD[1]);
@@ -221,4 +223,21 @@ public class MedtronicUtil extends RileyLinkUtil {
     public static MedtronicDeviceType getDeviceType() {
         return deviceType;
     }
+
+
+    public static boolean isModelSet() {
+        return medtronicPumpModel != null;
+    }
+
+
+    public static void setMedtronicPumpModel(MedtronicDeviceType medtronicPumpModel) {
+        if (medtronicPumpModel != null && medtronicPumpModel != MedtronicDeviceType.Unknown_Device) {
+            MedtronicUtil.medtronicPumpModel = medtronicPumpModel;
+        }
+    }
+
+
+    public static MedtronicDeviceType getMedtronicPumpModel() {
+        return medtronicPumpModel;
+    }
 }
@@ -6,12 +6,11 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 
 import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
-import info.nightscout.androidaps.plugins.PumpOmnipod.comm.OmnipodCommunicationManager;
 import info.nightscout.androidaps.plugins.PumpOmnipod.util.OmniCRC;
 
 public class OmnipodMessage {
 
-    private static final Logger LOG = LoggerFactory.getLogger(OmnipodCommunicationManager.class);
+    private static final Logger LOG = LoggerFactory.getLogger(OmnipodMessage.class);
     private int address;
     private MessageBlock[] messageBlocks;
     private int sequenceNumber;
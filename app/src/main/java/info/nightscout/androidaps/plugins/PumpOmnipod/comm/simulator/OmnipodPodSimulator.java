@@ -0,0 +1,200 @@
+package info.nightscout.androidaps.plugins.PumpOmnipod.comm.simulator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import info.nightscout.androidaps.Constants;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkEncodingType;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.simulator.SimulatedDevice;
+import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
+import info.nightscout.androidaps.plugins.PumpOmnipod.comm.message.MessageBlockType;
+import info.nightscout.androidaps.plugins.PumpOmnipod.defs.DeliveryStatus;
+import info.nightscout.androidaps.plugins.PumpOmnipod.defs.PacketType;
+import info.nightscout.androidaps.plugins.PumpOmnipod.defs.ReservoirStatus;
+import info.nightscout.androidaps.plugins.PumpOmnipod.util.OmniCRC;
+
+/**
+ * Simulated (already paired) Omnipod. Collects PDM packets (first packet and continuations, which are ACK-ed) until
+ * message is complete, and answers each message with status response. Bolus (BolusExtra) adds to delivered insulin
+ * and CancelDelivery stops bolus. ACK packets from PDM are not answered (so PDM sees pod as quiet).
+ */
+public class OmnipodPodSimulator implements SimulatedDevice {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OmnipodPodSimulator.class);
+
+    private final int address;
+
+    private DeliveryStatus deliveryStatus = DeliveryStatus.BasalRunning;
+    private int deliveredPulses = 0;
+    private double reservoirLevel = 50.0d;
+    private int activeMinutes = 0;
+    private int podMessageCounter = 0;
+    private int messagesReceived = 0;
+
+    private byte[] receivedMessage;
+
+
+    public OmnipodPodSimulator(int address) {
+        this.address = address;
+    }
+
+
+    public synchronized void setActiveMinutes(int activeMinutes) {
+        this.activeMinutes = activeMinutes;
+    }
+
+
+    public synchronized void setReservoirLevel(double reservoirLevel) {
+        this.reservoirLevel = reservoirLevel;
+    }
+
+
+    @Override
+    public RileyLinkEncodingType getEncoding() {
+        return RileyLinkEncodingType.Manchester;
+    }
+
+
+    @Override
+    public synchronized byte[] processPacket(byte[] packet) {
+        if (packet.length < 7 || OmniCRC.crc8(ByteUtil.substring(packet, 0, packet.length - 1)) != packet[packet.length - 1]) {
+            return null;
+        }
+
+        int packetAddress = getInt(packet, 0);
+        PacketType packetType = PacketType.fromByte((byte) ((packet[4] & 0xff) >> 5));
+        int sequenceNumber = packet[4] & 0x1f;
+        byte[] data = ByteUtil.substring(packet, 5, packet.length - 6);
+
+        if (packetAddress != address || packetType == null) {
+            return null;
+        }
+
+        switch (packetType) {
+            case Pdm:
+                receivedMessage = data;
+                break;
+
+            case Con:
+                if (receivedMessage == null)
+                    return null;
+                receivedMessage = ByteUtil.concat(receivedMessage, data);
+                break;
+
+            default:
+                return null; // ACK or unknown packet
+        }
+
+        if (receivedMessage.length < 6 || receivedMessage.length < 8 + ByteUtil.asUINT8(receivedMessage[5])) {
+            // message continues in next packet
+            return createPacket(PacketType.Ack, sequenceNumber + 1, ByteUtil.substring(packet, 0, 4));
+        }
+
+        byte[] message = receivedMessage;
+        receivedMessage = null;
+
+        int messageSequence = (message[4] >> 2) & 0x1f;
+        byte[] blocks = processMessage(message);
+
+        if (blocks == null) {
+            return null;
+        }
+
+        return createPacket(PacketType.Pod, sequenceNumber + 1, createMessage(getInt(message, 0), messageSequence + 1, blocks));
+    }
+
+
+    private byte[] processMessage(byte[] message) {
+        int length = 6 + ByteUtil.asUINT8(message[5]);
+        int crc = ByteUtil.toInt(message[length], message[length + 1]);
+
+        if (crc != OmniCRC.crc16(ByteUtil.substring(message, 0, length))) {
+            LOG.warn("Pod simulator: message CRC mismatch");
+            return null;
+        }
+
+        messagesReceived++;
+        podMessageCounter = (podMessageCounter + 1) & 0x0f;
+
+        // blocks are: type, length, data
+        int index = 6;
+        while (index + 1 < length) {
+            MessageBlockType blockType = MessageBlockType.fromByte(message[index]);
+            int blockLength = ByteUtil.asUINT8(message[index + 1]);
+
+            LOG.debug("Pod simulator: received {}", blockType);
+
+            if (blockType == MessageBlockType.BolusExtra) {
+                int pulses = ByteUtil.toInt(message[index + 3], message[index + 4]) / 10;
+                deliveredPulses += pulses;
+                reservoirLevel = Math.max(0.0d, reservoirLevel - pulses * Constants.PodPulseSize);
+                deliveryStatus = DeliveryStatus.BolusInProgress;
+            } else if (blockType == MessageBlockType.CancelDelivery) {
+                deliveryStatus = DeliveryStatus.BasalRunning;
+            }
+
+            index += 2 + blockLength;
+        }
+
+        return createStatusResponse();
+    }
+
+
+    /**
+     * Status response, in format that StatusResponse decodes.
+     */
+    private byte[] createStatusResponse() {
+        byte[] status = new byte[10];
+        int reservoir = Math.min(255, (int) Math.round(reservoirLevel * 255 / 50));
+
+        status[0] = MessageBlockType.StatusResponse.getValue();
+        status[1] = (byte) ((deliveryStatus.getValue() << 4) | (reservoirLevel >= 50 ? ReservoirStatus.AboveFiftyUnits
+            : ReservoirStatus.BelowFiftyUnits).getValue());
+        status[2] = (byte) ((deliveredPulses >> 9) & 0x0f);
+        status[3] = (byte) (deliveredPulses >> 1);
+        status[4] = (byte) (((deliveredPulses & 0x01) << 7) | (podMessageCounter << 3));
+        status[5] = 0; // insulin not delivered
+        status[6] = 0; // alarms
+        status[7] = (byte) ((activeMinutes >> 6) & 0x7f);
+        status[8] = (byte) (((activeMinutes & 0x3f) << 2) | ((reservoir >> 6) & 0x03));
+        status[9] = (byte) ((reservoir & 0x3f) << 2);
+
+        return status;
+    }
+
+
+    private byte[] createMessage(int messageAddress, int sequenceNumber, byte[] blocks) {
+        byte[] message = ByteUtil.getBytesFromInt(messageAddress);
+        message = ByteUtil.concat(message, (byte) (((sequenceNumber & 0x1f) << 2) | ((blocks.length >> 8) & 0x03)));
+        message = ByteUtil.concat(message, (byte) blocks.length);
+        message = ByteUtil.concat(message, blocks);
+
+        int crc = OmniCRC.crc16(message);
+        return ByteUtil.concat(message, new byte[]{(byte) (crc >> 8), (byte) crc});
+    }
+
+
+    private byte[] createPacket(PacketType packetType, int sequenceNumber, byte[] data) {
+        byte[] packet = ByteUtil.getBytesFromInt(address);
+        packet = ByteUtil.concat(packet, (byte) ((packetType.getValue() << 5) | (sequenceNumber & 0x1f)));
+        packet = ByteUtil.concat(packet, data);
+        return ByteUtil.concat(packet, OmniCRC.crc8(packet));
+    }
+
+
+    private static int getInt(byte[] data, int offset) {
+        return ByteUtil.toInt((int) data[offset], (int) data[offset + 1], (int) data[offset + 2], (int) data[offset + 3],
+            ByteUtil.BitConversion.BIG_ENDIAN);
+    }
+
+
+    public synchronized double getDeliveredInsulin() {
+        return deliveredPulses * Constants.PodPulseSize;
+    }
+
+
+    public synchronized int getMessagesReceived() {
+        return messagesReceived;
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.gxwtech.roundtrip2.ServiceData;
+
+import android.os.Bundle;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.data.ServiceTransportCodec;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.Page;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.RawHistoryPage;
+import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicDeviceType;
+
+import static info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.HistoryTestPages.readPage;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class FetchPumpHistoryResultUnitTests {
+
+    @Test
+    public void rawPages_RoundTrip() throws IOException {
+        byte[] page0 = readPage(0);
+        byte[] page1 = readPage(1);
+        byte[] shortPage = Arrays.copyOf(page1, 100);
+
+        FetchPumpHistoryResult result = new FetchPumpHistoryResult();
+        result.setRawPages(Arrays.asList(rawPage(page0), rawPage(page1), rawPage(shortPage)),
+            MedtronicDeviceType.Medtronic_522);
+
+        // as client gets it
+        FetchPumpHistoryResult received = new FetchPumpHistoryResult();
+        received.setMap(ServiceTransportCodec.decode(ServiceTransportCodec.encode(result.getMap())));
+
+        assertEquals(3, received.getPageCount());
+        assertArrayEquals(page0, received.getRawPage(0));
+        assertArrayEquals(page1, received.getRawPage(1));
+        assertArrayEquals(shortPage, received.getRawPage(2));
+    }
+
+
+    @Test
+    public void getPageArray_DecodesRawPages() throws IOException {
+        byte[] page0 = readPage(0);
+        byte[] page1 = readPage(1);
+
+        FetchPumpHistoryResult result = new FetchPumpHistoryResult();
+        result.setRawPages(Arrays.asList(rawPage(page0), rawPage(page1)), MedtronicDeviceType.Medtronic_522);
+
+        List<Page> pages = result.getPageArray();
+
+        assertEquals(2, pages.size());
+        assertPage(page0, pages.get(0));
+        assertPage(page1, pages.get(1));
+    }
+
+
+    @Test
+    public void getPageArray_OlderServicePageBundles() throws IOException {
+        byte[] page0 = readPage(0);
+
+        Page page = new Page();
+        page.parseFrom(page0, MedtronicDeviceType.Medtronic_522);
+
+        ArrayList<Bundle> pageBundles = new ArrayList<>();
+        pageBundles.add(page.pack());
+
+        FetchPumpHistoryResult result = new FetchPumpHistoryResult();
+        result.getMap().putParcelableArrayList("pageArrayList", pageBundles);
+
+        assertEquals(1, result.getPageCount());
+
+        List<Page> pages = result.getPageArray();
+
+        assertEquals(1, pages.size());
+        assertArrayEquals(page0, pages.get(0).getRawData());
+        assertEquals(page.mRecordList.size(), pages.get(0).mRecordList.size());
+    }
+
+
+    private static void assertPage(byte[] rawPage, Page page) {
+        Page expected = new Page();
+        expected.parseFrom(rawPage, MedtronicDeviceType.Medtronic_522);
+
+        assertArrayEquals(rawPage, page.getRawData());
+        assertEquals(expected.mRecordList.size(), page.mRecordList.size());
+    }
+
+
+    private static RawHistoryPage rawPage(byte[] data) {
+        RawHistoryPage page = new RawHistoryPage();
+        page.appendData(data);
+        return page;
+    }
+
+}
@@ -0,0 +1,133 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.FrequencyScanResults;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.FrequencyTrial;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkTargetFrequency;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.simulator.RadioConditions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RileyLinkFrequencyTunerUnitTests {
+
+    private static final double[] WW_FREQUENCIES = RileyLinkTargetFrequency.Medtronic_WorldWide.getScanFrequencies();
+
+
+    @Test
+    public void findsDeviceWithoutStartFrequency() {
+        TestProbe probe = new TestProbe(new RadioConditions(868.40d));
+
+        FrequencyScanResults results = tune(probe, RileyLinkFrequencyTuner.DEFAULT_TIME_BUDGET_MS);
+
+        assertEquals(868.40d, results.bestFrequencyMHz, 0.0001d);
+        // full scan needs 3 tries on each frequency
+        assertTrue(probe.tries < WW_FREQUENCIES.length * 3);
+    }
+
+
+    @Test
+    public void startsAtLastGoodFrequency() {
+        TestProbe probe = new TestProbe(new RadioConditions(868.35d));
+
+        FrequencyScanResults results = new RileyLinkFrequencyTuner(probe, WW_FREQUENCIES,
+            RileyLinkFrequencyTuner.DEFAULT_TIME_BUDGET_MS).tune(Arrays.asList(868.35d));
+
+        assertEquals(868.35d, results.bestFrequencyMHz, 0.0001d);
+        assertEquals(868.35d, probe.firstFrequency, 0.0001d);
+    }
+
+
+    @Test
+    public void stopsOnPlateau() {
+        // flat top: 868.35 and 868.40 are the same, tuner shouldn't wander over whole range
+        RadioConditions conditions = new RadioConditions(868.375d).setDeviceFrequency(868.375d, -45, 40.0d);
+        TestProbe probe = new TestProbe(conditions);
+
+        FrequencyScanResults results = new RileyLinkFrequencyTuner(probe, WW_FREQUENCIES,
+            RileyLinkFrequencyTuner.DEFAULT_TIME_BUDGET_MS).tune(Arrays.asList(868.35d));
+
+        assertTrue(Math.abs(results.bestFrequencyMHz - 868.375d) <= 0.025d);
+        assertTrue(results.trials.size() <= 5);
+    }
+
+
+    @Test
+    public void returnsZeroWhenDeviceIsNotHeard() {
+        TestProbe probe = new TestProbe(new RadioConditions(916.50d));
+
+        FrequencyScanResults results = tune(probe, RileyLinkFrequencyTuner.DEFAULT_TIME_BUDGET_MS);
+
+        assertEquals(0.0d, results.bestFrequencyMHz, 0.0001d);
+        assertEquals(WW_FREQUENCIES.length, results.trials.size());
+    }
+
+
+    @Test
+    public void respectsTimeBudget() {
+        TestProbe probe = new TestProbe(new RadioConditions(868.40d));
+
+        FrequencyScanResults results = tune(probe, 0L);
+
+        assertEquals(0, probe.tries);
+        assertEquals(0.0d, results.bestFrequencyMHz, 0.0001d);
+    }
+
+
+    @Test
+    public void singleFrequencyDevice() {
+        TestProbe probe = new TestProbe(new RadioConditions(433.91d));
+
+        FrequencyScanResults results = new RileyLinkFrequencyTuner(probe, RileyLinkTargetFrequency.Omnipod
+            .getScanFrequencies(), RileyLinkFrequencyTuner.DEFAULT_TIME_BUDGET_MS).tune(Collections.<Double>emptyList());
+
+        assertEquals(433.91d, results.bestFrequencyMHz, 0.0001d);
+        assertEquals(RileyLinkFrequencyTuner.FINE_TRIES, probe.tries);
+    }
+
+
+    private FrequencyScanResults tune(TestProbe probe, long timeBudget_ms) {
+        return new RileyLinkFrequencyTuner(probe, WW_FREQUENCIES, timeBudget_ms).tune(Collections.<Double>emptyList());
+    }
+
+
+    private static class TestProbe implements RileyLinkFrequencyTuner.FrequencyProbe {
+
+        private final RadioConditions conditions;
+        int tries = 0;
+        double firstFrequency = 0.0d;
+
+
+        TestProbe(RadioConditions conditions) {
+            this.conditions = conditions;
+        }
+
+
+        @Override
+        public FrequencyTrial tryFrequency(double frequencyMHz, int tries) {
+            if (this.tries == 0) {
+                firstFrequency = frequencyMHz;
+            }
+
+            this.tries += tries;
+
+            FrequencyTrial trial = new FrequencyTrial();
+            trial.frequencyMHz = frequencyMHz;
+            trial.tries = tries;
+
+            if (conditions.isInRange(frequencyMHz)) {
+                trial.successes = tries;
+                trial.averageRSSI = (double) conditions.getRssi(frequencyMHz);
+            } else {
+                trial.averageRSSI = -99.0d;
+            }
+
+            return trial;
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operations.BLECommOperation;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operations.BLECommOperationFuture;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operations.BLECommOperationResult;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GattOperationQueueUnitTests {
+
+    private static final UUID DATA_UUID = UUID.randomUUID();
+    private static final UUID OTHER_UUID = UUID.randomUUID();
+
+    private GattOperationQueue queue;
+
+
+    @Before
+    public void setup() {
+        queue = new GattOperationQueue();
+    }
+
+
+    @After
+    public void tearDown() {
+        queue.shutdown();
+    }
+
+
+    @Test
+    public void operationsAreStartedOneByOne() throws Exception {
+        TestOperation first = new TestOperation(DATA_UUID);
+        TestOperation second = new TestOperation(DATA_UUID);
+
+        BLECommOperationFuture firstFuture = queue.submit(first);
+        BLECommOperationFuture secondFuture = queue.submit(second);
+
+        assertTrue(first.awaitStart());
+        assertFalse(second.awaitStart(50));
+
+        queue.onGattOperationCompleted(DATA_UUID, new byte[]{1});
+        assertEquals(BLECommOperationResult.RESULT_SUCCESS, firstFuture.getResult().resultCode);
+        assertArrayEquals(new byte[]{1}, firstFuture.getResult().value);
+
+        assertTrue(second.awaitStart());
+        assertFalse(secondFuture.isDone());
+
+        queue.onGattOperationCompleted(DATA_UUID, new byte[]{2});
+        assertArrayEquals(new byte[]{2}, secondFuture.getResult().value);
+        assertEquals(0, queue.getPendingCount());
+    }
+
+
+    @Test
+    public void callbackForOtherCharacteristicIsIgnored() throws Exception {
+        TestOperation operation = new TestOperation(DATA_UUID);
+        BLECommOperationFuture future = queue.submit(operation);
+
+        assertTrue(operation.awaitStart());
+        queue.onGattOperationCompleted(OTHER_UUID, new byte[]{1});
+        assertFalse(future.isDone());
+
+        queue.onGattOperationCompleted(DATA_UUID, new byte[]{2});
+        assertEquals(BLECommOperationResult.RESULT_SUCCESS, future.getResult().resultCode);
+    }
+
+
+    @Test
+    public void timedOutOperationReleasesQueue() throws Exception {
+        TestOperation slow = new TestOperation(DATA_UUID);
+        slow.setGattOperationTimeout_ms(20);
+        TestOperation next = new TestOperation(DATA_UUID);
+
+        BLECommOperationFuture slowFuture = queue.submit(slow);
+        BLECommOperationFuture nextFuture = queue.submit(next);
+
+        assertEquals(BLECommOperationResult.RESULT_TIMEOUT, slowFuture.get(1, TimeUnit.SECONDS).resultCode);
+        assertTrue(next.awaitStart());
+
+        queue.onGattOperationCompleted(DATA_UUID, new byte[]{3});
+        assertEquals(BLECommOperationResult.RESULT_SUCCESS, nextFuture.getResult().resultCode);
+    }
+
+
+    @Test
+    public void cancelledOperationIsNotStarted() throws Exception {
+        TestOperation first = new TestOperation(DATA_UUID);
+        TestOperation cancelled = new TestOperation(DATA_UUID);
+
+        queue.submit(first);
+        BLECommOperationFuture cancelledFuture = queue.submit(cancelled);
+
+        assertTrue(cancelledFuture.cancel(false));
+        assertTrue(cancelledFuture.isCancelled());
+
+        assertTrue(first.awaitStart());
+        queue.onGattOperationCompleted(DATA_UUID, null);
+        assertFalse(cancelled.awaitStart(50));
+    }
+
+
+    @Test
+    public void failedStartCompletesFuture() {
+        TestOperation operation = new TestOperation(DATA_UUID);
+        operation.startResult = false;
+
+        assertEquals(BLECommOperationResult.RESULT_NONE, queue.submit(operation).getResult().resultCode);
+    }
+
+
+    @Test
+    public void cancelAllFailsRunningAndPendingOperations() throws Exception {
+        TestOperation first = new TestOperation(DATA_UUID);
+        BLECommOperationFuture firstFuture = queue.submit(first);
+        BLECommOperationFuture secondFuture = queue.submit(new TestOperation(DATA_UUID));
+
+        assertTrue(first.awaitStart());
+        queue.cancelAll(BLECommOperationResult.RESULT_NOT_CONFIGURED);
+
+        assertEquals(BLECommOperationResult.RESULT_NOT_CONFIGURED, firstFuture.getResult().resultCode);
+        assertEquals(BLECommOperationResult.RESULT_NOT_CONFIGURED, secondFuture.getResult().resultCode);
+        assertEquals(0, queue.getPendingCount());
+    }
+
+
+    private static class TestOperation extends BLECommOperation {
+
+        private final UUID uuid;
+        private final CountDownLatch started = new CountDownLatch(1);
+        boolean startResult = true;
+
+
+        TestOperation(UUID uuid) {
+            this.uuid = uuid;
+        }
+
+
+        @Override
+        public boolean start() {
+            started.countDown();
+            return startResult;
+        }
+
+
+        @Override
+        public boolean gattOperationCompletionCallback(UUID uuid, byte[] value) {
+            if (!this.uuid.equals(uuid)) {
+                return false;
+            }
+
+            this.value = value;
+            return true;
+        }
+
+
+        boolean awaitStart() throws InterruptedException {
+            return awaitStart(1000);
+        }
+
+
+        boolean awaitStart(long timeout_ms) throws InterruptedException {
+            return started.await(timeout_ms, TimeUnit.MILLISECONDS);
+        }
+    }
+
+}
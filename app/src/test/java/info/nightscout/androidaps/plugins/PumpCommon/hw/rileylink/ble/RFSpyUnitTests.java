@@ -0,0 +1,163 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.GattAttributes;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.RFSpyResponse;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.RFSpySettleDelays;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.CC111XRegister;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkFirmwareVersion;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.command.RileyLinkCommandType;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.operations.BLECommOperationResult;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.simulator.RileyLinkBLESimulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RFSpyUnitTests {
+
+    private FakeRileyLink rileyLink;
+    private RFSpy rfSpy;
+
+
+    @Before
+    public void setup() {
+        rileyLink = new FakeRileyLink();
+        rileyLink.setBroadcastReady(false).connectGatt();
+
+        RFSpyReader reader = new RFSpyReader(rileyLink) {
+
+            @Override
+            public void start() {
+                Thread thread = new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        readLoop();
+                    }
+                }, "RFSpyReader");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        };
+        reader.setSettleDelays(new RFSpySettleDelays(0, 0));
+
+        rfSpy = new RFSpy(rileyLink, reader);
+        rfSpy.startReader();
+        rfSpy.initializeRileyLink();
+    }
+
+
+    @After
+    public void tearDown() {
+        rileyLink.radio.shutdownNow();
+    }
+
+
+    @Test
+    public void initialize_ReadsFirmwareVersion() {
+        assertSame(RileyLinkFirmwareVersion.Version_2_2, rfSpy.getRLVersionCached());
+    }
+
+
+    @Test
+    public void lateResponse_NotTakenForResponseOfNextCommand() {
+        // enough fast responses, that timeout drops to minimum
+        for (int value = 1; value <= 6; value++) {
+            assertResponse(value, rfSpy.updateRegister(CC111XRegister.sync1, value));
+        }
+
+        rileyLink.responseDelay_ms = 1000;
+        assertFalse(rfSpy.updateRegister(CC111XRegister.sync1, 7).isOK());
+
+        rileyLink.responseDelay_ms = 0;
+        assertResponse(8, rfSpy.updateRegister(CC111XRegister.sync1, 8));
+        assertResponse(9, rfSpy.updateRegister(CC111XRegister.sync1, 9));
+    }
+
+
+    @Test
+    public void staleResponse_DrainedBeforeCommand() throws InterruptedException {
+        rileyLink.sendResponse(new byte[]{(byte) 0xdd, 0x55});
+        Thread.sleep(50);
+
+        assertResponse(10, rfSpy.updateRegister(CC111XRegister.sync1, 10));
+        assertResponse(11, rfSpy.updateRegister(CC111XRegister.sync1, 11));
+    }
+
+
+    private static void assertResponse(int value, RFSpyResponse response) {
+        assertTrue(response.isOK());
+        assertEquals(value, response.getRaw()[1]);
+    }
+
+
+    /**
+     * Answers each command on radio data (in order, after responseDelay_ms): GetVersion with firmware version,
+     * everything else with OK and last byte of command.
+     */
+    private class FakeRileyLink extends RileyLinkBLESimulator {
+
+        final ExecutorService radio = Executors.newSingleThreadExecutor();
+        final LinkedBlockingQueue<byte[]> responses = new LinkedBlockingQueue<>();
+        volatile int responseDelay_ms = 0;
+
+
+        @Override
+        public BLECommOperationResult writeCharacteristic_blocking(UUID serviceUUID, UUID charaUUID, byte[] value) {
+            // frame: length, command, body
+            if (value[1] == RileyLinkCommandType.GetVersion.code) {
+                sendResponse("subg_rfspy 2.2".getBytes(Charset.forName("UTF-8")));
+            } else {
+                sendResponse(new byte[]{(byte) 0xdd, value[value.length - 1]});
+            }
+
+            return super.writeCharacteristic_blocking(serviceUUID, charaUUID, value);
+        }
+
+
+        @Override
+        public BLECommOperationResult readCharacteristic_blocking(UUID serviceUUID, UUID charaUUID) {
+            BLECommOperationResult result = super.readCharacteristic_blocking(serviceUUID, charaUUID);
+
+            if (charaUUID.equals(UUID.fromString(GattAttributes.CHARA_RADIO_VERSION))) {
+                result.value = "ble_rfspy 2.0".getBytes(Charset.forName("UTF-8"));
+            } else {
+                result.value = responses.poll();
+            }
+
+            return result;
+        }
+
+
+        void sendResponse(final byte[] response) {
+            final int delay_ms = responseDelay_ms;
+
+            radio.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(delay_ms);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    responses.add(response);
+                    rfSpy.newDataIsAvailable();
+                }
+            });
+        }
+    }
+
+}
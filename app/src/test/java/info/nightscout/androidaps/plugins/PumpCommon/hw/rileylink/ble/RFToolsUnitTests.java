@@ -0,0 +1,72 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class RFToolsUnitTests {
+
+    @Test
+    public void encode4b6b_OddLength_HasMarker()
+    {
+        assertArrayEquals(ByteUtil.fromHexString("a965"), RFTools.encode4b6b(ByteUtil.fromHexString("a7")));
+        assertArrayEquals(ByteUtil.fromHexString("a96c72a965"), RFTools.encode4b6b(ByteUtil.fromHexString("a712a7")));
+    }
+
+    @Test
+    public void encode4b6b_EvenLength_Valid()
+    {
+        assertArrayEquals(ByteUtil.fromHexString("a96c72"), RFTools.encode4b6b(ByteUtil.fromHexString("a712")));
+    }
+
+    @Test
+    public void decode4b6b_RoundTrip_AllByteValues()
+    {
+        byte[] data = new byte[257];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        assertArrayEquals(data, RFTools.decode4b6b(RFTools.encode4b6b(data)));
+        assertArrayEquals(ByteUtil.substring(data, 0, 256), RFTools.decode4b6b(RFTools.encode4b6b(ByteUtil.substring(data, 0, 256))));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void decode4b6b_InvalidSymbol_Throws()
+    {
+        RFTools.decode4b6b(ByteUtil.fromHexString("ffffff"));
+    }
+
+    @Test
+    public void encode_WithOffsets_Valid()
+    {
+        byte[] out = new byte[7];
+        int length = FourByteSixByteCodec.encode(ByteUtil.fromHexString("00a71200"), 1, 2, out, 2);
+
+        assertEquals(3, length);
+        assertArrayEquals(ByteUtil.fromHexString("0000a96c72" + "0000"), out);
+    }
+
+    @Test
+    public void decode_DirectByteBuffer_Valid()
+    {
+        ByteBuffer in = ByteBuffer.allocateDirect(5);
+        in.put(ByteUtil.fromHexString("a96c72a965"));
+        in.flip();
+        ByteBuffer out = ByteBuffer.allocateDirect(FourByteSixByteCodec.decodedLength(5));
+
+        assertEquals(3, FourByteSixByteCodec.decode(in, out));
+        assertEquals(0, in.remaining());
+
+        byte[] decoded = new byte[3];
+        out.flip();
+        out.get(decoded);
+        assertArrayEquals(ByteUtil.fromHexString("a712a7"), decoded);
+    }
+
+}
@@ -0,0 +1,74 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.CC111XRegister;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CC111XRegisterShadowUnitTests {
+
+    @Test
+    public void unknownRegisterIsChanged() {
+        CC111XRegisterShadow shadow = new CC111XRegisterShadow();
+
+        assertTrue(shadow.isChanged(CC111XRegister.freq0, 0x12));
+
+        shadow.setWritten(CC111XRegister.freq0, 0x12);
+
+        assertFalse(shadow.isChanged(CC111XRegister.freq0, 0x12));
+        assertTrue(shadow.isChanged(CC111XRegister.freq0, 0x13));
+    }
+
+
+    @Test
+    public void signedAndUnsignedValuesAreSame() {
+        CC111XRegisterShadow shadow = new CC111XRegisterShadow();
+        shadow.setWritten(CC111XRegister.mdmcfg4, 0xCA);
+
+        assertFalse(shadow.isChanged(CC111XRegister.mdmcfg4, (byte) 0xCA));
+    }
+
+
+    @Test
+    public void onlyChangedRegistersAreStaged() {
+        CC111XRegisterShadow shadow = new CC111XRegisterShadow();
+        shadow.setWritten(CC111XRegister.freq2, 0x24);
+        shadow.setWritten(CC111XRegister.freq1, 0x2e);
+
+        shadow.stage(CC111XRegister.freq0, 0x38);
+        shadow.stage(CC111XRegister.freq1, 0x2e);
+        shadow.stage(CC111XRegister.freq2, 0x24);
+        shadow.stage(CC111XRegister.mdmcfg1, 0x61);
+        shadow.stage(CC111XRegister.mdmcfg1, 0x62);
+
+        Map<CC111XRegister, Integer> batch = shadow.takeStaged();
+
+        assertEquals(Arrays.asList(CC111XRegister.freq0, CC111XRegister.mdmcfg1), new ArrayList<>(batch.keySet()));
+        assertEquals(0x62, (int) batch.get(CC111XRegister.mdmcfg1));
+        assertEquals(2, shadow.getSkippedWrites());
+        assertTrue(shadow.takeStaged().isEmpty());
+    }
+
+
+    @Test
+    public void invalidatedRegisterIsWrittenAgain() {
+        CC111XRegisterShadow shadow = new CC111XRegisterShadow();
+        shadow.setWritten(CC111XRegister.freq0, 0x38);
+        shadow.setWritten(CC111XRegister.freq1, 0x2e);
+
+        shadow.invalidate(CC111XRegister.freq0);
+        assertTrue(shadow.isChanged(CC111XRegister.freq0, 0x38));
+        assertFalse(shadow.isChanged(CC111XRegister.freq1, 0x2e));
+
+        shadow.invalidateAll();
+        assertTrue(shadow.isChanged(CC111XRegister.freq1, 0x2e));
+    }
+
+}
@@ -0,0 +1,61 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class FrequencyHistoryUnitTests {
+
+    @Test
+    public void bestFrequenciesFirst() {
+        FrequencyHistory history = new FrequencyHistory();
+        history.addTrial(createTrial(916.50d, -70.0d, 1));
+        history.addTrial(createTrial(916.55d, -55.0d, 1));
+        history.addTrial(createTrial(916.60d, -62.0d, 1));
+
+        assertEquals(Arrays.asList(916.55d, 916.60d), history.getBestFrequencies(2));
+    }
+
+
+    @Test
+    public void failedTrialRemovesFrequency() {
+        FrequencyHistory history = new FrequencyHistory();
+        history.addTrial(createTrial(916.55d, -55.0d, 3));
+        history.addTrial(createTrial(916.55d, -99.0d, 0));
+
+        assertEquals(0, history.size());
+    }
+
+
+    @Test
+    public void storedAndLoaded() {
+        FrequencyHistory history = new FrequencyHistory();
+        history.addTrial(createTrial(868.35d, -60.0d, 3));
+        history.addTrial(createTrial(868.40d, -50.0d, 3));
+
+        FrequencyHistory loaded = FrequencyHistory.fromString(history.toString());
+
+        assertEquals(history.toString(), loaded.toString());
+        assertEquals(Arrays.asList(868.40d, 868.35d), loaded.getBestFrequencies(FrequencyHistory.MAX_ENTRIES));
+    }
+
+
+    @Test
+    public void brokenValueIsIgnored() {
+        assertEquals(1, FrequencyHistory.fromString("868.400:-50.0:3;garbage;868.x:1:1").size());
+        assertEquals(0, FrequencyHistory.fromString(null).size());
+    }
+
+
+    private FrequencyTrial createTrial(double frequencyMHz, double rssi, int successes) {
+        FrequencyTrial trial = new FrequencyTrial();
+        trial.frequencyMHz = frequencyMHz;
+        trial.averageRSSI = rssi;
+        trial.tries = 3;
+        trial.successes = successes;
+        return trial;
+    }
+
+}
@@ -0,0 +1,91 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data;
+
+import org.junit.Test;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkFirmwareVersion;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.command.RileyLinkCommandType;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RFSpyLatencyEstimatorUnitTests {
+
+    private static final int CEILING = 7500;
+    private static final RileyLinkFirmwareVersion FIRMWARE = RileyLinkFirmwareVersion.Version_2_2;
+
+
+    @Test
+    public void ceilingUntilEnoughSamples() {
+        RFSpyLatencyEstimator estimator = new RFSpyLatencyEstimator(CEILING);
+
+        for (int i = 0; i < RFSpyLatencyEstimator.MIN_SAMPLES - 1; i++) {
+            estimator.addSample(FIRMWARE, RileyLinkCommandType.UpdateRegister, 100);
+        }
+
+        assertEquals(CEILING, estimator.getTimeout_ms(FIRMWARE, RileyLinkCommandType.UpdateRegister));
+    }
+
+
+    @Test
+    public void timeoutFollowsStableLatency() {
+        RFSpyLatencyEstimator estimator = new RFSpyLatencyEstimator(CEILING);
+
+        for (int i = 0; i < 50; i++) {
+            estimator.addSample(FIRMWARE, RileyLinkCommandType.UpdateRegister, 200 + (i % 2) * 20);
+        }
+
+        int timeout = estimator.getTimeout_ms(FIRMWARE, RileyLinkCommandType.UpdateRegister);
+        assertTrue("timeout was " + timeout, timeout >= 220 && timeout < 400);
+    }
+
+
+    @Test
+    public void commandFallsBackToFirmwareEstimate() {
+        RFSpyLatencyEstimator estimator = new RFSpyLatencyEstimator(CEILING);
+
+        for (int i = 0; i < 20; i++) {
+            estimator.addSample(FIRMWARE, RileyLinkCommandType.UpdateRegister, 1000);
+        }
+
+        assertEquals(1000, estimator.getTimeout_ms(FIRMWARE, RileyLinkCommandType.SendAndListen), 50);
+        assertEquals(CEILING, estimator.getTimeout_ms(RileyLinkFirmwareVersion.Version_1_0,
+            RileyLinkCommandType.SendAndListen));
+    }
+
+
+    @Test
+    public void missingResponseBacksOffUntilNextSample() {
+        RFSpyLatencyEstimator estimator = new RFSpyLatencyEstimator(CEILING);
+
+        for (int i = 0; i < 20; i++) {
+            estimator.addSample(FIRMWARE, RileyLinkCommandType.SendAndListen, 1000);
+        }
+
+        int timeout = estimator.getTimeout_ms(FIRMWARE, RileyLinkCommandType.SendAndListen);
+
+        estimator.responseMissing(FIRMWARE, RileyLinkCommandType.SendAndListen);
+        assertEquals(timeout * 2, estimator.getTimeout_ms(FIRMWARE, RileyLinkCommandType.SendAndListen));
+
+        for (int i = 0; i < 5; i++) {
+            estimator.responseMissing(FIRMWARE, RileyLinkCommandType.SendAndListen);
+        }
+        assertEquals(CEILING, estimator.getTimeout_ms(FIRMWARE, RileyLinkCommandType.SendAndListen));
+
+        estimator.addSample(FIRMWARE, RileyLinkCommandType.SendAndListen, 1000);
+        assertEquals(timeout, estimator.getTimeout_ms(FIRMWARE, RileyLinkCommandType.SendAndListen), 10);
+    }
+
+
+    @Test
+    public void timeoutHasFloor() {
+        RFSpyLatencyEstimator estimator = new RFSpyLatencyEstimator(CEILING);
+
+        for (int i = 0; i < 20; i++) {
+            estimator.addSample(FIRMWARE, RileyLinkCommandType.GetVersion, 5);
+        }
+
+        assertEquals(RFSpyLatencyEstimator.MIN_TIMEOUT_MS, estimator.getTimeout_ms(FIRMWARE,
+            RileyLinkCommandType.GetVersion));
+    }
+
+}
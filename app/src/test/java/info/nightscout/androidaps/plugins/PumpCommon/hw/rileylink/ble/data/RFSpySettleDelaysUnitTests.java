@@ -0,0 +1,115 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data;
+
+import org.junit.Test;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkFirmwareVersion;
+
+import static org.junit.Assert.assertEquals;
+
+public class RFSpySettleDelaysUnitTests {
+
+    // GOOD_READS_BEFORE_DECREASE
+    private static final int GOOD_READS = 10;
+
+
+    @Test
+    public void forFirmware_NoDelaysForVersion2AndHigher() {
+        for (RileyLinkFirmwareVersion version : new RileyLinkFirmwareVersion[]{RileyLinkFirmwareVersion.Version_2_0,
+            RileyLinkFirmwareVersion.Version_2_2, RileyLinkFirmwareVersion.Version_3_0}) {
+            RFSpySettleDelays delays = RFSpySettleDelays.forFirmware(version);
+
+            assertEquals(version.name(), 0, delays.getReadDelay_ms());
+            assertEquals(version.name(), 0, delays.getWriteDelay_ms());
+        }
+    }
+
+
+    @Test
+    public void forFirmware_DelaysForOlderAndUnknownVersions() {
+        for (RileyLinkFirmwareVersion version : new RileyLinkFirmwareVersion[]{RileyLinkFirmwareVersion.Version_0_9,
+            RileyLinkFirmwareVersion.Version_1_0, RileyLinkFirmwareVersion.UnknownVersion, null}) {
+            RFSpySettleDelays delays = RFSpySettleDelays.forFirmware(version);
+
+            assertEquals(String.valueOf(version), 100, delays.getReadDelay_ms());
+            assertEquals(String.valueOf(version), 10, delays.getWriteDelay_ms());
+        }
+    }
+
+
+    @Test
+    public void readFailed_DoublesUpToMaximum() {
+        RFSpySettleDelays delays = new RFSpySettleDelays(60, 10);
+
+        delays.readFailed();
+        assertEquals(120, delays.getReadDelay_ms());
+
+        delays.readFailed();
+        assertEquals(RFSpySettleDelays.MAX_READ_DELAY_MS, delays.getReadDelay_ms());
+
+        delays.readFailed();
+        assertEquals(RFSpySettleDelays.MAX_READ_DELAY_MS, delays.getReadDelay_ms());
+
+        // write delay is not adapted
+        assertEquals(10, delays.getWriteDelay_ms());
+    }
+
+
+    @Test
+    public void readFailed_NoDelayStartsAtMinimumStep() {
+        RFSpySettleDelays delays = new RFSpySettleDelays(0, 0);
+
+        delays.readFailed();
+        assertEquals(10, delays.getReadDelay_ms());
+    }
+
+
+    @Test
+    public void readSucceeded_HalvesAfterRunOfGoodReads() {
+        RFSpySettleDelays delays = new RFSpySettleDelays(25, 10);
+        delays.readFailed();
+        delays.readFailed();
+        delays.readFailed();
+        assertEquals(RFSpySettleDelays.MAX_READ_DELAY_MS, delays.getReadDelay_ms());
+
+        readSucceeded(delays, GOOD_READS - 1);
+        assertEquals(RFSpySettleDelays.MAX_READ_DELAY_MS, delays.getReadDelay_ms());
+
+        delays.readSucceeded();
+        assertEquals(100, delays.getReadDelay_ms());
+
+        readSucceeded(delays, GOOD_READS);
+        assertEquals(50, delays.getReadDelay_ms());
+
+        // not below firmware minimum
+        readSucceeded(delays, GOOD_READS);
+        assertEquals(25, delays.getReadDelay_ms());
+
+        readSucceeded(delays, GOOD_READS * 3);
+        assertEquals(25, delays.getReadDelay_ms());
+    }
+
+
+    @Test
+    public void readFailed_RestartsRunOfGoodReads() {
+        RFSpySettleDelays delays = new RFSpySettleDelays(100, 10);
+        delays.readFailed();
+
+        readSucceeded(delays, GOOD_READS - 1);
+        delays.readFailed();
+        assertEquals(RFSpySettleDelays.MAX_READ_DELAY_MS, delays.getReadDelay_ms());
+
+        readSucceeded(delays, GOOD_READS - 1);
+        assertEquals(RFSpySettleDelays.MAX_READ_DELAY_MS, delays.getReadDelay_ms());
+
+        delays.readSucceeded();
+        assertEquals(100, delays.getReadDelay_ms());
+    }
+
+
+    private static void readSucceeded(RFSpySettleDelays delays, int count) {
+        for (int i = 0; i < count; i++) {
+            delays.readSucceeded();
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkUtil;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.RFTools;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkEncodingType;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkFirmwareVersion;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.command.SendAndListen;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.defs.RileyLinkTargetDevice;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.RileyLinkServiceData;
+import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
+import info.nightscout.androidaps.plugins.PumpCommon.utils.CRC;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RadioPacketBufferUnitTests {
+
+    private static final byte[] EVEN_PACKET = ByteUtil.fromHexString("A71234568D00");
+    private static final byte[] ODD_PACKET = ByteUtil.fromHexString("A712345680");
+
+
+    @Before
+    public void setup() {
+        RileyLinkServiceData serviceData = new RileyLinkServiceData(RileyLinkTargetDevice.MedtronicPump);
+        serviceData.versionCC110 = RileyLinkFirmwareVersion.Version_2_2;
+        RileyLinkUtil.setRileyLinkServiceData(serviceData);
+        RileyLinkUtil.setEncoding(RileyLinkEncodingType.FourByteSixByte);
+    }
+
+
+    // packet encoding as it was done with concat (crc, 4b6b, null terminator)
+    private static byte[] legacyEncoded(byte[] pkt, RileyLinkFirmwareVersion version) {
+        byte[] encoded = RFTools.encode4b6b(ByteUtil.concat(pkt, CRC.crc8(pkt)));
+        return version.isSameVersion(RileyLinkFirmwareVersion.Version2AndHigher) ? encoded : ByteUtil.concat(encoded,
+            (byte) 0);
+    }
+
+
+    @Test
+    public void testEncodedMatchesLegacy() {
+        for (RileyLinkFirmwareVersion version : new RileyLinkFirmwareVersion[]{RileyLinkFirmwareVersion.Version_1_0,
+            RileyLinkFirmwareVersion.Version_2_2}) {
+            for (byte[] pkt : new byte[][]{EVEN_PACKET, ODD_PACKET}) {
+                RadioPacket packet = new RadioPacket(pkt, version);
+
+                assertArrayEquals(legacyEncoded(pkt, version), packet.getEncoded());
+                assertEquals(packet.getEncoded().length, packet.getEncodedLength());
+            }
+        }
+    }
+
+
+    @Test
+    public void testManchesterIsNotEncoded() {
+        RileyLinkUtil.setEncoding(RileyLinkEncodingType.Manchester);
+
+        assertArrayEquals(ODD_PACKET, new RadioPacket(ODD_PACKET, RileyLinkFirmwareVersion.Version_2_2).getEncoded());
+        assertArrayEquals(ByteUtil.concat(ODD_PACKET, (byte) 0), new RadioPacket(ODD_PACKET,
+            RileyLinkFirmwareVersion.Version_1_0).getEncoded());
+    }
+
+
+    @Test
+    public void testSendAndListenFrame() {
+        RadioPacket packet = new RadioPacket(EVEN_PACKET, RileyLinkFirmwareVersion.Version_2_2);
+        SendAndListen command = new SendAndListen(RileyLinkFirmwareVersion.Version_2_2, (byte) 0, (byte) 3, 300,
+            (byte) 0, 25000, (byte) 1, 200, packet);
+
+        byte[] header = ByteUtil.fromHexString("05000301" + "2C" + "00" + "000061A8" + "01" + "00C8");
+        byte[] body = ByteUtil.concat(header, packet.getEncoded());
+
+        RadioPacketBuffer buffer = RadioPacketBuffer.obtain();
+        command.writeTo(buffer);
+        byte[] frame = buffer.getFrame();
+        buffer.release();
+
+        assertEquals(body.length, frame[0]);
+        assertArrayEquals(ByteUtil.concat((byte) body.length, body), frame);
+        assertArrayEquals(body, command.getRaw());
+    }
+
+
+    @Test
+    public void testPoolReusesBuffers() {
+        RadioPacketBuffer buffer = RadioPacketBuffer.obtain();
+        buffer.put((byte) 1).put((byte) 2);
+        buffer.release();
+
+        RadioPacketBuffer reused = RadioPacketBuffer.obtain();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.getBodyLength());
+        reused.release();
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFrameTooLong() {
+        RadioPacketBuffer buffer = RadioPacketBuffer.obtain();
+
+        try {
+            buffer.put(new byte[RadioPacketBuffer.MAX_FRAME_LENGTH]);
+        } finally {
+            buffer.release();
+        }
+    }
+
+
+    @Test
+    public void testResponseDecodedInPlace() {
+        byte[] encoded = legacyEncoded(EVEN_PACKET, RileyLinkFirmwareVersion.Version_2_2);
+        // rssi, response number, one more header byte for 2.x
+        byte[] rx = ByteUtil.concat(ByteUtil.fromHexString("400100"), encoded);
+
+        RadioResponse response = new RadioResponse(rx);
+
+        assertTrue(response.isValid());
+        assertArrayEquals(EVEN_PACKET, response.getPayload());
+        assertSame(response.getPayload(), response.getPayload());
+
+        ByteBuffer view = response.getPayloadBuffer();
+        assertTrue(view.isReadOnly());
+        assertEquals(EVEN_PACKET.length, view.remaining());
+        assertEquals(EVEN_PACKET[0], view.get(0));
+    }
+
+
+    @Test
+    public void testResponseWithBadCrc() {
+        byte[] pkt = ByteUtil.concat(EVEN_PACKET, (byte) (CRC.crc8(EVEN_PACKET) + 1));
+        byte[] rx = ByteUtil.concat(ByteUtil.fromHexString("400100"), RFTools.encode4b6b(pkt));
+
+        RadioResponse response = new RadioResponse(rx);
+
+        assertFalse(response.isValid());
+        assertArrayEquals(EVEN_PACKET, response.getPayload());
+    }
+
+}
@@ -0,0 +1,202 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.simulator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkUtil;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.RFSpyResponse;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.RadioPacket;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.data.RadioResponse;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkFirmwareVersion;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.defs.RileyLinkTargetDevice;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.RileyLinkServiceData;
+import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.HistoryTestPages;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.message.CarelinkLongMessageBody;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.message.CarelinkShortMessageBody;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.message.GetHistoryPageCarelinkMessageBody;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.message.MessageBody;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.message.PacketType;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.message.PumpAckMessageBody;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.message.PumpMessage;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.simulator.MedtronicPumpSimulator;
+import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicCommandType;
+import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicDeviceType;
+import info.nightscout.androidaps.plugins.PumpOmnipod.comm.message.MessageBlock;
+import info.nightscout.androidaps.plugins.PumpOmnipod.comm.message.OmnipodMessage;
+import info.nightscout.androidaps.plugins.PumpOmnipod.comm.message.OmnipodPacket;
+import info.nightscout.androidaps.plugins.PumpOmnipod.comm.message.command.GetStatusCommand;
+import info.nightscout.androidaps.plugins.PumpOmnipod.comm.message.response.StatusResponse;
+import info.nightscout.androidaps.plugins.PumpOmnipod.comm.simulator.OmnipodPodSimulator;
+import info.nightscout.androidaps.plugins.PumpOmnipod.defs.StatusType;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class RFSpySimulatorUnitTests {
+
+    private static final String PUMP_ID = "123456";
+    private static final double PUMP_FREQUENCY = 916.65d;
+
+    private MedtronicPumpSimulator pump;
+    private RadioConditions radioConditions;
+    private RFSpySimulator rfspy;
+
+
+    @Before
+    public void setup() {
+        RileyLinkServiceData serviceData = new RileyLinkServiceData(RileyLinkTargetDevice.MedtronicPump);
+        serviceData.versionCC110 = RileyLinkFirmwareVersion.Version_2_2;
+        RileyLinkUtil.setRileyLinkServiceData(serviceData);
+
+        pump = new MedtronicPumpSimulator(PUMP_ID, MedtronicDeviceType.Medtronic_522);
+        radioConditions = new RadioConditions(PUMP_FREQUENCY, 1L).setTimeScale(0.0d);
+        rfspy = new RFSpySimulator(pump, radioConditions);
+        rfspy.setBaseFrequency(PUMP_FREQUENCY);
+    }
+
+
+    @Test
+    public void medtronic_ReadModel() {
+        PumpMessage response = send(MedtronicCommandType.PumpModel, new CarelinkShortMessageBody());
+
+        assertEquals(MedtronicCommandType.PumpModel, response.commandType);
+        assertEquals("522", new String(Arrays.copyOfRange(response.getMessageBody().getTxData(), 2, 5)));
+    }
+
+
+    @Test
+    public void medtronic_HistoryPage_SameAsRecorded() throws IOException {
+        List<byte[]> pages = HistoryTestPages.readPages();
+        pump.setHistoryPages(pages);
+
+        assertEquals(MedtronicCommandType.CommandACK, send(MedtronicCommandType.GetHistoryData, new CarelinkShortMessageBody(new byte[]{0})).commandType);
+
+        PumpMessage response = send(MedtronicCommandType.GetHistoryData, new GetHistoryPageCarelinkMessageBody(1));
+        byte[] page = new byte[0];
+
+        for(int frame = 1; ; frame++) {
+            GetHistoryPageCarelinkMessageBody body = new GetHistoryPageCarelinkMessageBody(response.getMessageBody().getTxData());
+
+            assertEquals(frame, body.getFrameNumber());
+            page = ByteUtil.concat(page, body.getFrameData());
+
+            if (body.wasLastFrame())
+                break;
+
+            response = send(MedtronicCommandType.CommandACK, new PumpAckMessageBody());
+        }
+
+        assertArrayEquals(pages.get(1), page);
+    }
+
+
+    @Test
+    public void medtronic_SetTbr_ReadBack() {
+        assertEquals(MedtronicCommandType.CommandACK, send(MedtronicCommandType.SetTemporaryBasal, new CarelinkShortMessageBody(new byte[]{0})).commandType);
+
+        // 1.5 U/h (60 strokes) for 60 minutes
+        PumpMessage response = send(MedtronicCommandType.SetTemporaryBasal, new CarelinkLongMessageBody(new byte[]{5, 0, 60, 2, 0, 60}));
+        assertEquals(MedtronicCommandType.CommandACK, response.commandType);
+
+        response = send(MedtronicCommandType.ReadTemporaryBasal, new CarelinkShortMessageBody());
+        byte[] data = response.getMessageBody().getTxData();
+
+        assertEquals(60, ByteUtil.toInt(data[3], data[4]));
+        assertEquals(60, ByteUtil.toInt(data[5], data[6]));
+    }
+
+
+    @Test
+    public void medtronic_ArgumentsWithoutAttention_Nak() {
+        PumpMessage response = send(MedtronicCommandType.SetBolus, new CarelinkLongMessageBody(new byte[]{1, 10}));
+
+        assertEquals(MedtronicCommandType.CommandNAK, response.commandType);
+        assertEquals(0, pump.getBolusCount());
+    }
+
+
+    @Test
+    public void radio_RssiFollowsFrequency() {
+        RadioResponse atPump = exchange(PUMP_FREQUENCY);
+        RadioResponse offPump = exchange(PUMP_FREQUENCY + 0.05d);
+
+        assertTrue(atPump.isValid());
+        assertTrue(offPump.isValid());
+        assertTrue(atPump.rssi > offPump.rssi);
+
+        rfspy.setBaseFrequency(PUMP_FREQUENCY + 0.5d);
+        RFSpyResponse response = transmit(MedtronicCommandType.PumpModel, new CarelinkShortMessageBody());
+
+        assertTrue(response.wasTimeout());
+    }
+
+
+    @Test
+    public void radio_PacketLoss_Timeouts() {
+        radioConditions.setPacketLossProbability(0.5d);
+
+        for(int i = 0; i < 20; i++) {
+            transmit(MedtronicCommandType.PumpModel, new CarelinkShortMessageBody());
+        }
+
+        assertEquals(20, rfspy.getPacketsSent());
+        assertEquals(20, rfspy.getResponsesReceived() + rfspy.getTimeouts());
+        assertTrue(rfspy.getTimeouts() > 0);
+        assertTrue(rfspy.getResponsesReceived() > 0);
+    }
+
+
+    @Test
+    public void omnipod_GetStatus() {
+        int address = 0x1f05e70b;
+        OmnipodPodSimulator pod = new OmnipodPodSimulator(address);
+        pod.setActiveMinutes(600);
+        pod.setReservoirLevel(30.0d);
+
+        RFSpySimulator podRfspy = new RFSpySimulator(pod, new RadioConditions(433.91d).setTimeScale(0.0d));
+        podRfspy.setBaseFrequency(433.91d);
+
+        OmnipodMessage message = new OmnipodMessage(address, new MessageBlock[]{new GetStatusCommand(StatusType.Normal)}, 3);
+        OmnipodPacket packet = new OmnipodPacket(address, info.nightscout.androidaps.plugins.PumpOmnipod.defs.PacketType.Pdm, 10, message.getEncoded());
+
+        RFSpyResponse response = podRfspy.transmitThenReceive(new RadioPacket(packet.getTxData(), RileyLinkFirmwareVersion.Version_2_2), (byte) 0, (byte) 0, (byte) 0, (byte) 0, 250, (byte) 0);
+
+        OmnipodPacket podPacket = new OmnipodPacket(response.getRadioResponse().getPayload());
+        assertTrue(podPacket.isValid());
+        assertEquals(11, podPacket.getSequenceNumber());
+
+        OmnipodMessage podMessage = OmnipodMessage.TryDecode(podPacket.getEncodedMessage());
+        assertNotNull(podMessage);
+
+        StatusResponse status = (StatusResponse) podMessage.getMessageBlocks()[0];
+        assertEquals(600, status.activeTime.getStandardMinutes());
+        assertEquals(30.0d, status.reservoirLevel, 0.5d);
+    }
+
+
+    private RadioResponse exchange(double frequency) {
+        rfspy.setBaseFrequency(frequency);
+        return transmit(MedtronicCommandType.PumpModel, new CarelinkShortMessageBody()).getRadioResponse();
+    }
+
+
+    private PumpMessage send(MedtronicCommandType commandType, MessageBody body) {
+        return new PumpMessage(transmit(commandType, body).getRadioResponse().getPayload());
+    }
+
+
+    private RFSpyResponse transmit(MedtronicCommandType commandType, MessageBody body) {
+        PumpMessage message = new PumpMessage();
+        message.init(PacketType.Carelink, ByteUtil.fromHexString(PUMP_ID), commandType, body);
+
+        return rfspy.transmitThenReceive(new RadioPacket(message.getTxData(), RileyLinkFirmwareVersion.Version_2_2), (byte) 0, (byte) 0, (byte) 0, (byte) 0, 500, (byte) 0);
+    }
+
+}
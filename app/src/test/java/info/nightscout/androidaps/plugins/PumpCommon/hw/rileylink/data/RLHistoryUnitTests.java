@@ -0,0 +1,107 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.data;
+
+import org.joda.time.LocalDateTime;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.defs.RileyLinkError;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.defs.RileyLinkServiceState;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RLHistoryUnitTests {
+
+    @Test
+    public void snapshot_BeforeWrap_ReturnsAllItemsInOrder() {
+        RLHistory history = new RLHistory(4);
+
+        history.add(new RLHistoryItem(RileyLinkServiceState.BluetoothInitializing, null));
+        history.add(new RLHistoryItem(RileyLinkServiceState.BluetoothReady, null));
+
+        List<RLHistoryItem> items = history.getSnapshot();
+
+        assertEquals(2, items.size());
+        assertEquals(RileyLinkServiceState.BluetoothInitializing, items.get(0).getServiceState());
+        assertEquals(RileyLinkServiceState.BluetoothReady, items.get(1).getServiceState());
+    }
+
+
+    @Test
+    public void snapshot_AfterWrap_KeepsNewestItems() {
+        RLHistory history = new RLHistory(3);
+        RileyLinkServiceState[] states = RileyLinkServiceState.values();
+
+        for (int i = 0; i < 10; i++) {
+            history.add(new RLHistoryItem(states[i % states.length], null));
+        }
+
+        List<RLHistoryItem> items = history.getSnapshot();
+
+        assertEquals(3, history.size());
+        assertEquals(3, items.size());
+        assertEquals(states[7 % states.length], items.get(0).getServiceState());
+        assertEquals(states[9 % states.length], items.get(2).getServiceState());
+
+        assertEquals(2, history.getSnapshot(2).size());
+        assertEquals(states[8 % states.length], history.getSnapshot(2).get(0).getServiceState());
+    }
+
+
+    @Test
+    public void add_FromManyThreads_StaysBounded() throws InterruptedException {
+        final RLHistory history = new RLHistory(64);
+        Thread[] threads = new Thread[4];
+
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        history.add(new RLHistoryItem(RileyLinkServiceState.RileyLinkReady, null));
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(64, history.size());
+        assertEquals(64, history.getSnapshot().size());
+    }
+
+
+    @Test
+    public void writeTail_ReadTail_RoundTrip() throws Exception {
+        RLHistory history = new RLHistory(8);
+        LocalDateTime dateTime = new LocalDateTime(2018, 10, 17, 12, 30, 15);
+
+        history.add(new RLHistoryItem(dateTime, RileyLinkServiceState.BluetoothReady, null));
+        history.add(new RLHistoryItem(dateTime.plusMinutes(1), RileyLinkServiceState.BluetoothError,
+            RileyLinkError.BluetoothDisabled));
+        history.add(new RLHistoryItem(dateTime.plusMinutes(2), RileyLinkServiceState.RileyLinkReady, null));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        history.writeTail(outputStream, 2);
+
+        RLHistory restored = new RLHistory(8);
+        assertEquals(2, restored.readTail(new ByteArrayInputStream(outputStream.toByteArray())));
+
+        List<RLHistoryItem> items = restored.getSnapshot();
+
+        assertEquals(2, items.size());
+        assertEquals(dateTime.plusMinutes(1), items.get(0).getDateTime());
+        assertEquals(RileyLinkServiceState.BluetoothError, items.get(0).getServiceState());
+        assertEquals(RileyLinkError.BluetoothDisabled, items.get(0).getErrorCode());
+        assertEquals(RileyLinkServiceState.RileyLinkReady, items.get(1).getServiceState());
+        assertNull(items.get(1).getErrorCode());
+    }
+
+}
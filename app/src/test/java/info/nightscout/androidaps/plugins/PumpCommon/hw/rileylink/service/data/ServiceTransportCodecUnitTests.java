@@ -0,0 +1,191 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.data;
+
+import android.os.Bundle;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 27)
+public class ServiceTransportCodecUnitTests {
+
+    @Test
+    public void encodeDecode_AllValueTypes() {
+        Bundle bundle = new Bundle();
+        bundle.putString("string", "RileyLink \u2713");
+        bundle.putString("nullString", null);
+        bundle.putInt("int", -123456);
+        bundle.putInt("intMax", Integer.MAX_VALUE);
+        bundle.putLong("long", Long.MIN_VALUE + 7);
+        bundle.putBoolean("boolean", true);
+        bundle.putDouble("double", -2.725);
+        bundle.putFloat("float", 0.05f);
+        bundle.putShort("short", (short) -300);
+        bundle.putByte("byte", (byte) 0xa7);
+        bundle.putByteArray("byteArray", new byte[]{0x01, (byte) 0xff, 0x00, 0x7f});
+        bundle.putIntArray("intArray", new int[]{0, -1, 1024, Integer.MIN_VALUE});
+        bundle.putFloatArray("floatArray", new float[]{1.5f, -0.025f});
+
+        Bundle decoded = ServiceTransportCodec.decode(ServiceTransportCodec.encode(bundle));
+
+        assertEquals(bundle.keySet(), decoded.keySet());
+        assertEquals("RileyLink \u2713", decoded.getString("string"));
+        assertTrue(decoded.containsKey("nullString"));
+        assertNull(decoded.getString("nullString"));
+        assertEquals(-123456, decoded.getInt("int"));
+        assertEquals(Integer.MAX_VALUE, decoded.getInt("intMax"));
+        assertEquals(Long.MIN_VALUE + 7, decoded.getLong("long"));
+        assertTrue(decoded.getBoolean("boolean"));
+        assertEquals(-2.725, decoded.getDouble("double"), 0.0);
+        assertEquals(0.05f, decoded.getFloat("float"), 0.0f);
+        assertEquals((short) -300, decoded.getShort("short"));
+        assertEquals((byte) 0xa7, decoded.getByte("byte"));
+        assertArrayEquals(new byte[]{0x01, (byte) 0xff, 0x00, 0x7f}, decoded.getByteArray("byteArray"));
+        assertArrayEquals(new int[]{0, -1, 1024, Integer.MIN_VALUE}, decoded.getIntArray("intArray"));
+        assertArrayEquals(new float[]{1.5f, -0.025f}, decoded.getFloatArray("floatArray"), 0.0f);
+    }
+
+
+    @Test
+    public void encodeDecode_NestedBundlesAndLists() {
+        Bundle decoded = ServiceTransportCodec.decode(ServiceTransportCodec.encode(createTransport()));
+
+        Bundle message = decoded.getBundle("ServiceMessage");
+        assertEquals("FetchPumpHistoryResult", message.getString("ServiceMessageType"));
+
+        ArrayList<Bundle> records = message.getBundle("result").getParcelableArrayList("records");
+        assertEquals(3, records.size());
+
+        for (int i = 0; i < records.size(); i++) {
+            // same keys in every bundle are written once
+            assertEquals(i, records.get(i).getInt("index"));
+            assertEquals("record" + i, records.get(i).getString("name"));
+            assertTrue(records.get(i).getBundle("empty").isEmpty());
+        }
+
+        assertTrue(message.getParcelableArrayList("emptyList").isEmpty());
+    }
+
+
+    @Test
+    public void decode_TruncatedData() {
+        byte[] data = ServiceTransportCodec.encode(createTransport());
+
+        for (int length = 0; length < data.length; length++) {
+            assertInvalid(Arrays.copyOf(data, length));
+        }
+    }
+
+
+    @Test
+    public void decode_CorruptData() {
+        Bundle bundle = new Bundle();
+        bundle.putByteArray("data", new byte[]{1, 2, 3});
+        byte[] data = ServiceTransportCodec.encode(bundle);
+
+        // version, entry count, new key, key length, "data", type, length, bytes
+        byte[] unknownType = Arrays.copyOf(data, data.length);
+        unknownType[8] = 0x3f;
+        assertInvalid(unknownType);
+
+        byte[] unknownKey = Arrays.copyOf(data, data.length);
+        unknownKey[2] = 5;
+        assertInvalid(unknownKey);
+
+        byte[] invalidLength = Arrays.copyOf(data, data.length);
+        invalidLength[9] = 0x70;
+        assertInvalid(invalidLength);
+
+        byte[] malformedVarInt = new byte[]{ServiceTransportCodec.VERSION, (byte) 0xff, (byte) 0xff, (byte) 0xff,
+            (byte) 0xff, (byte) 0xff, 0x01};
+        assertInvalid(malformedVarInt);
+    }
+
+
+    @Test
+    public void decode_UnknownVersion() {
+        byte[] data = ServiceTransportCodec.encode(createTransport());
+        data[0] = ServiceTransportCodec.VERSION + 1;
+
+        assertInvalid(data);
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encode_UnsupportedValue() {
+        Bundle bundle = new Bundle();
+        bundle.putSerializable("date", new java.util.Date());
+
+        ServiceTransportCodec.encode(bundle);
+    }
+
+
+    @Test
+    public void messageData_RoundTrip() {
+        Bundle data = ServiceTransportCodec.toMessageData(createTransport());
+
+        assertEquals(1, data.size());
+
+        Bundle transport = ServiceTransportCodec.fromMessageData(data);
+        assertEquals("FetchPumpHistoryResult",
+            transport.getBundle("ServiceMessage").getString("ServiceMessageType"));
+    }
+
+
+    @Test
+    public void messageData_OlderPeerDataReturnedAsIs() {
+        Bundle transport = createTransport();
+
+        assertSame(transport, ServiceTransportCodec.fromMessageData(transport));
+        assertNull(ServiceTransportCodec.fromMessageData(null));
+    }
+
+
+    private static Bundle createTransport() {
+        ArrayList<Bundle> records = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            Bundle record = new Bundle();
+            record.putInt("index", i);
+            record.putString("name", "record" + i);
+            record.putBundle("empty", new Bundle());
+            records.add(record);
+        }
+
+        Bundle result = new Bundle();
+        result.putParcelableArrayList("records", records);
+
+        Bundle message = new Bundle();
+        message.putString("ServiceMessageType", "FetchPumpHistoryResult");
+        message.putBundle("result", result);
+        message.putParcelableArrayList("emptyList", new ArrayList<Bundle>());
+
+        Bundle transport = new Bundle();
+        transport.putString("transportType", "ServiceResult");
+        transport.putBundle("ServiceMessage", message);
+        return transport;
+    }
+
+
+    private static void assertInvalid(byte[] data) {
+        try {
+            ServiceTransportCodec.decode(data);
+            fail("Invalid data decoded: " + Arrays.toString(data));
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+}
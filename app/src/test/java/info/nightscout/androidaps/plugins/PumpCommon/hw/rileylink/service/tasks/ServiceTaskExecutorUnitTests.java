@@ -0,0 +1,211 @@
+package info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.tasks;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkUtil;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.data.ServiceTransport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ServiceTaskExecutorUnitTests {
+
+    private List<String> events;
+    private CountDownLatch blockerRelease;
+    private CountDownLatch blockerStarted;
+
+
+    @Before
+    public void setup() throws InterruptedException {
+        events = Collections.synchronizedList(new ArrayList<String>());
+        blockerRelease = new CountDownLatch(1);
+        blockerStarted = new CountDownLatch(1);
+
+        // keeps executor busy, so tasks started by test wait in queue
+        ServiceTaskExecutor.startTask(new TestTask("blocker", ServiceTaskPriority.Therapy) {
+
+            @Override
+            public void run() {
+                blockerStarted.countDown();
+                await(blockerRelease);
+            }
+        });
+
+        assertTrue(blockerStarted.await(5, TimeUnit.SECONDS));
+    }
+
+
+    @After
+    public void tearDown() {
+        blockerRelease.countDown();
+    }
+
+
+    @Test
+    public void tasksRunByPriorityThenInOrder() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(5);
+
+        ServiceTaskExecutor.startTask(new TestTask("background1", ServiceTaskPriority.Background, done));
+        ServiceTaskExecutor.startTask(new TestTask("normal1", ServiceTaskPriority.Normal, done));
+        ServiceTaskExecutor.startTask(new TestTask("therapy", ServiceTaskPriority.Therapy, done));
+        ServiceTaskExecutor.startTask(new TestTask("background2", ServiceTaskPriority.Background, done));
+        ServiceTaskExecutor.startTask(new TestTask("normal2", ServiceTaskPriority.Normal, done));
+
+        blockerRelease.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("therapy", "normal1", "normal2", "background1", "background2"), events);
+    }
+
+
+    @Test
+    public void expiredTaskIsNotRun() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+
+        ServiceTaskExecutor.startTask(new TestTask("expiring", ServiceTaskPriority.Normal) {
+
+            @Override
+            public long getMaxQueueTime_ms() {
+                return 1;
+            }
+        });
+        ServiceTaskExecutor.startTask(new TestTask("after", ServiceTaskPriority.Normal, done));
+
+        Thread.sleep(20);
+        blockerRelease.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("expiring error: Task expired before it was run.", "after"), events);
+    }
+
+
+    @Test
+    public void duplicateTaskGetsResultOfQueuedTask() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+
+        TestTask first = new CoalescedTask("first", done);
+        TestTask second = new CoalescedTask("second", null);
+
+        assertSame(first, ServiceTaskExecutor.startTask(first));
+        assertSame(first, ServiceTaskExecutor.startTask(second));
+
+        blockerRelease.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        // response of duplicate is sent after queued task has finished
+        Thread.sleep(20);
+        assertEquals(Arrays.asList("first", "second answered with first"), events);
+    }
+
+
+    @Test
+    public void urgentTaskRunsInsideLongRunningTask() throws InterruptedException {
+        final CountDownLatch urgentQueued = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        ServiceTaskExecutor.startTask(new TestTask("history", ServiceTaskPriority.Background, done) {
+
+            @Override
+            public void run() {
+                events.add("history page 0");
+                await(urgentQueued);
+                ServiceTaskExecutor.runUrgentTasks();
+                events.add("history page 1");
+                assertSame(this, RileyLinkUtil.getCurrentTask());
+                super.run();
+            }
+        });
+
+        blockerRelease.countDown();
+        Thread.sleep(20);
+
+        ServiceTaskExecutor.startTask(new TestTask("tbr", ServiceTaskPriority.Therapy));
+        urgentQueued.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("history page 0", "tbr", "history page 1", "history"), events);
+    }
+
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private class TestTask extends ServiceTask {
+
+        final String name;
+        final ServiceTaskPriority priority;
+        final CountDownLatch done;
+
+
+        TestTask(String name, ServiceTaskPriority priority) {
+            this(name, priority, null);
+        }
+
+
+        TestTask(String name, ServiceTaskPriority priority, CountDownLatch done) {
+            super((ServiceTransport) null);
+            this.name = name;
+            this.priority = priority;
+            this.done = done;
+        }
+
+
+        @Override
+        public void run() {
+            events.add(name);
+
+            if (done != null) {
+                done.countDown();
+            }
+        }
+
+
+        @Override
+        public ServiceTaskPriority getPriority() {
+            return priority;
+        }
+
+
+        @Override
+        public void sendErrorResponse(String errorDescription) {
+            events.add(name + " error: " + errorDescription);
+        }
+    }
+
+
+    private class CoalescedTask extends TestTask {
+
+        CoalescedTask(String name, CountDownLatch done) {
+            super(name, ServiceTaskPriority.Normal, done);
+        }
+
+
+        @Override
+        public String getCoalesceKey() {
+            return "coalesced";
+        }
+
+
+        @Override
+        public void sendResponseOf(ServiceTask task) {
+            events.add(name + " answered with " + ((TestTask) task).name);
+        }
+    }
+
+}
@@ -67,4 +67,30 @@ public class CRCUnitTests {
         assertArrayEquals(new byte[] {(byte)0x31,(byte)0xf3}, crc);
     }
 
+
+    @Test
+    public void calculate16CCITT_IntOverload_SameAsArray()
+    {
+        byte[] data = ByteUtil.fromHexString("00128b9a5dff09bc849764259e00");
+        assertEquals(0xff8d, CRC.calculate16CCITT(data, 1, data.length - 2));
+    }
+
+    @Test
+    public void crc16CCITT_Incremental_SameAsOneShot()
+    {
+        byte[] data = new byte[1022];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte)(i * 31 + 7);
+        }
+
+        CRC16CCITT crc = new CRC16CCITT();
+        for (int offset = 0; offset < data.length; offset += 64) {
+            crc.update(data, offset, Math.min(64, data.length - offset));
+        }
+
+        byte[] expected = CRC.calculate16CCITT(data);
+        assertEquals(ByteUtil.toInt(expected[0], expected[1]), crc.finish());
+        assertEquals(data.length, crc.getLength());
+    }
+
 }
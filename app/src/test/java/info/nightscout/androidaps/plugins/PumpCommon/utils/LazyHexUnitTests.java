@@ -0,0 +1,40 @@
+package info.nightscout.androidaps.plugins.PumpCommon.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LazyHexUnitTests {
+
+    @Test
+    public void shortHex_SameAsByteUtil() {
+        byte[] data = ByteUtil.fromHexString("a70123450a8d00ff");
+
+        assertEquals(ByteUtil.shortHexString(data), LazyHex.shortHex(data).toString());
+        assertEquals("A7 01 23 45 0A 8D 00 FF", LazyHex.shortHex(data).toString());
+    }
+
+
+    @Test
+    public void shortHex_NullAndEmpty_ReturnsEmptyString() {
+        assertEquals("", LazyHex.shortHex(null).toString());
+        assertEquals("", LazyHex.shortHex(new byte[0]).toString());
+    }
+
+
+    @Test
+    public void displayable_SameAsHexDump() {
+        byte[] data = ByteUtil.fromHexString("0cb68fa0");
+
+        assertEquals(HexDump.toHexStringDisplayable(data), LazyHex.displayable(data).toString());
+        assertEquals(HexDump.toHexStringDisplayable((byte[]) null), LazyHex.displayable(null).toString());
+    }
+
+
+    @Test
+    public void hexByte_Formatted() {
+        assertEquals("0x0A", LazyHex.hexByte((byte) 0x0a).toString());
+        assertEquals("0xFF", LazyHex.hexByte((byte) 0xff).toString());
+    }
+
+}
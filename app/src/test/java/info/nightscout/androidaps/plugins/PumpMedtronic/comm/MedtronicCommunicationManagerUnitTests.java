@@ -0,0 +1,146 @@
+package info.nightscout.androidaps.plugins.PumpMedtronic.comm;
+
+import android.content.Context;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.gxwtech.roundtrip2.MainApp;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import info.AAPSMocker;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkUtil;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkFirmwareVersion;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkTargetFrequency;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.simulator.RFSpySimulator;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.simulator.RadioConditions;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.defs.RileyLinkTargetDevice;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.RileyLinkServiceData;
+import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.HistoryTestPages;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.Page;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2.PumpHistorySync;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.simulator.MedtronicPumpSimulator;
+import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicDeviceType;
+import info.nightscout.androidaps.plugins.PumpMedtronic.service.RileyLinkMedtronicService;
+import info.nightscout.utils.SP;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * MedtronicCommunicationManager talking to simulated pump (over RFSpySimulator).
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({MainApp.class, Context.class, SP.class, PreferenceManager.class, Log.class,
+    RileyLinkMedtronicService.class})
+public class MedtronicCommunicationManagerUnitTests {
+
+    private static final String PUMP_ID = "123456";
+    private static final double PUMP_FREQUENCY = 916.65d;
+
+    private MedtronicPumpSimulator pump;
+    private RadioConditions radioConditions;
+    private RFSpySimulator rfspy;
+    private MedtronicCommunicationManager communicationManager;
+    private List<byte[]> historyPages;
+
+
+    @Before
+    public void setup() throws IOException {
+        AAPSMocker.mockMainApp();
+        AAPSMocker.mockApplicationContext();
+        AAPSMocker.mockSharedPreferences();
+        AAPSMocker.mockSP();
+        // no stored history cursor
+        when(SP.getString(anyString(), anyString())).thenReturn("");
+
+        PowerMockito.mockStatic(Log.class);
+        PowerMockito.mockStatic(RileyLinkMedtronicService.class);
+        when(RileyLinkMedtronicService.getInstance()).thenReturn(mock(RileyLinkMedtronicService.class));
+
+        RileyLinkServiceData serviceData = new RileyLinkServiceData(RileyLinkTargetDevice.MedtronicPump);
+        serviceData.versionCC110 = RileyLinkFirmwareVersion.Version_2_2;
+        serviceData.setPumpID(PUMP_ID, ByteUtil.fromHexString(PUMP_ID));
+        RileyLinkUtil.setRileyLinkServiceData(serviceData);
+
+        // all 16 pages, pump has written over older pages already
+        historyPages = new ArrayList<>(HistoryTestPages.readPages());
+        for (int pageNumber = historyPages.size(); pageNumber < 16; pageNumber++) {
+            historyPages.add(historyPages.get(pageNumber - 2));
+        }
+
+        pump = new MedtronicPumpSimulator(PUMP_ID, MedtronicDeviceType.Medtronic_522);
+        pump.setHistoryPages(historyPages);
+
+        radioConditions = new RadioConditions(PUMP_FREQUENCY, 1L).setLatency(40, 20).setTimeScale(0.0d);
+        rfspy = new RFSpySimulator(pump, radioConditions);
+        rfspy.setBaseFrequency(PUMP_FREQUENCY);
+
+        communicationManager = new MedtronicCommunicationManager(null, rfspy, RileyLinkTargetFrequency.Medtronic_US);
+    }
+
+
+    @Test
+    public void getPumpModel_ReadFromPump() {
+        assertEquals(MedtronicDeviceType.Medtronic_522, communicationManager.getPumpModel());
+        assertEquals(MedtronicDeviceType.Medtronic_522, RileyLinkUtil.getMedtronicPumpModel());
+
+        // simulated latency is reported, even if simulator doesn't wait
+        assertTrue(rfspy.getLastRoundTripLatency_ms() >= 40);
+        assertTrue(rfspy.getLastRoundTripLatency_ms() <= 60);
+    }
+
+
+    @Test
+    public void getPumpHistoryPage_SameAsRecorded() {
+        Page page = communicationManager.getPumpHistoryPage(1);
+
+        Page recorded = new Page();
+        recorded.parseFrom(historyPages.get(1), MedtronicDeviceType.Medtronic_522);
+
+        assertArrayEquals(historyPages.get(1), page.getRawData());
+        assertEquals(recorded.mRecordList.size(), page.mRecordList.size());
+    }
+
+
+    @Test
+    public void getRawPumpHistoryPage_LostPacketsRetried() {
+        radioConditions.setPacketLossProbability(0.1d);
+
+        assertArrayEquals(historyPages.get(2), communicationManager.getRawPumpHistoryPage(2).getData());
+        assertTrue(rfspy.getTimeouts() > 0);
+    }
+
+
+    @Test
+    public void getPumpHistorySinceLastSync_FirstSyncReadsAllPages() {
+        // history is decoded for model read on connect
+        communicationManager.getPumpModel();
+
+        PumpHistorySync historySync = communicationManager.getPumpHistorySinceLastSync();
+
+        assertTrue(historySync.isSuccessful());
+        assertEquals(16, historySync.getPages().size());
+
+        for (int pageNumber = 0; pageNumber < 16; pageNumber++) {
+            assertArrayEquals(historyPages.get(pageNumber), historySync.getPages().get(pageNumber).getData());
+        }
+
+        assertTrue(historySync.getNewEntries().size() > 0);
+    }
+
+}
@@ -0,0 +1,107 @@
+package info.nightscout.androidaps.plugins.PumpMedtronic.comm;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicCommandType;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MedtronicResponseCacheUnitTests {
+
+    private MedtronicResponseCache cache = new MedtronicResponseCache();
+    private AtomicInteger loads = new AtomicInteger();
+
+
+    private Callable<Object> loader(final Object value) {
+        return new Callable<Object>() {
+
+            @Override
+            public Object call() {
+                loads.incrementAndGet();
+                return value;
+            }
+        };
+    }
+
+
+    @Test
+    public void get_WithinTtl_ReadsPumpOnce() {
+        assertEquals(12.5f, cache.get(MedtronicCommandType.GetRemainingInsulin, loader(12.5f)).getValue());
+        assertEquals(12.5f, cache.get(MedtronicCommandType.GetRemainingInsulin, loader(10.0f)).getValue());
+        assertEquals(1, loads.get());
+    }
+
+
+    @Test
+    public void invalidate_NextGetReadsPump() {
+        cache.get(MedtronicCommandType.ReadTemporaryBasal, loader("tbr1"));
+        cache.invalidate(MedtronicCommandType.ReadTemporaryBasal);
+
+        assertEquals("tbr2", cache.get(MedtronicCommandType.ReadTemporaryBasal, loader("tbr2")).getValue());
+        assertEquals(2, loads.get());
+    }
+
+
+    @Test
+    public void get_NullResponseOrNoTtl_NotCached() {
+        cache.get(MedtronicCommandType.GetBatteryStatus, loader(null));
+        cache.get(MedtronicCommandType.GetBatteryStatus, loader(null));
+        cache.get(MedtronicCommandType.PumpState, loader("state"));
+        cache.get(MedtronicCommandType.PumpState, loader("state"));
+
+        assertEquals(4, loads.get());
+    }
+
+
+    @Test
+    public void get_Concurrent_ShareOneRead() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        Thread first = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                cache.get(MedtronicCommandType.GetBasalProfileSTD, new Callable<Object>() {
+
+                    @Override
+                    public Object call() throws Exception {
+                        loads.incrementAndGet();
+                        started.countDown();
+                        release.await(5, TimeUnit.SECONDS);
+                        return "profile";
+                    }
+                });
+            }
+        });
+
+        first.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        final Object[] secondValue = new Object[1];
+        Thread second = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                secondValue[0] = cache.get(MedtronicCommandType.GetBasalProfileSTD, loader("other")).getValue();
+            }
+        });
+
+        second.start();
+        Thread.sleep(100);
+        release.countDown();
+
+        first.join(5000);
+        second.join(5000);
+
+        assertEquals("profile", secondValue[0]);
+        assertEquals(1, loads.get());
+    }
+
+}
@@ -0,0 +1,51 @@
+package info.nightscout.androidaps.plugins.PumpMedtronic.comm.data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads recorded history pages (PumpHistoryPage-N files, as in historyDebugging), used by unit tests and benchmarks.
+ */
+public class HistoryPageFiles {
+
+    public static final String FILE_PREFIX = "PumpHistoryPage-";
+
+
+    public static byte[] readPage(File historyDir, int pageNr) throws IOException {
+        File file = new File(historyDir, FILE_PREFIX + pageNr);
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream inputStream = new FileInputStream(file);
+
+        try {
+            int read = 0;
+            while (read < data.length) {
+                int count = inputStream.read(data, read, data.length - read);
+                if (count < 0)
+                    throw new IOException("Short read on " + file.getName());
+                read += count;
+            }
+        } finally {
+            inputStream.close();
+        }
+
+        return data;
+    }
+
+
+    /**
+     * Reads pages 0, 1, ... until first missing page.
+     */
+    public static List<byte[]> readPages(File historyDir) throws IOException {
+        List<byte[]> pages = new ArrayList<>();
+
+        for(int i = 0; new File(historyDir, FILE_PREFIX + i).exists(); i++) {
+            pages.add(readPage(historyDir, i));
+        }
+
+        return pages;
+    }
+
+}
@@ -0,0 +1,35 @@
+package info.nightscout.androidaps.plugins.PumpMedtronic.comm.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Recorded history pages (historyDebugging) for unit tests.
+ */
+public class HistoryTestPages {
+
+    public static File getHistoryDir() {
+        // unit tests run in app module directory
+        File dir = new File("../historyDebugging");
+        return dir.exists() ? dir : new File("historyDebugging");
+    }
+
+
+    public static byte[] readPage(int pageNr) throws IOException {
+        return HistoryPageFiles.readPage(getHistoryDir(), pageNr);
+    }
+
+
+    public static RawHistoryPage readRawPage(int pageNr) throws IOException {
+        RawHistoryPage page = new RawHistoryPage();
+        page.appendData(readPage(pageNr));
+        return page;
+    }
+
+
+    public static List<byte[]> readPages() throws IOException {
+        return HistoryPageFiles.readPages(getHistoryDir());
+    }
+
+}
@@ -0,0 +1,90 @@
+package info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history;
+
+import org.junit.Test;
+
+import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history.record.IgnoredHistoryEntry;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history.record.TempBasalRatePumpEvent;
+import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicDeviceType;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RecordTypeEnumUnitTests {
+
+    // temp basal (0x33), 0.3 U/h
+    private static final byte[] TEMP_BASAL = ByteUtil.fromHexString("330C427116091200");
+
+
+    @Test
+    public void fromByteMatchesSearchThroughValues() {
+        for (int i = Byte.MIN_VALUE; i <= Byte.MAX_VALUE; i++) {
+            byte opCode = (byte) i;
+            RecordTypeEnum expected = RecordTypeEnum.Null;
+
+            for (RecordTypeEnum type : RecordTypeEnum.values()) {
+                if (type.opcode() == opCode) {
+                    expected = type;
+                    break;
+                }
+            }
+
+            assertSame("op code " + opCode, expected, RecordTypeEnum.fromByte(opCode));
+        }
+    }
+
+
+    @Test
+    public void everyTypeCreatesItsRecordClass() {
+        for (RecordTypeEnum type : RecordTypeEnum.values()) {
+            Record record = type.getRecordClassInstance(MedtronicDeviceType.Medtronic_522);
+
+            if (type.recordClass() == null) {
+                assertNull(type.name(), record);
+                continue;
+            }
+
+            assertSame(type.name(), type.recordClass(), record.getClass());
+
+            if (record instanceof IgnoredHistoryEntry) {
+                assertEquals(type.name(), type.getLength(), record.getLength());
+            }
+        }
+    }
+
+
+    @Test
+    public void recordParsedInPlaceMatchesCopy() {
+        byte[] page = ByteUtil.concat(ByteUtil.fromHexString("0700000000"), TEMP_BASAL);
+        page = ByteUtil.concat(page, new byte[10]);
+
+        TempBasalRatePumpEvent inPlace = RecordTypeEnum.tempBasal.getRecordClassInstance(
+            MedtronicDeviceType.Medtronic_522);
+        TempBasalRatePumpEvent copy = RecordTypeEnum.tempBasal.getRecordClassInstance(
+            MedtronicDeviceType.Medtronic_522);
+
+        assertTrue(inPlace.parseWithOffset(page, MedtronicDeviceType.Medtronic_522, 5));
+        assertTrue(copy.parseWithOffset(TEMP_BASAL, MedtronicDeviceType.Medtronic_522, 0));
+
+        assertEquals(5, inPlace.getFoundAtOffset());
+        assertEquals(TEMP_BASAL[0], inPlace.getRecordOp());
+        assertEquals(copy.getTimestamp().toString(), inPlace.getTimestamp().toString());
+        assertEquals(copy.getBasalRate(), inPlace.getBasalRate(), 0.0001d);
+        assertArrayEquals(copy.getRawbytes(), inPlace.getRawbytes());
+    }
+
+
+    @Test
+    public void recordCutAtEndOfPageIsNotParsed() {
+        byte[] page = ByteUtil.concat(new byte[3], ByteUtil.substring(TEMP_BASAL, 0, 5));
+
+        Record record = RecordTypeEnum.tempBasal.getRecordClassInstance(MedtronicDeviceType.Medtronic_522);
+
+        assertFalse(record.parseWithOffset(page, MedtronicDeviceType.Medtronic_522, 3));
+    }
+
+}
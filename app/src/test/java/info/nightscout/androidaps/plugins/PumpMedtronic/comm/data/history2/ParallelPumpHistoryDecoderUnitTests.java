@@ -0,0 +1,94 @@
+package info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.RawHistoryPage;
+import info.nightscout.androidaps.plugins.PumpMedtronic.data.dto.BolusDTO;
+import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicDeviceType;
+import info.nightscout.androidaps.plugins.PumpMedtronic.util.MedtronicUtil;
+
+import static info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.HistoryTestPages.readRawPage;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelPumpHistoryDecoderUnitTests {
+
+    private static final int PAGE_COUNT = 14;
+
+
+    @Before
+    public void setup() {
+        MedtronicUtil.setMedtronicPumpModel(MedtronicDeviceType.Medtronic_522);
+    }
+
+
+    @Test
+    public void decodePages_SameAsSequentialDecoding() throws IOException {
+        List<RawHistoryPage> pages = new ArrayList<>();
+
+        for (int i = 0; i < PAGE_COUNT; i++) {
+            pages.add(readRawPage(i));
+        }
+
+        // one decoder over all pages, oldest page first
+        MedtronicPumpHistoryDecoder decoder = new MedtronicPumpHistoryDecoder();
+        List<PumpHistoryEntry> expected = new ArrayList<>();
+
+        for (int i = PAGE_COUNT - 1; i >= 0; i--) {
+            byte[] data = decoder.checkPageData(pages.get(i));
+
+            if (data != null) {
+                expected.addAll(decoder.createRecords(data, 0, 1022));
+            }
+        }
+
+        List<PumpHistoryEntry> actual = new ParallelPumpHistoryDecoder().decodePages(pages);
+
+        assertTrue(expected.size() > 0);
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            PumpHistoryEntry expectedEntry = expected.get(i);
+            PumpHistoryEntry actualEntry = actual.get(i);
+
+            assertSame(expectedEntry.getEntryType(), actualEntry.getEntryType());
+            assertEquals(expectedEntry.getOffset(), actualEntry.getOffset());
+            assertEquals(expectedEntry.getLocalDateTime(), actualEntry.getLocalDateTime());
+            assertEquals(getDetails(expectedEntry), getDetails(actualEntry));
+        }
+    }
+
+
+    @Test
+    public void decodePages_InvalidPageSkipped() throws IOException {
+        RawHistoryPage invalid = new RawHistoryPage();
+        invalid.appendData(new byte[1024]);
+        invalid.getData()[0] = 1;
+
+        List<RawHistoryPage> pages = new ArrayList<>();
+        pages.add(readRawPage(0));
+        pages.add(invalid);
+
+        List<PumpHistoryEntry> withInvalid = new ParallelPumpHistoryDecoder().decodePages(pages);
+
+        pages.remove(1);
+
+        assertEquals(new ParallelPumpHistoryDecoder().decodePages(pages).size(), withInvalid.size());
+    }
+
+
+    private static String getDetails(PumpHistoryEntry entry) {
+        if (entry.getHistoryEntryDetails() instanceof BolusDTO) {
+            return ((BolusDTO) entry.getHistoryEntryDetails()).getValue();
+        }
+
+        return entry.getHistoryEntryDetails() == null ? null : entry.getHistoryEntryDetails().getClass().getName();
+    }
+
+}
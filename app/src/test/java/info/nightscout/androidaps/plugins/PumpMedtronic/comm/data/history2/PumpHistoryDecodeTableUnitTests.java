@@ -0,0 +1,62 @@
+package info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2;
+
+import org.junit.Test;
+
+import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicDeviceType;
+import info.nightscout.androidaps.plugins.PumpMedtronic.util.MedtronicUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class PumpHistoryDecodeTableUnitTests {
+
+    @Test
+    public void tableMatchesEntryTypes() {
+        for (MedtronicDeviceType model : new MedtronicDeviceType[]{MedtronicDeviceType.Medtronic_512,
+            MedtronicDeviceType.Medtronic_522, MedtronicDeviceType.Medtronic_523, MedtronicDeviceType.Medtronic_554_Veo}) {
+            MedtronicUtil.setMedtronicPumpModel(model);
+            PumpHistoryDecodeTable table = PumpHistoryDecodeTable.getTable(model);
+
+            for (int opCode = Byte.MIN_VALUE; opCode <= Byte.MAX_VALUE; opCode++) {
+                PumpHistoryEntryType type = PumpHistoryEntryType.getByCode(opCode);
+                String message = model + ", op code " + opCode;
+
+                assertSame(message, type, table.getEntryType(opCode));
+                assertEquals(message, type.getHeadLength(), table.getHeadLength(opCode));
+                assertEquals(message, type.getDateLength(), table.getDateLength(opCode));
+                assertEquals(message, type.getBodyLength(), table.getBodyLength(opCode));
+                assertEquals(message, type.getTotalLength(), table.getTotalLength(opCode));
+            }
+        }
+    }
+
+
+    @Test
+    public void specialRulesApplied() {
+        PumpHistoryDecodeTable table522 = PumpHistoryDecodeTable.getTable(MedtronicDeviceType.Medtronic_522);
+        PumpHistoryDecodeTable table523 = PumpHistoryDecodeTable.getTable(MedtronicDeviceType.Medtronic_523);
+        int bolus = PumpHistoryEntryType.Bolus.getCode();
+
+        assertEquals(PumpHistoryEntryType.Bolus.getHeadLength(MedtronicDeviceType.Medtronic_522), table522
+            .getHeadLength(bolus));
+        assertEquals(8, table523.getHeadLength(bolus));
+    }
+
+
+    @Test
+    public void unsignedAndSignedOpCodeSameSlot() {
+        PumpHistoryDecodeTable table = PumpHistoryDecodeTable.getTable(MedtronicDeviceType.Medtronic_522);
+
+        assertSame(table.getEntryType((byte) 0x81), table.getEntryType(0x81));
+        assertSame(PumpHistoryEntryType.UnknownBasePacket, table.getEntryType(0xff));
+    }
+
+
+    @Test
+    public void tableIsCachedPerModel() {
+        assertSame(PumpHistoryDecodeTable.getTable(MedtronicDeviceType.Medtronic_522), PumpHistoryDecodeTable
+            .getTable(MedtronicDeviceType.Medtronic_522));
+        assertSame(PumpHistoryDecodeTable.getTable(null), PumpHistoryDecodeTable.getTable(null));
+    }
+
+}
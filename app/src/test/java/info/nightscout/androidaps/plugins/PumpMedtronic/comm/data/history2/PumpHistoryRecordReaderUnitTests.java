@@ -0,0 +1,84 @@
+package info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicDeviceType;
+import info.nightscout.androidaps.plugins.PumpMedtronic.util.MedtronicUtil;
+
+import static info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.HistoryTestPages.readPage;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PumpHistoryRecordReaderUnitTests {
+
+    private static final int PAGE_DATA_SIZE = 1022;
+
+
+    @Before
+    public void setup() {
+        MedtronicUtil.setMedtronicPumpModel(MedtronicDeviceType.Medtronic_522);
+    }
+
+
+    @Test
+    public void readsSameRecordsAsCreateRecords() throws IOException {
+        byte[] page = readPage(1);
+
+        List<PumpHistoryEntry> expected = new MedtronicPumpHistoryDecoder().createRecords(page, 0, PAGE_DATA_SIZE);
+
+        PumpHistoryRecordReader reader = new MedtronicPumpHistoryDecoder().readRecords(page, 0, PAGE_DATA_SIZE);
+
+        for (PumpHistoryEntry expectedEntry : expected) {
+            PumpHistoryEntry entry = reader.next();
+
+            assertNotNull(entry);
+            assertSame(expectedEntry.getEntryType(), entry.getEntryType());
+            assertEquals(expectedEntry.getOffset(), entry.getOffset());
+            assertEquals(expectedEntry.getLocalDateTime(), entry.getLocalDateTime());
+        }
+
+        assertNull(reader.next());
+        assertNull(reader.next());
+        assertEquals(PAGE_DATA_SIZE, reader.getPosition());
+    }
+
+
+    @Test
+    public void stopsAfterRecordReturned() throws IOException {
+        byte[] page = readPage(1);
+
+        PumpHistoryRecordReader reader = new MedtronicPumpHistoryDecoder().readRecords(page, 0, PAGE_DATA_SIZE);
+
+        PumpHistoryEntry first = reader.next();
+
+        assertNotNull(first);
+        assertEquals(first.getOffset() + first.getRawDataLength(), reader.getPosition());
+        assertTrue(reader.getPosition() < PAGE_DATA_SIZE);
+    }
+
+
+    @Test
+    public void skipToStartsAtRecord() throws IOException {
+        byte[] page = readPage(1);
+
+        List<PumpHistoryEntry> all = new MedtronicPumpHistoryDecoder().createRecords(page, 0, PAGE_DATA_SIZE);
+        PumpHistoryEntry last = all.get(all.size() - 1);
+
+        PumpHistoryRecordReader reader = new MedtronicPumpHistoryDecoder().readRecords(page, 0, PAGE_DATA_SIZE);
+        reader.skipTo(last.getOffset());
+
+        PumpHistoryEntry entry = reader.next();
+
+        assertNotNull(entry);
+        assertEquals(last.getOffset(), entry.getOffset());
+        assertNull(reader.next());
+    }
+
+}
@@ -0,0 +1,249 @@
+package info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkUtil;
+import info.nightscout.androidaps.plugins.PumpCommon.utils.CRC;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.RawHistoryPage;
+import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicDeviceType;
+import info.nightscout.androidaps.plugins.PumpMedtronic.util.MedtronicUtil;
+
+import static info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.HistoryTestPages.readPage;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PumpHistorySyncUnitTests {
+
+    private MedtronicPumpHistoryDecoder decoder = new MedtronicPumpHistoryDecoder();
+
+
+    @Before
+    public void setup() {
+        MedtronicUtil.setDeviceType(MedtronicDeviceType.Medtronic_522);
+        RileyLinkUtil.setMedtronicPumpModel(MedtronicDeviceType.Medtronic_522);
+    }
+
+
+    @Test
+    public void firstSync_ReadsAllPages() throws IOException {
+        PumpHistorySync sync = new PumpHistorySync(decoder, new PumpHistoryCursor("123456"), null);
+
+        assertTrue(sync.processPage(0, page(readPage(0))));
+        assertTrue(sync.processPage(1, page(readPage(1))));
+        assertFalse(sync.getCursor().isEmpty());
+        assertTrue(sync.getCursor().getNewestEndOffset() > 0);
+    }
+
+
+    @Test
+    public void unchangedPage0_NoNewRecords() throws IOException {
+        byte[] page0 = readPage(0);
+
+        PumpHistorySync first = new PumpHistorySync(decoder, new PumpHistoryCursor("123456"), null);
+        first.processPage(0, page(page0));
+
+        PumpHistorySync second = new PumpHistorySync(decoder, first.getCursor(), null);
+
+        assertFalse(second.processPage(0, page(page0)));
+        assertEquals(0, second.getNewEntries().size());
+        assertEquals(1, second.getPages().size());
+    }
+
+
+    @Test
+    public void appendedRecordsOnPage0_OnlyNewRecordsReturned() throws IOException {
+        byte[] page0 = readPage(0);
+
+        List<PumpHistoryEntry> allRecords = decoder.createRecords(page0, 0, 1022);
+        PumpHistoryEntry lastRecord = allRecords.get(allRecords.size() - 1);
+
+        // page 0 as it was before last record was written
+        byte[] olderPage0 = Arrays.copyOf(page0, page0.length);
+        Arrays.fill(olderPage0, lastRecord.getOffset(), 1022, (byte) 0);
+        setCrc(olderPage0);
+
+        PumpHistorySync first = new PumpHistorySync(decoder, new PumpHistoryCursor("123456"), null);
+        first.processPage(0, page(olderPage0));
+
+        PumpHistorySync second = new PumpHistorySync(decoder, first.getCursor(), null);
+
+        assertFalse(second.processPage(0, page(page0)));
+
+        List<PumpHistoryEntry> newEntries = second.getNewEntries();
+        assertEquals(1, newEntries.size());
+        assertEquals(lastRecord.getOffset(), newEntries.get(0).getOffset());
+    }
+
+
+    @Test
+    public void pageStartTime_SameWhilePageIsFilled() throws IOException {
+        byte[] page0 = readPage(0);
+
+        List<PumpHistoryEntry> allRecords = decoder.createRecords(page0, 0, 1022);
+        PumpHistoryEntry lastRecord = allRecords.get(allRecords.size() - 1);
+
+        byte[] olderPage0 = Arrays.copyOf(page0, page0.length);
+        Arrays.fill(olderPage0, lastRecord.getOffset(), 1022, (byte) 0);
+        setCrc(olderPage0);
+
+        PumpHistorySync first = new PumpHistorySync(decoder, new PumpHistoryCursor("123456"), null);
+        first.processPage(0, page(olderPage0));
+
+        PumpHistorySync second = new PumpHistorySync(decoder, first.getCursor(), null);
+        second.processPage(0, page(page0));
+
+        assertEquals(1, second.getDecodedPageCount());
+        assertEquals(1, second.getNewEntries(0).size());
+        assertTrue(first.getPageStartTime(0) != null);
+        assertEquals(first.getPageStartTime(0), second.getPageStartTime(0));
+    }
+
+
+    @Test
+    public void recordsWithSameTimeAsCursor_OnlyThoseUpToCursorSeen() throws IOException {
+        byte[] page = null;
+        List<PumpHistoryEntry> allRecords = null;
+        int pair = -1;
+
+        // first page with two records written at same time
+        for (int pageNr = 0; pageNr < 14 && pair < 0; pageNr++) {
+            page = readPage(pageNr);
+            allRecords = decoder.createRecords(page, 0, 1022);
+
+            for (int i = 0; i < allRecords.size() - 1 && pair < 0; i++) {
+                if (allRecords.get(i).getLocalDateTime() != null
+                    && allRecords.get(i).getLocalDateTime().equals(allRecords.get(i + 1).getLocalDateTime())) {
+                    pair = i;
+                }
+            }
+        }
+
+        assertTrue(pair >= 0);
+
+        // last sync ended between two records with same time, and pump has started new page since
+        PumpHistoryEntry cursorRecord = allRecords.get(pair);
+        PumpHistoryCursor cursor = new PumpHistoryCursor("123456");
+        cursor.setNewest(cursorRecord.getLocalDateTime(), cursorRecord.getOffset(), -1, 0);
+
+        PumpHistorySync sync = new PumpHistorySync(decoder, cursor, null);
+
+        assertFalse(sync.processPage(1, page(page)));
+
+        List<PumpHistoryEntry> newEntries = sync.getNewEntries();
+        assertEquals(allRecords.get(pair + 1).getOffset(), newEntries.get(0).getOffset());
+        int expected = 0;
+        boolean lastDatedNew = true;
+
+        // records after cursor record, except those with older time (pump time was changed) and undated records after them
+        for (PumpHistoryEntry entry : allRecords.subList(pair + 1, allRecords.size())) {
+            if (entry.getLocalDateTime() != null) {
+                lastDatedNew = !entry.getLocalDateTime().isBefore(cursorRecord.getLocalDateTime());
+            }
+
+            if (lastDatedNew) {
+                expected++;
+            }
+        }
+
+        assertEquals(expected, newEntries.size());
+    }
+
+
+    @Test
+    public void undatedRecords_SeenSameAsRecordBeforeThem() throws IOException {
+        // decoder that keeps unabsorbed insulin records (ignored by default)
+        MedtronicPumpHistoryDecoder undatedDecoder = new MedtronicPumpHistoryDecoder() {
+
+            @Override
+            public RecordDecodeStatus decodeRecord(MedtronicHistoryEntry entry) {
+                if (((PumpHistoryEntry) entry).getEntryType() == PumpHistoryEntryType.UnabsorbedInsulin) {
+                    return RecordDecodeStatus.OK;
+                }
+
+                return super.decodeRecord(entry);
+            }
+        };
+
+        byte[] page0 = readPage(0);
+        List<PumpHistoryEntry> allRecords = decoder.createRecords(page0, 0, 1022);
+
+        // daily totals record written twice at same time, last sync ended on second one
+        PumpHistoryEntry totals = allRecords.get(10);
+        PumpHistoryEntry nextRecord = allRecords.get(11);
+        byte[] totalsData = Arrays.copyOfRange(page0, totals.getOffset(), nextRecord.getOffset());
+        byte[] unabsorbed = new byte[]{0x5c, 0x05, 0x01, 0x02, 0x03};
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        data.write(page0, 0, totals.getOffset());
+        data.write(unabsorbed); // before cursor, seen
+        data.write(totalsData);
+        data.write(unabsorbed); // between records with same time as cursor, seen
+        int cursorOffset = data.size();
+        data.write(totalsData);
+        data.write(page0, nextRecord.getOffset(), allRecords.get(12).getOffset() - nextRecord.getOffset());
+        int newUndatedOffset = data.size();
+        data.write(unabsorbed); // after new record, new
+        data.write(page0, allRecords.get(12).getOffset(), 1022 - allRecords.get(12).getOffset());
+
+        byte[] page = Arrays.copyOf(data.toByteArray(), 1024);
+        setCrc(page);
+
+        PumpHistoryCursor cursor = new PumpHistoryCursor("123456");
+        cursor.setNewest(totals.getLocalDateTime(), cursorOffset, -1, 0);
+
+        PumpHistorySync sync = new PumpHistorySync(undatedDecoder, cursor, null);
+
+        assertFalse(sync.processPage(1, page(page)));
+
+        List<PumpHistoryEntry> newEntries = sync.getNewEntries();
+        int undated = 0;
+
+        for (PumpHistoryEntry entry : newEntries) {
+            assertTrue(entry.getOffset() > cursorOffset);
+
+            if (entry.getEntryType() == PumpHistoryEntryType.UnabsorbedInsulin) {
+                assertEquals(newUndatedOffset, entry.getOffset());
+                undated++;
+            }
+        }
+
+        assertEquals(1, undated);
+        assertEquals(allRecords.size() - 11 + 1, newEntries.size());
+    }
+
+
+    @Test
+    public void badPage_CursorNotMoved() throws IOException {
+        byte[] page0 = readPage(0);
+        page0[10] ^= 0x01;
+
+        PumpHistoryCursor cursor = new PumpHistoryCursor("123456");
+        PumpHistorySync sync = new PumpHistorySync(decoder, cursor, null);
+
+        assertFalse(sync.processPage(0, page(page0)));
+        assertFalse(sync.isSuccessful());
+        assertTrue(sync.getCursor() == cursor);
+    }
+
+
+    private RawHistoryPage page(byte[] data) {
+        RawHistoryPage page = new RawHistoryPage();
+        page.appendData(data);
+        return page;
+    }
+
+
+    private void setCrc(byte[] data) {
+        byte[] crc = CRC.calculate16CCITT(Arrays.copyOf(data, 1022));
+        data[1022] = crc[0];
+        data[1023] = crc[1];
+    }
+
+}
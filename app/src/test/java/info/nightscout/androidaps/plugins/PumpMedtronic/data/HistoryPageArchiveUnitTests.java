@@ -0,0 +1,141 @@
+package info.nightscout.androidaps.plugins.PumpMedtronic.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkUtil;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2.MedtronicPumpHistoryDecoder;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2.PumpHistoryEntry;
+import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicDeviceType;
+import info.nightscout.androidaps.plugins.PumpMedtronic.util.MedtronicUtil;
+
+import static info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.HistoryTestPages.readPage;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistoryPageArchiveUnitTests {
+
+    private File archiveFile;
+
+
+    @Before
+    public void setup() throws IOException {
+        archiveFile = File.createTempFile("history", ".archive");
+        archiveFile.delete();
+
+        MedtronicUtil.setDeviceType(MedtronicDeviceType.Medtronic_522);
+        RileyLinkUtil.setMedtronicPumpModel(MedtronicDeviceType.Medtronic_522);
+    }
+
+
+    @After
+    public void tearDown() {
+        archiveFile.delete();
+    }
+
+
+    @Test
+    public void addPage_ReopenArchive_PageAndIndexKept() throws IOException {
+        byte[] page = readPage(0);
+
+        HistoryPageArchive archive = new HistoryPageArchive(archiveFile, 4);
+        int slot = archive.addPage("123456", 0, 1539772800000L, page);
+        archive.close();
+
+        archive = new HistoryPageArchive(archiveFile, 4);
+
+        assertEquals(1, archive.getCount());
+        assertEquals(slot, archive.getSlot(0));
+        assertEquals(0, archive.getPageNumber(slot));
+        assertEquals(1539772800000L, archive.getFetchTime(slot));
+        assertEquals("123456", archive.getPumpSerial(slot));
+        assertArrayEquals(page, archive.getPage(slot));
+
+        ByteBuffer view = archive.getPageView(slot);
+        assertEquals(page.length, view.remaining());
+        assertEquals(page[100], view.get(100));
+
+        archive.close();
+    }
+
+
+    @Test
+    public void addPage_WhenFull_OldestOverwritten() throws IOException {
+        HistoryPageArchive archive = new HistoryPageArchive(archiveFile, 3);
+
+        for (int i = 0; i < 5; i++) {
+            archive.addPage("123456", i, i, new byte[]{(byte) i, 1, 2});
+        }
+
+        assertEquals(3, archive.getCount());
+        assertEquals(2, archive.getPageNumber(archive.getSlot(0)));
+        assertEquals(4, archive.getPageNumber(archive.getSlot(2)));
+
+        byte[] buffer = new byte[HistoryPageArchive.PAGE_SIZE];
+        assertEquals(3, archive.readPage(archive.getSlot(0), buffer));
+        assertEquals(2, buffer[0]);
+
+        archive.close();
+    }
+
+
+    @Test
+    public void addChangedPage_UnchangedPageSkipped() throws IOException {
+        byte[] page0 = readPage(0);
+        byte[] page1 = readPage(1);
+
+        HistoryPageArchive archive = new HistoryPageArchive(archiveFile, 8);
+        int slot0 = archive.addChangedPage("123456", 0, 1000L, page0);
+        int slot1 = archive.addChangedPage("123456", 1, 1000L, page1);
+
+        // next sync, nothing changed
+        assertEquals(-1, archive.addChangedPage("123456", 0, 2000L, page0));
+        assertEquals(-1, archive.addChangedPage("123456", 1, 2000L, page1));
+        assertEquals(2, archive.getCount());
+
+        // page 0 got new records, page 1 is same
+        byte[] changedPage0 = Arrays.copyOf(page0, page0.length);
+        changedPage0[10] ^= 0x01;
+        int changedSlot0 = archive.addChangedPage("123456", 0, 3000L, changedPage0);
+
+        assertEquals(3, archive.getCount());
+        assertEquals(changedSlot0, archive.findLastSlot("123456", 0));
+        assertEquals(slot1, archive.findLastSlot("123456", 1));
+        assertArrayEquals(page0, archive.getPage(slot0));
+
+        // same page of other pump is archived
+        assertEquals(-1, archive.findLastSlot("654321", 1));
+        assertTrue(archive.addChangedPage("654321", 1, 3000L, page1) >= 0);
+        assertEquals(4, archive.getCount());
+
+        archive.close();
+    }
+
+
+    @Test
+    public void decodePage_SameRecordsAsDecoder() throws IOException {
+        byte[] page = readPage(1);
+        MedtronicPumpHistoryDecoder decoder = new MedtronicPumpHistoryDecoder();
+
+        HistoryPageArchive archive = new HistoryPageArchive(archiveFile, 4);
+        int slot = archive.addPage("123456", 1, 0L, page);
+
+        List<PumpHistoryEntry> archived = archive.decodePage(slot, decoder);
+        List<PumpHistoryEntry> direct = decoder.createRecords(page, 0, 1022);
+
+        assertTrue(archived.size() > 0);
+        assertEquals(direct.size(), archived.size());
+        assertEquals(direct.get(0).getOffset(), archived.get(0).getOffset());
+
+        archive.close();
+    }
+
+}
@@ -0,0 +1,83 @@
+package info.nightscout.androidaps.plugins.PumpOmnipod.comm;
+
+import android.content.Context;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.gxwtech.roundtrip2.MainApp;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import info.AAPSMocker;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.RileyLinkUtil;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.defs.RileyLinkFirmwareVersion;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.simulator.RFSpySimulator;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.simulator.RadioConditions;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.defs.RileyLinkTargetDevice;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.RileyLinkServiceData;
+import info.nightscout.androidaps.plugins.PumpOmnipod.comm.message.command.GetStatusCommand;
+import info.nightscout.androidaps.plugins.PumpOmnipod.comm.message.response.StatusResponse;
+import info.nightscout.androidaps.plugins.PumpOmnipod.comm.simulator.OmnipodPodSimulator;
+import info.nightscout.androidaps.plugins.PumpOmnipod.defs.StatusType;
+import info.nightscout.utils.SP;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * OmnipodCommunicationManager talking to simulated pod (over RFSpySimulator).
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({MainApp.class, Context.class, SP.class, PreferenceManager.class, Log.class})
+public class OmnipodCommunicationManagerUnitTests {
+
+    // address of pod state that finishPrime uses, when pod wasn't initialized
+    private static final int POD_ADDRESS = 0x1f05e70b;
+    private static final double POD_FREQUENCY = 433.91d;
+
+    private OmnipodPodSimulator pod;
+    private OmnipodCommunicationManager communicationManager;
+
+
+    @Before
+    public void setup() {
+        AAPSMocker.mockMainApp();
+        AAPSMocker.mockApplicationContext();
+        AAPSMocker.mockSharedPreferences();
+        AAPSMocker.mockSP();
+        PowerMockito.mockStatic(Log.class);
+
+        RileyLinkServiceData serviceData = new RileyLinkServiceData(RileyLinkTargetDevice.Omnipod);
+        serviceData.versionCC110 = RileyLinkFirmwareVersion.Version_2_2;
+        RileyLinkUtil.setRileyLinkServiceData(serviceData);
+
+        pod = new OmnipodPodSimulator(POD_ADDRESS);
+        pod.setActiveMinutes(600);
+        pod.setReservoirLevel(30.0d);
+
+        RFSpySimulator rfspy = new RFSpySimulator(pod, new RadioConditions(POD_FREQUENCY, 1L).setTimeScale(0.0d));
+        rfspy.setBaseFrequency(POD_FREQUENCY);
+
+        communicationManager = new OmnipodCommunicationManager(null, rfspy);
+    }
+
+
+    @Test
+    public void finishPrime_ThenGetStatus() {
+        assertEquals("OK", communicationManager.finishPrime());
+        assertEquals(1, pod.getMessagesReceived());
+
+        StatusResponse status = communicationManager.sendCommand(new GetStatusCommand(StatusType.Normal));
+
+        assertNotNull(status);
+        assertEquals(2, pod.getMessagesReceived());
+        assertEquals(600, status.activeTime.getStandardMinutes());
+        assertEquals(30.0d, status.reservoirLevel, 0.5d);
+    }
+
+}
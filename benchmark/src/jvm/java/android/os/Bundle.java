@@ -0,0 +1,191 @@
+package android.os;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JVM stand-in for android.os.Bundle, with just the methods that history records and service
+ * transports use (map backed).
+ */
+public class Bundle implements Parcelable {
+
+    private final Map<String, Object> values = new HashMap<>();
+
+
+    public Set<String> keySet() {
+        return values.keySet();
+    }
+
+
+    public boolean containsKey(String key) {
+        return values.containsKey(key);
+    }
+
+
+    public Object get(String key) {
+        return values.get(key);
+    }
+
+
+    public void putLong(String key, long value) {
+        values.put(key, value);
+    }
+
+
+    public long getLong(String key) {
+        Object value = values.get(key);
+        return value == null ? 0L : (Long) value;
+    }
+
+
+    public void putFloat(String key, float value) {
+        values.put(key, value);
+    }
+
+
+    public float getFloat(String key) {
+        Object value = values.get(key);
+        return value == null ? 0.0f : (Float) value;
+    }
+
+
+    public void putShort(String key, short value) {
+        values.put(key, value);
+    }
+
+
+    public short getShort(String key) {
+        Object value = values.get(key);
+        return value == null ? 0 : (Short) value;
+    }
+
+
+    public void putBundle(String key, Bundle value) {
+        values.put(key, value);
+    }
+
+
+    public Bundle getBundle(String key) {
+        return (Bundle) values.get(key);
+    }
+
+
+    public void putString(String key, String value) {
+        values.put(key, value);
+    }
+
+
+    public String getString(String key) {
+        return (String) values.get(key);
+    }
+
+
+    public String getString(String key, String defaultValue) {
+        Object value = values.get(key);
+        return value == null ? defaultValue : (String) value;
+    }
+
+
+    public void putInt(String key, int value) {
+        values.put(key, value);
+    }
+
+
+    public int getInt(String key) {
+        return getInt(key, 0);
+    }
+
+
+    public int getInt(String key, int defaultValue) {
+        Object value = values.get(key);
+        return value == null ? defaultValue : (Integer) value;
+    }
+
+
+    public void putDouble(String key, double value) {
+        values.put(key, value);
+    }
+
+
+    public double getDouble(String key) {
+        return getDouble(key, 0.0d);
+    }
+
+
+    public double getDouble(String key, double defaultValue) {
+        Object value = values.get(key);
+        return value == null ? defaultValue : (Double) value;
+    }
+
+
+    public void putBoolean(String key, boolean value) {
+        values.put(key, value);
+    }
+
+
+    public boolean getBoolean(String key) {
+        return getBoolean(key, false);
+    }
+
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Object value = values.get(key);
+        return value == null ? defaultValue : (Boolean) value;
+    }
+
+
+    public void putByte(String key, byte value) {
+        values.put(key, value);
+    }
+
+
+    public byte getByte(String key) {
+        // like Bundle, value of other type is reported as default
+        Object value = values.get(key);
+        return value instanceof Byte ? (Byte) value : 0;
+    }
+
+
+    public void putByteArray(String key, byte[] value) {
+        values.put(key, value);
+    }
+
+
+    public byte[] getByteArray(String key) {
+        return (byte[]) values.get(key);
+    }
+
+
+    public void putIntArray(String key, int[] value) {
+        values.put(key, value);
+    }
+
+
+    public int[] getIntArray(String key) {
+        return (int[]) values.get(key);
+    }
+
+
+    public void putFloatArray(String key, float[] value) {
+        values.put(key, value);
+    }
+
+
+    public float[] getFloatArray(String key) {
+        return (float[]) values.get(key);
+    }
+
+
+    public void putParcelableArrayList(String key, ArrayList<? extends Parcelable> value) {
+        values.put(key, value);
+    }
+
+
+    @SuppressWarnings("unchecked")
+    public <T extends Parcelable> ArrayList<T> getParcelableArrayList(String key) {
+        return (ArrayList<T>) values.get(key);
+    }
+
+}
@@ -0,0 +1,8 @@
+package android.os;
+
+/**
+ * JVM stand-in for android.os.Parcelable (only needed by Bundle).
+ */
+public interface Parcelable {
+
+}
@@ -0,0 +1,43 @@
+package android.util;
+
+/**
+ * JVM stand-in for android.util.Log used by app classes compiled into benchmark. Logging is dropped, so that
+ * benchmarks measure decoding and not console output.
+ */
+public class Log {
+
+    public static int v(String tag, String msg) {
+        return 0;
+    }
+
+
+    public static int d(String tag, String msg) {
+        return 0;
+    }
+
+
+    public static int i(String tag, String msg) {
+        return 0;
+    }
+
+
+    public static int w(String tag, String msg) {
+        return 0;
+    }
+
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+
+
+    public static int e(String tag, String msg) {
+        return 0;
+    }
+
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+
+}
@@ -0,0 +1,111 @@
+package info.nightscout.androidaps.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import info.nightscout.androidaps.plugins.PumpCommon.utils.CRC;
+import info.nightscout.androidaps.plugins.PumpCommon.utils.CRC16CCITT;
+import info.nightscout.androidaps.plugins.PumpOmnipod.util.OmniCRC;
+
+/**
+ * Checksums used on radio path: crc8 of every frame, CRC16-CCITT of every history page (old bitwise vs table, one
+ * op = whole history download) and Omnipod crc16 on same pages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CrcBenchmark {
+
+    byte[][] frames;
+    byte[][] pages;
+    CRC16CCITT crc16 = new CRC16CCITT();
+
+
+    @Setup
+    public void setup() throws IOException {
+        List<byte[]> frameList = HistoryData.loadFrames();
+        List<byte[]> pageList = HistoryData.loadPages();
+
+        frames = frameList.toArray(new byte[frameList.size()][]);
+        pages = pageList.toArray(new byte[pageList.size()][]);
+
+        for (int i = 0; i < pages.length; i++) {
+            if (!Arrays.equals(LegacyCRC.calculate16CCITT(pages[i]), CRC.calculate16CCITT(pages[i]))) {
+                throw new IllegalStateException("CRC16 implementations don't match on page " + i);
+            }
+        }
+    }
+
+
+    @Benchmark
+    public void crc8(Blackhole blackhole) {
+        for (byte[] frame : frames) {
+            blackhole.consume(CRC.crc8(frame, frame.length - 1));
+        }
+    }
+
+
+    @Benchmark
+    public void calculate16CCITTLegacy(Blackhole blackhole) {
+        for (byte[] page : pages) {
+            blackhole.consume(LegacyCRC.calculate16CCITT(page));
+        }
+    }
+
+
+    @Benchmark
+    public void calculate16CCITT(Blackhole blackhole) {
+        for (byte[] page : pages) {
+            blackhole.consume(CRC.calculate16CCITT(page));
+        }
+    }
+
+
+    @Benchmark
+    public void calculate16CCITTInt(Blackhole blackhole) {
+        for (byte[] page : pages) {
+            blackhole.consume(CRC.calculate16CCITT(page, 0, page.length - 2));
+        }
+    }
+
+
+    /**
+     * Page CRC accumulated frame by frame, as it's done during download.
+     */
+    @Benchmark
+    public void crc16CCITTByFrames(Blackhole blackhole) {
+        for (byte[] page : pages) {
+            crc16.reset();
+            for (int offset = 0; offset < page.length - 2; offset += HistoryData.FRAME_DATA_SIZE) {
+                crc16.update(page, offset, Math.min(HistoryData.FRAME_DATA_SIZE, page.length - 2 - offset));
+            }
+            blackhole.consume(crc16.finish());
+        }
+    }
+
+
+    @Benchmark
+    public void omniCrc16(Blackhole blackhole) {
+        for (byte[] page : pages) {
+            blackhole.consume(OmniCRC.crc16(page));
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+package info.nightscout.androidaps.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.FourByteSixByteCodec;
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.RFTools;
+
+/**
+ * Old vs new 4b6b codec on all frames of recorded history pages (one op = whole history download).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FourByteSixByteBenchmark {
+
+    byte[][] frames;
+    byte[][] encodedFrames;
+    byte[] outBuffer;
+
+
+    @Setup
+    public void setup() throws IOException {
+        List<byte[]> frameList = HistoryData.loadFrames();
+
+        frames = frameList.toArray(new byte[frameList.size()][]);
+        encodedFrames = new byte[frames.length][];
+
+        int maxLength = 0;
+
+        for (int i = 0; i < frames.length; i++) {
+            encodedFrames[i] = LegacyRFTools.encode4b6b(frames[i]);
+
+            if (!Arrays.equals(encodedFrames[i], RFTools.encode4b6b(frames[i]))
+                || !Arrays.equals(frames[i], RFTools.decode4b6b(encodedFrames[i]))) {
+                throw new IllegalStateException("Codecs don't match on frame " + i);
+            }
+
+            maxLength = Math.max(maxLength, encodedFrames[i].length);
+        }
+
+        outBuffer = new byte[maxLength];
+    }
+
+
+    @Benchmark
+    public void encodeLegacy(Blackhole blackhole) {
+        for (byte[] frame : frames) {
+            blackhole.consume(LegacyRFTools.encode4b6b(frame));
+        }
+    }
+
+
+    @Benchmark
+    public void encodeWrapper(Blackhole blackhole) {
+        for (byte[] frame : frames) {
+            blackhole.consume(RFTools.encode4b6b(frame));
+        }
+    }
+
+
+    @Benchmark
+    public int encodeIntoBuffer() {
+        int total = 0;
+        for (byte[] frame : frames) {
+            total += FourByteSixByteCodec.encode(frame, 0, frame.length, outBuffer, 0);
+        }
+        return total;
+    }
+
+
+    @Benchmark
+    public void decodeLegacy(Blackhole blackhole) {
+        for (byte[] frame : encodedFrames) {
+            blackhole.consume(LegacyRFTools.decode4b6b(frame));
+        }
+    }
+
+
+    @Benchmark
+    public void decodeWrapper(Blackhole blackhole) {
+        for (byte[] frame : encodedFrames) {
+            blackhole.consume(RFTools.decode4b6b(frame));
+        }
+    }
+
+
+    @Benchmark
+    public int decodeIntoBuffer() {
+        int total = 0;
+        for (byte[] frame : encodedFrames) {
+            total += FourByteSixByteCodec.decode(frame, 0, frame.length, outBuffer, 0);
+        }
+        return total;
+    }
+
+}
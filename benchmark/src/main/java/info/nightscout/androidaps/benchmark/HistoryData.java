@@ -0,0 +1,62 @@
+package info.nightscout.androidaps.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import info.nightscout.androidaps.plugins.PumpCommon.utils.CRC;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.HistoryPageFiles;
+
+/**
+ * Loads recorded history pages (historyDebugging/PumpHistoryPage-*) and builds radio frames out of them, so that
+ * benchmarks run on real pump data.
+ */
+public class HistoryData {
+
+    public static final int PAGE_SIZE = 1024;
+    public static final int FRAME_DATA_SIZE = 64;
+
+
+    public static File getHistoryDir() {
+        return new File(System.getProperty("historyDir", "historyDebugging"));
+    }
+
+
+    public static List<byte[]> loadPages() throws IOException {
+        List<byte[]> pages = HistoryPageFiles.readPages(getHistoryDir());
+
+        if (pages.isEmpty()) {
+            throw new IOException("No history pages found in " + getHistoryDir().getAbsolutePath());
+        }
+
+        return pages;
+    }
+
+
+    /**
+     * Splits pages into frames as they come over the air from pump: pump packet header (type, pump id, command),
+     * frame number, 64 bytes of page data and crc8.
+     */
+    public static List<byte[]> loadFrames() throws IOException {
+        List<byte[]> frames = new ArrayList<>();
+
+        for (byte[] page : loadPages()) {
+            for (int frame = 0; frame < (page.length / FRAME_DATA_SIZE); frame++) {
+                byte[] packet = new byte[5 + 1 + FRAME_DATA_SIZE + 1];
+                packet[0] = (byte) 0xa7;
+                packet[1] = 0x12;
+                packet[2] = 0x34;
+                packet[3] = 0x56;
+                packet[4] = (byte) 0x80;
+                packet[5] = (byte) (frame + 1);
+                System.arraycopy(page, frame * FRAME_DATA_SIZE, packet, 6, FRAME_DATA_SIZE);
+                packet[packet.length - 1] = CRC.crc8(packet, packet.length - 1);
+                frames.add(packet);
+            }
+        }
+
+        return frames;
+    }
+
+}
@@ -0,0 +1,89 @@
+package info.nightscout.androidaps.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.Page;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.RawHistoryPage;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.history2.MedtronicPumpHistoryDecoder;
+import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicDeviceType;
+import info.nightscout.androidaps.plugins.PumpMedtronic.util.MedtronicUtil;
+
+/**
+ * Old (Page, history) and new (MedtronicPumpHistoryDecoder, history2) decoding of recorded history pages (one op =
+ * all pages).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryDecodeBenchmark {
+
+    // page without crc
+    private static final int PAGE_DATA_SIZE = HistoryData.PAGE_SIZE - 2;
+
+    byte[][] pages;
+    MedtronicPumpHistoryDecoder decoder;
+
+
+    @Setup
+    public void setup() throws IOException {
+        List<byte[]> pageList = HistoryData.loadPages();
+
+        pages = pageList.toArray(new byte[pageList.size()][]);
+
+        // pages were recorded on 522
+        MedtronicUtil.setMedtronicPumpModel(MedtronicDeviceType.Medtronic_522);
+        decoder = new MedtronicPumpHistoryDecoder();
+
+        for (int i = 0; i < pages.length; i++) {
+            if (decoder.createRecords(pages[i], 0, PAGE_DATA_SIZE).isEmpty()) {
+                throw new IllegalStateException("No records decoded on page " + i);
+            }
+        }
+    }
+
+
+    @Benchmark
+    public void pageParseFrom(Blackhole blackhole) {
+        for (byte[] rawPage : pages) {
+            Page page = new Page();
+            page.parseFrom(rawPage, MedtronicDeviceType.Medtronic_522);
+            blackhole.consume(page);
+        }
+    }
+
+
+    @Benchmark
+    public void decoderCreateRecords(Blackhole blackhole) {
+        for (byte[] rawPage : pages) {
+            blackhole.consume(decoder.createRecords(rawPage, 0, PAGE_DATA_SIZE));
+        }
+    }
+
+
+    @Benchmark
+    public void decoderProcessPage(Blackhole blackhole) {
+        for (byte[] rawPage : pages) {
+            RawHistoryPage page = new RawHistoryPage();
+            page.appendData(rawPage);
+            blackhole.consume(decoder.processPageAndCreateRecords(page));
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+package info.nightscout.androidaps.benchmark;
+
+/**
+ * Old (bit by bit) CRC16-CCITT implementation, kept here only as a baseline for benchmarks.
+ */
+public class LegacyCRC {
+
+    public static byte[] calculate16CCITT(byte[] data) {
+        int crc = 0xFFFF;
+        int polynomial = 0x1021;
+        if (data != null) {
+            if (data.length > 0) {
+                for(int j = 0; j < data.length; j++) {
+                    byte b = data[j];
+                    for(int i = 0; i < 8; i++) {
+                        boolean bit = ((b >> (7 - i) & 1) == 1);
+                        boolean c15 = ((crc >> 15 & 1) == 1);
+                        crc <<= 1;
+                        if (c15 ^ bit) crc ^= polynomial;
+                    }
+                }
+            }
+        }
+        crc &= 0xffff;
+        return new byte[]{(byte) ((crc & 0xFF00) >> 8), (byte) (crc & 0xFF)};
+    }
+
+}
@@ -0,0 +1,104 @@
+package info.nightscout.androidaps.benchmark;
+
+import java.util.ArrayList;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.ble.RFTools;
+import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
+
+/**
+ * Old (ArrayList based, linear code lookup) 4b6b implementation, kept here only as a baseline for benchmarks.
+ */
+public class LegacyRFTools {
+
+    public static int codeIndex(byte b) {
+        for (int i = 0; i < RFTools.codes.length; i++) {
+            if (b == RFTools.codes[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    public static byte[] encode4b6b(byte[] data) {
+        ArrayList<Byte> inData = RFTools.fromBytes(data);
+        ArrayList<Byte> outData = new ArrayList<>();
+
+        int acc = 0;
+        int bitcount = 0;
+        int i;
+        for (i = 0; i < inData.size(); i++) {
+            acc <<= 6;
+            acc |= RFTools.codes[(inData.get(i) >> 4) & 0x0f];
+            bitcount += 6;
+
+            acc <<= 6;
+            acc |= RFTools.codes[inData.get(i) & 0x0f];
+            bitcount += 6;
+
+            while (bitcount >= 8) {
+                byte outByte = (byte) (acc >> (bitcount - 8) & 0xff);
+                outData.add(outByte);
+                bitcount -= 8;
+                acc &= (0xffff >> (16 - bitcount));
+            }
+        }
+        if (bitcount > 0) {
+            acc <<= 6;
+            acc |= 0x14; // marks uneven packet boundary.
+            bitcount += 6;
+            if (bitcount >= 8) {
+                byte outByte = (byte) ((acc >> (bitcount - 8)) & 0xff);
+                outData.add(outByte);
+                bitcount -= 8;
+            }
+            while (bitcount >= 8) {
+                outData.add((byte) 0);
+                bitcount -= 8;
+            }
+        }
+
+        return RFTools.toBytes(outData);
+    }
+
+
+    public static byte[] decode4b6b(byte[] raw) throws NumberFormatException {
+        byte[] rval = new byte[]{};
+        int availableBits = 0;
+        int codingErrors = 0;
+        int x = 0;
+        for (int i = 0; i < raw.length; i++) {
+            int unsignedValue = raw[i];
+            if (unsignedValue < 0) {
+                unsignedValue += 256;
+            }
+            x = (x << 8) + unsignedValue;
+            availableBits += 8;
+            if (availableBits >= 12) {
+                int highcode = (x >> (availableBits - 6)) & 0x3F;
+                int highIndex = codeIndex((byte) (highcode));
+                int lowcode = (x >> (availableBits - 12)) & 0x3F;
+                int lowIndex = codeIndex((byte) (lowcode));
+                if ((highIndex >= 0) && (lowIndex >= 0)) {
+                    byte decoded = (byte) ((highIndex << 4) + lowIndex);
+                    rval = ByteUtil.concat(rval, decoded);
+                } else {
+                    codingErrors++;
+                }
+
+                availableBits -= 12;
+                x = x & (0x0000ffff >> (16 - availableBits));
+            }
+        }
+        if (availableBits != 0) {
+            if (!((availableBits == 4) && (x == 0x05))) {
+                codingErrors++;
+            }
+        }
+        if (codingErrors > 0) {
+            throw new NumberFormatException();
+        }
+        return rval;
+    }
+
+}
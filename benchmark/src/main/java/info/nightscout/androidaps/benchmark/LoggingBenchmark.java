@@ -0,0 +1,90 @@
+package info.nightscout.androidaps.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
+import info.nightscout.androidaps.plugins.PumpCommon.utils.CRC;
+import info.nightscout.androidaps.plugins.PumpCommon.utils.HexDump;
+import info.nightscout.androidaps.plugins.PumpCommon.utils.LazyHex;
+
+/**
+ * Cost of debug logging on radio path when debug is disabled (benchmark runs with slf4j-nop, so all levels are off).
+ * One op = log statements done for every frame of history download (sent, received, raw write, checksum): eager
+ * variants build strings as code did before, lazy ones use LazyHex and level guards. Run with "-prof gc" to see
+ * allocation per op (gc.alloc.rate.norm), which should be (close to) 0 for lazy variants.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggingBenchmark {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoggingBenchmark.class);
+
+    byte[][] frames;
+
+
+    @Setup
+    public void setup() throws IOException {
+        List<byte[]> frameList = HistoryData.loadFrames();
+
+        frames = frameList.toArray(new byte[frameList.size()][]);
+
+        for (int i = 0; i < frames.length; i++) {
+            if (!ByteUtil.shortHexString(frames[i]).equals(LazyHex.shortHex(frames[i]).toString())) {
+                throw new IllegalStateException("Lazy hex doesn't match ByteUtil.shortHexString on frame " + i);
+            }
+        }
+    }
+
+
+    @Benchmark
+    public void eager(Blackhole blackhole) {
+        for (byte[] frame : frames) {
+            LOG.debug("Sent:" + ByteUtil.shortHexString(frame));
+            LOG.debug("writeToData (raw={})", HexDump.toHexStringDisplayable(frame));
+            LOG.debug("Got data [" + ByteUtil.shortHexString(frame) + "] at t==" + System.nanoTime());
+            byte crc = CRC.crc8(frame);
+            LOG.debug(String.format("Adding checksum 0x%02X to %d byte array from 0x%02X to 0x%02X", crc,
+                frame.length, frame[0], frame[frame.length - 1]));
+            blackhole.consume(crc);
+        }
+    }
+
+
+    @Benchmark
+    public void lazy(Blackhole blackhole) {
+        for (byte[] frame : frames) {
+            LOG.debug("Sent: {}", LazyHex.shortHex(frame));
+            LOG.debug("writeToData (raw={})", LazyHex.displayable(frame));
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Got data [" + ByteUtil.shortHexString(frame) + "] at t==" + System.nanoTime());
+            }
+            byte crc = CRC.crc8(frame);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Adding checksum 0x%02X to %d byte array from 0x%02X to 0x%02X", crc,
+                    frame.length, frame[0], frame[frame.length - 1]));
+            }
+            blackhole.consume(crc);
+        }
+    }
+
+}
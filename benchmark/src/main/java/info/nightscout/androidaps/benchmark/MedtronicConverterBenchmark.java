@@ -0,0 +1,81 @@
+package info.nightscout.androidaps.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.message.MedtronicConverter;
+import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicCommandType;
+import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicDeviceType;
+import info.nightscout.androidaps.plugins.PumpMedtronic.util.MedtronicUtil;
+
+/**
+ * Conversion of responses (content after pump packet header) that are read on every status refresh (one op = one
+ * response of each type).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MedtronicConverterBenchmark {
+
+    static final MedtronicCommandType[] COMMANDS = { //
+            MedtronicCommandType.PumpModel, //
+            MedtronicCommandType.RealTimeClock, //
+            MedtronicCommandType.GetRemainingInsulin, //
+            MedtronicCommandType.GetBatteryStatus, //
+            MedtronicCommandType.ReadTemporaryBasal, //
+            MedtronicCommandType.GetBasalProfileSTD, //
+            MedtronicCommandType.Settings };
+
+    static final String[] RESPONSES = { //
+            "03353232", // 522
+            "0e1f0507e20a11", // 2018-10-17 14:31:05
+            "012c", // 30.0 U
+            "000136", // normal, 3.10 V
+            "000000280014", // 1.0 U/h, 20 min
+            "2000002600102c001426001c000000", // 4 basal rates
+            "0003000001002800a0000000010001000000001e000100000000" // settings
+    };
+
+    MedtronicConverter converter;
+    byte[][] responses;
+
+
+    @Setup
+    public void setup() {
+        MedtronicUtil.setMedtronicPumpModel(MedtronicDeviceType.Medtronic_522);
+        converter = new MedtronicConverter();
+        responses = new byte[RESPONSES.length][];
+
+        for (int i = 0; i < RESPONSES.length; i++) {
+            responses[i] = ByteUtil.fromHexString(RESPONSES[i]);
+
+            if (converter.convertResponse(COMMANDS[i], responses[i]) == null) {
+                throw new IllegalStateException("Response for " + COMMANDS[i] + " could not be converted.");
+            }
+        }
+    }
+
+
+    @Benchmark
+    public void convertResponse(Blackhole blackhole) {
+        for (int i = 0; i < COMMANDS.length; i++) {
+            blackhole.consume(converter.convertResponse(COMMANDS[i], responses[i]));
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+package info.nightscout.androidaps.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import info.nightscout.androidaps.plugins.PumpCommon.utils.ByteUtil;
+import info.nightscout.androidaps.plugins.PumpOmnipod.comm.message.MessageBlock;
+import info.nightscout.androidaps.plugins.PumpOmnipod.comm.message.OmnipodMessage;
+import info.nightscout.androidaps.plugins.PumpOmnipod.comm.message.response.StatusResponse;
+
+/**
+ * Decoding of Omnipod message with status response (sample capture from StatusResponseUnitTests).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OmnipodMessageBenchmark {
+
+    byte[] encodedMessage;
+
+
+    @Setup
+    public void setup() {
+        StatusResponse statusResponse = new StatusResponse(ByteUtil.fromHexString("1d180258f80000146fff"));
+        OmnipodMessage message = new OmnipodMessage(0x1f0e89f0, new MessageBlock[] { statusResponse }, 5);
+
+        encodedMessage = message.getEncoded();
+
+        if (OmnipodMessage.TryDecode(encodedMessage) == null) {
+            throw new IllegalStateException("Message could not be decoded.");
+        }
+    }
+
+
+    @Benchmark
+    public void tryDecode(Blackhole blackhole) {
+        blackhole.consume(OmnipodMessage.TryDecode(encodedMessage));
+    }
+
+}
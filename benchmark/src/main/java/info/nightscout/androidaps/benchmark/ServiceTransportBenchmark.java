@@ -0,0 +1,125 @@
+package info.nightscout.androidaps.benchmark;
+
+import android.os.Bundle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.gxwtech.roundtrip2.ServiceData.FetchPumpHistoryResult;
+
+import info.nightscout.androidaps.plugins.PumpCommon.hw.rileylink.service.data.ServiceTransportCodec;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.Page;
+import info.nightscout.androidaps.plugins.PumpMedtronic.comm.data.RawHistoryPage;
+import info.nightscout.androidaps.plugins.PumpMedtronic.defs.MedtronicDeviceType;
+import info.nightscout.androidaps.plugins.PumpMedtronic.util.MedtronicUtil;
+
+/**
+ * FetchPumpHistoryResult sent from service to client (one op = build result, encode, decode and read on client):
+ * old path (pages decoded in service and sent as bundle per record) against raw pages in one byte array. Parcel is
+ * not available on JVM, so both paths go through ServiceTransportCodec; sizes are printed in setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceTransportBenchmark {
+
+    byte[][] pages;
+    List<RawHistoryPage> rawPages;
+
+
+    @Setup
+    public void setup() throws IOException {
+        List<byte[]> pageList = HistoryData.loadPages();
+
+        pages = pageList.toArray(new byte[pageList.size()][]);
+        rawPages = new ArrayList<>();
+
+        for (byte[] page : pages) {
+            RawHistoryPage rawPage = new RawHistoryPage();
+            rawPage.appendData(page);
+            rawPages.add(rawPage);
+        }
+
+        // pages were recorded on 522
+        MedtronicUtil.setMedtronicPumpModel(MedtronicDeviceType.Medtronic_522);
+
+        byte[] bundleWire = ServiceTransportCodec.encode(createBundleResult().getMap());
+        byte[] binaryWire = ServiceTransportCodec.encode(createBinaryResult().getMap());
+
+        FetchPumpHistoryResult decoded = readResult(binaryWire);
+
+        if (decoded.getPageArray().size() != pages.length
+            || decoded.getPageArray().get(0).mRecordList.size() != readResult(bundleWire).getPageArray().get(0).mRecordList
+                .size()) {
+            throw new IllegalStateException("Pages differ after round trip.");
+        }
+    }
+
+
+    FetchPumpHistoryResult createBundleResult() {
+        ArrayList<Bundle> pageBundles = new ArrayList<>();
+
+        for (byte[] rawPage : pages) {
+            Page page = new Page();
+            page.parseFrom(rawPage, MedtronicDeviceType.Medtronic_522);
+            pageBundles.add(page.pack());
+        }
+
+        FetchPumpHistoryResult result = new FetchPumpHistoryResult();
+        result.getMap().putParcelableArrayList("pageArrayList", pageBundles);
+        return result;
+    }
+
+
+    FetchPumpHistoryResult createBinaryResult() {
+        FetchPumpHistoryResult result = new FetchPumpHistoryResult();
+        result.setRawPages(rawPages, MedtronicDeviceType.Medtronic_522);
+        return result;
+    }
+
+
+    static FetchPumpHistoryResult readResult(byte[] wire) {
+        FetchPumpHistoryResult result = new FetchPumpHistoryResult();
+        result.setMap(ServiceTransportCodec.decode(wire));
+        return result;
+    }
+
+
+    @Benchmark
+    public void bundlePerRecord(Blackhole blackhole) {
+        byte[] wire = ServiceTransportCodec.encode(createBundleResult().getMap());
+        blackhole.consume(readResult(wire).getPageArray());
+    }
+
+
+    @Benchmark
+    public void rawPages(Blackhole blackhole) {
+        byte[] wire = ServiceTransportCodec.encode(createBinaryResult().getMap());
+        blackhole.consume(readResult(wire).getPageCount());
+    }
+
+
+    @Benchmark
+    public void rawPagesDecodedOnClient(Blackhole blackhole) {
+        byte[] wire = ServiceTransportCodec.encode(createBinaryResult().getMap());
+        blackhole.consume(readResult(wire).getPageArray());
+    }
+
+}